@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.ma2;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Iterating over an Array with IndexIterator and with an explicit Index, for the whole array, a strided section
+ * and a permuted (transposed) view.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IndexBenchmark {
+
+  @Param({"whole", "section", "permuted"})
+  public String view;
+
+  private Array array;
+
+  @Setup
+  public void setup() throws InvalidRangeException {
+    int[] shape = {40, 200, 300};
+    float[] data = new float[40 * 200 * 300];
+    Random random = new Random(17);
+    for (int i = 0; i < data.length; i++)
+      data[i] = random.nextFloat();
+    Array whole = Array.factory(DataType.FLOAT, shape, data);
+
+    switch (view) {
+      case "section":
+        array = whole.section(new Section("0:39:2,10:189:3,:").getRanges());
+        break;
+      case "permuted":
+        array = whole.permute(new int[]{2, 1, 0});
+        break;
+      default:
+        array = whole;
+    }
+  }
+
+  @Benchmark
+  public double indexIterator() {
+    double sum = 0;
+    IndexIterator ii = array.getIndexIterator();
+    while (ii.hasNext())
+      sum += ii.getFloatNext();
+    return sum;
+  }
+
+  @Benchmark
+  public double explicitIndex() {
+    double sum = 0;
+    int[] shape = array.getShape();
+    Index index = array.getIndex();
+    for (int i = 0; i < shape[0]; i++)
+      for (int j = 0; j < shape[1]; j++)
+        for (int k = 0; k < shape[2]; k++)
+          sum += array.getFloat(index.set(i, j, k));
+    return sum;
+  }
+
+  @Benchmark
+  public Array copy() {
+    return array.copy();
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.ft.point.writer;
+
+import org.openjdk.jmh.annotations.*;
+import ucar.ma2.*;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.VariableSimpleIF;
+import ucar.nc2.VariableSimpleImpl;
+import ucar.nc2.constants.CDM;
+import ucar.nc2.ft.PointFeatureCollection;
+import ucar.nc2.ft.PointFeatureIterator;
+import ucar.nc2.ft.point.PointCollectionImpl;
+import ucar.nc2.ft.point.PointFeatureImpl;
+import ucar.nc2.ft.point.StationFeature;
+import ucar.nc2.ft.point.StationFeatureImpl;
+import ucar.nc2.ft.point.StationPointFeature;
+import ucar.nc2.time.CalendarDateUnit;
+import ucar.unidata.geoloc.EarthLocation;
+import ucar.unidata.geoloc.EarthLocationImpl;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records per second written by WriterCFPointCollection and WriterCFStationCollection, as NCSS does for point
+ * responses in NetCDF, for synthetic observations with float, double, short and String members.
+ * recordBufferSize=1 is the record at a time path; netcdf4 versions need the netCDF-C library.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CFPointWriterBenchmark {
+  private static final int nrecords = 100 * 1000;
+  private static final int nstations = 100;
+  private static final CalendarDateUnit timeUnit = CalendarDateUnit.of(null, "seconds since 2018-01-01T00:00:00Z");
+  private static final PointFeatureCollection obsCollection = new PointCollectionImpl("obs", timeUnit, "m") {
+    @Override
+    public PointFeatureIterator getPointFeatureIterator() {
+      throw new UnsupportedOperationException();
+    }
+  };
+
+  @Param({"netcdf3", "netcdf4_classic", "netcdf4"})
+  public String version;
+
+  @Param({"1", "1000"})
+  public int recordBufferSize;
+
+  private File fileOut;
+  private CFPointWriterConfig config;
+  private List<VariableSimpleIF> dataVars;
+  private List<StationFeature> stations;
+  private StructureData[] obs;
+  private double[] times;
+  private EarthLocation[] locations;
+
+  @Setup
+  public void setup() throws IOException {
+    fileOut = File.createTempFile("CFPointWriterBenchmark", ".nc");
+    config = new CFPointWriterConfig(NetcdfFileWriter.Version.valueOf(version)).setRecordBufferSize(recordBufferSize);
+
+    StructureMembers sm = new StructureMembers("obs");
+    sm.addMember("temperature", null, "K", DataType.FLOAT, new int[0]);
+    sm.addMember("pressure", null, "Pa", DataType.DOUBLE, new int[0]);
+    sm.addMember("quality", null, null, DataType.SHORT, new int[0]);
+    sm.addMember("report", null, null, DataType.STRING, new int[0]);
+    dataVars = new ArrayList<>();
+    dataVars.add(VariableSimpleImpl.makeScalar("temperature", "air temperature", "K", DataType.FLOAT));
+    dataVars.add(VariableSimpleImpl.makeScalar("pressure", "air pressure", "Pa", DataType.DOUBLE));
+    dataVars.add(VariableSimpleImpl.makeScalar("quality", "quality flag", null, DataType.SHORT));
+    dataVars.add(VariableSimpleImpl.makeString("report", "report type", null, 8));
+
+    // the observations are columns, as they often are when read from a file
+    Random random = new Random(17);
+    float[] temperature = new float[nrecords];
+    double[] pressure = new double[nrecords];
+    short[] quality = new short[nrecords];
+    String[] report = new String[nrecords];
+    times = new double[nrecords];
+    locations = new EarthLocation[nrecords];
+    for (int i = 0; i < nrecords; i++) {
+      temperature[i] = 250 + 50 * random.nextFloat();
+      pressure[i] = 90000 + 20000 * random.nextDouble();
+      quality[i] = (short) random.nextInt(4);
+      report[i] = random.nextBoolean() ? "METAR" : "SPECI";
+      times[i] = 60 * i;
+      locations[i] = new EarthLocationImpl(-90 + 180 * random.nextDouble(), -180 + 360 * random.nextDouble(), 0);
+    }
+    sm.findMember("temperature").setDataArray(Array.factory(DataType.FLOAT, new int[] {nrecords}, temperature));
+    sm.findMember("pressure").setDataArray(Array.factory(DataType.DOUBLE, new int[] {nrecords}, pressure));
+    sm.findMember("quality").setDataArray(Array.factory(DataType.SHORT, new int[] {nrecords}, quality));
+    sm.findMember("report").setDataArray(Array.factory(DataType.STRING, new int[] {nrecords}, report));
+    ArrayStructureMA asma = new ArrayStructureMA(sm, new int[] {nrecords});
+    obs = new StructureData[nrecords];
+    for (int i = 0; i < nrecords; i++)
+      obs[i] = asma.getStructureData(i);
+
+    stations = new ArrayList<>();
+    for (int i = 0; i < nstations; i++) {
+      StructureDataScalar stnData = new StructureDataScalar("station");
+      stations.add(new StationFeatureImpl(String.format("STN%03d", i), null, null,
+              -90 + 180 * random.nextDouble(), -180 + 360 * random.nextDouble(), 0, nrecords / nstations, stnData));
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (!fileOut.delete())
+      fileOut.deleteOnExit();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(nrecords)
+  public long writePoints() throws IOException {
+    List<Attribute> atts = Collections.singletonList(new Attribute(CDM.TITLE, "CFPointWriterBenchmark"));
+    try (WriterCFPointCollection writer = new WriterCFPointCollection(fileOut.getPath(), atts, dataVars,
+            timeUnit, "m", config)) {
+      writer.writeHeader(new ObsFeature(stations.get(0), locations[0], times[0], obs[0]));
+      for (int i = 0; i < nrecords; i++)
+        writer.writeRecord(times[i], timeUnit.makeCalendarDate(times[i]), locations[i], obs[i]);
+      writer.finish();
+    }
+    return fileOut.length();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(nrecords)
+  public long writeStations() throws IOException {
+    List<Attribute> atts = Collections.singletonList(new Attribute(CDM.TITLE, "CFPointWriterBenchmark"));
+    try (WriterCFStationCollection writer = new WriterCFStationCollection(fileOut.getPath(), atts, dataVars,
+            timeUnit, "m", config)) {
+      writer.writeHeader(stations, new ObsFeature(stations.get(0), stations.get(0), times[0], obs[0]));
+      for (int i = 0; i < nrecords; i++) {
+        String stnName = stations.get(i % nstations).getName();
+        writer.writeRecord(stnName, times[i], timeUnit.makeCalendarDate(times[i]), obs[i]);
+      }
+      writer.finish();
+    }
+    return fileOut.length();
+  }
+
+  // the writers only look at the data and station of the first feature
+  private static class ObsFeature extends PointFeatureImpl implements StationPointFeature {
+    private final StationFeature station;
+    private final StructureData data;
+
+    ObsFeature(StationFeature station, EarthLocation location, double time, StructureData data) {
+      super(obsCollection, location, time, time, CFPointWriterBenchmark.timeUnit);
+      this.station = station;
+      this.data = data;
+    }
+
+    @Override
+    public StationFeature getStation() {
+      return station;
+    }
+
+    @Nonnull
+    @Override
+    public StructureData getFeatureData() {
+      return data;
+    }
+
+    @Nonnull
+    @Override
+    public StructureData getDataAll() {
+      return data;
+    }
+  }
+}
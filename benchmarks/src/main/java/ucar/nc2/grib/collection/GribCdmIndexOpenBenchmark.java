@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.collection;
+
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import thredds.featurecollection.FeatureCollectionConfig;
+import ucar.nc2.NetcdfFile;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opening an ncx4 index with GribCdmIndex.openCdmIndex and reading the records of its first variable,
+ * with and without memory mapping the index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GribCdmIndexOpenBenchmark {
+  private static final Logger logger = LoggerFactory.getLogger(GribCdmIndexOpenBenchmark.class);
+
+  @Param({"ds.snow.grib2", "cosmo-eu.grib2", "complex_packing.grib1"})
+  public String filename;
+
+  @Param({"true", "false"})
+  public boolean memoryMapped;
+
+  private String indexFilename;
+  private FeatureCollectionConfig config;
+
+  @Setup
+  public void setup() throws IOException {
+    String gribFilename = "../grib/src/test/data/" + filename;
+    try (NetcdfFile ncfile = NetcdfFile.open(gribFilename)) {  // makes the ncx4 index if needed
+      indexFilename = gribFilename + GribCdmIndex.NCX_SUFFIX;
+    }
+    config = new FeatureCollectionConfig();
+    GribCdmIndex.setMemoryMappedIndex(memoryMapped);
+  }
+
+  @TearDown
+  public void tearDown() {
+    GribCdmIndex.setMemoryMappedIndex(false);
+  }
+
+  @Benchmark
+  public int openAndReadFirstVariable() throws IOException {
+    try (GribCollectionImmutable gc = GribCdmIndex.openCdmIndex(indexFilename, config, false, logger)) {
+      GribCollectionImmutable.VariableIndex vindex = gc.getDatasetCanonical().getGroups().iterator().next().getVariables().get(0);
+      vindex.readRecords();
+      return vindex.getNRecords();
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.grib2;
+
+import org.openjdk.jmh.annotations.*;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding one GRIB2 record with simple packing (5.0), complex packing (5.2) and complex packing with spatial
+ * differencing (5.3), comparing the original BitReader code with BitUnpacker, and decoding into a new array with
+ * decoding into the caller's buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Grib2UnpackBenchmark {
+
+  @Param({
+          "ds.snow.grib2",                       // NCEP NDFD, 5.2 with a bitmap, 739297 points
+          "ds.sky.grib2",                        // NCEP NDFD, 5.3, 22833 points
+          "cosmo.pds11.grib2",                   // DWD COSMO, 5.0, 194081 points
+          "Eumetsat.VerticalPerspective.grib2"   // EUMETSAT, 5.0 with a bitmap, 1530169 points
+  })
+  public String filename;
+
+  @Param({"true", "false"})
+  public boolean useBitUnpacker;
+
+  private RandomAccessFile raf;
+  private Grib2Record gr;
+  private long drsPos;
+  private int npoints, scanMode, nx, ny;
+  private float[] buffer;
+
+  @Setup
+  public void setup() throws IOException {
+    raf = new RandomAccessFile("../grib/src/test/data/" + filename, "r");
+    raf.order(RandomAccessFile.BIG_ENDIAN);
+    gr = new Grib2RecordScanner(raf).next();
+
+    Grib2Gds gds = gr.getGDS();
+    drsPos = gr.getDataRepresentationSection().getStartingPosition();
+    npoints = gr.getGDSsection().getNumberPoints();
+    scanMode = gr.getScanMode();
+    nx = gds.getNxRaw();
+    ny = gds.getNyRaw();
+    buffer = new float[npoints];
+
+    Grib2DataReader.setUseBitUnpacker(useBitUnpacker);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Grib2DataReader.setUseBitUnpacker(true);
+    raf.close();
+  }
+
+  @Benchmark
+  public float[] readData() throws IOException {
+    return gr.readData(raf);
+  }
+
+  @Benchmark
+  public float[] readDataIntoBuffer() throws IOException {
+    return Grib2Record.readData(raf, drsPos, 0, npoints, scanMode, nx, ny, null, buffer, 0);
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp;
+
+import org.openjdk.jmh.annotations.*;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.io.*;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IospHelper.readDataFill() with LayoutRegular, the path used by the netCDF-3 IOSP, reading subsets of a synthetic
+ * float[50][400][400] variable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IospHelperBenchmark {
+  private static final int[] shape = {50, 400, 400};
+  private static final long startPos = 1024;
+
+  @Param({
+          ":,:,:",            // everything
+          "10,:,:",           // one contiguous slice
+          ":,100:299,100:299", // a box, many short runs
+          ":,0:399:4,0:399:4", // strided, single values
+          ":,200,200"          // a time series
+  })
+  public String section;
+
+  private File file;
+  private RandomAccessFile raf;
+  private Section wantSection;
+
+  @Setup
+  public void setup() throws IOException, InvalidRangeException {
+    file = File.createTempFile("IospHelperBenchmark", ".bin");
+    Random random = new Random(17);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.write(new byte[(int) startPos]);
+      long n = new Section(shape).computeSize();
+      for (long i = 0; i < n; i++)
+        out.writeFloat(random.nextFloat());
+    }
+    raf = new RandomAccessFile(file.getPath(), "r");
+    wantSection = new Section(section);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    raf.close();
+    if (!file.delete())
+      file.deleteOnExit();
+  }
+
+  @Benchmark
+  public Object readDataFill() throws IOException, InvalidRangeException {
+    Layout layout = new LayoutRegular(startPos, 4, shape, wantSection);
+    return IospHelper.readDataFill(raf, layout, DataType.FLOAT, null, RandomAccessFile.BIG_ENDIAN);
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp.bufr;
+
+import org.openjdk.jmh.annotations.*;
+import ucar.ma2.StructureData;
+import ucar.ma2.StructureDataIterator;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Sequence;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scanning the messages of a BUFR file, and reading all of its observations through the BUFR IOSP.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufrReadBenchmark {
+
+  // the other checked in BUFR file, cdm/src/test/data/dataset/nestedTable.bufr, can't be read at the moment
+  @Param({"../cdm-test/src/test/data/ucar/nc2/bufr/IUPT02_KBBY_281400_522246081.bufr.2018032814"})
+  public String filename;
+
+  private NetcdfFile ncfile;
+  private Sequence obs;
+
+  @Setup
+  public void setup() throws IOException {
+    ncfile = NetcdfFile.open(filename);
+    obs = (Sequence) ncfile.findVariable(BufrIosp2.obsRecord);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    ncfile.close();
+  }
+
+  @Benchmark
+  public int scanMessages() throws IOException {
+    int count = 0;
+    try (RandomAccessFile raf = new RandomAccessFile(filename, "r")) {
+      MessageScanner scanner = new MessageScanner(raf);
+      while (scanner.hasNext()) {
+        Message m = scanner.next();
+        if (m != null) count += m.getNumberDatasets();
+      }
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int readAllObs() throws IOException {
+    int count = 0;
+    try (StructureDataIterator iter = obs.getStructureIterator()) {
+      while (iter.hasNext()) {
+        StructureData sdata = iter.next();
+        count += sdata.getMembers().size();
+      }
+    }
+    return count;
+  }
+}
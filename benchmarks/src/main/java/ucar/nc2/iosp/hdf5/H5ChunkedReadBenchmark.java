@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp.hdf5;
+
+import org.openjdk.jmh.annotations.*;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reading all the variables of chunked HDF5 / netCDF-4 test files. Compressed variables are read through
+ * H5tiledLayoutBB, uncompressed ones through H5tiledLayout.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class H5ChunkedReadBenchmark {
+
+  @Param({"chunked.h5", "testCFGridWriter.nc4"})
+  public String filename;
+
+  private NetcdfFile ncfile;
+
+  @Setup
+  public void setup() throws IOException {
+    ncfile = NetcdfFile.open("../cdm/src/test/data/" + filename);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    ncfile.close();
+  }
+
+  @Benchmark
+  public long readAllVariables() throws IOException {
+    long n = 0;
+    for (Variable v : ncfile.getVariables()) {
+      v.invalidateCache();
+      n += v.read().getSize();
+    }
+    return n;
+  }
+}
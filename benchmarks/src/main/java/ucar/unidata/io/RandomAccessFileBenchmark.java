@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequential, random, bulk primitive and vectored reads through RandomAccessFile, on a synthetic 16 MB file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomAccessFileBenchmark {
+  private static final int fileSize = 16 * 1024 * 1024;
+  private static final int nrandom = 1000;
+
+  @Param({"8192", "65536"})
+  public int bufferSize;
+
+  private File file;
+  private RandomAccessFile raf;
+  private long[] randomPos;
+  private List<ByteRange> ranges;
+  private final byte[] chunk = new byte[8192];
+  private final byte[] small = new byte[100];
+  private final float[] floats = new float[16 * 1024];
+
+  @Setup
+  public void setup() throws IOException {
+    file = File.createTempFile("RandomAccessFileBenchmark", ".bin");
+    Random random = new Random(17);
+    byte[] buf = new byte[1024 * 1024];
+    try (OutputStream out = new FileOutputStream(file)) {
+      for (int i = 0; i < fileSize / buf.length; i++) {
+        random.nextBytes(buf);
+        out.write(buf);
+      }
+    }
+
+    randomPos = new long[nrandom];
+    for (int i = 0; i < nrandom; i++)
+      randomPos[i] = random.nextInt(fileSize - small.length);
+
+    // 256 ranges of 4K, with gaps of 0-8K, as when reading chunks of a variable
+    ranges = new ArrayList<>();
+    long pos = 0;
+    for (int i = 0; i < 256; i++) {
+      ranges.add(new ByteRange(pos, 4096));
+      pos += 4096 + random.nextInt(8192);
+    }
+
+    raf = new RandomAccessFile(file.getPath(), "r", bufferSize);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    raf.close();
+    if (!file.delete())
+      file.deleteOnExit();
+  }
+
+  @Benchmark
+  public long sequentialRead() throws IOException {
+    long sum = 0;
+    raf.seek(0);
+    for (long pos = 0; pos < fileSize; pos += chunk.length) {
+      raf.readFully(chunk);
+      sum += chunk[0];
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long randomSmallReads() throws IOException {
+    long sum = 0;
+    for (long pos : randomPos) {
+      raf.seek(pos);
+      raf.readFully(small);
+      sum += small[0];
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public long randomPositionalReads() throws IOException {
+    long sum = 0;
+    for (long pos : randomPos) {
+      raf.readFullyAt(pos, small, 0, small.length);
+      sum += small[0];
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double readFloatBulk() throws IOException {
+    double sum = 0;
+    raf.seek(0);
+    raf.order(RandomAccessFile.BIG_ENDIAN);
+    for (long pos = 0; pos + 4 * floats.length <= fileSize; pos += 4 * floats.length) {
+      raf.readFloat(floats, 0, floats.length);
+      sum += floats[0];
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public List<ByteBuffer> readRangesCoalesced() throws IOException {
+    return raf.readRanges(ranges, 8192);
+  }
+
+  @Benchmark
+  public List<ByteBuffer> readRangesSeparately() throws IOException {
+    return raf.readRanges(ranges, 0);
+  }
+}
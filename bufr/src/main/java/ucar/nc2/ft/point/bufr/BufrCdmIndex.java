@@ -7,8 +7,10 @@ package ucar.nc2.ft.point.bufr;
 
 import ucar.nc2.constants.CDM;
 import ucar.nc2.iosp.bufr.BufrConfig;
+import ucar.nc2.iosp.bufr.MessageIndex;
 import ucar.nc2.stream.NcStream;
 import ucar.nc2.time.CalendarDate;
+import ucar.nc2.time.CalendarDateRange;
 import ucar.unidata.io.RandomAccessFile;
 
 import java.io.File;
@@ -28,7 +30,7 @@ public class BufrCdmIndex {
 
   public static final String MAGIC_START = "BufrCdmIndex";
   public static final String NCX_IDX = ".ncx";
-  private static final int version = 1;
+  private static final int version = 2;
 
   public static File calcIndexFile(String bufrFilename ) {
     File bufrFile = new File(bufrFilename);
@@ -58,6 +60,49 @@ public class BufrCdmIndex {
     return index;
   }
 
+  /**
+   * Summary of the obs in one data message: their number, time range and stations.
+   * Lets a subset request skip the messages that cannot have any obs in it.
+   */
+  public static class MessageSummary {
+    public final long startPos;     // start of the message in the BUFR file, MessageIndex.Entry.startPos
+    public final int nobs;
+    public final long start, end;   // msecs since epoch; start > end if the obs have no time
+    public final Set<String> stationIds; // null if not known
+
+    public MessageSummary(long startPos, int nobs, long start, long end, Set<String> stationIds) {
+      this.startPos = startPos;
+      this.nobs = nobs;
+      this.start = start;
+      this.end = end;
+      this.stationIds = stationIds;
+    }
+
+    /**
+     * Could any obs of this message be from one of the stations?
+     * @param wantIds station ids
+     * @return false if none of them can be
+     */
+    public boolean mayHaveStation(Collection<String> wantIds) {
+      if (stationIds == null) return true;
+      for (String id : wantIds) {
+        if (stationIds.contains(id)) return true;
+      }
+      return false;
+    }
+
+    /**
+     * Could any obs of this message be in the date range?
+     * @param dateRange date range, or null for all
+     * @return false if none of them can be
+     */
+    public boolean mayOverlap(CalendarDateRange dateRange) {
+      if (dateRange == null || start > end) return true;
+      return end >= dateRange.getStart().getMillis() && start <= dateRange.getEnd().getMillis();
+    }
+
+  }
+
   /////////////////////////////////////////////////////////////////////////////////
 
   /*
@@ -65,6 +110,9 @@ public class BufrCdmIndex {
    version
    sizeIndex
    BufrCdmIndexProto (sizeIndex bytes)
+   bufrLength  (version 2)
+   nmessages
+   MessageSummary (nmessages), each followed by nstations (-1 if not known) and the station ids
   */
   private boolean writeIndex2(String bufrFilename, BufrConfig config, File indexFile) throws IOException {
     if (indexFile.exists()) {
@@ -103,6 +151,8 @@ public class BufrCdmIndex {
       NcStream.writeVInt(raf, b.length); // message size
       raf.write(b);  // message  - all in one gulp
 
+      writeMessages(raf, config.getBufrLength(), config.getMessageSummaries());
+
       log.debug("  file size =  %d bytes", raf.length());
       return true;
     }
@@ -143,6 +193,8 @@ public class BufrCdmIndex {
       raf.write(b);  // message  - all in one gulp
       log.debug("  write BufrCdmIndexProto= {} bytes", b.length);
 
+      writeMessages(raf, index.bufrLength, index.messages);
+
       //System.out.printf("  write BufrCdmIndexProto= %d bytes", b.length);
       //showProtoRoot(rootf);
 
@@ -151,6 +203,24 @@ public class BufrCdmIndex {
     }
   }
 
+  // the message summaries are not in BufrCdmIndexProto, they follow it
+  private static void writeMessages(RandomAccessFile raf, long bufrLength, List<MessageSummary> messages) throws IOException {
+    if (messages == null) messages = new ArrayList<>();
+    raf.writeLong(bufrLength);
+    raf.writeInt(messages.size());
+    for (MessageSummary m : messages) {
+      raf.writeLong(m.startPos);
+      raf.writeInt(m.nobs);
+      raf.writeLong(m.start);
+      raf.writeLong(m.end);
+      raf.writeInt(m.stationIds == null ? -1 : m.stationIds.size());
+      if (m.stationIds != null) {
+        for (String id : m.stationIds)
+          raf.writeUTF(id);
+      }
+    }
+  }
+
   private BufrCdmIndexProto.Station buildStation(BufrConfig.BufrStation s) {
     BufrCdmIndexProto.Station.Builder builder = BufrCdmIndexProto.Station.newBuilder();
 
@@ -211,6 +281,8 @@ public class BufrCdmIndex {
   public List<BufrCdmIndexProto.Station> stations;
   public long start, end;
   public long nobs;
+  public long bufrLength;                 // length of the BUFR file when the message summaries were made
+  public List<MessageSummary> messages;   // null if the index doesnt have them
 
   protected boolean readIndex(RandomAccessFile raf) throws IOException {
     this.idxFilename = raf.getLocation();
@@ -226,7 +298,8 @@ public class BufrCdmIndex {
       }
 
       int indexVersion = raf.readInt();
-      boolean versionOk = (indexVersion == version);
+      // version 1 has no message summaries
+      boolean versionOk = (indexVersion >= 1) && (indexVersion <= version);
       if (!versionOk) {
         log.warn("BufrCdmIndex {}: index found version={}, want version= {}", raf.getLocation(), indexVersion, version);
         return false;
@@ -249,6 +322,25 @@ public class BufrCdmIndex {
       end = proto.getEnd();
       nobs = proto.getNobs();
 
+      if (indexVersion >= 2) {
+        bufrLength = raf.readLong();
+        int n = raf.readInt();
+        messages = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+          long startPos = raf.readLong();
+          int nobs = raf.readInt();
+          long start = raf.readLong(), end = raf.readLong();
+          Set<String> stationIds = null;
+          int nstations = raf.readInt();
+          if (nstations >= 0) {
+            stationIds = new HashSet<>(2 * nstations);
+            for (int j = 0; j < nstations; j++)
+              stationIds.add(raf.readUTF());
+          }
+          messages.add(new MessageSummary(startPos, nobs, start, end, stationIds));
+        }
+      }
+
       //showProtoRoot(root);
 
     } catch (Throwable t) {
@@ -259,6 +351,33 @@ public class BufrCdmIndex {
     return true;
   }
 
+  /**
+   * Choose the messages of the BUFR file that may have obs from the stations in the date range.
+   * Table messages, and data messages without a summary or without stations in it, are always chosen.
+   *
+   * @param messageIndex index of the messages in the BUFR file
+   * @param bufrLength   current length of the BUFR file
+   * @param stationIds   station ids, or null for all
+   * @param dateRange    date range, or null for all
+   * @return entries of messageIndex to read, or null if the summaries cant be used for this file
+   */
+  public List<MessageIndex.Entry> selectStationMessages(MessageIndex messageIndex, long bufrLength, Collection<String> stationIds,
+                                                        CalendarDateRange dateRange) {
+    if (messages == null || bufrLength != this.bufrLength) return null; // no summaries, or the file has changed
+
+    Map<Long, MessageSummary> byPos = new HashMap<>(2 * messages.size());
+    for (MessageSummary m : messages)
+      byPos.put(m.startPos, m);
+
+    List<MessageIndex.Entry> result = new ArrayList<>();
+    for (MessageIndex.Entry entry : messageIndex.getEntries()) {
+      MessageSummary m = entry.isTable ? null : byPos.get(entry.startPos);
+      if (m == null || (m.mayOverlap(dateRange) && (stationIds == null || m.mayHaveStation(stationIds))))
+        result.add(entry);
+    }
+    return result;
+  }
+
   static void showProtoRoot(BufrCdmIndexProto.Field fld) {
     String act = (fld.getAction() != BufrCdmIndexProto.FldAction.defa) ? fld.getAction().toString() : "-";
     System.out.printf("%10s %s%n", act, fld.getName());
@@ -280,6 +399,8 @@ public class BufrCdmIndex {
         count += s.getCount();
       f.format("  # stations obs=%d%n", count);
     }
+    if (messages != null)
+      f.format("  # messages with summaries=%d%n", messages.size());
 
   }
 
@@ -8,6 +8,8 @@ package ucar.nc2.ft.point.bufr;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Formatter;
 import java.util.HashMap;
 import java.util.List;
@@ -40,6 +42,7 @@ import ucar.nc2.ft.PointFeatureIterator;
 import ucar.nc2.ft.point.*;
 import ucar.nc2.iosp.IOServiceProvider;
 import ucar.nc2.iosp.bufr.BufrIosp2;
+import ucar.nc2.iosp.bufr.MessageIndex;
 import ucar.nc2.time.CalendarDate;
 import ucar.nc2.time.CalendarDateRange;
 import ucar.nc2.time.CalendarDateUnit;
@@ -158,6 +161,21 @@ public class BufrFeatureDatasetFactory implements FeatureDatasetFactory {
       index.showIndex(sf);
     }
 
+    // iterate over the obs, skipping the messages that the index says have none from the stations in the date range.
+    // select by station, not by the location of the obs: a station is kept or not by its first location, so a
+    // station that moves has obs outside the bounding box.
+    private StructureDataIterator getObsIterator(Collection<String> stationIds, CalendarDateRange dateRange) throws IOException {
+      IOServiceProvider iosp = netcdfDataset.getIosp();
+      if ((stationIds != null || dateRange != null) && index.messages != null && iosp instanceof BufrIosp2) {
+        BufrIosp2 bufrIosp = (BufrIosp2) iosp;
+        long bufrLength = new File(netcdfDataset.getLocation()).length();
+        List<MessageIndex.Entry> want = index.selectStationMessages(bufrIosp.makeMessageIndex(), bufrLength, stationIds, dateRange);
+        if (want != null)
+          return obs.getStructureIterator(bufrIosp.getStructureIterator(want));
+      }
+      return obs.getStructureIterator();
+    }
+
     private class BufrStationCollection extends StationTimeSeriesCollectionImpl {
       StandardFields.StandardFieldsFromStructure extract;
 
@@ -195,7 +213,8 @@ public class BufrFeatureDatasetFactory implements FeatureDatasetFactory {
 
         @Override
         public PointFeatureIterator getPointFeatureIterator() throws IOException {
-          return new BufrStationIterator(obs.getStructureIterator(), null);
+          // the station location is that of its first obs, later ones may differ, so select by id
+          return new BufrStationIterator(getObsIterator(Collections.singleton(getName()), null), null);
         }
 
         @Nonnull
@@ -259,6 +278,8 @@ public class BufrFeatureDatasetFactory implements FeatureDatasetFactory {
       private class BufrPointFeatureCollection extends PointCollectionImpl {
         StationHelper stationsWanted;
         PointFeatureIterator.Filter filter;
+        LatLonRect boundingBox;
+        CalendarDateRange dateRange;
 
         BufrPointFeatureCollection(LatLonRect boundingBox, CalendarDateRange dateRange) throws IOException {
           super("BufrPointFeatureCollection", bufrDateUnits, bufrAltUnits);
@@ -270,11 +291,19 @@ public class BufrFeatureDatasetFactory implements FeatureDatasetFactory {
           createStationHelper();
           stationsWanted = getStationHelper().subset(boundingBox);
           if (dateRange != null) filter = new PointIteratorFiltered.SpaceAndTimeFilter(null, dateRange);
+          this.boundingBox = boundingBox;
+          this.dateRange = dateRange;
         }
 
         @Override
         public PointFeatureIterator getPointFeatureIterator() throws IOException {
-          return new BufrRecordIterator(obs.getStructureIterator(), filter);
+          List<String> stationIds = null;
+          if (boundingBox != null) {
+            stationIds = new ArrayList<>();
+            for (StationFeature s : stationsWanted.getStationFeatures())
+              stationIds.add(s.getName());
+          }
+          return new BufrRecordIterator(getObsIterator(stationIds, dateRange), filter);
         }
 
         // iterates once over all the records
@@ -12,6 +12,7 @@ import ucar.nc2.Attribute;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.Sequence;
 import ucar.nc2.constants.FeatureType;
+import ucar.nc2.ft.point.bufr.BufrCdmIndex;
 import ucar.nc2.ft.point.bufr.BufrCdmIndexProto;
 import ucar.nc2.ft.point.bufr.BufrField;
 import ucar.nc2.ft.point.bufr.StandardFields;
@@ -127,6 +128,16 @@ public class BufrConfig {
     return countObs;
   }
 
+  /** Length of the BUFR file that was scanned, or 0 if it was not scanned. */
+  public long getBufrLength() {
+    return bufrLength;
+  }
+
+  /** Summary of the obs in each data message, or null if the file was not scanned. */
+  public List<BufrCdmIndex.MessageSummary> getMessageSummaries() {
+    return messages;
+  }
+
   ////////////////////////////////////////////////////////////////////////////
 
   private void merge(Element iospParam) {
@@ -194,6 +205,26 @@ public class BufrConfig {
   private boolean hasStations = false;
   private boolean hasDate = false;
   private int countObs = 0;
+  private long bufrLength;
+  private List<BufrCdmIndex.MessageSummary> messages;
+  private MessageBounds bounds; // of the message being scanned
+
+  // accumulate the time range and the stations of the obs in one message
+  private static class MessageBounds {
+    int nobs;
+    long start = Long.MAX_VALUE, end = Long.MIN_VALUE;
+    Set<String> stationIds = new HashSet<>();
+
+    void addTime(long msecs) {
+      start = Math.min(start, msecs);
+      end = Math.max(end, msecs);
+    }
+
+    BufrCdmIndex.MessageSummary makeSummary(long startPos, boolean hasStations) {
+      return new BufrCdmIndex.MessageSummary(startPos, nobs, start, end, hasStations ? stationIds : null);
+    }
+  }
+
   private void scanBufrFile(RandomAccessFile raf) throws Exception {
     NetcdfFile ncd = null;
     countObs = 0;
@@ -222,8 +253,18 @@ public class BufrConfig {
       Sequence seq = (Sequence) ncd.findVariable(null, BufrIosp2.obsRecord);
       extract = new StandardFields.StandardFieldsFromStructure(center, seq);
 
-      StructureDataIterator iter = seq.getStructureIterator();
-      processSeq( iter, rootConverter, true);
+      // read one message at a time, to summarize the obs in each one
+      BufrIosp2 iosp = (BufrIosp2) ncd.getIosp();
+      bufrLength = raf.length();
+      messages = new ArrayList<>();
+      for (MessageIndex.Entry entry : iosp.makeMessageIndex().getEntries()) {
+        bounds = new MessageBounds();
+        StructureDataIterator iter = iosp.getStructureIterator(Collections.singletonList(entry)); // also reads tables
+        processSeq( iter, rootConverter, true);
+        if (bounds.nobs > 0)
+          messages.add(bounds.makeSummary(entry.startPos, hasStations));
+      }
+      bounds = null;
 
       setStandardActions(rootConverter);
 
@@ -258,7 +299,11 @@ public class BufrConfig {
            countObs++;
            if (debug && countObs % 100 == 0) System.out.printf("%d ", countObs);
 
-           if (hasStations) processStations(parent, sdata);
+           String stationId = hasStations ? processStations(parent, sdata) : null;
+           if (bounds != null) {
+             if (stationId != null) bounds.stationIds.add(stationId);
+             bounds.nobs++;
+           }
            if (hasDate) {
              extract.extract(sdata);
              CalendarDate date = extract.makeCalendarDate();
@@ -274,6 +319,7 @@ public class BufrConfig {
                this.end = msecs;
                //System.out.printf("new end %s%n", date);
              }
+             if (bounds != null) bounds.addTime(msecs);
            }
          }
 
@@ -294,13 +340,14 @@ public class BufrConfig {
      }
    }
 
-   private void processStations(FieldConverter parent, StructureData sdata) {
+   // return the station name, or null if it has none
+   private String processStations(FieldConverter parent, StructureData sdata) {
      BufrStation station = new BufrStation();
      station.read(parent, sdata);
 
      if (station.getName() == null) {
        log.warn("bad station name: "+station);
-       return;
+       return null;
      }
 
      BufrStation check = map.get(station.getName());
@@ -311,6 +358,7 @@ public class BufrConfig {
        if (!station.equals(check))
          log.warn("bad station doesnt equal "+station+" != "+check);
      }
+     return station.getName();
    }
 
   public class BufrStation extends StationImpl {
@@ -16,6 +16,12 @@ import ucar.unidata.io.RandomAccessFile;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * IOSP for BUFR data - version 2, use the preprocessor
@@ -40,12 +46,49 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
 
   //static public final Set<NetcdfDataset.Enhance> enhance = Collections.unmodifiableSet(EnumSet.of(NetcdfDataset.Enhance.ScaleMissing));
 
+  ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+  // parallel decoding of messages
+
+  static private volatile ExecutorService decodeExecutor;  // null means decode serially
+  static private volatile int decodeMaxInFlight;
+
+  /**
+   * Decode the messages of a BUFR file on a shared pool of worker threads. Off by default.
+   * When on, a MessageIndex of each file is read or made when it is opened, so the file is not scanned for messages
+   * on each read. The obs are returned in the same order as the serial read.
+   *
+   * @param nthreads size of the shared pool; 0 or less turns parallel decoding off.
+   */
+  static public synchronized void setDecodeThreads(int nthreads) {
+    if (decodeExecutor != null) {
+      decodeExecutor.shutdown();
+      decodeExecutor = null;
+    }
+    if (nthreads <= 0) return;
+
+    decodeMaxInFlight = 2 * nthreads;
+    AtomicInteger count = new AtomicInteger();
+    decodeExecutor = Executors.newFixedThreadPool(nthreads, r -> {
+      Thread t = new Thread(r, "BufrIosp2-decode-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  /**
+   * Stop the worker threads used for parallel decoding, if any.
+   */
+  static public void shutdown() {
+    setDecodeThreads(0);
+  }
+
 
   ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
 
   private Structure obsStructure;
   private Message protoMessage;
   private MessageScanner scanner;
+  private MessageIndex messageIndex; // only when decoding in parallel
   private HashSet<Integer> messHash = null;
   private boolean isSingle;
   private BufrConfig config;
@@ -76,6 +119,9 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
     obsStructure = construct.getObsStructure();
     ncfile.finish();
     isSingle = false;
+
+    if (decodeExecutor != null)
+      messageIndex = MessageIndex.readOrCreate(raf);
   }
 
     // for BufrMessageViewer
@@ -116,17 +162,73 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
     return iospParam;
   }
 
+  /**
+   * The index of the messages in this file, if it has one.
+   * @return index, or null if the file was opened without parallel decoding
+   */
+  public MessageIndex getMessageIndex() {
+    return messageIndex;
+  }
+
+  /**
+   * The index of the messages in this file, reading or making it if needed.
+   * @return index of the messages
+   * @throws IOException on read error
+   */
+  public MessageIndex makeMessageIndex() throws IOException {
+    if (messageIndex == null)
+      messageIndex = MessageIndex.readOrCreate(raf);
+    return messageIndex;
+  }
+
+  /**
+   * Iterate over the obs of some of the messages in this file, without scanning the file for the others.
+   * Messages that contain BUFR tables must be included if the data messages after them need those tables.
+   *
+   * @param messages entries of makeMessageIndex(), in file order
+   * @return iterator over the obs of the data messages of the same type as the first one
+   */
+  public StructureDataIterator getStructureIterator(List<MessageIndex.Entry> messages) {
+    return new SeqIterIndexed(decodeExecutor, decodeMaxInFlight, messages);
+  }
+
   private int nelems = -1;
 
   @Override
   public Array readData(Variable v2, Section section) throws IOException, InvalidRangeException {
     //return new ArraySequence(obsStructure.makeStructureMembers(), getStructureIterator(null, -1), nelems);
-    return new ArraySequence(obsStructure.makeStructureMembers(), new SeqIter(), nelems);
+    return new ArraySequence(obsStructure.makeStructureMembers(), makeSeqIter(), nelems);
   }
 
   @Override
   public StructureDataIterator getStructureIterator(Structure s, int bufferSize) throws java.io.IOException {
-    return isSingle ? new SeqIterSingle() : new SeqIter();
+    return isSingle ? new SeqIterSingle() : makeSeqIter();
+  }
+
+  private StructureDataIterator makeSeqIter() {
+    ExecutorService executor = decodeExecutor;
+    return (executor != null && messageIndex != null) ?
+        new SeqIterIndexed(executor, decodeMaxInFlight, messageIndex.getEntries()) : new SeqIter();
+  }
+
+  private ArrayStructure readMessage(Message m, RandomAccessFile raf) throws IOException {
+    ArrayStructure as;
+    if (m.dds.isCompressed()) {
+      MessageCompressedDataReader reader = new MessageCompressedDataReader();
+      as = reader.readEntireMessage(obsStructure, protoMessage, m, raf, null);
+    } else {
+      MessageUncompressedDataReader reader = new MessageUncompressedDataReader();
+      as = reader.readEntireMessage(obsStructure, protoMessage, m, raf, null);
+    }
+    return as;
+  }
+
+  private void warnDifferentType(int hash) {
+    if (messHash == null) messHash = new HashSet<>(20);
+    if (!messHash.contains(hash))  {
+      log.warn("File " + raf.getLocation() + " has different BUFR message types hash=" + protoMessage.hashCode() + "; skipping");
+      messHash.add(hash);
+    }
   }
 
   private class SeqIter implements StructureDataIterator {
@@ -181,30 +283,14 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
 
       // mixed messages
       if (!protoMessage.equals(m)) {
-        if (messHash == null) messHash = new HashSet<>(20);
-        if (!messHash.contains(m.hashCode()))  {
-          log.warn("File " + raf.getLocation() + " has different BUFR message types hash=" + protoMessage.hashCode() + "; skipping");
-          messHash.add(m.hashCode());
-        }
+        warnDifferentType(m.hashCode());
         return readNextMessage();
       }
 
-      ArrayStructure as = readMessage(m);
+      ArrayStructure as = readMessage(m, raf);
       return as.getStructureDataIterator();
     }
 
-    private ArrayStructure readMessage(Message m) throws IOException {
-      ArrayStructure as;
-      if (m.dds.isCompressed()) {
-        MessageCompressedDataReader reader = new MessageCompressedDataReader();
-        as = reader.readEntireMessage(obsStructure, protoMessage, m, raf, null);
-      } else {
-        MessageUncompressedDataReader reader = new MessageUncompressedDataReader();
-        as = reader.readEntireMessage(obsStructure, protoMessage, m, raf, null);
-      }
-      return as;
-    }
-
     @Override
     public int getCurrentRecno() {
       return recnum - 1;
@@ -253,17 +339,122 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
     }
 
     private StructureDataIterator readProtoMessage() throws IOException {
-      Message m = protoMessage;
-      ArrayStructure as;
-      if (m.dds.isCompressed()) {
-        MessageCompressedDataReader reader = new MessageCompressedDataReader();
-        as = reader.readEntireMessage(obsStructure, protoMessage, m, raf, null);
-      } else {
-        MessageUncompressedDataReader reader = new MessageUncompressedDataReader();
-        as = reader.readEntireMessage(obsStructure, protoMessage, m, raf, null);
+      ArrayStructure as = readMessage(protoMessage, raf);
+      return as.getStructureDataIterator();
+    }
+
+    @Override
+    public int getCurrentRecno() {
+      return recnum - 1;
+    }
+
+    @Override
+    public void close() {
+      if (currIter != null) currIter.close();
+      currIter = null;
+    }
+  }
+
+  /*
+   Reads the messages at the positions in the MessageIndex, instead of scanning the file for them.
+   With an executor, the calling thread reads each data message of the right type into memory, and a worker thread
+   decodes it. The obs are returned by the calling thread in message order, with at most maxInFlight messages in flight.
+   Without one, the calling thread decodes each message when it gets to it.
+   */
+  private class SeqIterIndexed implements StructureDataIterator {
+    private final ExecutorService executor; // may be null
+    private final int maxInFlight;
+    private final List<MessageIndex.Entry> entries;
+    private final int protoHash;
+    private final ArrayDeque<Future<ArrayStructure>> inFlight = new ArrayDeque<>();
+    private int nextEntry;
+    StructureDataIterator currIter;
+    int recnum = 0;
+
+    SeqIterIndexed(ExecutorService executor, int maxInFlight, List<MessageIndex.Entry> entries) {
+      this.executor = executor;
+      this.maxInFlight = (executor == null) ? 1 : maxInFlight;
+      this.entries = entries;
+      this.protoHash = protoMessage.getTypeHash();
+      reset();
+    }
+
+    @Override
+    public StructureDataIterator reset() {
+      cancel();
+      recnum = 0;
+      nextEntry = 0;
+      currIter = null;
+      return this;
+    }
+
+    @Override
+    public boolean hasNext() throws IOException {
+      while (currIter == null || !currIter.hasNext()) {
+        submit();
+        Future<ArrayStructure> future = inFlight.poll();
+        if (future == null) {
+          currIter = null;
+          if (messageIndex != null && entries == messageIndex.getEntries()) // all the messages
+            nelems = recnum;
+          return false;
+        }
+        currIter = get(future).getStructureDataIterator();
       }
+      return true;
+    }
 
-      return as.getStructureDataIterator();
+    @Override
+    public StructureData next() throws IOException {
+      recnum++;
+      return currIter.next();
+    }
+
+    private void submit() throws IOException {
+      while (inFlight.size() < maxInFlight && nextEntry < entries.size()) {
+        MessageIndex.Entry entry = entries.get(nextEntry++);
+        if (!entry.isTable && entry.typeHash != protoHash) { // mixed messages
+          warnDifferentType(entry.typeHash);
+          continue;
+        }
+
+        Message m = scanner.readMessage(entry.headerPos, entry.startPos); // also reads embedded tables
+        if (m == null || m.containsBufrTable()) continue; // data messages only
+        if (!protoMessage.equals(m)) {
+          warnDifferentType(entry.typeHash);
+          continue;
+        }
+
+        if (executor == null) {
+          inFlight.add(CompletableFuture.completedFuture(readMessage(m, raf)));
+        } else {
+          Message copy = m.copyToMemory();
+          inFlight.add(executor.submit(() -> readMessage(copy, copy.getRaf())));
+        }
+      }
+    }
+
+    private ArrayStructure get(Future<ArrayStructure> future) throws IOException {
+      try {
+        return future.get();
+
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("BufrIosp2 read interrupted");
+
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) throw (IOException) cause;
+        if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+        if (cause instanceof Error) throw (Error) cause;
+        throw new IOException(cause);
+      }
+    }
+
+    private void cancel() {
+      for (Future<ArrayStructure> future : inFlight)
+        future.cancel(true);
+      inFlight.clear();
     }
 
     @Override
@@ -273,8 +464,10 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
 
     @Override
     public void close() {
+      cancel();
       if (currIter != null) currIter.close();
       currIter = null;
+      if (debugIter) System.out.printf("BUFR read recnum %d%n", recnum);
     }
   }
 
@@ -5,6 +5,7 @@
 package ucar.nc2.iosp.bufr;
 
 import ucar.nc2.time.CalendarDate;
+import ucar.unidata.io.InMemoryRandomAccessFile;
 import ucar.unidata.io.RandomAccessFile;
 
 import java.io.IOException;
@@ -51,6 +52,38 @@ public class Message {
     lookup = BufrTableLookup.factory(this);
   }
 
+  // copy that shares the sections and table lookup
+  private Message(RandomAccessFile raf, Message from, BufrDataSection dataSection) {
+    this.raf = raf;
+    this.is = from.is;
+    this.ids = from.ids;
+    this.dds = from.dds;
+    this.dataSection = dataSection;
+    this.lookup = from.lookup;
+    this.header = from.header;
+  }
+
+  /**
+   * Make a copy of this message that reads its data from memory instead of the file, so that it can be decoded
+   * by another thread while the file is in use. The copy shares the sections and table lookup with this message,
+   * so this message must not be decoded at the same time.
+   *
+   * @return copy, whose getRaf() is an InMemoryRandomAccessFile holding just this message
+   * @throws IOException on read error
+   */
+  Message copyToMemory() throws IOException {
+    byte[] bytes = new byte[is.getBufrLength()];
+    raf.seek(startPos);
+    raf.readFully(bytes);
+    RandomAccessFile memRaf = new InMemoryRandomAccessFile(raf.getLocation(), bytes);
+    memRaf.order(RandomAccessFile.BIG_ENDIAN);
+    return new Message(memRaf, this, new BufrDataSection(dataSection.getDataPos() - startPos, dataSection.getDataLength()));
+  }
+
+  RandomAccessFile getRaf() {
+    return raf;
+  }
+
   void setTableLookup(TableLookup lookup) {
     this.lookup.setTableLookup(lookup);
   }
@@ -266,6 +299,22 @@ public class Message {
     return result;
   }
 
+  /**
+   * A hash of the message type that is consistent with equals(): the data descriptors, center, category and
+   * subcategory. Unlike hashCode(), it does not construct the DataDescriptor tree, and is the same in every JVM,
+   * so it can be stored in a MessageIndex.
+   *
+   * @return hash of the message type
+   */
+  public int getTypeHash() {
+    int result = 17;
+    result = 37 * result + dds.getDataDescriptors().hashCode();
+    result = 37 * result + ids.getCenterId();
+    result = 37 * result + ids.getCategory();
+    result = 37 * result + ids.getSubCategory();
+    return result;
+  }
+
   public int getDDShashcode() {
     root = getRootDataDescriptor();
     return root.hashCode2();
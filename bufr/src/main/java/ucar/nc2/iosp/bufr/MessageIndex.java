@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp.bufr;
+
+import ucar.nc2.time.CalendarDate;
+import ucar.nc2.util.DiskCache2;
+import ucar.unidata.io.RandomAccessFile;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Index of the messages in a BUFR file, so the file does not have to be scanned for them again.
+ * For each message it keeps its position, the hash of its type, its number of obs and its reference time.
+ * <p>
+ * The index is written to a file with the BUFR filename plus ".bfx", next to it or in the DiskCache2 if the
+ * directory is not writable. It is used as long as the BUFR file has the same length and last modified time.
+ */
+@Immutable
+public class MessageIndex {
+  static private final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(MessageIndex.class);
+
+  public static final String SUFFIX = ".bfx";
+  private static final byte[] MAGIC = "BUFRMessageIndex".getBytes(StandardCharsets.US_ASCII);
+  private static final int VERSION = 1;
+
+  private static DiskCache2 diskCache;
+
+  public static synchronized void setDiskCache2(DiskCache2 dc) {
+    diskCache = dc;
+  }
+
+  public static synchronized DiskCache2 getDiskCache2() {
+    if (diskCache == null)
+      diskCache = DiskCache2.getDefault();
+    return diskCache;
+  }
+
+  /**
+   * One message in the file.
+   */
+  @Immutable
+  public static class Entry {
+    public final long headerPos;  // start of the WMO header before the message
+    public final long startPos;   // start of the message
+    public final int length;      // length of the message in bytes
+    public final int typeHash;    // Message.getTypeHash()
+    public final int nobs;        // number of obs (datasets)
+    public final boolean isTable; // contains a BUFR table, not data
+    public final long refTime;    // reference time, msecs since epoch, or Long.MIN_VALUE if not valid
+
+    Entry(long headerPos, long startPos, int length, int typeHash, int nobs, boolean isTable, long refTime) {
+      this.headerPos = headerPos;
+      this.startPos = startPos;
+      this.length = length;
+      this.typeHash = typeHash;
+      this.nobs = nobs;
+      this.isTable = isTable;
+      this.refTime = refTime;
+    }
+
+    @Nullable
+    public CalendarDate getReferenceTime() {
+      return (refTime == Long.MIN_VALUE) ? null : CalendarDate.of(refTime);
+    }
+  }
+
+  /**
+   * Read the index of this file, or scan the file and write its index if there isnt a good one.
+   * A file that is not on the local file system, eg in memory, is scanned and its index is not written.
+   *
+   * @param raf the BUFR file
+   * @return index of the file
+   * @throws IOException on read error
+   */
+  public static MessageIndex readOrCreate(RandomAccessFile raf) throws IOException {
+    File dataFile = new File(raf.getLocation());
+    if (!dataFile.exists())
+      return scan(raf);
+
+    long length = raf.length();
+    long lastModified = dataFile.lastModified();
+    File idxFile = getDiskCache2().getExistingFileOrCache(raf.getLocation() + SUFFIX);
+    if (idxFile != null) {
+      MessageIndex index = read(idxFile, length, lastModified);
+      if (index != null) return index;
+    }
+
+    MessageIndex index = scan(raf);
+    idxFile = getDiskCache2().getFile(raf.getLocation() + SUFFIX);
+    try {
+      index.write(idxFile, length, lastModified);
+    } catch (IOException ioe) {
+      log.warn("Cant write BUFR message index {}", idxFile.getPath(), ioe);
+      if (!idxFile.delete())
+        log.debug("Cant delete BUFR message index {}", idxFile.getPath());
+    }
+    return index;
+  }
+
+  /**
+   * Scan the file for its messages, without writing an index.
+   *
+   * @param raf the BUFR file
+   * @return index of the file
+   * @throws IOException on read error
+   */
+  public static MessageIndex scan(RandomAccessFile raf) throws IOException {
+    List<Entry> entries = new ArrayList<>();
+    MessageScanner scanner = new MessageScanner(raf);
+    while (scanner.hasNext()) {
+      long headerPos = scanner.getHeaderPos();
+      Message m = scanner.next();
+      if (m == null) continue;
+      entries.add(new Entry(headerPos, m.getStartPos(), m.is.getBufrLength(), m.getTypeHash(), m.getNumberDatasets(),
+          m.containsBufrTable(), getReferenceTime(m)));
+    }
+    return new MessageIndex(entries);
+  }
+
+  private static long getReferenceTime(Message m) {
+    try {
+      return m.getReferenceTime().getMillis();
+    } catch (IllegalArgumentException e) { // bad date fields in the identification section
+      return Long.MIN_VALUE;
+    }
+  }
+
+  @Nullable
+  private static MessageIndex read(File idxFile, long length, long lastModified) {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(idxFile)))) {
+      byte[] magic = new byte[MAGIC.length];
+      in.readFully(magic);
+      if (!java.util.Arrays.equals(magic, MAGIC) || in.readInt() != VERSION) return null;
+      if (in.readLong() != length || in.readLong() != lastModified) return null; // the BUFR file has changed
+
+      int n = in.readInt();
+      List<Entry> entries = new ArrayList<>(n);
+      for (int i = 0; i < n; i++)
+        entries.add(new Entry(in.readLong(), in.readLong(), in.readInt(), in.readInt(), in.readInt(), in.readBoolean(),
+            in.readLong()));
+      return new MessageIndex(entries);
+
+    } catch (IOException ioe) {
+      log.warn("Cant read BUFR message index {}", idxFile.getPath(), ioe);
+      return null;
+    }
+  }
+
+  private void write(File idxFile, long length, long lastModified) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(idxFile)))) {
+      out.write(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(length);
+      out.writeLong(lastModified);
+      out.writeInt(entries.size());
+      for (Entry e : entries) {
+        out.writeLong(e.headerPos);
+        out.writeLong(e.startPos);
+        out.writeInt(e.length);
+        out.writeInt(e.typeHash);
+        out.writeInt(e.nobs);
+        out.writeBoolean(e.isTable);
+        out.writeLong(e.refTime);
+      }
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////
+
+  private final List<Entry> entries;
+
+  private MessageIndex(List<Entry> entries) {
+    this.entries = Collections.unmodifiableList(entries);
+  }
+
+  /** The messages, in file order. */
+  public List<Entry> getEntries() {
+    return entries;
+  }
+
+  /**
+   * Number of obs in the data messages of this type.
+   *
+   * @param typeHash Message.getTypeHash()
+   * @return number of obs
+   */
+  public int getTotalObs(int typeHash) {
+    int count = 0;
+    for (Entry e : entries)
+      if (!e.isTable && e.typeHash == typeHash) count += e.nobs;
+    return count;
+  }
+}
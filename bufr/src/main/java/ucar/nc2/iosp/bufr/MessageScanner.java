@@ -185,6 +185,31 @@ public class MessageScanner {
     }
   }
 
+  /**
+   * Read the message at a known position, eg from a MessageIndex, instead of scanning for it.
+   * Embedded tables are collected as in next(), so messages that contain tables must be read first.
+   *
+   * @param headerPos start of the header before the message, see getHeaderPos()
+   * @param start     start of the message
+   * @return the message, or null if it cant be read
+   * @throws IOException on read error
+   */
+  public Message readMessage(long headerPos, long start) throws IOException {
+    header = new byte[(int) (start - headerPos)];
+    startPos = headerPos;
+    raf.seek(headerPos);
+    raf.readFully(header);
+    return next(); // starts at the file pointer
+  }
+
+  /**
+   * The start of the header of the current message, found by hasNext().
+   * @return start of the header
+   */
+  public long getHeaderPos() {
+    return startPos;
+  }
+
   public TableLookup getTableLookup() throws IOException {
     while (hasNext()) {
       next();
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.ft.point.bufr;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.nc2.constants.FeatureType;
+import ucar.nc2.dataset.NetcdfDataset;
+import ucar.nc2.ft.FeatureDatasetPoint;
+import ucar.nc2.ft.PointFeature;
+import ucar.nc2.ft.PointFeatureCollection;
+import ucar.nc2.ft.StationTimeSeriesFeature;
+import ucar.nc2.ft.StationTimeSeriesFeatureCollection;
+import ucar.nc2.ft.point.StationFeature;
+import ucar.nc2.iosp.bufr.BufrConfig;
+import ucar.nc2.iosp.bufr.BufrIosp2;
+import ucar.nc2.time.CalendarDate;
+import ucar.nc2.time.CalendarDateRange;
+import ucar.unidata.geoloc.LatLonPointImpl;
+import ucar.unidata.geoloc.LatLonRect;
+import ucar.unidata.io.RandomAccessFile;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Formatter;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Test that the message summaries in BufrCdmIndex let a point subset skip messages, and give the same obs.
+ */
+public class TestBufrCdmIndexSubset {
+  private static final int NMESSAGES = 24;
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testSubset() throws IOException {
+    File file = makeFile(i -> 100 + i, i -> 100 * (30 + i));  // one degree of latitude north of the last one
+    BufrCdmIndex index = makeIndex(file);
+    Assert.assertEquals(NMESSAGES, index.nobs);
+    Assert.assertEquals(file.length(), index.bufrLength);
+    Assert.assertEquals(NMESSAGES, index.messages.size());
+    for (int i = 0; i < NMESSAGES; i++) {
+      BufrCdmIndex.MessageSummary m = index.messages.get(i);
+      Assert.assertEquals(1, m.nobs);
+      Assert.assertEquals(hour(i).getMillis(), m.start);
+      Assert.assertEquals(m.start, m.end);
+      Assert.assertEquals(1, m.stationIds.size());
+    }
+
+    try (NetcdfDataset ncd = NetcdfDataset.openDataset(file.getPath())) {
+      FeatureDatasetPoint fd = (FeatureDatasetPoint) new BufrFeatureDatasetFactory().open(FeatureType.STATION, ncd, null, null, new Formatter());
+      Assert.assertNotNull(fd);
+      StationTimeSeriesFeatureCollection stations = (StationTimeSeriesFeatureCollection) fd.getPointFeatureCollectionList().get(0);
+      BufrIosp2 iosp = (BufrIosp2) ncd.getIosp();
+
+      // time subset
+      CalendarDateRange dateRange = CalendarDateRange.of(hour(5), hour(9));
+      Assert.assertEquals(5, index.selectStationMessages(iosp.makeMessageIndex(), file.length(), null, dateRange).size());
+      List<CalendarDate> dates = readDates(stations.flatten(null, dateRange));
+      Assert.assertEquals(5, dates.size());
+      for (int i = 0; i < 5; i++)
+        Assert.assertEquals(hour(i + 5), dates.get(i));
+
+      // space subset
+      LatLonRect bb = new LatLonRect(new LatLonPointImpl(39.5, -124.0), 3.0, 2.0);
+      List<String> names = new ArrayList<>();
+      for (StationFeature s : stations.getStationFeatures(bb))
+        names.add(s.getName());
+      Assert.assertEquals(3, index.selectStationMessages(iosp.makeMessageIndex(), file.length(), names, null).size());
+      dates = readDates(stations.flatten(bb, null));
+      Assert.assertEquals(3, dates.size());
+      for (int i = 0; i < 3; i++)
+        Assert.assertEquals(hour(i + 10), dates.get(i));
+
+      // no subset reads them all
+      Assert.assertEquals(NMESSAGES, readDates(stations.flatten(null, null)).size());
+    }
+
+    // a changed file doesnt use the summaries
+    Files.write(file.toPath(), new byte[10], java.nio.file.StandardOpenOption.APPEND);
+    try (NetcdfDataset ncd = NetcdfDataset.openDataset(file.getPath())) {
+      BufrIosp2 iosp = (BufrIosp2) ncd.getIosp();
+      Assert.assertNull(index.selectStationMessages(iosp.makeMessageIndex(), file.length(), null, CalendarDateRange.of(hour(5), hour(9))));
+    }
+  }
+
+  // the station location is that of its first obs; the others are a little different, and must not be dropped
+  @Test
+  public void testStationLocationVaries() throws IOException {
+    File file = makeFile(i -> 100 + i % 2, i -> 3000 + i);  // two stations, 0.01 degree of latitude apart each hour
+    BufrCdmIndex index = makeIndex(file);
+
+    try (NetcdfDataset ncd = NetcdfDataset.openDataset(file.getPath())) {
+      FeatureDatasetPoint fd = (FeatureDatasetPoint) new BufrFeatureDatasetFactory().open(FeatureType.STATION, ncd, null, null, new Formatter());
+      Assert.assertNotNull(fd);
+      StationTimeSeriesFeatureCollection stations = (StationTimeSeriesFeatureCollection) fd.getPointFeatureCollectionList().get(0);
+      Assert.assertEquals(2, stations.getStationFeatures().size());
+      BufrIosp2 iosp = (BufrIosp2) ncd.getIosp();
+
+      for (StationTimeSeriesFeature station : stations) {
+        Assert.assertEquals(NMESSAGES / 2, index.selectStationMessages(iosp.makeMessageIndex(), file.length(),
+            Collections.singleton(station.getName()), null).size());
+        List<CalendarDate> dates = readDates(station);
+        Assert.assertEquals(station.getName(), NMESSAGES / 2, dates.size());
+        int first = dates.get(0).equals(hour(0)) ? 0 : 1;
+        for (int i = 0; i < dates.size(); i++)
+          Assert.assertEquals(hour(first + 2 * i), dates.get(i));
+      }
+    }
+  }
+
+  // a subset keeps the stations whose first location is in the bounding box, with all their obs wherever they are
+  @Test
+  public void testMovingStation() throws IOException {
+    File file = makeFile(i -> 100, i -> 100 * (30 + i));  // one station, one degree of latitude north each hour
+    BufrCdmIndex index = makeIndex(file);
+
+    try (NetcdfDataset ncd = NetcdfDataset.openDataset(file.getPath())) {
+      FeatureDatasetPoint fd = (FeatureDatasetPoint) new BufrFeatureDatasetFactory().open(FeatureType.STATION, ncd, null, null, new Formatter());
+      Assert.assertNotNull(fd);
+      StationTimeSeriesFeatureCollection stations = (StationTimeSeriesFeatureCollection) fd.getPointFeatureCollectionList().get(0);
+      Assert.assertEquals(1, stations.getStationFeatures().size());
+      String name = stations.getStationFeatures().get(0).getName();
+      BufrIosp2 iosp = (BufrIosp2) ncd.getIosp();
+
+      // only the first obs is in the bounding box, but the station is
+      LatLonRect bb = new LatLonRect(new LatLonPointImpl(29.5, -124.0), 1.0, 2.0);
+      Assert.assertEquals(NMESSAGES, index.selectStationMessages(iosp.makeMessageIndex(), file.length(),
+          Collections.singleton(name), null).size());
+      Assert.assertEquals(0, index.selectStationMessages(iosp.makeMessageIndex(), file.length(),
+          Collections.singleton(name + "x"), null).size());
+
+      List<CalendarDate> dates = readDates(stations.flatten(bb, null));
+      Assert.assertEquals(NMESSAGES, dates.size());
+      for (int i = 0; i < NMESSAGES; i++)
+        Assert.assertEquals(hour(i), dates.get(i));
+
+      CalendarDateRange dateRange = CalendarDateRange.of(hour(5), hour(9));
+      Assert.assertEquals(5, index.selectStationMessages(iosp.makeMessageIndex(), file.length(),
+          Collections.singleton(name), dateRange).size());
+      Assert.assertEquals(5, readDates(stations.flatten(bb, dateRange)).size());
+
+      // later obs are in this one, but the station isnt
+      LatLonRect north = new LatLonRect(new LatLonPointImpl(39.5, -124.0), 3.0, 2.0);
+      Assert.assertEquals(0, readDates(stations.flatten(north, null)).size());
+    }
+  }
+
+  private BufrCdmIndex makeIndex(File file) throws IOException {
+    File idxFile = new File(file.getPath() + BufrCdmIndex.NCX_IDX);
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r")) {
+      Assert.assertTrue(BufrCdmIndex.writeIndex(file.getPath(), BufrConfig.scanEntireFile(raf), idxFile));
+    }
+    return BufrCdmIndex.readIndex(idxFile.getPath());
+  }
+
+  private List<CalendarDate> readDates(PointFeatureCollection pfc) throws IOException {
+    List<CalendarDate> result = new ArrayList<>();
+    for (PointFeature pf : pfc)
+      result.add(pf.getObservationTimeAsCalendarDate());
+    return result;
+  }
+
+  private CalendarDate hour(int i) {
+    return CalendarDate.parseISOformat(null, "2018-03-28T00:00:00Z").add(i, ucar.nc2.time.CalendarPeriod.Field.Hour);
+  }
+
+  // one message per hour, with the given WMO station number and latitude in hundredths of a degree
+  private File makeFile(IntUnaryOperator station, IntUnaryOperator lat) throws IOException {
+    byte[] message = Files.readAllBytes(new File(TestDir.cdmTestDataDir + "ucar/nc2/bufr/IUPT02_KBBY_281400_522246081.bufr.2018032814").toPath());
+    int start = indexOf(message, "BUFR".getBytes("US-ASCII"));
+    int dataPos = start + 8 + length(message, start + 8);  // edition 4, no section 2
+    dataPos += length(message, dataPos) + 4;               // after section 3 and the section 4 header
+
+    File file = tempFolder.newFile("stations.bufr");
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      for (int i = 0; i < NMESSAGES; i++) {
+        byte[] copy = message.clone();
+        setBits(copy, dataPos, 7, 10, station.applyAsInt(i));   // WMO station number
+        setBits(copy, dataPos, 17, 15, 9000 + lat.applyAsInt(i)); // latitude, scale 2 reference -9000
+        setBits(copy, dataPos, 79, 6, 28);              // day
+        setBits(copy, dataPos, 85, 5, i);               // hour
+        out.write(copy);
+      }
+    }
+    return file;
+  }
+
+  private int indexOf(byte[] b, byte[] want) {
+    outer:
+    for (int i = 0; i <= b.length - want.length; i++) {
+      for (int j = 0; j < want.length; j++)
+        if (b[i + j] != want[j]) continue outer;
+      return i;
+    }
+    throw new IllegalStateException();
+  }
+
+  private int length(byte[] b, int pos) {
+    return ((b[pos] & 0xff) << 16) | ((b[pos + 1] & 0xff) << 8) | (b[pos + 2] & 0xff);
+  }
+
+  private void setBits(byte[] b, int pos, int bitOffset, int nbits, int value) {
+    for (int i = 0; i < nbits; i++) {
+      int bit = bitOffset + i;
+      int mask = 0x80 >> (bit % 8);
+      if (((value >> (nbits - 1 - i)) & 1) != 0)
+        b[pos + bit / 8] |= mask;
+      else
+        b[pos + bit / 8] &= ~mask;
+    }
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.ft.point.writer;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.constants.FeatureType;
+import ucar.nc2.ft.FeatureDatasetFactoryManager;
+import ucar.nc2.ft.FeatureDatasetPoint;
+import ucar.nc2.ft.point.TestCFPointDatasets;
+import ucar.nc2.jni.netcdf.Nc4Iosp;
+import ucar.nc2.util.CompareNetcdf2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+
+/**
+ * Point and station files written through the RecordBuffer must be the same as those written a record at a time.
+ */
+@RunWith(Parameterized.class)
+public class TestCFPointWriterRecordBuffer {
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Parameterized.Parameters(name="{0}")
+  public static List<Object[]> getTestParameters() {
+    List<Object[]> result = new ArrayList<>();
+    result.addAll(TestCFPointDatasets.getPointDatasets());
+    result.addAll(TestCFPointDatasets.getStationDatasets());
+    return result;
+  }
+
+  private final String location;
+  private final FeatureType ftype;
+  private final int countExpected;
+
+  public TestCFPointWriterRecordBuffer(String location, FeatureType ftype, int countExpected) {
+    this.location = location;
+    this.ftype = ftype;
+    this.countExpected = countExpected;
+  }
+
+  @Test
+  public void netcdf3() throws IOException {
+    compare(NetcdfFileWriter.Version.netcdf3);
+  }
+
+  @Test
+  public void netcdf4classic() throws IOException {
+    // Ignore this test if NetCDF-4 isn't present.
+    if (!Nc4Iosp.isClibraryPresent()) {
+      return;
+    }
+    compare(NetcdfFileWriter.Version.netcdf4_classic);
+  }
+
+  private void compare(NetcdfFileWriter.Version version) throws IOException {
+    File unbuffered = write(new CFPointWriterConfig(version).setRecordBufferSize(1));
+    for (int recordBufferSize : new int[] {2, 1000}) {  // partial and single flush
+      File buffered = write(new CFPointWriterConfig(version).setRecordBufferSize(recordBufferSize));
+
+      try (NetcdfFile org = NetcdfFile.open(unbuffered.getPath()); NetcdfFile copy = NetcdfFile.open(buffered.getPath())) {
+        Formatter f = new Formatter();
+        boolean ok = CompareNetcdf2.compareFiles(org, copy, f, true, false, false);
+        Assert.assertTrue(location + " recordBufferSize=" + recordBufferSize + "\n" + f, ok);
+      }
+    }
+  }
+
+  private File write(CFPointWriterConfig config) throws IOException {
+    File fileOut = tempFolder.newFile();
+    try (FeatureDatasetPoint fdpoint = (FeatureDatasetPoint) FeatureDatasetFactoryManager.open(ftype, location, null, new Formatter())) {
+      Assert.assertEquals(countExpected, CFPointWriter.writeFeatureCollection(fdpoint, fileOut.getPath(), config));
+    }
+    return fileOut;
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.ft.point.writer;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayChar;
+import ucar.ma2.DataType;
+import ucar.ma2.StructureDataScalar;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.Variable;
+import ucar.nc2.constants.CDM;
+import ucar.nc2.iosp.netcdf3.N3iosp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records with missing members must be filled, not keep the values of the records of an earlier flush.
+ */
+public class TestRecordBuffer {
+  @Rule public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void missingMembersAcrossFlush() throws IOException {
+    File file = tempFolder.newFile();
+    try (NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, file.getPath())) {
+      writer.addUnlimitedDimension("obs");
+      writer.addDimension("report_strlen", 5);
+      Map<String, Variable> varMap = new HashMap<>();
+      varMap.put("temperature", writer.addVariable("temperature", DataType.FLOAT, "obs"));
+      varMap.put("pressure", writer.addVariable("pressure", DataType.DOUBLE, "obs"));
+      varMap.put("report", writer.addVariable("report", DataType.CHAR, "obs report_strlen"));
+      writer.addVariableAttribute(varMap.get("pressure"), new Attribute(CDM.FILL_VALUE, -999.0));
+      writer.create();
+
+      RecordBuffer buffer = new RecordBuffer(writer, varMap, 2);
+      buffer.setStructureData(makeObs(1, 10.0, "METAR"));
+      buffer.endRecord();
+      buffer.setStructureData(makeObs(2, 20.0, "SPECI"));
+      Assert.assertEquals(2, buffer.endRecord());  // flushed
+
+      buffer.setStructureData(makeObs(3, null, null));
+      buffer.endRecord();
+      buffer.setStructureData(makeObs(4, 40.0, null));
+      buffer.endRecord();
+      buffer.setStructureData(makeObs(5, null, "AB"));
+      Assert.assertEquals(5, buffer.endRecord());
+      buffer.flush();
+    }
+
+    try (NetcdfFile ncfile = NetcdfFile.open(file.getPath())) {
+      Array temperature = ncfile.findVariable("temperature").read();
+      Array pressure = ncfile.findVariable("pressure").read();
+      ArrayChar report = (ArrayChar) ncfile.findVariable("report").read();
+      Assert.assertEquals(5, temperature.getSize());
+
+      Assert.assertArrayEquals(new float[] {1, 2, 3, 4, 5}, (float[]) temperature.get1DJavaArray(float.class), 0);
+      Assert.assertArrayEquals(new double[] {10, 20, -999, 40, -999},
+              (double[]) pressure.get1DJavaArray(double.class), 0);
+      Assert.assertEquals("METAR", report.getString(0));
+      Assert.assertEquals("SPECI", report.getString(1));
+      Assert.assertEquals(N3iosp.NC_FILL_STRING, report.getString(2));
+      Assert.assertEquals(N3iosp.NC_FILL_STRING, report.getString(3));
+      Assert.assertEquals("AB", report.getString(4));
+    }
+  }
+
+  private static StructureDataScalar makeObs(float temperature, Double pressure, String report) {
+    StructureDataScalar sdata = new StructureDataScalar("obs");
+    sdata.addMember("temperature", null, null, DataType.FLOAT, temperature);
+    if (pressure != null) sdata.addMember("pressure", null, null, DataType.DOUBLE, pressure);
+    if (report != null) sdata.addMemberString("report", null, null, report, 5);
+    return sdata;
+  }
+}
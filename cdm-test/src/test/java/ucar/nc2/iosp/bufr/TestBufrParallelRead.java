@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.iosp.bufr;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.StructureData;
+import ucar.ma2.StructureDataIterator;
+import ucar.nc2.NCdumpW;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Sequence;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compare reading BUFR obs with parallel decoding and a MessageIndex against the serial read.
+ */
+public class TestBufrParallelRead {
+  private static final int NMESSAGES = 25;
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void reset() {
+    BufrIosp2.shutdown();
+  }
+
+  @Test
+  public void compareWithSerial() throws IOException {
+    // a file of many messages, with a WMO header in front of each one
+    byte[] message = Files.readAllBytes(new File(TestDir.cdmTestDataDir + "ucar/nc2/bufr/IUPT02_KBBY_281400_522246081.bufr.2018032814").toPath());
+    File file = tempFolder.newFile("many.bufr");
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      for (int i = 0; i < NMESSAGES; i++) {
+        out.write(String.format("%03d \r\r\nIUPT02 KBBY 281400\r\r\n", i).getBytes(StandardCharsets.US_ASCII));
+        out.write(message);
+      }
+    }
+
+    List<String> serial = readAll(file.getPath());
+    Assert.assertFalse(new File(file.getPath() + MessageIndex.SUFFIX).exists());
+
+    BufrIosp2.setDecodeThreads(4);
+    List<String> parallel = readAll(file.getPath());
+    File idxFile = new File(file.getPath() + MessageIndex.SUFFIX);
+    Assert.assertTrue(idxFile.exists());
+    Assert.assertEquals(serial, parallel);
+
+    // the index is read the second time
+    long modified = idxFile.lastModified();
+    Assert.assertEquals(serial, readAll(file.getPath()));
+    Assert.assertEquals(modified, idxFile.lastModified());
+
+    try (ucar.unidata.io.RandomAccessFile raf = new ucar.unidata.io.RandomAccessFile(file.getPath(), "r")) {
+      MessageIndex index = MessageIndex.readOrCreate(raf);
+      MessageIndex scanned = MessageIndex.scan(raf);
+      Assert.assertEquals(NMESSAGES, index.getEntries().size());
+      for (int i = 0; i < NMESSAGES; i++) {
+        MessageIndex.Entry want = scanned.getEntries().get(i);
+        MessageIndex.Entry got = index.getEntries().get(i);
+        Assert.assertEquals(want.headerPos, got.headerPos);
+        Assert.assertEquals(want.startPos, got.startPos);
+        Assert.assertEquals(want.length, got.length);
+        Assert.assertTrue(got.startPos > got.headerPos);
+        Assert.assertEquals(want.typeHash, got.typeHash);
+        Assert.assertEquals(want.refTime, got.refTime);
+      }
+      Assert.assertEquals(serial.size(), index.getTotalObs(index.getEntries().get(0).typeHash));
+    }
+  }
+
+  private List<String> readAll(String filename) throws IOException {
+    List<String> result = new ArrayList<>();
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      Sequence obs = (Sequence) ncfile.findVariable(BufrIosp2.obsRecord);
+      Assert.assertNotNull(obs);
+      try (StructureDataIterator iter = obs.getStructureIterator()) {
+        while (iter.hasNext()) {
+          StructureData sdata = iter.next();
+          StringWriter sw = new StringWriter();
+          NCdumpW.printStructureData(new PrintWriter(sw), sdata);
+          result.add(sw.toString());
+        }
+      }
+    }
+    Assert.assertEquals(0, result.size() % NMESSAGES);
+    return result;
+  }
+}
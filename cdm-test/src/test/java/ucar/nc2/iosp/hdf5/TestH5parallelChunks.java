@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp.hdf5;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import ucar.ma2.Array;
+import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.unidata.util.test.category.NeedsCdmUnitTest;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parallel chunk reads must return exactly what the serial read returns.
+ */
+@Category(NeedsCdmUnitTest.class)
+public class TestH5parallelChunks {
+
+  @After
+  public void cleanup() {
+    H5iosp.setChunkReadThreads(0, 0);
+  }
+
+  @Test
+  public void testDeflate() throws IOException, InvalidRangeException {
+    compare(TestH5.testDir + "msg/MSG1_8bit_HRV.H5");
+  }
+
+  @Test
+  public void testFilteredInt() throws IOException, InvalidRangeException {
+    compare(TestH5.testDir + "support/zip.h5");
+  }
+
+  private void compare(String filename) throws IOException, InvalidRangeException {
+    Map<String, Array> serial = new HashMap<>();
+    Map<String, Array> serialSubset = new HashMap<>();
+
+    H5iosp.setChunkReadThreads(0, 0);
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      for (Variable v : ncfile.getVariables()) {
+        if (!v.getDataType().isNumeric()) continue;
+        serial.put(v.getFullName(), v.read());
+        Section subset = makeSubset(v);
+        if (subset != null) serialSubset.put(v.getFullName(), v.read(subset));
+      }
+    }
+
+    H5iosp.setChunkReadThreads(4, 3);
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      for (Variable v : ncfile.getVariables()) {
+        if (!v.getDataType().isNumeric()) continue;
+        assertSame(v.getFullName(), serial.get(v.getFullName()), v.read());
+        Section subset = makeSubset(v);
+        if (subset != null) assertSame(v.getFullName() + subset, serialSubset.get(v.getFullName()), v.read(subset));
+      }
+    }
+  }
+
+  // every other element along each dimension
+  private Section makeSubset(Variable v) throws InvalidRangeException {
+    if (v.getRank() == 0 || v.getSize() < 2) return null;
+    Section subset = new Section();
+    for (int len : v.getShape())
+      subset.appendRange(0, Math.max(len - 1, 0), 2);
+    return subset;
+  }
+
+  private void assertSame(String name, Array expected, Array got) {
+    Assert.assertNotNull(name, expected);
+    Assert.assertArrayEquals(name, expected.getShape(), got.getShape());
+    IndexIterator iter1 = expected.getIndexIterator();
+    IndexIterator iter2 = got.getIndexIterator();
+    while (iter1.hasNext())
+      Assert.assertEquals(name, iter1.getObjectNext(), iter2.getObjectNext());
+  }
+}
@@ -5,15 +5,29 @@
 package ucar.nc2;
 
 import ucar.ma2.*;
+import ucar.nc2.dataset.NetcdfDataset;
+import ucar.nc2.iosp.netcdf3.N3raf;
 import ucar.nc2.util.CancelTask;
 import ucar.nc2.util.CancelTaskImpl;
 import ucar.nc2.write.Nc4Chunking;
+import ucar.nc2.write.Nc4ChunkingDefault;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Utility class for copying a NetcdfFile object, or parts of one, to a netcdf-3 or netcdf-4 disk file.
@@ -52,6 +66,9 @@ public class FileWriter2 {
   private final NetcdfFile fileIn;
   private final NetcdfFileWriter writer;
   private final NetcdfFileWriter.Version version;
+  private final Nc4Chunking chunker;  // netcdf4 only, else null
+  private int nthreads = 1;
+  private long maxPieceSize = 8 * 1000 * 1000; // 8 Mbytes, for each piece read ahead by setNumThreads()
 
   private final Map<Variable, Variable> varMap = new HashMap<>(100);  // oldVar, newVar
   private final List<Variable> varList = new ArrayList<>(100);        // old Vars
@@ -70,6 +87,8 @@ public class FileWriter2 {
     this.fileIn = fileIn;
     this.writer = NetcdfFileWriter.createNew(version, fileOutName, chunker);
     this.version = version;
+    // Nc4Iosp uses the default chunker if its null
+    this.chunker = !version.isNetdf4format() ? null : (chunker != null) ? chunker : new Nc4ChunkingDefault();
   }
 
   public enum N3StructureStrategy {flatten, exclude}
@@ -83,6 +102,27 @@ public class FileWriter2 {
     return writer;
   }
 
+  /**
+   * Read the data of the non-record variables on a pool of nthreads threads, while the calling thread writes it.
+   * The data is read in pieces: whole chunks of the output variable when it is chunked (netcdf4), otherwise
+   * contiguous slabs. A bounded number of pieces are read ahead, and they are written in file order, so the output
+   * file is the same as with one thread. When the output is chunked, the netCDF-C library gets each chunk in one
+   * write, and so compresses it once.
+   * <p>
+   * Only local netCDF-3 files opened read-only are read concurrently (see N3iosp.isReadPositional()). The reads of other
+   * files are done one at a time, but still overlap with the writes.
+   *
+   * @param nthreads number of reading threads; 1 (the default) reads and writes one variable at a time on the calling thread.
+   */
+  public void setNumThreads(int nthreads) {
+    this.nthreads = Math.max(1, nthreads);
+  }
+
+  // testing
+  void setMaxPieceSize(long maxPieceSize) {
+    this.maxPieceSize = maxPieceSize;
+  }
+
   /////////////////////////////////////////////////////////////////////////////////////////////
   // might be better to push these next up into NetcdfCFWriter, but we want to use copyVarData
 
@@ -99,6 +139,7 @@ public class FileWriter2 {
     this.fileIn = null;
     this.writer = fileWriter;
     this.version = fileWriter.getVersion();
+    this.chunker = null;
   }
 
   /**
@@ -344,29 +385,39 @@ public class FileWriter2 {
     boolean useRecordDimension = (recordVar != null);
 
     // write non-record data
-    double total = 0;
-    int countVars = 0;
+    List<Variable> nonRecordVars = new ArrayList<>(oldVars.size());
     for (Variable oldVar : oldVars) {
       if (useRecordDimension && oldVar.isUnlimited())
         continue; // skip record variables
       if (oldVar == recordVar)
         continue;
+      nonRecordVars.add(oldVar);
+    }
 
-      if (debug)
-        System.out.println("write var= " + oldVar.getShortName() + " size = " + oldVar.getSize() + " type=" + oldVar.getDataType());
-      if (cancel != null)
-        cancel.setProgress("writing " + oldVar.getShortName(), countVars++);
+    double total = 0;
+    int countVars = 0;
+    if (nthreads > 1) {
+      total = copyPipelined(nonRecordVars, cancel);
+      if (cancel != null && cancel.isCancel()) return total;
 
-      long size = oldVar.getSize() * oldVar.getElementSize();
-      total += size;
+    } else {
+      for (Variable oldVar : nonRecordVars) {
+        if (debug)
+          System.out.println("write var= " + oldVar.getShortName() + " size = " + oldVar.getSize() + " type=" + oldVar.getDataType());
+        if (cancel != null)
+          cancel.setProgress("writing " + oldVar.getShortName(), countVars++);
 
-      if (size <= maxSize) {
-        copyAll(oldVar, varMap.get(oldVar));
-      } else {
-        copySome(oldVar, varMap.get(oldVar), maxSize, cancel);
-      }
+        long size = oldVar.getSize() * oldVar.getElementSize();
+        total += size;
 
-      if (cancel != null && cancel.isCancel()) return total;
+        if (size <= maxSize) {
+          copyAll(oldVar, varMap.get(oldVar));
+        } else {
+          copySome(oldVar, varMap.get(oldVar), maxSize, cancel);
+        }
+
+        if (cancel != null && cancel.isCancel()) return total;
+      }
     }
 
     // write record data
@@ -469,8 +520,13 @@ public class FileWriter2 {
     }
   }
 
+  // the shape of oldData, plus the string length of newVar
   private Array convertToChar(Variable newVar, Array oldData) {
-    ArrayChar newData = (ArrayChar) Array.factory(DataType.CHAR, newVar.getShape());
+    int[] oldShape = oldData.getShape();
+    int[] shape = new int[oldShape.length + 1];
+    System.arraycopy(oldShape, 0, shape, 0, oldShape.length);
+    shape[oldShape.length] = newVar.getShape(newVar.getRank() - 1);
+    ArrayChar newData = (ArrayChar) Array.factory(DataType.CHAR, shape);
     Index ima = newData.getIndex();
     IndexIterator ii = oldData.getIndexIterator();
     while (ii.hasNext()) {
@@ -483,6 +539,224 @@ public class FileWriter2 {
     return newData;
   }
 
+  ////////////////////////////////////////////////////////////////////////////////////////////////
+  // pipelined copy, see setNumThreads()
+
+  // a section of a variable to copy, or the whole variable when section is null
+  private static class Piece {
+    final Variable oldVar, newVar;
+    final Section section;
+    final long size; // bytes
+
+    Piece(Variable oldVar, Variable newVar, Section section) {
+      this.oldVar = oldVar;
+      this.newVar = newVar;
+      this.section = section;
+      this.size = (section == null ? oldVar.getSize() : section.computeSize()) * oldVar.getElementSize();
+    }
+  }
+
+  private double copyPipelined(List<Variable> oldVars, CancelTask cancel) throws IOException {
+    List<Piece> pieces = new ArrayList<>();
+    long totalSize = 0;
+    for (Variable oldVar : oldVars) {
+      Variable newVar = varMap.get(oldVar);
+      if (oldVar instanceof Structure || oldVar.isVariableLength()) {
+        pieces.add(new Piece(oldVar, newVar, null)); // copied by the writing thread
+      } else {
+        for (Section section : makePieces(oldVar, newVar))
+          pieces.add(new Piece(oldVar, newVar, section));
+      }
+      totalSize += oldVar.getSize() * oldVar.getElementSize();
+    }
+    if (debug) System.out.printf("copyPipelined %d variables in %d pieces with %d threads%n", oldVars.size(), pieces.size(), nthreads);
+
+    // pieces are read under readLock, whole variables under the write lock, which may not use positional reads
+    ReadWriteLock lock = new ReentrantReadWriteLock();
+    Lock readLock = canReadConcurrently(fileIn) ? lock.readLock() : lock.writeLock();
+    AtomicInteger count = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(nthreads, r -> {
+      Thread t = new Thread(r, "FileWriter2-read-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+
+    int readAhead = 2 * nthreads;  // bounds the memory used to readAhead * maxPieceSize, or a chunk if larger
+    List<Future<Array>> futures = new ArrayList<>(pieces.size());
+    long done = 0;
+    int lastPercent = -1;
+    try {
+      for (int i = 0; i < pieces.size(); i++) {
+        while (futures.size() < pieces.size() && futures.size() <= i + readAhead) {
+          Piece p = pieces.get(futures.size());
+          futures.add(p.section == null ? null : pool.submit(() -> readPiece(p, readLock)));
+        }
+
+        Piece p = pieces.get(i);
+        if (p.section == null) {
+          lock.writeLock().lock();
+          try {
+            copyWhole(p);
+          } finally {
+            lock.writeLock().unlock();
+          }
+        } else {
+          Array data = getPiece(futures.get(i), p);
+          futures.set(i, null);  // let it be garbage collected
+          if (data.getSize() > 0) {  // zero when record dimension = 0
+            try {
+              int[] origin = new int[p.newVar.getRank()];  // netcdf3 Strings have an extra char dimension
+              System.arraycopy(p.section.getOrigin(), 0, origin, 0, p.section.getRank());
+              writer.write(p.newVar, origin, data);
+            } catch (InvalidRangeException e) {
+              throw new IOException(e.getMessage() + " for Variable " + p.oldVar.getFullName(), e);
+            }
+          }
+          if (debugWrite) System.out.println(" write " + p.oldVar.getShortName() + p.section);
+        }
+
+        done += p.size;
+        if (cancel != null) {
+          int percent = (totalSize == 0) ? 100 : (int) (100 * done / totalSize);
+          if (percent != lastPercent)
+            cancel.setProgress("writing " + p.oldVar.getShortName(), percent);
+          lastPercent = percent;
+          if (cancel.isCancel()) break;
+        }
+      }
+
+    } finally {
+      // dont interrupt the readers: an interrupted FileChannel read closes the file
+      for (Future<Array> f : futures)
+        if (f != null) f.cancel(false);
+      pool.shutdown();
+      awaitTermination(pool);
+    }
+    return done;
+  }
+
+  // wait for the pieces being read, so no reader is left using fileIn after we return
+  private static void awaitTermination(ExecutorService pool) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        if (pool.awaitTermination(1, TimeUnit.MINUTES)) break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+  }
+
+  private void copyWhole(Piece p) throws IOException {
+    if (p.size <= maxSize)
+      copyAll(p.oldVar, p.newVar);
+    else
+      copySome(p.oldVar, p.newVar, maxSize, null);
+  }
+
+  private Array readPiece(Piece p, Lock readLock) throws IOException, InvalidRangeException {
+    Array data;
+    readLock.lock();
+    try {
+      data = p.oldVar.read(p.section);
+    } finally {
+      readLock.unlock();
+    }
+    if (!version.isNetdf4format() && p.oldVar.getDataType() == DataType.STRING)
+      data = convertToChar(p.newVar, data);
+    return data;
+  }
+
+  private Array getPiece(Future<Array> future, Piece p) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted reading " + p.oldVar.getFullName());
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      throw new IOException(cause.getMessage() + " for Variable " + p.oldVar.getFullName(), cause);
+    }
+  }
+
+  // the sections of oldVar to copy: whole chunks of newVar if its chunked, else contiguous slabs
+  private List<Section> makePieces(Variable oldVar, Variable newVar) {
+    int[] shape = oldVar.getShape();
+    int[] chunkShape = new int[shape.length];
+    Arrays.fill(chunkShape, 1);  // contiguous
+
+    if (chunker != null && newVar.getRank() > 0 && chunker.isChunked(newVar)) {
+      long[] chunking = chunker.computeChunking(newVar);
+      for (int i = 0; i < shape.length && i < chunking.length; i++)
+        chunkShape[i] = (int) Math.max(1, chunking[i]);
+    }
+    return makeChunkAlignedSections(shape, chunkShape, Math.max(1, maxPieceSize / oldVar.getElementSize()));
+  }
+
+  /**
+   * Tile an array with sections made of whole chunks, except at the upper edges of the array. Starting from one chunk,
+   * the sections are grown along the rightmost dimensions first, while they have no more than maxElems elements.
+   * An outer dimension is only grown when the inner ones span the array, so the sections are as contiguous as possible;
+   * with chunks of all 1s, each section is contiguous.
+   *
+   * @param shape      shape of the array
+   * @param chunkShape shape of a chunk, same rank as shape
+   * @param maxElems   maximum number of elements in a section, unless one chunk is larger
+   * @return the sections in index order of their origins
+   */
+  public static List<Section> makeChunkAlignedSections(int[] shape, int[] chunkShape, long maxElems) {
+    int rank = shape.length;
+    List<Section> result = new ArrayList<>();
+    for (int len : shape)
+      if (len == 0) return result;  // no data
+
+    int[] pieceShape = new int[rank];
+    for (int i = 0; i < rank; i++)
+      pieceShape[i] = Math.min(shape[i], chunkShape[i]);
+
+    for (int i = rank - 1; i >= 0; i--) {
+      long others = Index.computeSize(pieceShape) / pieceShape[i];
+      long nchunks = maxElems / (others * chunkShape[i]);
+      if (nchunks <= 1) break;
+      pieceShape[i] = (int) Math.min(shape[i], nchunks * chunkShape[i]);
+      if (pieceShape[i] < shape[i]) break;
+    }
+
+    int[] origin = new int[rank];
+    while (true) {
+      int[] sectionShape = new int[rank];
+      for (int i = 0; i < rank; i++)
+        sectionShape[i] = Math.min(pieceShape[i], shape[i] - origin[i]);
+      try {
+        result.add(new Section(origin.clone(), sectionShape));
+      } catch (InvalidRangeException e) {
+        throw new IllegalStateException(e);  // cant happen
+      }
+
+      // next origin, rightmost dimension varies fastest
+      int i = rank - 1;
+      for (; i >= 0; i--) {
+        origin[i] += pieceShape[i];
+        if (origin[i] < shape[i]) break;
+        origin[i] = 0;
+      }
+      if (i < 0) return result;
+    }
+  }
+
+  // local netCDF-3 files opened read-only use positional reads, which many threads can do at once
+  private static boolean canReadConcurrently(NetcdfFile ncfile) {
+    while (ncfile instanceof NetcdfDataset) {
+      NetcdfDataset ds = (NetcdfDataset) ncfile;
+      if (ds.getAggregation() != null) return false;
+      ncfile = ds.getReferencedFile();
+    }
+    return (ncfile != null) && (ncfile.getIosp() instanceof N3raf) && ((N3raf) ncfile.getIosp()).isReadPositional();
+  }
+
   /* private boolean hasRecordStructure(NetcdfFile file) {
     Variable v = file.findVariable("record");
     return (v != null) && (v.getDataType() == DataType.STRUCTURE);
@@ -30,6 +30,16 @@ public class SequenceDS extends StructureDS {
     return new StructureDataConverter(this, orgSeq.getStructureIterator(bufferSize));
   }
 
+  /**
+   * Enhance the StructureData of an iterator over the original sequence, eg one from the IOSP that reads only some records.
+   *
+   * @param orgIter iterator over the StructureData of the original sequence
+   * @return iterator over the enhanced StructureData
+   */
+  public StructureDataIterator getStructureIterator(StructureDataIterator orgIter) {
+    return new StructureDataConverter(this, orgIter);
+  }
+
   private static class StructureDataConverter implements StructureDataIterator {
     private StructureDataIterator orgIter;
     private SequenceDS newStruct;
@@ -10,14 +10,15 @@ import ucar.nc2.dataset.CoordinateAxis;
 import ucar.nc2.dt.GridCoordSystem;
 import ucar.ma2.ArrayDouble;
 import ucar.ma2.MAMath;
+import ucar.unidata.geoloc.LatLonCellIndex;
 
 import java.io.IOException;
 
 /**
  * 2D Coordinate System has lat(x,y) and lon(x,y).
  * This class implements finding the index (i,j) from (lat, lon) coord.
- * This is for "one-off" computation, not a systematic lookup table for all points in a pixel array.
- * Hueristic search of the 2D space for the cell that contains the point.
+ * The cells are found with a LatLonCellIndex, made the first time it is needed.
+ * findCoordElementNoForce() is the original hueristic search of the 2D space for the cell that contains the point.
  *
  * @author caron
  * @since Jul 10, 2009
@@ -33,6 +34,7 @@ public class GridCoordinate2D {
   private final int nrows, ncols;
   private ArrayDouble.D2 latEdge, lonEdge;
   private MAMath.MinMax latMinMax, lonMinMax;
+  private LatLonCellIndex cellIndex;
 
   GridCoordinate2D(CoordinateAxis2D latCoord, CoordinateAxis2D lonCoord) {
     this.latCoord = latCoord;
@@ -46,8 +48,8 @@ public class GridCoordinate2D {
     ncols = shape[1];
   }
 
-  private void findBounds() {
-    if (lonMinMax != null) return;
+  private synchronized void findBounds() {
+    if (cellIndex != null) return;
 
     lonEdge = lonCoord.getEdges();
     latEdge = latCoord.getEdges();
@@ -55,6 +57,7 @@ public class GridCoordinate2D {
     // assume missing values have been converted to NaNs
     latMinMax = MAMath.getMinMax(latEdge);
     lonMinMax = MAMath.getMinMax(lonEdge);
+    cellIndex = new LatLonCellIndex(nrows, ncols, (double[]) latEdge.getStorage(), (double[]) lonEdge.getStorage());
 
     if (debug)
       System.out.printf("Bounds (%d %d): lat= (%f,%f) lon = (%f,%f) %n", nrows, ncols, latMinMax.min, latMinMax.max, lonMinMax.min, lonMinMax.max);
@@ -86,9 +89,30 @@ public class GridCoordinate2D {
     return false;
   }
 
+  /**
+   * Find the cell that contains the given lat,lon point.
+   * @param wantLat   lat of point
+   * @param wantLon   lon of point
+   * @param rectIndex return (row,col) index, or the cell with the closest center here. may not be null
+   *
+   * @return false if not in the grid.
+   */
   public boolean findCoordElement(double wantLat, double wantLon, int[] rectIndex) {
-    return findCoordElementNoForce(wantLat, wantLon,rectIndex);
-  }  
+    findBounds();
+    if (cellIndex.findCell(wantLat, wantLon, rectIndex))
+      return true;
+    cellIndex.findNearestCell(wantLat, wantLon, rectIndex); // best guess
+    return false;
+  }
+
+  /**
+   * The spatial index of the cells, for looking up many points.
+   * @return index of the cells, row = y, col = x
+   */
+  public LatLonCellIndex getCellIndex() {
+    findBounds();
+    return cellIndex;
+  }
 
 
   /**
@@ -1,18 +1,42 @@
 package ucar.nc2.ft.point;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 import com.google.common.base.Preconditions;
+import ucar.ma2.ArrayStructureBB;
+import ucar.ma2.DataType;
+import ucar.ma2.StructureMembers;
 import ucar.nc2.constants.FeatureType;
+import ucar.nc2.ft.DsgFeatureCollection;
 import ucar.nc2.ft.FeatureDatasetFactoryManager;
 import ucar.nc2.ft.FeatureDatasetPoint;
 import ucar.nc2.ft.NoFactoryFoundException;
 import ucar.nc2.ft.PointFeatureIterator;
+import ucar.nc2.ft.point.remote.PointStream;
+import ucar.nc2.ft.point.remote.PointStreamProto;
+import ucar.nc2.stream.NcStream;
 import ucar.nc2.units.DateUnit;
 
 /**
+ * Sorts StationPointFeatures with a Comparator; features that compare equal keep the order they were added in.
+ * <p/>
+ * By default all features are kept in memory. If {@link #setMaxInMemBytes} is set, then whenever the (estimated)
+ * size of the features in memory reaches it, they are written in sorted order to a temporary "run" file, encoded
+ * with PointStreamProto. The iterator then merges the runs and the features still in memory, reading each run
+ * sequentially. If there are more runs than {@link #setMaxOpenRuns}, groups of them are first merged into longer
+ * runs, so that no more than that many files are open at once. Call {@link #close} to delete the run files.
  *
  * @author cwardgar
  * @since 2014/08/21
@@ -20,36 +44,88 @@ import ucar.nc2.units.DateUnit;
 // This class ought to be a PointFeatureCollection, by extending PointCollectionImpl.
 // However, we do not have the timeUnit and altUnits that the constructor requires. Does it really need
 // that info? Can't it calculate it from one of its features? That interface may need to be re-thought.
-public class SortingStationPointFeatureCache {
+public class SortingStationPointFeatureCache implements Closeable {
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(SortingStationPointFeatureCache.class);
+
+    public static final int DEFAULT_MAX_OPEN_RUNS = 64;
+
     public static final Comparator<StationPointFeature> stationNameComparator = (pointFeat1, pointFeat2) ->
             pointFeat1.getStation().getName().compareTo(pointFeat2.getStation().getName());
 
+    private final Comparator<StationPointFeature> comp;
     private final SortedMap<StationPointFeature, List<StationPointFeature>> inMemCache;
+    private int inMemCount;
 
     private volatile StationFeatureCopyFactory stationFeatCopyFactory;
 
+    // spilling to disk
+    private long maxInMemBytes = Long.MAX_VALUE;
+    private int maxOpenRuns = DEFAULT_MAX_OPEN_RUNS;
+    private File tempDir;
+    private final List<File> runFiles = new ArrayList<>();
+    private boolean canSpill = true;
+    private StructureMembers runMembers;  // the packing of the data in the run files
+    // The run files refer to these by index. Copies share their StationFeature, and usually their collection.
+    private final List<DsgFeatureCollection> dsgs = new ArrayList<>();
+    private final Map<DsgFeatureCollection, Integer> dsgIndex = new IdentityHashMap<>();
+    private final List<StationFeature> stations = new ArrayList<>();
+    private final Map<StationFeature, Integer> stationIndex = new IdentityHashMap<>();
+
     public SortingStationPointFeatureCache() {
         this(stationNameComparator);
     }
 
     // We're going to init stationFeatCopyFactory using the first feat that's add()ed.
     public SortingStationPointFeatureCache(Comparator<StationPointFeature> comp) {
-        this.inMemCache = new TreeMap<>(Preconditions.checkNotNull(comp, "comp == null"));
+        this.comp = Preconditions.checkNotNull(comp, "comp == null");
+        this.inMemCache = new TreeMap<>(comp);
         // stationFeatCopyFactory remains null.
     }
 
     public SortingStationPointFeatureCache(
             Comparator<StationPointFeature> comp, StationPointFeature proto, DateUnit dateUnit) throws IOException {
-        this.inMemCache = new TreeMap<>(Preconditions.checkNotNull(comp, "comp == null"));
+        this.comp = Preconditions.checkNotNull(comp, "comp == null");
+        this.inMemCache = new TreeMap<>(comp);
 
         if (proto != null && dateUnit != null) {
             this.stationFeatCopyFactory = new StationFeatureCopyFactory(proto);
         }
     }
 
+    /**
+     * Set the approximate number of bytes of features to keep in memory. When that is reached, the features in memory
+     * are written to a run file in tempDir. The default is Long.MAX_VALUE, ie never write to disk.
+     *
+     * @param maxInMemBytes  approximate maximum bytes, as estimated by {@link StationFeatureCopyFactory#getSizeInBytes}.
+     */
+    public void setMaxInMemBytes(long maxInMemBytes) {
+        Preconditions.checkArgument(maxInMemBytes > 0, "maxInMemBytes must be > 0");
+        this.maxInMemBytes = maxInMemBytes;
+    }
+
+    /**
+     * Set the most run files that are merged at once. More runs than that are merged in several passes.
+     *
+     * @param maxOpenRuns  the most run files open at once, at least 2. The default is {@link #DEFAULT_MAX_OPEN_RUNS}.
+     */
+    public void setMaxOpenRuns(int maxOpenRuns) {
+        Preconditions.checkArgument(maxOpenRuns >= 2, "maxOpenRuns must be >= 2");
+        this.maxOpenRuns = maxOpenRuns;
+    }
+
+    /**
+     * Set the directory for the run files.
+     *
+     * @param tempDir  directory, or null to use the system default temporary directory.
+     */
+    public void setTempDir(File tempDir) {
+        this.tempDir = tempDir;
+    }
+
     public void add(StationPointFeature feat) throws IOException {
         Preconditions.checkNotNull(feat, "feat == null");
-        StationPointFeature featCopy = getStationFeatureCopyFactory(feat).deepCopy(feat);
+        StationFeatureCopyFactory copyFactory = getStationFeatureCopyFactory(feat);
+        StationPointFeature featCopy = copyFactory.deepCopy(feat);
 
         List<StationPointFeature> bucket = inMemCache.get(featCopy);
         if (bucket == null) {
@@ -58,6 +134,120 @@ public class SortingStationPointFeatureCache {
         }
 
         bucket.add(featCopy);
+        inMemCount++;
+
+        if (canSpill && (long) inMemCount * copyFactory.getSizeInBytes() >= maxInMemBytes) {
+            spill(featCopy);
+        }
+    }
+
+    // Write the features in memory, in sorted order, to a new run file.
+    private void spill(StationPointFeature proto) throws IOException {
+        if (runMembers == null) {
+            StructureMembers sm = new StructureMembers(proto.getFeatureData().getStructureMembers());
+            for (StructureMembers.Member m : sm.getMembers()) {
+                // PointStreamProto only has fixed length data and scalar Strings
+                if (m.getDataType() == DataType.STRUCTURE || m.getDataType() == DataType.SEQUENCE ||
+                        m.getDataType() == DataType.OPAQUE || (m.getDataType() == DataType.STRING && !m.isScalar())) {
+                    logger.warn("Cant write member {} of type {} to a run file; keeping all features in memory",
+                            m.getName(), m.getDataType());
+                    canSpill = false;
+                    return;
+                }
+            }
+            ArrayStructureBB.setOffsets(sm);
+            runMembers = sm;
+        }
+
+        File runFile = createRunFile();
+        runFiles.add(runFile);
+
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(runFile))) {
+            for (List<StationPointFeature> bucket : inMemCache.values()) {
+                for (StationPointFeature feat : bucket) {
+                    writeFeature(out, feat);
+                }
+            }
+        }
+
+        logger.debug("wrote {} features to {}", inMemCount, runFile);
+        inMemCache.clear();
+        inMemCount = 0;
+    }
+
+    private File createRunFile() throws IOException {
+        File runFile = File.createTempFile("sortingCache", ".run", tempDir);
+        runFile.deleteOnExit();
+        return runFile;
+    }
+
+    private void writeFeature(OutputStream out, StationPointFeature feat) throws IOException {
+        NcStream.writeVInt(out, indexOf(feat.getFeatureCollection(), dsgs, dsgIndex));
+        NcStream.writeVInt(out, indexOf(feat.getStation(), stations, stationIndex));
+        byte[] data = PointStream.encodePointFeature(feat).toByteArray();
+        NcStream.writeVInt(out, data.length);
+        out.write(data);
+    }
+
+    // Merge groups of consecutive run files into one until there are at most maxOpenRuns. The merged runs keep the
+    // place of their group, so features that compare equal still come out in the order they were added.
+    private void mergeRuns() throws IOException {
+        while (runFiles.size() > maxOpenRuns) {
+            List<File> before = new ArrayList<>(runFiles);
+            runFiles.clear();
+            int start = 0;
+            try {
+                for (; start < before.size(); start += maxOpenRuns) {
+                    List<File> group = before.subList(start, Math.min(start + maxOpenRuns, before.size()));
+                    if (group.size() == 1) {
+                        runFiles.add(group.get(0));
+                    } else {
+                        runFiles.add(mergeGroup(group));
+                        deleteAll(group);
+                    }
+                }
+            } catch (IOException e) {
+                runFiles.addAll(before.subList(start, before.size()));  // close() deletes them
+                throw e;
+            }
+        }
+    }
+
+    private File mergeGroup(List<File> group) throws IOException {
+        File merged = createRunFile();
+        MergeIter mergeIter = new MergeIter(group, false);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(merged))) {
+            while (mergeIter.hasNext()) {
+                writeFeature(out, mergeIter.next());
+            }
+        } catch (IOException | UncheckedIOException e) {
+            if (!merged.delete()) {
+                logger.warn("failed to delete {}", merged);
+            }
+            throw (e instanceof UncheckedIOException) ? ((UncheckedIOException) e).getCause() : (IOException) e;
+        } finally {
+            mergeIter.close();
+        }
+        logger.debug("merged {} runs into {}", group.size(), merged);
+        return merged;
+    }
+
+    private static void deleteAll(List<File> files) {
+        for (File file : files) {
+            if (!file.delete()) {
+                logger.warn("failed to delete {}", file);
+            }
+        }
+    }
+
+    private static <T> int indexOf(T obj, List<T> list, Map<T, Integer> index) {
+        Integer result = index.get(obj);
+        if (result == null) {
+            result = list.size();
+            list.add(obj);
+            index.put(obj, result);
+        }
+        return result;
     }
 
     public void addAll(File datasetFile) throws NoFactoryFoundException, IOException {
@@ -98,7 +288,30 @@ public class SortingStationPointFeatureCache {
 
     // TODO: Once this method is called, prohibit any further additions to cache.
     public PointFeatureIterator getPointFeatureIterator() throws IOException {
-        return new PointIteratorAdapter(new Iter());
+        if (runFiles.isEmpty()) {
+            return new PointIteratorAdapter(new Iter());
+        }
+
+        mergeRuns();
+        MergeIter mergeIter = new MergeIter(runFiles, true);
+        return new PointIteratorAdapter(mergeIter) {
+            @Override
+            public void close() {
+                super.close();
+                mergeIter.close();
+            }
+        };
+    }
+
+    /**
+     * Deletes the run files, if any. The cache is empty afterwards.
+     */
+    @Override
+    public void close() {
+        deleteAll(runFiles);
+        runFiles.clear();
+        inMemCache.clear();
+        inMemCount = 0;
     }
 
     private class Iter implements Iterator<StationPointFeature> {
@@ -137,4 +350,146 @@ public class SortingStationPointFeatureCache {
             throw new UnsupportedOperationException("Operation not supported by this iterator.");
         }
     }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // merge the run files and the features in memory
+
+    private abstract static class Run {
+        final int order;  // older runs come first among features that compare equal
+        StationPointFeature head;
+
+        Run(int order) {
+            this.order = order;
+        }
+
+        abstract void advance() throws IOException;  // sets head to null at the end
+
+        void close() {}
+    }
+
+    private class FileRun extends Run {
+        private final InputStream in;
+
+        FileRun(int order, File runFile) throws IOException {
+            super(order);
+            this.in = new BufferedInputStream(new FileInputStream(runFile));
+        }
+
+        @Override
+        void advance() throws IOException {
+            int dsg = NcStream.readVInt(in);
+            if (dsg < 0) {
+                head = null;
+                return;
+            }
+            int station = NcStream.readVInt(in);
+            byte[] data = new byte[NcStream.readVInt(in)];
+            if (NcStream.readFully(in, data) != data.length) {
+                throw new EOFException("truncated run file");
+            }
+
+            PointStreamProto.PointFeature pfp = PointStreamProto.PointFeature.parseFrom(data);
+            ByteBuffer bb = ByteBuffer.wrap(pfp.getData().toByteArray());
+            ArrayStructureBB asbb = new ArrayStructureBB(runMembers, new int[] {1}, bb, 0);
+            for (String s : pfp.getSdataList()) {
+                asbb.addObjectToHeap(s);
+            }
+            head = stationFeatCopyFactory.remake(stations.get(station), dsgs.get(dsg),
+                    pfp.getLoc().getTime(), pfp.getLoc().getNomTime(), asbb.getStructureData(0));
+        }
+
+        @Override
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                logger.warn("failed to close run file", e);
+            }
+        }
+    }
+
+    private static class MemRun extends Run {
+        private final Iterator<StationPointFeature> iter;
+
+        MemRun(int order, Iterator<StationPointFeature> iter) {
+            super(order);
+            this.iter = iter;
+        }
+
+        @Override
+        void advance() {
+            head = iter.hasNext() ? iter.next() : null;
+        }
+    }
+
+    private class MergeIter implements Iterator<StationPointFeature> {
+        private final List<Run> runs = new ArrayList<>();
+        private final PriorityQueue<Run> queue;
+
+        // merge the features in memory too if withInMem
+        public MergeIter(List<File> files, boolean withInMem) throws IOException {
+            this.queue = new PriorityQueue<>(files.size() + 1, (run1, run2) -> {
+                int result = comp.compare(run1.head, run2.head);
+                return (result != 0) ? result : Integer.compare(run1.order, run2.order);
+            });
+
+            try {
+                for (File runFile : files) {
+                    runs.add(new FileRun(runs.size(), runFile));
+                }
+                if (withInMem) {
+                    runs.add(new MemRun(runs.size(), new Iter()));
+                }
+                for (Run run : runs) {
+                    push(run);
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        private void push(Run run) throws IOException {
+            run.advance();
+            if (run.head != null) {
+                queue.add(run);
+            } else {
+                run.close();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {  // Method is idempotent.
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public StationPointFeature next() {
+            Run run = queue.poll();
+            if (run == null) {  // Don't rely on user to call hasNext().
+                throw new NoSuchElementException("There are no more elements.");
+            }
+
+            StationPointFeature result = run.head;
+            try {
+                push(run);
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException(e);
+            }
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Operation not supported by this iterator.");
+        }
+
+        void close() {
+            for (Run run : runs) {
+                run.close();
+            }
+            queue.clear();
+        }
+    }
 }
@@ -11,7 +11,7 @@ import java.util.Map;
 import ucar.ma2.StructureData;
 import ucar.ma2.StructureDataDeep;
 import ucar.ma2.StructureMembers;
-import ucar.nc2.ft.PointFeature;
+import ucar.nc2.ft.DsgFeatureCollection;
 import javax.annotation.Nonnull;
 
 /**
@@ -64,19 +64,30 @@ public class StationFeatureCopyFactory {
       stationMap.put(s.getName(), sUse);
     }
     sUse.incrNobs();
-    StationPointFeatureCopy deep = new StationPointFeatureCopy(sUse, from);
+    StationPointFeatureCopy deep = new StationPointFeatureCopy(sUse, from.getFeatureCollection(),
+            from.getObservationTime(), from.getNominalTime());
     deep.data = StructureDataDeep.copy(from.getFeatureData(), sm);
     return deep;
   }
 
+  /**
+   * Remake a copy that was made by deepCopy() and then serialized, eg by SortingStationPointFeatureCache.
+   * The station must come from a copy made by this factory; it is not counted again.
+   */
+  StationPointFeature remake(StationFeature station, DsgFeatureCollection dsg, double obsTime, double nomTime,
+          StructureData data) {
+    StationPointFeatureCopy copy = new StationPointFeatureCopy(station, dsg, obsTime, nomTime);
+    copy.data = data;
+    return copy;
+  }
+
   private class StationPointFeatureCopy extends PointFeatureImpl implements StationPointFeature {
 
     final StationFeature station;
     StructureData data;
 
-    StationPointFeatureCopy(StationFeature station, PointFeature pf) {
-      super(pf.getFeatureCollection(), station, pf.getObservationTime(), pf.getNominalTime(),
-              pf.getFeatureCollection().getTimeUnit());
+    StationPointFeatureCopy(StationFeature station, DsgFeatureCollection dsg, double obsTime, double nomTime) {
+      super(dsg, station, obsTime, nomTime, dsg.getTimeUnit());
       this.station = station;
     }
 
@@ -343,6 +343,8 @@ public abstract class CFPointWriter implements Closeable {
   protected Dimension recordDim;
   protected Map<String, Variable> dataMap  = new HashMap<>();
   protected List<VariableSimpleIF> dataVars;
+  private RecordBuffer recordBuffer;  // lazy, see getRecordBuffer()
+  private boolean noRecordBuffer;
 
   private Map<String, Variable> extraMap;  // added as variables just as they are
   protected List<Variable> extra;
@@ -752,6 +754,36 @@ public abstract class CFPointWriter implements Closeable {
     return origin[0];
   }
 
+  /**
+   * The buffer for observation records, if config.recordBufferSize > 1 and the record variables can be buffered.
+   * Call after writeHeader(). Records in the buffer are written by flushRecordBuffer(), finish() and close().
+   *
+   * @return the buffer for the record dimension, or null to write each record with writeStructureData().
+   */
+  RecordBuffer getRecordBuffer() {
+    if (recordBuffer == null && !noRecordBuffer) {
+      if (config.recordBufferSize <= 1) {
+        noRecordBuffer = true;
+      } else if (isExtendedModel) {
+        if (record.isUnlimited() && RecordBuffer.canBuffer(record.getVariables()))
+          recordBuffer = new RecordBuffer(writer, record, config.recordBufferSize);
+        else
+          noRecordBuffer = true;
+      } else {
+        if (RecordBuffer.canBuffer(dataMap.values()))
+          recordBuffer = new RecordBuffer(writer, dataMap, config.recordBufferSize);
+        else
+          noRecordBuffer = true;
+      }
+    }
+    return recordBuffer;
+  }
+
+  protected void flushRecordBuffer() throws IOException {
+    if (recordBuffer != null)
+      recordBuffer.flush();
+  }
+
 
   // keep track of the bounding box
   protected void trackBB(LatLonPoint loc, CalendarDate obsDate) {
@@ -769,6 +801,8 @@ public abstract class CFPointWriter implements Closeable {
   }
 
   public void finish() throws IOException {
+    flushRecordBuffer();
+
     if (llbb != null) {
       writer.updateAttribute(null, new Attribute(ACDD.LAT_MIN, llbb.getLowerLeftPoint().getLatitude()));
       writer.updateAttribute(null, new Attribute(ACDD.LAT_MAX, llbb.getUpperRightPoint().getLatitude()));
@@ -788,6 +822,7 @@ public abstract class CFPointWriter implements Closeable {
 
   @Override
   public void close() throws IOException {
+    flushRecordBuffer();  // empty after finish()
     writer.close();
   }
 
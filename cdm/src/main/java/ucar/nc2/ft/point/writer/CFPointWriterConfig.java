@@ -20,6 +20,7 @@ public class CFPointWriterConfig {
   public Nc4Chunking chunking;                    // for netcdf-4
   public boolean noTimeCoverage = false;          // does not have a time dimension
   public int recDimensionLength = -1;             // do use unlimited dimension (for netcdf3), use fixed dimension of this length NOT USED
+  public int recordBufferSize = 1000;             // number of point/station observations written at once; <= 1 writes each one
 
   public CFPointWriterConfig(NetcdfFileWriter.Version version) {
     this(version, new Nc4ChunkingDefault());  // The default chunker used in Nc4Iosp.
@@ -34,4 +35,9 @@ public class CFPointWriterConfig {
     this.noTimeCoverage = noTimeCoverage;
     return this;
   }
+
+  public CFPointWriterConfig setRecordBufferSize(int recordBufferSize)  {
+    this.recordBufferSize = recordBufferSize;
+    return this;
+  }
 }
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.ft.point.writer;
+
+import ucar.ma2.*;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.Structure;
+import ucar.nc2.Variable;
+import ucar.nc2.constants.CDM;
+import ucar.nc2.iosp.netcdf3.N3iosp;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Collects the observation records of a CFPointWriter column by column, in one primitive array per variable,
+ * and writes them n records at a time along the record dimension.
+ * <ul>
+ *   <li>classic model: each column is a record Variable</li>
+ *   <li>extended model: each column is a member of the record Structure, written as an ArrayStructureMA</li>
+ * </ul>
+ * Within a record, the first value set for a column is used, so set the coordinates before the data,
+ * like StructureDataComposite. Columns that are not set in a record get the variable's _FillValue,
+ * or the default netCDF fill value, as unwritten record variables do.
+ */
+class RecordBuffer {
+  private final NetcdfFileWriter writer;
+  private final Structure record;  // extended model only
+  private final int capacity;
+  private final List<Column> columns = new ArrayList<>();
+  private final Map<String, Column> columnMap = new HashMap<>();
+
+  private int nrecs;       // number of records in the buffer
+  private int startRecno;  // record number of the first record in the buffer
+
+  /**
+   * Classic model: write to record variables.
+   *
+   * @param writer   write to this file
+   * @param varMap   the record variables, keyed by the StructureData member name
+   * @param capacity number of records to collect before writing
+   */
+  RecordBuffer(NetcdfFileWriter writer, Map<String, Variable> varMap, int capacity) {
+    this.writer = writer;
+    this.record = null;
+    this.capacity = capacity;
+    for (Map.Entry<String, Variable> entry : varMap.entrySet()) {
+      Variable v = entry.getValue();
+      int[] shape = v.getShape();
+      shape[0] = capacity;  // replace the record dimension
+      addColumn(new Column(entry.getKey(), v, shape));
+    }
+  }
+
+  /**
+   * Extended model: write to a Structure along its (first) record dimension.
+   *
+   * @param writer   write to this file
+   * @param record   the record Structure
+   * @param capacity number of records to collect before writing
+   */
+  RecordBuffer(NetcdfFileWriter writer, Structure record, int capacity) {
+    this.writer = writer;
+    this.record = record;
+    this.capacity = capacity;
+    for (Variable member : record.getVariables()) {
+      int[] memberShape = member.getShape();
+      int[] shape = new int[memberShape.length + 1];
+      shape[0] = capacity;
+      System.arraycopy(memberShape, 0, shape, 1, memberShape.length);
+      addColumn(new Column(member.getShortName(), member, shape));
+    }
+  }
+
+  /**
+   * Can these variables be buffered?
+   * Structures, Sequences, Opaque and variable length data are not, so they must be written a record at a time.
+   */
+  static boolean canBuffer(Collection<Variable> vars) {
+    for (Variable v : vars) {
+      DataType dtype = v.getDataType();
+      if (dtype == DataType.STRUCTURE || dtype == DataType.SEQUENCE || dtype == DataType.OPAQUE || v.isVariableLength())
+        return false;
+    }
+    return true;
+  }
+
+  private void addColumn(Column col) {
+    columns.add(col);
+    columnMap.put(col.name, col);
+  }
+
+  /**
+   * Set a scalar value in the current record. Ignored if there is no such column.
+   */
+  void setDouble(String name, double val) {
+    Column col = columnMap.get(name);
+    if (col == null || col.row == nrecs) return;
+    col.values.setDouble(nrecs, val);
+    col.row = nrecs;
+  }
+
+  /**
+   * Set a scalar value in the current record. Ignored if there is no such column.
+   */
+  void setInt(String name, int val) {
+    Column col = columnMap.get(name);
+    if (col == null || col.row == nrecs) return;
+    col.values.setInt(nrecs, val);
+    col.row = nrecs;
+  }
+
+  /**
+   * Set the members of sdata that have a column in the current record. Other members are ignored.
+   */
+  void setStructureData(StructureData sdata) {
+    for (StructureMembers.Member m : sdata.getMembers()) {
+      Column col = columnMap.get(m.getName());
+      if (col == null || col.row == nrecs) continue;
+      col.set(nrecs, sdata, m);
+      col.row = nrecs;
+    }
+  }
+
+  /**
+   * Finish the current record, writing the buffer if its full.
+   *
+   * @return the number of records finished so far
+   */
+  int endRecord() throws IOException {
+    for (Column col : columns) {
+      if (col.row != nrecs) col.fill(nrecs);  // else the row keeps the value of an earlier flush
+    }
+    nrecs++;
+    if (nrecs == capacity) flush();
+    return startRecno + nrecs;
+  }
+
+  /**
+   * Write the finished records.
+   */
+  void flush() throws IOException {
+    if (nrecs == 0) return;
+
+    try {
+      if (record == null) {
+        for (Column col : columns) {
+          int[] origin = new int[col.values.getRank()];
+          origin[0] = startRecno;
+          writer.write(col.variable, origin, col.getValues(nrecs));
+        }
+
+      } else {
+        StructureMembers sm = new StructureMembers(record.getShortName());
+        for (Column col : columns) {
+          Variable v = col.variable;
+          StructureMembers.Member m = sm.addMember(col.name, v.getDescription(), v.getUnitsString(),
+                  v.getDataType(), v.getShape());
+          m.setDataArray(col.getValues(nrecs));
+        }
+        writer.write(record, new int[] {startRecno}, new ArrayStructureMA(sm, new int[] {nrecs}));
+      }
+
+    } catch (InvalidRangeException e) {
+      throw new IllegalStateException(e);
+    }
+
+    startRecno += nrecs;
+    nrecs = 0;
+    for (Column col : columns) col.row = -1;
+  }
+
+  private static class Column {
+    final String name;
+    final Variable variable;
+    final Array values;  // shape is [capacity, variable shape without the record dimension]
+    final int rowSize;
+    final Number fillValue;  // null for Strings and booleans
+    int row = -1;        // the last row that was set
+
+    Column(String name, Variable variable, int[] shape) {
+      this.name = name;
+      this.variable = variable;
+      this.values = Array.factory(variable.getDataType(), shape);
+      this.rowSize = (int) (values.getSize() / shape[0]);
+      Attribute att = variable.findAttribute(CDM.FILL_VALUE);
+      this.fillValue = (att != null && !att.isString()) ? att.getNumericValue() : N3iosp.getFillValueDefault(variable.getDataType());
+    }
+
+    // set every value of the row to the fill value
+    void fill(int row) {
+      int start = row * rowSize;
+      int end = start + rowSize;
+      Object storage = values.getStorage();
+      if (storage instanceof double[])
+        Arrays.fill((double[]) storage, start, end, fillValue.doubleValue());
+      else if (storage instanceof float[])
+        Arrays.fill((float[]) storage, start, end, fillValue.floatValue());
+      else if (storage instanceof long[])
+        Arrays.fill((long[]) storage, start, end, fillValue.longValue());
+      else if (storage instanceof int[])
+        Arrays.fill((int[]) storage, start, end, fillValue.intValue());
+      else if (storage instanceof short[])
+        Arrays.fill((short[]) storage, start, end, fillValue.shortValue());
+      else if (storage instanceof byte[])
+        Arrays.fill((byte[]) storage, start, end, fillValue.byteValue());
+      else if (storage instanceof char[])
+        Arrays.fill((char[]) storage, start, end, (char) (fillValue == null ? 0 : fillValue.intValue()));
+      else if (storage instanceof boolean[])
+        Arrays.fill((boolean[]) storage, start, end, false);
+      else if (storage instanceof Object[])
+        Arrays.fill((Object[]) storage, start, end, N3iosp.NC_FILL_STRING);
+    }
+
+    void set(int row, StructureData sdata, StructureMembers.Member m) {
+      DataType dtype = values.getDataType();
+
+      if (dtype == DataType.CHAR && m.getDataType() == DataType.STRING) {  // classic model: Strings are char arrays
+        String[] vals = m.isScalar() ? new String[] {sdata.getScalarString(m)} : sdata.getJavaArrayString(m);
+        int strlen = values.getShape()[values.getRank() - 1];
+        char[] storage = (char[]) values.getStorage();
+        fill(row);  // there may be fewer strings than the row holds
+        int start = row * rowSize;
+        for (String s : vals) {
+          int n = (s == null) ? 0 : Math.min(s.length(), strlen);
+          if (n > 0) s.getChars(0, n, storage, start);
+          Arrays.fill(storage, start + n, start + strlen, (char) 0);
+          start += strlen;
+          if (start >= (row + 1) * rowSize) break;
+        }
+        return;
+      }
+
+      if (rowSize == 1 && m.isScalar()) {
+        switch (dtype) {
+          case DOUBLE:
+            values.setDouble(row, sdata.convertScalarDouble(m));
+            return;
+          case FLOAT:
+            values.setFloat(row, sdata.convertScalarFloat(m));
+            return;
+          case LONG:
+            values.setLong(row, sdata.convertScalarLong(m));
+            return;
+          case INT:
+            values.setInt(row, sdata.convertScalarInt(m));
+            return;
+          case SHORT:
+            values.setShort(row, (short) sdata.convertScalarInt(m));
+            return;
+          case BYTE:
+            values.setByte(row, (byte) sdata.convertScalarInt(m));
+            return;
+          case CHAR:
+            values.setChar(row, sdata.getScalarChar(m));
+            return;
+          case STRING:
+            values.setObject(row, sdata.getScalarString(m));
+            return;
+        }
+      }
+
+      Array data = sdata.getArray(m);
+      if (data.getSize() < rowSize) fill(row);
+      Array.arraycopy(data, 0, values, row * rowSize, (int) Math.min(data.getSize(), rowSize));
+    }
+
+    // the first nrecs rows
+    Array getValues(int nrecs) throws InvalidRangeException {
+      if (nrecs == values.getShape()[0]) return values;
+
+      int[] origin = new int[values.getRank()];
+      int[] shape = values.getShape();
+      shape[0] = nrecs;
+      return values.sectionNoReduce(origin, shape, null).copy();
+    }
+  }
+}
@@ -73,6 +73,17 @@ public class WriterCFPointCollection extends CFPointWriter {
   public void writeRecord(double timeCoordValue, CalendarDate obsDate, EarthLocation loc, StructureData sdata) throws IOException {
     trackBB(loc.getLatLon(), obsDate);
 
+    RecordBuffer buffer = getRecordBuffer();
+    if (buffer != null) {
+      buffer.setDouble(timeName, timeCoordValue); // coords first so it takes precedence
+      buffer.setDouble(latName, loc.getLatitude());
+      buffer.setDouble(lonName, loc.getLongitude());
+      if (altUnits != null) buffer.setDouble(altName, loc.getAltitude());
+      buffer.setStructureData(sdata);
+      obsRecno = buffer.endRecord();
+      return;
+    }
+
     StructureDataScalar coords = new StructureDataScalar("Coords");
     coords.addMember(timeName, null, null, DataType.DOUBLE, timeCoordValue);
     coords.addMember(latName,  null, null, DataType.DOUBLE, loc.getLatitude());
@@ -172,6 +172,15 @@ public class WriterCFStationCollection extends CFPointWriter {
     if (parentIndex == null)
       throw new RuntimeException("Cant find station " + stnName);
 
+    RecordBuffer buffer = getRecordBuffer();
+    if (buffer != null) {
+      buffer.setDouble(timeName, timeCoordValue); // coords first so it takes precedence
+      buffer.setInt(stationIndexName, parentIndex);
+      buffer.setStructureData(sdata);
+      obsRecno = buffer.endRecord();
+      return;
+    }
+
     StructureDataScalar coords = new StructureDataScalar("Coords");
     coords.addMember(timeName, null, null, DataType.DOUBLE, timeCoordValue);
     coords.addMember(stationIndexName, null, null, DataType.INT, parentIndex);
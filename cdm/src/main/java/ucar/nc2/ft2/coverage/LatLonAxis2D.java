@@ -29,6 +29,7 @@ public class LatLonAxis2D extends CoverageCoordAxis {
   // can only be set once
   private int[] shape;        // y, x
   private Object userObject;
+  private List<RangeIterator> ranges; // y, x in the original axis, if a subset
 
   public LatLonAxis2D(CoverageCoordAxisBuilder builder) {
     super(builder);
@@ -58,7 +59,9 @@ public class LatLonAxis2D extends CoverageCoordAxis {
 
   @Override
   public CoverageCoordAxis copy() {
-    return new LatLonAxis2D(new CoverageCoordAxisBuilder(this));
+    LatLonAxis2D result = new LatLonAxis2D(new CoverageCoordAxisBuilder(this));
+    result.ranges = ranges;
+    return result;
   }
 
   @Override
@@ -72,8 +75,9 @@ public class LatLonAxis2D extends CoverageCoordAxis {
   }
 
   public List<RangeIterator> getRanges() {
+    if (ranges != null) return ranges;
     List<RangeIterator> result = new ArrayList<>();
-    result.add(Range.make(AxisType.Lat.toString(), shape[0]));  // LOOK wrong, need subset Range
+    result.add(Range.make(AxisType.Lat.toString(), shape[0]));
     result.add(Range.make(AxisType.Lon.toString(), shape[1]));
     return result;
   }
@@ -129,14 +133,18 @@ public class LatLonAxis2D extends CoverageCoordAxis {
     int count = 0;
     for (int y : rangey)
       for (int x : rangex)
-        svalues[count++] = values[y * nx + x];
+        svalues[count++] = values[y * shape[1] + x];
 
     builder.values = svalues;
     builder.isSubset = true;
     builder.ncoords = nx * ny;
     builder.shape = new int[]{ny, nx};
 
-    return new LatLonAxis2D(builder);
+    LatLonAxis2D result = new LatLonAxis2D(builder);
+    result.ranges = new ArrayList<>();
+    result.ranges.add(rangey.setName(AxisType.Lat.toString()));
+    result.ranges.add(rangex.setName(AxisType.Lon.toString()));
+    return result;
   }
 
 }
@@ -11,6 +11,7 @@ import ucar.nc2.constants.AxisType;
 import ucar.nc2.dataset.CoordinateAxis;
 import ucar.nc2.dataset.CoordinateAxis1D;
 import ucar.nc2.dataset.VariableDS;
+import ucar.nc2.write.AccessProfile;
 import ucar.unidata.geoloc.ProjectionImpl;
 import ucar.unidata.util.Format;
 
@@ -556,7 +557,9 @@ public class DtCoverage implements IsMissingEvaluator {
     }
 
     // read it
-    Array dataVolume = vs.read(Arrays.asList(varRange));
+    List<Range> ranges = Arrays.asList(varRange);
+    AccessProfile.recordAccess(vs, ranges);
+    Array dataVolume = vs.read(ranges);
 
     // permute to canonical order if needed; order rt,e,t,z,y,x
     if (canonicalOrder) {
@@ -11,12 +11,17 @@ import ucar.ma2.Section;
 import ucar.nc2.*;
 import ucar.nc2.constants.*;
 import ucar.nc2.ft2.coverage.*;
+import ucar.nc2.iosp.netcdf3.N3outputStreamWriter;
 import ucar.nc2.time.CalendarDate;
 import ucar.nc2.util.Optional;
 import ucar.unidata.geoloc.*;
 import ucar.unidata.geoloc.projection.LatLonProjection;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
 
 /**
@@ -56,9 +61,87 @@ public class CFGridCoverageWriter2 {
     return writer2.writeFile(gdsOrg, gridNames, subset, tryToAddLatLon2D, testSizeOnly, writer);
   }
 
+  /**
+   * Prepare to stream a netcdf-3 file from a CoverageDataset, without staging it on disk.
+   * The header is computed here; the variable data is read and written when Netcdf3Stream.write() is called.
+   *
+   * @param gdsOrg            the CoverageDataset
+   * @param gridNames         the list of coverage names to be written, or null for all
+   * @param subset            defines the requested subset, or null to include everything in gdsOrg
+   * @param tryToAddLatLon2D  add 2D lat/lon coordinates, if possible
+   * @return the stream, or empty with an error message if the subset contains no data
+   * @throws IOException
+   * @throws InvalidRangeException
+   */
+  public static ucar.nc2.util.Optional<Netcdf3Stream> makeNetcdf3Stream(CoverageCollection gdsOrg,
+          List<String> gridNames, SubsetParams subset, boolean tryToAddLatLon2D)
+          throws IOException, InvalidRangeException {
+    CFGridCoverageWriter2 writer2 = new CFGridCoverageWriter2();
+    NetcdfFileWriter writer = NetcdfFileWriter.createNew(null, false);  // only used to build the metadata, never created
+    Optional<Metadata> metadatao = writer2.addMetadata(gdsOrg, gridNames, subset, tryToAddLatLon2D, writer);
+    if (!metadatao.isPresent())
+      return ucar.nc2.util.Optional.empty(metadatao.getErrorMessage());
+    return Optional.of(new Netcdf3Stream(writer2, metadatao.get()));
+  }
+
+  // what addMetadata() made for one output file
+  private static class Metadata {
+    final CoverageCollection gdsOrg;
+    final SubsetParams subsetParams;
+    final CoverageCollection subsetDataset;
+    final boolean shouldAddLatLon2D;
+    final Group rootGroup;       // of the writer, holds the file's dimensions, attributes and variables
+    final long totalSizeOfVars;
+
+    Metadata(CoverageCollection gdsOrg, SubsetParams subsetParams, CoverageCollection subsetDataset,
+             boolean shouldAddLatLon2D, Group rootGroup, long totalSizeOfVars) {
+      this.gdsOrg = gdsOrg;
+      this.subsetParams = subsetParams;
+      this.subsetDataset = subsetDataset;
+      this.shouldAddLatLon2D = shouldAddLatLon2D;
+      this.rootGroup = rootGroup;
+      this.totalSizeOfVars = totalSizeOfVars;
+    }
+  }
+
   private ucar.nc2.util.Optional<Long> writeFile(CoverageCollection gdsOrg, List<String> gridNames,
           SubsetParams subsetParams, boolean tryToAddLatLon2D, boolean testSizeOnly, NetcdfFileWriter writer)
           throws IOException, InvalidRangeException {
+    if (writer == null) {
+      if (testSizeOnly) {
+        writer = NetcdfFileWriter.createNew(null, false);  // null location. It's ok; we'll never write the file.
+      } else {
+        throw new NullPointerException("writer must be non-null when testSizeOnly == false.");
+      }
+    }
+
+    Optional<Metadata> metadatao = addMetadata(gdsOrg, gridNames, subsetParams, tryToAddLatLon2D, writer);
+    if (!metadatao.isPresent())
+      return ucar.nc2.util.Optional.empty(metadatao.getErrorMessage());
+    Metadata metadata = metadatao.get();
+
+    if (!testSizeOnly) {
+      // Actually create file and write variable data to it.
+      writer.setLargeFile(isLargeFile(metadata.totalSizeOfVars));
+      writer.create();
+
+      writeCoordinateData(metadata.subsetDataset, writer);
+      writeCoverageData(metadata.gdsOrg, metadata.subsetParams, metadata.subsetDataset, writer);
+
+      if (metadata.shouldAddLatLon2D) {
+        writeLatLon2D(metadata.subsetDataset, writer);
+      }
+
+      writer.close();
+    }
+
+    return Optional.of(metadata.totalSizeOfVars);
+  }
+
+  // Subset the dataset and add the file's metadata to the writer.
+  private ucar.nc2.util.Optional<Metadata> addMetadata(CoverageCollection gdsOrg, List<String> gridNames,
+          SubsetParams subsetParams, boolean tryToAddLatLon2D, NetcdfFileWriter writer)
+          throws IOException, InvalidRangeException {
     if (gridNames == null) {  // want all of them
       gridNames = new LinkedList<>();
 
@@ -71,14 +154,6 @@ public class CFGridCoverageWriter2 {
       subsetParams = new SubsetParams();
     }
 
-    if (writer == null) {
-      if (testSizeOnly) {
-        writer = NetcdfFileWriter.createNew(null, false);  // null location. It's ok; we'll never write the file.
-      } else {
-        throw new NullPointerException("writer must be non-null when testSizeOnly == false.");
-      }
-    }
-
     // We need global attributes, subsetted axes, transforms, and the coverages with attributes and referencing
     // subsetted axes.
     Optional<CoverageCollection> opt = CoverageSubsetter2.makeCoverageDatasetSubset(gdsOrg, gridNames, subsetParams);
@@ -111,22 +186,7 @@ public class CFGridCoverageWriter2 {
       totalSizeOfVars += var.getSize() * var.getElementSize();
     }
 
-    if (!testSizeOnly) {
-      // Actually create file and write variable data to it.
-      writer.setLargeFile(isLargeFile(totalSizeOfVars));
-      writer.create();
-
-      writeCoordinateData(subsetDataset, writer);
-      writeCoverageData(gdsOrg, subsetParams, subsetDataset, writer);
-
-      if (shouldAddLatLon2D) {
-        writeLatLon2D(subsetDataset, writer);
-      }
-
-      writer.close();
-    }
-
-    return Optional.of(totalSizeOfVars);
+    return Optional.of(new Metadata(gdsOrg, subsetParams, subsetDataset, shouldAddLatLon2D, rootGroup, totalSizeOfVars));
   }
 
   /**
@@ -403,6 +463,19 @@ public class CFGridCoverageWriter2 {
 
   private void writeLatLon2D(CoverageCollection subsetDataset, NetcdfFileWriter writer)
           throws IOException, InvalidRangeException {
+    Array[] latlon = makeLatLon2D(subsetDataset);
+
+    Variable latVar = writer.findVariable("lat");
+    assert latVar != null : "We should have added lat var in addLatLon2D().";
+    writer.write(latVar, latlon[0]);
+
+    Variable lonVar = writer.findVariable("lon");
+    assert lonVar != null : "We should have added lon var in addLatLon2D().";
+    writer.write(lonVar, latlon[1]);
+  }
+
+  // return {lat, lon} arrays, shape (y, x)
+  private Array[] makeLatLon2D(CoverageCollection subsetDataset) {
     HorizCoordSys horizCoordSys = subsetDataset.getHorizCoordSys();
     CoverageCoordAxis1D xAxis = horizCoordSys.getXAxis();
     CoverageCoordAxis1D yAxis = horizCoordSys.getYAxis();
@@ -430,15 +503,9 @@ public class CFGridCoverageWriter2 {
       }
     }
 
-    Variable latVar = writer.findVariable("lat");
-    assert latVar != null : "We should have added lat var in addLatLon2D().";
-    Array latDataArray = Array.factory(DataType.DOUBLE, new int[] { numY, numX }, latData);
-    writer.write(latVar, latDataArray);
-
-    Variable lonVar = writer.findVariable("lon");
-    assert lonVar != null : "We should have added lon var in addLatLon2D().";
-    Array lonDataArray = Array.factory(DataType.DOUBLE, new int[] { numY, numX }, lonData);
-    writer.write(lonVar, lonDataArray);
+    return new Array[] {
+            Array.factory(DataType.DOUBLE, new int[] { numY, numX }, latData),
+            Array.factory(DataType.DOUBLE, new int[] { numY, numX }, lonData)};
   }
 
   private void checkConformance(Coverage gridSubset, GeoReferencedArray geo, String where) {
@@ -462,4 +529,112 @@ public class CFGridCoverageWriter2 {
     if (!ok || !ok2)
       logger.warn("CFGridCoverageWriter2 checkConformance fails " +where);
   }
+
+  /**
+   * A netcdf-3 file that is written directly to an OutputStream, one variable at a time, as the data is read.
+   * The file size is known before any data is read, so it can be used for the Content-Length of a response.
+   * Made by makeNetcdf3Stream().
+   */
+  public static class Netcdf3Stream {
+    private final CFGridCoverageWriter2 writer2;
+    private final Metadata metadata;
+    private final N3outputStreamWriter streamWriter;
+    private final byte[] header;
+    private boolean written;
+
+    private Netcdf3Stream(CFGridCoverageWriter2 writer2, Metadata metadata) throws IOException {
+      this.writer2 = writer2;
+      this.metadata = metadata;
+
+      // the header must be complete before any data is written, so compute it now
+      this.streamWriter = new N3outputStreamWriter(metadata.rootGroup);
+      streamWriter.setLargeFile(writer2.isLargeFile(metadata.totalSizeOfVars));
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(10 * 1000);
+      DataOutputStream headerStream = new DataOutputStream(bos);
+      streamWriter.writeHeader(headerStream, 0);
+      headerStream.flush();
+      this.header = bos.toByteArray();
+    }
+
+    /**
+     * @return the total number of bytes that the variables in the output file occupy.
+     */
+    public long getSizeOfVars() {
+      return metadata.totalSizeOfVars;
+    }
+
+    /**
+     * @return the exact size of the file that write() will produce.
+     */
+    public long getFileSize() {
+      return streamWriter.getFileSize();
+    }
+
+    /**
+     * Write the file to the stream. The stream is flushed but not closed. May only be called once.
+     *
+     * @param out write to this stream
+     * @throws IOException on read or write error
+     * @throws InvalidRangeException on subset error
+     */
+    public void write(OutputStream out) throws IOException, InvalidRangeException {
+      if (written)
+        throw new IllegalStateException("Netcdf3Stream has already been written");
+      written = true;
+
+      CoverageCollection subsetDataset = metadata.subsetDataset;
+      Map<String, CoverageCoordAxis> axes = new HashMap<>();
+      for (CoverageCoordAxis axis : subsetDataset.getCoordAxes())
+        axes.put(axis.getName(), axis);
+      Set<String> transforms = new HashSet<>();
+      for (CoverageTransform ct : subsetDataset.getCoordTransforms())
+        transforms.add(ct.getName());
+
+      Array[] latlon = metadata.shouldAddLatLon2D ? writer2.makeLatLon2D(subsetDataset) : null;
+
+      DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(out, 64 * 1000));
+      stream.write(header);
+
+      // variables must be written in the same order as in the header
+      for (Variable v : metadata.rootGroup.getVariables()) {
+        String name = v.getShortName();
+        Array data;
+        CoverageCoordAxis axis;
+
+        if ((axis = axes.get(name)) != null) {
+          data = axis.getCoordsAsArray();
+
+        } else if (name.endsWith(BOUNDS) && (axis = axes.get(name.substring(0, name.length() - BOUNDS.length()))) != null) {
+          data = axis.getCoordBoundsAsArray();
+
+        } else if (subsetDataset.findCoverage(name) != null) {
+          // we need to call readData on the original
+          Coverage coverageOrg = metadata.gdsOrg.findCoverage(name);
+          GeoReferencedArray array = coverageOrg.readData(metadata.subsetParams);
+          writer2.checkConformance(subsetDataset.findCoverage(name), array, metadata.gdsOrg.getName());
+          data = array.getData();
+
+        } else if (latlon != null && name.equals("lat")) {
+          data = latlon[0];
+
+        } else if (latlon != null && name.equals("lon")) {
+          data = latlon[1];
+
+        } else if (transforms.contains(name)) {
+          data = null; // coordinate transform variables are just containers for their attributes
+
+        } else {
+          throw new IllegalStateException("CFGridCoverageWriter2 no data for " + v.getFullName());
+        }
+
+        if (show) System.out.printf("CFGridCoverageWriter2 stream %s%n", v.getNameAndDimensions());
+        if (data == null)
+          streamWriter.writeNonRecordFill(v, stream);
+        else
+          streamWriter.writeNonRecordData(v, stream, data);
+      }
+
+      stream.flush();
+    }
+  }
 }
@@ -6,7 +6,10 @@ package ucar.nc2.ft2.coverage.writer;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import javax.annotation.Nonnull;
 
 import ucar.ma2.Array;
@@ -33,43 +36,117 @@ import ucar.nc2.ft2.coverage.CoverageCoordAxis;
 import ucar.nc2.ft2.coverage.CoverageCoordAxis1D;
 import ucar.nc2.ft2.coverage.CoverageCoordSys;
 import ucar.nc2.ft2.coverage.GeoReferencedArray;
+import ucar.nc2.ft2.coverage.HorizCoordSys;
+import ucar.nc2.ft2.coverage.LatLonAxis2D;
 import ucar.nc2.ft2.coverage.SubsetParams;
 import ucar.nc2.time.CalendarDateUnit;
 import ucar.nc2.util.Misc;
+import ucar.nc2.util.Optional;
+import ucar.unidata.geoloc.LatLonPoint;
 import ucar.unidata.geoloc.LatLonPointImpl;
+import ucar.unidata.geoloc.LatLonRect;
+import ucar.unidata.geoloc.ProjectionPoint;
+import ucar.unidata.geoloc.ProjectionRect;
 import ucar.unidata.util.StringUtil2;
 
 /**
  * Write DSG CF-1.6 file from a Coverage Dataset
+ * <p>
+ * Either a single lat/lon point, or a batch of points. In the batch case, the points are grouped by the grid cell
+ * they fall in, and nearby cells are read together in tiles no bigger than maxReadSize bytes. So each GRIB record
+ * or HDF5 chunk is read once per tile instead of once per point, and only one tile is held in memory at a time.
+ * Stations are returned in tile order; iterate them in that order to read each tile once. Their names end with the
+ * index of their point in the list, so that repeated or nearby points are still different stations.
  *
  * @author caron
  * @since 7/8/2015
  */
 public class CoverageAsPoint {
   private static final boolean debug = false;
+  private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CoverageAsPoint.class);
+  public static final long defaultMaxReadSize = 50 * 1000 * 1000;
 
   private CoverageCollection gcd;
+  private List<Coverage> coverages = new ArrayList<>();
   private List<VarData> varData;
   private SubsetParams subset;
   private LatLonPointImpl latLonPoint;
   private CalendarDateUnit dateUnit;
 
+  // batch of points
+  private List<LatLonPointImpl> points;
+  private long maxReadSize = defaultMaxReadSize;
+  private List<PointInGrid> pointsInGrid;  // in tile order
+  private Tile currTile;
+  private List<VarData> currData;
+
   private class VarData {
     Coverage cov;
     GeoReferencedArray array;
 
-    public VarData(Coverage cov) throws IOException {
+    public VarData(Coverage cov, SubsetParams subset) throws IOException {
       this.cov = cov;
       try {
         this.array = cov.readData(subset);
         if (debug)
           System.out.printf(" Coverage %s data shape = %s%n", cov.getName(), Misc.showInts(array.getData().getShape()));
       } catch (InvalidRangeException e) {
-        e.printStackTrace();
+        throw new IOException(e);
       }
     }
   }
 
+  // a grid cell that one or more of the points fall in
+  private static class GridCell {
+    int y, x;
+    double xcoord, ycoord;  // cell center, in the coordinates of HorizCoordSys.findXYindexFromCoord()
+    Tile tile;
+    int order;
+
+    GridCell(HorizCoordSys.CoordReturn index) {
+      this.y = index.y;
+      this.x = index.x;
+      this.xcoord = index.xcoord;
+      this.ycoord = index.ycoord;
+    }
+  }
+
+  private static class PointInGrid {
+    LatLonPointImpl point;
+    int index;  // in the list of points
+    GridCell cell;
+
+    PointInGrid(LatLonPointImpl point, int index, GridCell cell) {
+      this.point = point;
+      this.index = index;
+      this.cell = cell;
+    }
+  }
+
+  // a rectangle of grid cells that are read together
+  private static class Tile {
+    int minY, maxY, minX, maxX;
+    SubsetParams subset;
+
+    Tile(GridCell cell) {
+      minY = maxY = cell.y;
+      minX = maxX = cell.x;
+    }
+
+    // add the cell if the tile stays under maxBytes
+    boolean add(GridCell cell, long bytesPerCell, long maxBytes) {
+      int minY2 = Math.min(minY, cell.y), maxY2 = Math.max(maxY, cell.y);
+      int minX2 = Math.min(minX, cell.x), maxX2 = Math.max(maxX, cell.x);
+      long ncells = (long) (maxY2 - minY2 + 1) * (maxX2 - minX2 + 1);
+      if (ncells * bytesPerCell > maxBytes) return false;
+      minY = minY2;
+      maxY = maxY2;
+      minX = minX2;
+      maxX = maxX2;
+      return true;
+    }
+  }
+
   public CoverageAsPoint(CoverageCollection gcd, List<String> varNames, SubsetParams subset) throws IOException {
     this.gcd = gcd;
     this.subset = subset;
@@ -79,10 +156,52 @@ public class CoverageAsPoint {
       throw new IllegalArgumentException("No latlon point");
 
     varData = new ArrayList<>(varNames.size());
+    for (Coverage cov : findCoverages(varNames)) // LOOK we should read all at once if possible
+      varData.add(new VarData(cov, subset));
+  }
+
+  /**
+   * Time series at a batch of points. Nothing is read until the stations are iterated.
+   *
+   * @param gcd      the coverages
+   * @param varNames the coverages to read
+   * @param subset   time, vertical and ensemble subset; any horizontal subset is ignored
+   * @param points   the points; those not in the grid are left out
+   */
+  public CoverageAsPoint(CoverageCollection gcd, List<String> varNames, SubsetParams subset, List<? extends LatLonPoint> points) {
+    this.gcd = gcd;
+    this.subset = new SubsetParams();
+    for (Map.Entry<String, Object> entry : subset.getEntries()) {
+      switch (entry.getKey()) {
+        case SubsetParams.latlonPoint:
+        case SubsetParams.latlonBB:
+        case SubsetParams.projBB:
+        case SubsetParams.horizStride:
+          break;
+        default:
+          this.subset.set(entry.getKey(), entry.getValue());
+      }
+    }
+
+    this.points = new ArrayList<>(points.size());
+    for (LatLonPoint p : points)
+      this.points.add(new LatLonPointImpl(p.getLatitude(), p.getLongitude()));
+    findCoverages(varNames);
+  }
+
+  /**
+   * Set the most bytes read at once, for all the coverages together, when reading a batch of points.
+   * @param maxReadSize max size in bytes of a tile, default is defaultMaxReadSize.
+   */
+  public void setMaxReadSize(long maxReadSize) {
+    this.maxReadSize = maxReadSize;
+  }
+
+  private List<Coverage> findCoverages(List<String> varNames) {
     for (String varName : varNames) {
-      Coverage cov = gcd.findCoverage(varName); // LOOK we should read all at once if possible
+      Coverage cov = gcd.findCoverage(varName);
       if (cov != null) {
-        varData.add(new VarData(cov));
+        coverages.add(cov);
 
         if (dateUnit == null) { // assume all have the same time unit, just use the first one
           CoverageCoordSys csys = cov.getCoordSys();
@@ -91,8 +210,152 @@ public class CoverageAsPoint {
         }
       }
     }
+    return coverages;
+  }
+
+  //////////////////////////////////////////////////////////////////////////
+  // batch of points
+
+  // find the grid cells of the points, and group them into tiles
+  private List<PointInGrid> findPointsInGrid() {
+    HorizCoordSys hcs = gcd.getHorizCoordSys();
+    Map<Long, GridCell> cells = new HashMap<>();
+    List<PointInGrid> result = new ArrayList<>(points.size());
+    for (int i = 0; i < points.size(); i++) {
+      LatLonPointImpl p = points.get(i);
+      Optional<HorizCoordSys.CoordReturn> index;
+      if (hcs.isProjection()) {
+        ProjectionPoint pp = hcs.getTransform().getProjection().latLonToProj(p);
+        index = hcs.findXYindexFromCoord(pp.getX(), pp.getY());
+      } else {
+        index = hcs.findXYindexFromCoord(p.getLongitude(), p.getLatitude());
+      }
+      if (!index.isPresent()) {
+        if (debug) System.out.printf(" %s not in grid: %s%n", p, index.getErrorMessage());
+        continue;
+      }
+
+      long key = ((long) index.get().y << 32) + index.get().x;
+      GridCell cell = cells.computeIfAbsent(key, k -> new GridCell(index.get()));
+      result.add(new PointInGrid(p, i, cell));
+    }
+
+    // tiles are bands of nearby rows
+    List<GridCell> sorted = new ArrayList<>(cells.values());
+    sorted.sort(Comparator.comparingInt((GridCell c) -> c.y).thenComparingInt(c -> c.x));
+    long bytesPerCell = bytesPerCell();
+    Tile tile = null;
+    for (int i = 0; i < sorted.size(); i++) {
+      GridCell cell = sorted.get(i);
+      if (tile == null || !tile.add(cell, bytesPerCell, maxReadSize)) {
+        if (tile != null) tile.subset = makeTileSubset(hcs, tile);
+        tile = new Tile(cell);
+      }
+      cell.tile = tile;
+      cell.order = i;
+    }
+    if (tile != null) tile.subset = makeTileSubset(hcs, tile);
+
+    result.sort(Comparator.comparingInt(pg -> pg.cell.order));
+    if (debug) System.out.printf(" %d points in %d cells%n", result.size(), sorted.size());
+    return result;
+  }
+
+  // bytes read for each horizontal grid cell, for all the coverages
+  private long bytesPerCell() {
+    long total = 0;
+    for (Coverage cov : coverages) {
+      Optional<CoverageCoordSys> opt = cov.getCoordSys().subset(subset);
+      if (!opt.isPresent()) continue;
+      int[] shape = opt.get().getShape();
+      long n = 1;
+      for (int i = 0; i < shape.length - 2; i++) // assume y, x are the last two dimensions
+        n *= shape[i];
+      total += n * cov.getDataType().getSize();
+    }
+    return Math.max(total, 1);
+  }
+
+  // a subset that contains the cells of the tile
+  private SubsetParams makeTileSubset(HorizCoordSys hcs, Tile tile) {
+    SubsetParams result = new SubsetParams();
+    for (Map.Entry<String, Object> entry : subset.getEntries())
+      result.set(entry.getKey(), entry.getValue());
+
+    if (hcs.isProjection()) { // cell midpoints are inside the cells
+      CoverageCoordAxis1D xaxis = hcs.getXAxis();
+      CoverageCoordAxis1D yaxis = hcs.getYAxis();
+      result.setProjectionRect(new ProjectionRect(xaxis.getCoordMidpoint(tile.minX), yaxis.getCoordMidpoint(tile.minY),
+              xaxis.getCoordMidpoint(tile.maxX), yaxis.getCoordMidpoint(tile.maxY)));
+
+    } else if (hcs.isLatLon2D()) {
+      // the corners of a cell are between the centers of its neighbors, so the centers of the neighbors bound the tile.
+      // at the edge of the grid the corners are extrapolated, so also pad by the largest step between centers.
+      // CoordinateAxis2D.makeEdges() needs at least 3 rows and columns
+      LatLonAxis2D latAxis = hcs.getLatAxis2D();
+      LatLonAxis2D lonAxis = hcs.getLonAxis2D();
+      int[] shape = latAxis.getShape();
+      double lon0 = lonAxis.getCoord(tile.minY, tile.minX);
+      double latMin = Double.MAX_VALUE, latMax = -Double.MAX_VALUE;
+      double lonMin = Double.MAX_VALUE, lonMax = -Double.MAX_VALUE;
+      double latStep = 0, lonStep = 0;
+      int y1 = Math.min(Math.max(tile.maxY + 1, 2), shape[0] - 1);
+      int y0 = Math.max(Math.min(tile.minY - 1, y1 - 2), 0);
+      int x1 = Math.min(Math.max(tile.maxX + 1, 2), shape[1] - 1);
+      int x0 = Math.max(Math.min(tile.minX - 1, x1 - 2), 0);
+      for (int y = y0; y <= y1; y++) {
+        for (int x = x0; x <= x1; x++) {
+          double lat = latAxis.getCoord(y, x);
+          double lon = LatLonPointImpl.lonNormalFrom(lonAxis.getCoord(y, x), lon0 - 180.0);
+          if (Double.isNaN(lat) || Double.isNaN(lon)) continue;
+          latMin = Math.min(latMin, lat);
+          latMax = Math.max(latMax, lat);
+          lonMin = Math.min(lonMin, lon);
+          lonMax = Math.max(lonMax, lon);
+          if (x > x0) {
+            latStep = Math.max(latStep, Math.abs(lat - latAxis.getCoord(y, x - 1)));
+            lonStep = Math.max(lonStep, Math.abs(lon - LatLonPointImpl.lonNormalFrom(lonAxis.getCoord(y, x - 1), lon0 - 180.0)));
+          }
+          if (y > y0) {
+            latStep = Math.max(latStep, Math.abs(lat - latAxis.getCoord(y - 1, x)));
+            lonStep = Math.max(lonStep, Math.abs(lon - LatLonPointImpl.lonNormalFrom(lonAxis.getCoord(y - 1, x), lon0 - 180.0)));
+          }
+        }
+      }
+      result.setLatLonBoundingBox(new LatLonRect(new LatLonPointImpl(latMin - latStep, lonMin - lonStep),
+              latMax - latMin + 2 * latStep, lonMax - lonMin + 2 * lonStep));
+
+    } else {
+      CoverageCoordAxis1D lonAxis = hcs.getXAxis();
+      CoverageCoordAxis1D latAxis = hcs.getYAxis();
+      double lat1 = latAxis.getCoordMidpoint(tile.minY);
+      double lat2 = latAxis.getCoordMidpoint(tile.maxY);
+      // inside the cells but not on the midpoints, since the first and last lon of the axis are taken as outside
+      double lonMin = lonAxis.getCoordMidpoint(tile.minX);
+      if (tile.minX > 0) lonMin = (lonAxis.getCoordEdge1(tile.minX) + lonMin) / 2;
+      double lonMax = (lonAxis.getCoordMidpoint(tile.maxX) + lonAxis.getCoordEdge2(tile.maxX)) / 2;
+      result.setLatLonBoundingBox(new LatLonRect(new LatLonPointImpl(Math.min(lat1, lat2), lonMin),
+              Math.abs(lat2 - lat1), lonMax - lonMin));
+    }
+    return result;
   }
 
+  // keep only the last tile read
+  private synchronized List<VarData> readTile(Tile tile) throws IOException {
+    if (tile != currTile) {
+      currTile = null;
+      currData = null;  // let go of the last tile before reading this one
+      List<VarData> data = new ArrayList<>(coverages.size());
+      for (Coverage cov : coverages)
+        data.add(new VarData(cov, tile.subset));
+      currTile = tile;
+      currData = data;
+    }
+    return currData;
+  }
+
+  //////////////////////////////////////////////////////////////////////////
+
   public FeatureDatasetPoint asFeatureDatasetPoint() {
     // for the moment, assume a single station, no vert coord, single lat/lon
     return new CoverageAsFeatureDatasetPoint(FeatureType.STATION);
@@ -105,8 +368,8 @@ public class CoverageAsPoint {
       setPointFeatureCollection(fc);
 
       List<VariableSimpleIF> dataVars = new ArrayList<>();
-      for (VarData vd : varData) {                    // String name, String desc, String units, DataType dt
-        VariableSimpleIF simple = VariableSimpleImpl.makeScalar(vd.cov.getName(), vd.cov.getDescription(), vd.cov.getUnitsString(), vd.cov.getDataType());
+      for (Coverage cov : coverages) {                    // String name, String desc, String units, DataType dt
+        VariableSimpleIF simple = VariableSimpleImpl.makeScalar(cov.getName(), cov.getDescription(), cov.getUnitsString(), cov.getDataType());
         dataVars.add(simple);
       }
       this.dataVariables = dataVars;
@@ -122,19 +385,40 @@ public class CoverageAsPoint {
     @Override
     protected StationHelper createStationHelper() throws IOException {
       StationHelper helper = new StationHelper();
-      String name = String.format("GridPointAt[%s]", latLonPoint.toString(3));
-      name = StringUtil2.replace(name.trim(), ' ', "_");
-      helper.addStation(new MyStationFeature(name, name, null, latLonPoint.getLatitude(), latLonPoint.getLongitude(), 0.0, dateUnit, null, -1));
+      if (points == null) {
+        helper.addStation(makeStation(makeName(latLonPoint), latLonPoint, null));
+        return helper;
+      }
+
+      synchronized (CoverageAsPoint.this) {
+        if (pointsInGrid == null)
+          pointsInGrid = findPointsInGrid();
+      }
+      for (PointInGrid pg : pointsInGrid)
+        helper.addStation(makeStation(makeName(pg.point) + "_" + pg.index, pg.point, pg.cell));
       return helper;
     }
 
+    // station names must be unique, StationHelper and the CF writers look stations up by name
+    private String makeName(LatLonPointImpl point) {
+      String name = String.format("GridPointAt[%s]", point.toString(3));
+      return StringUtil2.replace(name.trim(), ' ', "_");
+    }
+
+    private MyStationFeature makeStation(String name, LatLonPointImpl point, GridCell cell) {
+      return new MyStationFeature(name, name, null, point.getLatitude(), point.getLongitude(), 0.0, dateUnit, null, -1, cell);
+    }
+
   }
 
   private class MyStationFeature extends StationTimeSeriesFeatureImpl {
+    private final GridCell cell;  // null for a single point
 
-    public MyStationFeature(String name, String desc, String wmoId, double lat, double lon, double alt, CalendarDateUnit timeUnit, String altUnits, int npts) {
+    public MyStationFeature(String name, String desc, String wmoId, double lat, double lon, double alt, CalendarDateUnit timeUnit, String altUnits, int npts,
+                            GridCell cell) {
       // String name, String desc, String wmoId, double lat, double lon, double alt, DateUnit timeUnit, String altUnits, int npts
       super(name, desc, wmoId, lat, lon, alt, timeUnit, altUnits, npts, StructureData.EMPTY);
+      this.cell = cell;
     }
 
     @Nonnull
@@ -145,7 +429,7 @@ public class CoverageAsPoint {
 
     @Override
     public PointFeatureIterator getPointFeatureIterator() throws IOException {
-      return new TimeseriesIterator();
+      return new TimeseriesIterator(cell == null ? varData : readTile(cell.tile));
     }
 
     private class VarIter {
@@ -166,10 +450,22 @@ public class CoverageAsPoint {
       List<VarIter> varIters;
       CoverageCoordAxis1D timeAxis;
 
-      TimeseriesIterator() {
+      TimeseriesIterator(List<VarData> varData) {
         varIters = new ArrayList<>();
         for (VarData vd : varData) {
           Array data = vd.array.getData();
+          if (cell != null) { // the tile contains the cell
+            HorizCoordSys hcs = vd.array.getCoordSysForData().getHorizCoordSys();
+            Optional<HorizCoordSys.CoordReturn> index = hcs.findXYindexFromCoord(cell.xcoord, cell.ycoord);
+            if (!index.isPresent()) {
+              logger.warn("{} cell {},{} not found in tile: {}", vd.cov.getName(), cell.y, cell.x, index.getErrorMessage());
+              varIters.clear();
+              nvalues = 0;
+              break;
+            }
+            int rank = data.getRank(); // assume y, x are the last two dimensions
+            data = data.slice(rank - 1, index.get().x).slice(rank - 2, index.get().y);
+          }
           if (debug) System.out.printf("%s shape=%s%n", vd.cov.getName(), Misc.showInts(data.getShape()));
           varIters.add(new VarIter(vd.cov, vd.array, data.getIndexIterator()));
           nvalues = (int) data.getSize();
@@ -150,6 +150,137 @@ public class IospHelper {
     throw new IllegalStateException("unknown type= " + dataType);
   }
 
+  /**
+   * Read data subset from RandomAccessFile using positional reads, create primitive array of size Layout.getTotalNelems.
+   * Does not use or change the file pointer, buffer or byte order of raf, so many threads may read from one shared
+   * RandomAccessFile at the same time.
+   *
+   * @param raf       read from here, see RandomAccessFile.readFullyAt()
+   * @param index     handles skipping around in the file.
+   * @param dataType  dataType of the variable
+   * @param fillValue must be Number if dataType.isNumeric(), or String for STRING, byte[] for Structure, or null for none
+   * @param byteOrder byte order of the data in the file
+   * @return primitive array with data read in
+   * @throws java.io.IOException on read error
+   */
+  static public Object readDataFillPositional(RandomAccessFile raf, Layout index, DataType dataType, Object fillValue,
+                                              ByteOrder byteOrder) throws java.io.IOException {
+    Object arr = (fillValue == null) ? makePrimitiveArray((int) index.getTotalNelems(), dataType) :
+            makePrimitiveArray((int) index.getTotalNelems(), dataType, fillValue);
+    return readDataPositional(raf, index, dataType, arr, byteOrder, true);
+  }
+
+  /**
+   * Read data subset from RandomAccessFile using positional reads, place in given primitive array.
+   * Thread-safe version of readData(RandomAccessFile, ...).
+   *
+   * @param raf         read from here, see RandomAccessFile.readFullyAt()
+   * @param layout      handles skipping around in the file.
+   * @param dataType    dataType of the variable
+   * @param arr         primitive array to read data into
+   * @param byteOrder   byte order of the data in the file
+   * @param convertChar true if bytes should be converted to char for dataType CHAR
+   * @return primitive array with data read in
+   * @throws java.io.IOException on read error
+   */
+  static public Object readDataPositional(RandomAccessFile raf, Layout layout, DataType dataType, Object arr,
+                                          ByteOrder byteOrder, boolean convertChar) throws java.io.IOException {
+    if (showLayoutTypes) System.out.println("***RAF positional LayoutType=" + layout.getClass().getName());
+    PositionalWindow window = new PositionalWindow(raf, layout.getTotalNelems() * layout.getElemSize());
+
+    if (dataType.getPrimitiveClassType() == byte.class || dataType == DataType.CHAR) {
+      byte[] pa = (byte[]) arr;
+      while (layout.hasNext()) {
+        Layout.Chunk chunk = layout.next();
+        window.read(chunk.getSrcPos(), pa, (int) chunk.getDestElem(), chunk.getNelems());
+      }
+      if (convertChar && dataType == DataType.CHAR) return convertByteToChar(pa);
+      else return pa;
+
+    } else if (dataType == DataType.STRUCTURE) {
+      byte[] pa = (byte[]) arr;
+      int recsize = layout.getElemSize();
+      while (layout.hasNext()) {
+        Layout.Chunk chunk = layout.next();
+        window.read(chunk.getSrcPos(), pa, (int) chunk.getDestElem() * recsize, chunk.getNelems() * recsize);
+      }
+      return pa;
+    }
+
+    int elemSize = dataType.getSize();
+    while (layout.hasNext()) {
+      Layout.Chunk chunk = layout.next();
+      int nelems = chunk.getNelems();
+      int destPos = (int) chunk.getDestElem();
+      ByteBuffer bb = window.get(chunk.getSrcPos(), nelems * elemSize).order(byteOrder);
+
+      if (dataType.getPrimitiveClassType() == short.class)
+        bb.asShortBuffer().get((short[]) arr, destPos, nelems);
+      else if (dataType.getPrimitiveClassType() == int.class)
+        bb.asIntBuffer().get((int[]) arr, destPos, nelems);
+      else if (dataType == DataType.FLOAT)
+        bb.asFloatBuffer().get((float[]) arr, destPos, nelems);
+      else if (dataType == DataType.DOUBLE)
+        bb.asDoubleBuffer().get((double[]) arr, destPos, nelems);
+      else if (dataType.getPrimitiveClassType() == long.class)
+        bb.asLongBuffer().get((long[]) arr, destPos, nelems);
+      else
+        throw new IllegalStateException("unknown type= " + dataType);
+    }
+    return arr;
+  }
+
+  /**
+   * Serves positional reads of nearby chunks from one read of up to raf.getBufferSize() bytes, like the buffer of
+   * RandomAccessFile does for seek() and read(), but local to one call so that it can be used by many threads.
+   * The window is no larger than the data to be read, and is made at the first chunk that is smaller than it.
+   * Chunks as large as the window are read on their own.
+   */
+  private static class PositionalWindow {
+    private final RandomAccessFile raf;
+    private final int size;
+    private byte[] buffer;
+    private long start;
+    private int filled;
+
+    PositionalWindow(RandomAccessFile raf, long wantBytes) {
+      this.raf = raf;
+      this.size = (int) Math.max(1, Math.min(raf.getBufferSize(), wantBytes));
+    }
+
+    void read(long pos, byte[] b, int off, int len) throws IOException {
+      if (len >= size) {
+        raf.readFullyAt(pos, b, off, len);
+        return;
+      }
+      fill(pos, len);
+      System.arraycopy(buffer, (int) (pos - start), b, off, len);
+    }
+
+    // the ByteBuffer is only valid until the next call
+    ByteBuffer get(long pos, int len) throws IOException {
+      if (len >= size)
+        return raf.readByteBufferAt(pos, len); // may be zero-copy
+      fill(pos, len);
+      return ByteBuffer.wrap(buffer, (int) (pos - start), len).slice();
+    }
+
+    private void fill(long pos, int len) throws IOException {
+      if (filled > 0 && pos >= start && pos + len <= start + filled)
+        return;
+      if (buffer == null)
+        buffer = new byte[size];
+      start = pos;
+      filled = 0;
+      while (filled < len) {
+        int n = raf.readAt(pos + filled, buffer, filled, buffer.length - filled);
+        if (n <= 0)
+          throw new java.io.EOFException("Reading " + raf.getLocation() + " at " + (pos + filled) + " file length = " + raf.length());
+        filled += n;
+      }
+    }
+  }
+
   /**
    * Read data subset from PositioningDataInputStream, create primitive array of size Layout.getTotalNelems.
    * Reading is controlled by the Layout object.
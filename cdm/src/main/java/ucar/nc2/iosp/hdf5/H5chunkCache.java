@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 1998-2018 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp.hdf5;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.Map;
+
+/**
+ * Memory cache of decompressed HDF5 chunks, shared by all H5iosp instances.
+ * Bounded by the total number of bytes held, least recently used chunks are evicted first.
+ * Keyed by (file location, file last modified, variable, chunk offset), so a changed file never sees stale chunks;
+ * the stale entries are dropped when H5iosp opens the changed file, if it is one of the last MAX_FILES opened,
+ * and are otherwise evicted in time like any other.
+ *
+ * The cached byte arrays are shared between readers and must not be modified.
+ * <p>
+ * The cache is split into CONCURRENCY_LEVEL segments, each bounded by its share of maxBytes, so a chunk larger than
+ * maxBytes / CONCURRENCY_LEVEL would evict itself at once. Such chunks are not cached.
+ */
+public class H5chunkCache {
+  static final int CONCURRENCY_LEVEL = 4;
+  static final int MAX_FILES = 10 * 1000; // number of file last modified times remembered
+
+  private final long maxBytes;
+  private final long maxChunkBytes;
+  private final Cache<Key, byte[]> cache;
+  private final Map<String, Long> lastModified; // location -> lastModified of cached chunks, most recently opened
+
+  /**
+   * Constructor.
+   *
+   * @param maxBytes maximum number of decompressed bytes to hold.
+   */
+  public H5chunkCache(long maxBytes) {
+    this.maxBytes = maxBytes;
+    this.maxChunkBytes = maxBytes / CONCURRENCY_LEVEL;
+    this.cache = CacheBuilder.newBuilder()
+            .concurrencyLevel(CONCURRENCY_LEVEL)
+            .maximumWeight(maxBytes)
+            .weigher((Key key, byte[] value) -> value.length)
+            .recordStats()
+            .build();
+    this.lastModified = CacheBuilder.newBuilder()
+            .concurrencyLevel(CONCURRENCY_LEVEL)
+            .maximumSize(MAX_FILES)
+            .<String, Long>build()
+            .asMap();
+  }
+
+  /**
+   * Called when a file is opened. If it has changed since its chunks were cached, those chunks are removed.
+   *
+   * @param location     file location
+   * @param lastModified file last modified
+   */
+  public void fileOpened(String location, long lastModified) {
+    Long prev = this.lastModified.put(location, lastModified);
+    if (prev != null && prev != lastModified)
+      invalidate(location);
+  }
+
+  /**
+   * Remove all chunks from the given file.
+   *
+   * @param location file location
+   */
+  public void invalidate(String location) {
+    cache.asMap().keySet().removeIf(key -> key.location.equals(location));
+  }
+
+  /**
+   * Remove all chunks.
+   */
+  public void clearCache() {
+    cache.invalidateAll();
+    lastModified.clear();
+  }
+
+  byte[] get(Key key) {
+    return cache.getIfPresent(key);
+  }
+
+  // chunks larger than a segment would be evicted right away
+  void put(Key key, byte[] data) {
+    if (data.length <= maxChunkBytes)
+      cache.put(key, data);
+  }
+
+  public long getHitCount() {
+    return cache.stats().hitCount();
+  }
+
+  public long getMissCount() {
+    return cache.stats().missCount();
+  }
+
+  public long getEvictionCount() {
+    return cache.stats().evictionCount();
+  }
+
+  /**
+   * Total number of decompressed bytes currently held.
+   *
+   * @return bytes held
+   */
+  public long getBytes() {
+    long total = 0;
+    for (byte[] data : cache.asMap().values())
+      total += data.length;
+    return total;
+  }
+
+  public void showCache(Formatter f) {
+    CacheStats stats = cache.stats();
+    f.format("H5chunkCache: %d chunks, %d bytes (max %d)%n", cache.size(), getBytes(), maxBytes);
+    f.format("  hits=%d misses=%d hitRate=%.3f evictions=%d%n", stats.hitCount(), stats.missCount(), stats.hitRate(),
+            stats.evictionCount());
+  }
+
+  /**
+   * Identifies one decompressed chunk.
+   */
+  static class Key {
+    private final String location;
+    private final long lastModified;
+    private final String varName;
+    private final int[] offset;
+    private final int hashCode;
+
+    Key(String location, long lastModified, String varName, int[] offset) {
+      this.location = location;
+      this.lastModified = lastModified;
+      this.varName = varName;
+      this.offset = offset;
+
+      int result = location.hashCode();
+      result = 31 * result + Long.hashCode(lastModified);
+      result = 31 * result + varName.hashCode();
+      result = 31 * result + Arrays.hashCode(offset);
+      this.hashCode = result;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (!(o instanceof Key)) return false;
+      Key key = (Key) o;
+      return lastModified == key.lastModified && location.equals(key.location) && varName.equals(key.varName) &&
+              Arrays.equals(offset, key.offset);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public String toString() {
+      return location + ":" + varName + Arrays.toString(offset);
+    }
+  }
+}
@@ -20,6 +20,9 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Formatter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * HDF5 I/O
@@ -90,11 +93,75 @@ public class H5iosp extends AbstractIOServiceProvider {
     useHdfEos = val;
   }
 
+  //////////////////////////////////////////////////////////////////////////////////
+  // parallel reading of filtered chunks
+
+  static private volatile ExecutorService chunkExecutor;  // null means read serially
+  static private volatile int chunkMaxThreadsPerRead;
+
+  /**
+   * Read and unfilter (deflate, shuffle, fletcher32) the chunks of a filtered variable on a shared pool of
+   * worker threads. Off by default. The data returned is identical to the serial read.
+   * Only local files opened read-only are read in parallel; remote files are read serially through their buffer.
+   *
+   * @param nthreads          size of the shared pool; 0 or less turns parallel reading off.
+   * @param maxThreadsPerRead maximum number of threads that a single read may use; 0 or less means nthreads.
+   */
+  static public synchronized void setChunkReadThreads(int nthreads, int maxThreadsPerRead) {
+    if (chunkExecutor != null) {
+      chunkExecutor.shutdown();
+      chunkExecutor = null;
+    }
+    if (nthreads <= 0) return;
+
+    chunkMaxThreadsPerRead = (maxThreadsPerRead <= 0) ? nthreads : Math.min(maxThreadsPerRead, nthreads);
+    AtomicInteger count = new AtomicInteger();
+    chunkExecutor = Executors.newFixedThreadPool(nthreads, r -> {
+      Thread t = new Thread(r, "H5iosp-chunk-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////
+  // cache of unfiltered chunks
+
+  static private volatile H5chunkCache chunkCache; // null means no caching
+
+  /**
+   * Keep unfiltered chunks in a memory cache shared by all H5iosp, so that reading the same
+   * chunk again (eg one slice at a time) does not read and decompress it again. Off by default.
+   *
+   * @param maxBytes maximum number of decompressed bytes to hold; 0 or less turns the cache off.
+   */
+  static public synchronized void setChunkCache(long maxBytes) {
+    if (chunkCache != null)
+      chunkCache.clearCache();
+    chunkCache = (maxBytes > 0) ? new H5chunkCache(maxBytes) : null;
+  }
+
+  /**
+   * Get the shared cache of unfiltered chunks.
+   *
+   * @return the cache, or null if not enabled
+   */
+  static public H5chunkCache getChunkCache() {
+    return chunkCache;
+  }
+
+  /**
+   * Stop the worker threads used for parallel chunk reads, if any.
+   */
+  static public void shutdown() {
+    setChunkReadThreads(0, 0);
+  }
+
   //////////////////////////////////////////////////////////////////////////////////
 
   //private RandomAccessFile raf;
   private H5header headerParser;
   private boolean isEos;
+  private long lastModified; // when opened, for the chunk cache
   boolean includeOriginalAttributes = false;
 
   /////////////////////////////////////////////////////////////////////////////
@@ -102,6 +169,12 @@ public class H5iosp extends AbstractIOServiceProvider {
 
   public void open(RandomAccessFile raf, ucar.nc2.NetcdfFile ncfile, ucar.nc2.util.CancelTask cancelTask) throws IOException {
     super.open(raf, ncfile, cancelTask);
+    H5chunkCache cache = chunkCache;
+    if (cache != null) {
+      lastModified = raf.getLastModified();
+      if (lastModified != 0) cache.fileOpened(raf.getLocation(), lastModified); // drops chunks if the file changed
+    }
+
     headerParser = new H5header(this.raf, ncfile, this);
     headerParser.read(null);
 
@@ -139,8 +212,14 @@ public class H5iosp extends AbstractIOServiceProvider {
       assert vinfo.isChunked;
       ByteOrder bo = (vinfo.typeInfo.endian == 0) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
       layout = new H5tiledLayoutBB(v2, wantSection, raf, vinfo.mfp.getFilters(), bo);
+      H5chunkCache cache = chunkCache;
+      if (cache != null && lastModified != 0)
+        ((H5tiledLayoutBB) layout).setChunkCache(cache, lastModified, v2);
+      ExecutorService executor = chunkExecutor;
       if (vinfo.typeInfo.isVString) {
         data = readFilteredStringData((LayoutBB) layout);
+      } else if (executor != null && chunkMaxThreadsPerRead > 1 && raf.isLocalReadOnly()) { // needs positional reads
+        data = ((H5tiledLayoutBB) layout).readDataParallel(v2.getDataType(), vinfo.getFillValue(), executor, chunkMaxThreadsPerRead);
       } else{
         data = IospHelper.readDataFill((LayoutBB) layout, v2.getDataType(), vinfo.getFillValue());
       }
@@ -10,6 +10,7 @@ import ucar.ma2.DataType;
 import ucar.ma2.InvalidRangeException;
 import ucar.ma2.Section;
 import ucar.nc2.Variable;
+import ucar.nc2.iosp.IospHelper;
 import ucar.nc2.iosp.LayoutBB;
 import ucar.nc2.iosp.LayoutBBTiled;
 import ucar.nc2.util.IO;
@@ -18,8 +19,16 @@ import ucar.unidata.io.RandomAccessFile;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Iterator to read/write subsets of an array.
@@ -38,6 +47,7 @@ class H5tiledLayoutBB implements LayoutBB {
   static public boolean debugFilter = false;
 
   private LayoutBBTiled delegate;
+  private DataBTree.DataChunkIterator btreeIter;
 
   private RandomAccessFile raf;
   private H5header.Filter[] filters;
@@ -50,6 +60,11 @@ class H5tiledLayoutBB implements LayoutBB {
 
   private boolean debug = false;
 
+  // optional cache of unfiltered chunks
+  private H5chunkCache chunkCache;
+  private long lastModified;
+  private String varName;
+
   private int inflatebuffersize = DEFAULTZIPBUFFERSIZE;
 
   /**
@@ -91,8 +106,8 @@ class H5tiledLayoutBB implements LayoutBB {
     this.elemSize = vinfo.storageSize[vinfo.storageSize.length - 1]; // last one is always the elements size
 
     // create the data chunk iterator
-    DataBTree.DataChunkIterator iter = vinfo.btree.getDataChunkIteratorFilter(this.want);
-    DataChunkIterator dcIter = new DataChunkIterator(iter);
+    this.btreeIter = vinfo.btree.getDataChunkIteratorFilter(this.want);
+    DataChunkIterator dcIter = new DataChunkIterator(btreeIter);
     delegate = new LayoutBBTiled(dcIter, chunkSize, elemSize, this.want);
 
     if(System.getProperty(INFLATEBUFFERSIZE) != null)  {
@@ -112,6 +127,19 @@ class H5tiledLayoutBB implements LayoutBB {
     if (debug) System.out.println(" H5tiledLayout: " + this);
   }
 
+  /**
+   * Get the unfiltered chunks from the cache when possible, and put them there otherwise.
+   *
+   * @param chunkCache   shared cache of unfiltered chunks
+   * @param lastModified last modified time of the file when it was opened
+   * @param v2           the Variable being read
+   */
+  void setChunkCache(H5chunkCache chunkCache, long lastModified, Variable v2) {
+    this.chunkCache = chunkCache;
+    this.lastModified = lastModified;
+    this.varName = v2.getFullNameEscaped();
+  }
+
   public long getTotalNelems() {
     return delegate.getTotalNelems();
   }
@@ -196,12 +224,37 @@ class H5tiledLayoutBB implements LayoutBB {
       return offset;
     }
 
+    // may be called from the worker threads of readDataParallel()
     public ByteBuffer getByteBuffer() throws IOException {
+      byte[] data;
+      if (chunkCache == null) {
+        data = readAndUnfilter();
+      } else {
+        H5chunkCache.Key key = new H5chunkCache.Key(raf.getLocation(), lastModified, varName, delegate.offset);
+        data = chunkCache.get(key);
+        if (data == null) {
+          data = readAndUnfilter();
+          chunkCache.put(key, data);
+        }
+      }
+
+      ByteBuffer result = ByteBuffer.wrap(data);
+      result.order(byteOrder);
+      return result;
+    }
+
+    private byte[] readAndUnfilter() throws IOException {
       try {
         // read the data
         byte[] data = new byte[delegate.size];
-        raf.seek(delegate.filePos);
-        raf.readFully(data);
+        if (raf.isLocalReadOnly()) {
+          raf.readFullyAt(delegate.filePos, data, 0, data.length); // positional read, does not touch the file position
+        } else {
+          synchronized (raf) { // remote and in-memory files are read through their buffer
+            raf.seek(delegate.filePos);
+            raf.readFully(data);
+          }
+        }
 
       // apply filters backwards
       for (int i = filters.length - 1; i >= 0; i--) {
@@ -222,9 +275,7 @@ class H5tiledLayoutBB implements LayoutBB {
           throw new RuntimeException("Unknown filter type="+f.id);
       }
 
-        ByteBuffer result = ByteBuffer.wrap(data);
-        result.order(byteOrder);
-        return result;
+        return data;
       } catch (OutOfMemoryError e) {
         Error oom =  new OutOfMemoryError("Ran out of memory trying to read HDF5 filtered chunk. Either increase the " +
                 "JVM's heap size (use the -Xmx switch) or reduce the size of the dataset's chunks (use nccopy -c).");
@@ -317,5 +368,130 @@ class H5tiledLayoutBB implements LayoutBB {
 
   }
 
+  //////////////////////////////////////////////////////////////////////////////////
+  // parallel reading
+
+  /**
+   * Read the wanted section into a primitive array, decoding the chunks on a pool of worker threads.
+   * Each worker reads one chunk, applies the filters, and copies its part into the result.
+   * The chunks intersect disjoint parts of the wanted section, so the workers never write the same element,
+   * and the result is identical to IospHelper.readDataFill(this, dataType, fillValue).
+   *
+   * @param dataType  dataType of the variable
+   * @param fillValue fill value as a wrapped primitive, or null
+   * @param executor  run the chunk tasks on this
+   * @param maxThreads maximum number of chunks in flight at one time for this read
+   * @return primitive array with data read in
+   * @throws IOException on read error
+   */
+  Object readDataParallel(DataType dataType, Object fillValue, ExecutorService executor, int maxThreads) throws IOException {
+    long size = getTotalNelems();
+    if (dataType == DataType.STRUCTURE) size *= getElemSize();
+    final Object arr = (fillValue == null) ? IospHelper.makePrimitiveArray((int) size, dataType) :
+            IospHelper.makePrimitiveArray((int) size, dataType, fillValue);
+    final DataType copyType = (dataType == DataType.CHAR) ? DataType.BYTE : dataType; // convert to char at the end
+
+    Deque<Future<?>> inflight = new ArrayDeque<>();
+    AtomicBoolean stop = new AtomicBoolean(); // tasks that have not started yet return at once
+    try {
+      while (true) {
+        final DataBTree.DataChunk dc;
+        synchronized (raf) { // the btree nodes are read through the same raf as the chunks
+          if (!btreeIter.hasNext()) break;
+          dc = btreeIter.next();
+        }
+        final DataChunk chunk = new DataChunk(dc);
+        final int[] offset = chunk.getOffset();
+        if (!new Section(offset, chunkSize).intersects(want)) continue;
+
+        if (inflight.size() >= maxThreads) // bound the number of threads used by this read
+          waitFor(inflight.removeFirst());
+
+        inflight.addLast(executor.submit(() -> {
+          if (stop.get()) return null;
+          ByteBuffer bb = chunk.getByteBuffer();
+          LayoutBBTiled oneChunk = new LayoutBBTiled(new OneChunkIterator(offset, bb), chunkSize, elemSize, want);
+          IospHelper.readData(oneChunk, copyType, arr);
+          return null;
+        }));
+      }
+
+      while (!inflight.isEmpty())
+        waitFor(inflight.removeFirst());
+
+    } catch (InvalidRangeException e) {
+      throw new IllegalStateException(e);
+
+    } finally {
+      // On failure, let the running tasks finish rather than interrupt them: an interrupted FileChannel read closes
+      // the raf for all its users. Waiting also keeps them from using the raf after the caller may have closed it.
+      stop.set(true);
+      awaitQuietly(inflight);
+    }
+
+    return (dataType == DataType.CHAR) ? IospHelper.convertByteToChar((byte[]) arr) : arr;
+  }
+
+  private void waitFor(Future<?> f) throws IOException {
+    try {
+      f.get();
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("H5tiledLayoutBB read interrupted");
+
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) throw (IOException) cause;
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new IOException(cause);
+    }
+  }
+
+  // wait for the tasks to finish, ignoring their failures and interrupts
+  private void awaitQuietly(Deque<Future<?>> inflight) {
+    boolean interrupted = false;
+    while (!inflight.isEmpty()) {
+      try {
+        inflight.peekFirst().get();
+        inflight.removeFirst();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      } catch (ExecutionException | CancellationException e) {
+        inflight.removeFirst();
+      }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+  }
+
+  // a single chunk that has already been read and unfiltered
+  private static class OneChunkIterator implements LayoutBBTiled.DataChunkIterator, LayoutBBTiled.DataChunk {
+    private final int[] offset;
+    private final ByteBuffer bb;
+    private boolean done;
+
+    OneChunkIterator(int[] offset, ByteBuffer bb) {
+      this.offset = offset;
+      this.bb = bb;
+    }
+
+    public boolean hasNext() {
+      return !done;
+    }
+
+    public LayoutBBTiled.DataChunk next() {
+      done = true;
+      return this;
+    }
+
+    public int[] getOffset() {
+      return offset;
+    }
+
+    public ByteBuffer getByteBuffer() {
+      return bb;
+    }
+  }
 
 }
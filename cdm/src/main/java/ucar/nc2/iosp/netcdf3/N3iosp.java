@@ -496,21 +496,57 @@ public abstract class N3iosp extends AbstractIOServiceProvider implements IOServ
     // note dependency on raf; should probably defer to subclass
     // loop over records
     byte[] result = structureArray.getByteBuffer().array();
+    if (isReadPositional() && recordRange.stride() == 1) { // positional reads, safe for concurrent readers
+      readRecordsAt(recordRange.first(), recordRange.length(), result, 0);
+      return structureArray;
+    }
+
     int count = 0;
     for (int recnum : recordRange) {
       if (debugRecord) System.out.println(" read record " + recnum);
-      raf.seek(header.recStart + recnum * header.recsize); // where the record starts
+      long recPos = header.recStart + recnum * header.recsize; // where the record starts
+      int destPos = (int) (count * header.recsize);
 
-      if (recnum != header.numrecs - 1)
-        raf.readFully(result, (int) (count * header.recsize), (int) header.recsize);
-      else
-        raf.read(result, (int) (count * header.recsize), (int) header.recsize); // "wart" allows file to be one byte short. since its always padding, we allow
+      if (isReadPositional()) {
+        readRecordsAt(recnum, 1, result, destPos);
+      } else {
+        raf.seek(recPos);
+        if (recnum != header.numrecs - 1)
+          raf.readFully(result, destPos, (int) header.recsize);
+        else
+          raf.read(result, destPos, (int) header.recsize); // "wart" allows file to be one byte short. since its always padding, we allow
+      }
       count++;
     }
 
     return structureArray;
   }
 
+  /**
+   * Is data read with positional reads, so that one open file can be read by many threads at once?
+   * Only for local files opened read-only: remote files are read through the RandomAccessFile buffer.
+   *
+   * @return true if data is read with positional reads
+   */
+  public boolean isReadPositional() {
+    return (raf != null) && raf.isLocalReadOnly();
+  }
+
+  // contiguous records in one positional read
+  private void readRecordsAt(int first, int nrecs, byte[] result, int destPos) throws IOException {
+    if (nrecs == 0) return;
+    long recPos = header.recStart + first * header.recsize;
+    int len = (int) (nrecs * header.recsize);
+    if (first + nrecs != header.numrecs) {
+      raf.readFullyAt(recPos, result, destPos, len);
+    } else { // "wart" allows the last record to be short, see below
+      int lastSize = (int) header.recsize;
+      if (len > lastSize)
+        raf.readFullyAt(recPos, result, destPos, len - lastSize);
+      raf.readAt(recPos + len - lastSize, result, destPos + len - lastSize, lastSize);
+    }
+  }
+
   /**
    * Read data from record structure, that has been subsetted.
    * Read one record at at time, put requested variable into ArrayStructureMA.
@@ -834,7 +870,7 @@ public abstract class N3iosp extends AbstractIOServiceProvider implements IOServ
     }
   }
 
-  private Array makeConstantArray(Variable v) {
+  static Array makeConstantArray(Variable v) {
     Class classType = v.getDataType().getPrimitiveClassType();
     //int [] shape = v.getShape();
     Attribute att = v.findAttribute(CDM.FILL_VALUE);
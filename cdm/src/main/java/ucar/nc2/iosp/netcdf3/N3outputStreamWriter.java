@@ -27,6 +27,16 @@ public class N3outputStreamWriter extends N3streamWriter {
     super(ncfile);
   }
 
+  /**
+   * Write the header and non-record data of a root group, eg one that a NetcdfFileWriter is still defining.
+   * Use writeNonRecordData() or writeNonRecordFill(); writeDataAll() needs a NetcdfFile.
+   *
+   * @param root the root group
+   */
+  public N3outputStreamWriter(Group root) {
+    super(root);
+  }
+
   //////////////////////////////////////////////////////////////////////////////////////////////////
 
   public void writeDataAll(DataOutputStream stream) throws IOException {
@@ -89,6 +99,8 @@ public class N3outputStreamWriter extends N3streamWriter {
     if (debugWriteData)
       System.out.println("Write " + v.getFullName() + " at filePos= " + filePos + " vinfo.offset= " + vinfo.offset);
     if (filePos != vinfo.offset) throw new IllegalStateException();
+    if (data.getSize() != v.getSize())
+      throw new IllegalArgumentException("Variable " + v.getFullName() + " has size " + v.getSize() + " but data has size " + data.getSize());
 
     filePos += writeData(v, stream, data);
     if (vinfo.pad > 0) {
@@ -98,6 +110,17 @@ public class N3outputStreamWriter extends N3streamWriter {
     }
   }
 
+  /**
+   * Write a non-record variable that has no data, using its _FillValue attribute or the default fill value.
+   *
+   * @param v      write this variable
+   * @param stream to this stream
+   * @throws IOException on write error
+   */
+  public void writeNonRecordFill(Variable v, DataOutputStream stream) throws IOException {
+    writeNonRecordData(v, stream, N3iosp.makeConstantArray(v));
+  }
+
   private int recno = 0;
   private boolean first = true;
 
@@ -9,6 +9,7 @@ import ucar.nc2.constants.CDM;
 import ucar.nc2.iosp.Layout;
 import ucar.nc2.iosp.IospHelper;
 
+import java.nio.ByteOrder;
 import java.nio.channels.WritableByteChannel;
 
 
@@ -27,11 +28,14 @@ public class N3raf extends N3iosp  {
 
   /**
    * Read data subset from file for a variable, create primitive array.
+   * Local files opened read-only use positional reads, so one open file can be read by many threads at once.
    * @param index handles skipping around in the file.
    * @param dataType dataType of the variable
    * @return primitive array with data read in
    */
  protected Object readData( Layout index, DataType dataType) throws java.io.IOException {
+   if (isReadPositional())
+     return IospHelper.readDataFillPositional(raf, index, dataType, null, ByteOrder.BIG_ENDIAN);
    return IospHelper.readDataFill(raf, index, dataType, null, -1);
  }
 
@@ -26,16 +26,47 @@ import java.io.DataOutputStream;
 public abstract class N3streamWriter {
 
   ////////////////////////////////////////////////////////////////////////////////////////////////////////
-  protected ucar.nc2.NetcdfFile ncfile;
+  protected ucar.nc2.NetcdfFile ncfile; // null if made from a Group
+  protected Group root;                 // the dimensions, attributes and variables to write
   protected Map<Variable,Vinfo> vinfoMap = new HashMap<Variable,Vinfo>();
   protected List<Vinfo> vinfoList = new ArrayList<Vinfo>(); // output order of the variables
-  protected boolean debug=false, debugPos=true, debugWriteData = false;
-  protected int recStart, recSize;
+  protected boolean debug=false, debugPos=false, debugWriteData = false;
+  protected long recStart, recSize;
   protected boolean usePadding = true;
+  protected boolean largeFile = false;
   protected long filePos = 0;
 
   protected N3streamWriter(ucar.nc2.NetcdfFile ncfile) {
     this.ncfile = ncfile;
+    this.root = ncfile.getRootGroup();
+  }
+
+  /**
+   * Write the contents of a root group that need not belong to a finished NetcdfFile,
+   * eg one that a NetcdfFileWriter is still defining.
+   *
+   * @param root the root group
+   */
+  protected N3streamWriter(Group root) {
+    this.root = root;
+  }
+
+  /**
+   * Use the 64-bit offset format, needed when the variable data starts beyond 2 GB. Call before writeHeader().
+   *
+   * @param largeFile true for 64-bit offset format
+   */
+  public void setLargeFile(boolean largeFile) {
+    this.largeFile = largeFile;
+  }
+
+  /**
+   * The size of the file, if there are no record variables. Call after writeHeader().
+   *
+   * @return file size in bytes
+   */
+  public long getFileSize() {
+    return recStart;
   }
 
   /**
@@ -48,14 +79,18 @@ public abstract class N3streamWriter {
   public void writeHeader(DataOutputStream stream, int numrec) throws IOException {
 
     // make sure ncfile structures were finished
-    ncfile.finish();
+    if (ncfile != null)
+      ncfile.finish();
 
     // magic number
-    stream.write(N3header.MAGIC);
+    stream.write(largeFile ? N3header.MAGIC_LONG : N3header.MAGIC);
     int count = N3header.MAGIC.length;
 
     // numrecs
-    Dimension udim = ncfile.getUnlimitedDimension();
+    Dimension udim = null;
+    for (Dimension dim : root.getDimensions()) {
+      if (dim.isUnlimited()) udim = dim;
+    }
     if (numrec < 0) {
       numrec = (udim == null) ? 0 : -1; // -1 means "streaming" - calc numrec through file length
     }
@@ -63,7 +98,7 @@ public abstract class N3streamWriter {
     count += 4;
 
     // dims
-    List dims = ncfile.getDimensions();
+    List<Dimension> dims = root.getDimensions();
     int numdims = dims.size();
     if (numdims == 0) {
       stream.writeInt(0);
@@ -75,19 +110,19 @@ public abstract class N3streamWriter {
     count += 8;
 
     for (int i = 0; i < numdims; i++) {
-      Dimension dim = (Dimension) dims.get(i);
+      Dimension dim = dims.get(i);
       count += writeString(stream, N3iosp.makeValidNetcdfObjectName( dim.getShortName()));
       stream.writeInt(dim.isUnlimited() ? 0 : dim.getLength());
       count += 4;
     }
 
     // global attributes
-    count += writeAtts(stream, ncfile.getGlobalAttributes());
+    count += writeAtts(stream, root.getAttributes());
 
     if (debug) System.out.println("vars header starts at "+count);
 
     // variables
-    List<Variable> vars = ncfile.getVariables();
+    List<Variable> vars = root.getVariables();
     int nvars = vars.size();
     if (nvars == 0) {
       stream.writeInt(0);
@@ -118,7 +153,7 @@ public abstract class N3streamWriter {
 
     // now calculate where things go
     int dataStart = count; // data starts right after the header
-    int offset = dataStart; // track data offset
+    long offset = dataStart; // track data offset
     if (debug) System.out.println(" non-record vars start at "+dataStart);
 
     // do all non-record variables first
@@ -163,12 +198,12 @@ public abstract class N3streamWriter {
     if (debugPos) System.out.println("header written filePos= " + filePos+" recsize= "+recSize);
   }
 
-  private Vinfo writeVar(DataOutputStream stream, Variable var, int offset) throws IOException {
+  private Vinfo writeVar(DataOutputStream stream, Variable var, long offset) throws IOException {
     int hsize = 0;
     hsize += writeString(stream, N3iosp.makeValidNetcdfObjectName( var.getShortName()));
 
     // dimensions
-    int vsize = var.getDataType().getSize();
+    long vsize = var.getDataType().getSize();
     List<Dimension> dims = var.getDimensions();
     if (null != stream) stream.writeInt(dims.size());
     hsize += 4;
@@ -183,6 +218,8 @@ public abstract class N3streamWriter {
     }
     int pad =  (usePadding) ? N3header.padding(vsize) : 0;
     vsize += pad;
+    if (!largeFile && offset > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Variable starting pos=" + offset + " may not exceed " + Integer.MAX_VALUE);
 
     // variable attributes
     hsize += writeAtts(stream, var.getAttributes());
@@ -191,10 +228,13 @@ public abstract class N3streamWriter {
     int type = N3header.getType(var.getDataType());
     if (null != stream) {
       stream.writeInt(type);
-      stream.writeInt(vsize);
-      stream.writeInt(offset);
+      stream.writeInt((vsize < 0x00000000ffffffffL) ? (int) vsize : -1);
+      if (largeFile)
+        stream.writeLong(offset);
+      else
+        stream.writeInt((int) offset);
     }
-    hsize += 12;
+    hsize += largeFile ? 16 : 12;
 
     //if (debug) out.println(" name= "+name+" type="+type+" vsize="+vsize+" begin= "+begin+" isRecord="+isRecord+"\n");
     return new Vinfo(var, hsize, vsize, offset, pad, var.isUnlimited());
@@ -289,9 +329,9 @@ public abstract class N3streamWriter {
   }
 
   private int findDimensionIndex(Dimension wantDim) {
-    List dims = ncfile.getDimensions();
+    List<Dimension> dims = root.getDimensions();
     for (int i = 0; i < dims.size(); i++) {
-      Dimension dim = (Dimension) dims.get(i);
+      Dimension dim = dims.get(i);
       if (dim.equals(wantDim)) return i;
     }
     throw new IllegalStateException("unknown Dimension == " + wantDim);
@@ -311,12 +351,12 @@ public abstract class N3streamWriter {
   static protected class Vinfo {
     Variable v;
     int hsize; // header size
-    int vsize; // size of array in bytes. if isRecord, size per record. includes padding
-    int offset; // offset of start of data from start of file
+    long vsize; // size of array in bytes. if isRecord, size per record. includes padding
+    long offset; // offset of start of data from start of file
     int pad; // number of padding bytes
     boolean isRecord; // is it a record variable?
 
-    Vinfo(Variable v, int hsize, int vsize, int offset, int pad, boolean isRecord) {
+    Vinfo(Variable v, int hsize, long vsize, long offset, int pad, boolean isRecord) {
       this.v = v;
       this.hsize = hsize;
       this.vsize = vsize;
@@ -328,4 +368,4 @@ public abstract class N3streamWriter {
     public String toString() { return v.getFullName()+" vsize= "+vsize+" pad="+pad; }
   }
 
-}
\ No newline at end of file
+}
\ No newline at end of file
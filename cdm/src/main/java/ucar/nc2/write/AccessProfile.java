@@ -0,0 +1,484 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.write;
+
+import ucar.ma2.Range;
+import ucar.nc2.Dimension;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * How the variables of a kind of dataset are read: a list of access patterns, each with a weight.
+ * A pattern is the number of indices that a typical request reads along each dimension, by dimension name.
+ * The profile can be declared in a text file, or recorded from the requests a server gets (see startRecording()).
+ * A profile may be shared by any number of threads.
+ * <p>
+ * The text form has one pattern per line: the weight, the variable name, then dimension=count for each dimension
+ * that is read at more than one index. "all" is the whole dimension. The variable name * applies to variables that have
+ * no patterns of their own. For example, mostly time series at a point, sometimes a map:
+ * <pre>
+ *   # weight variable dimensions
+ *   90 * time=all
+ *   10 * lat=all lon=all
+ * </pre>
+ *
+ * @see Nc4ChunkingStrategyProfile
+ */
+public class AccessProfile {
+  static private final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(AccessProfile.class);
+
+  public static final String ANY_VARIABLE = "*";
+  public static final int ALL = -1;
+
+  /**
+   * Read a profile from a text file.
+   *
+   * @param filename the text file
+   * @return the profile
+   * @throws IOException on read error
+   * @throws IllegalArgumentException if a line cant be parsed
+   */
+  public static AccessProfile read(String filename) throws IOException {
+    try (Reader reader = new InputStreamReader(new FileInputStream(filename), StandardCharsets.UTF_8)) {
+      return read(reader);
+    }
+  }
+
+  /**
+   * Read a profile in text form.
+   *
+   * @param reader read from here
+   * @return the profile
+   * @throws IOException on read error
+   * @throws IllegalArgumentException if a line cant be parsed
+   */
+  public static AccessProfile read(Reader reader) throws IOException {
+    AccessProfile profile = new AccessProfile();
+    BufferedReader in = new BufferedReader(reader);
+    String line;
+    int lineno = 0;
+    while ((line = in.readLine()) != null) {
+      lineno++;
+      int pos = line.indexOf('#');
+      if (pos >= 0) line = line.substring(0, pos);
+      String[] tokens = line.trim().split("\\s+");
+      if (tokens.length == 1 && tokens[0].isEmpty()) continue;
+      if (tokens.length < 2)
+        throw new IllegalArgumentException("AccessProfile line " + lineno + ": need a weight and a variable name");
+
+      try {
+        double weight = Double.parseDouble(tokens[0]);
+        Map<String, Integer> counts = new TreeMap<>();
+        for (int i = 2; i < tokens.length; i++) {
+          int eq = tokens[i].indexOf('=');
+          if (eq <= 0) throw new IllegalArgumentException("expected dimension=count, got " + tokens[i]);
+          String value = tokens[i].substring(eq + 1);
+          int count = value.equalsIgnoreCase("all") ? ALL : Integer.parseInt(value);
+          if (count == 0 || count < ALL) throw new IllegalArgumentException("illegal count " + tokens[i]);
+          counts.put(tokens[i].substring(0, eq), count);
+        }
+        profile.add(tokens[1], counts, weight);
+
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("AccessProfile line " + lineno + ": " + e.getMessage());
+      }
+    }
+    return profile;
+  }
+
+  /////////////////////////////////////////////////////////////////////////////////
+  // recording
+
+  public static final int MAX_RECORDED_FAMILIES = 100;
+  public static final int MAX_RECORDED_PATTERNS = 1000;  // per family
+
+  // runs of 4 or more digits (dates, times, run numbers), and path elements that are all digits (yyyy/mm/dd directories)
+  private static final java.util.regex.Pattern familyDigits = java.util.regex.Pattern.compile("(?<![^/])\\d+(?![^/])|\\d{4,}");
+
+  private static volatile Recorder recorder;
+
+  /**
+   * Record the requests passed to recordAccess(), one profile for each dataset family, kept in a file in dir
+   * (see getRecordingFile()). If a family's file exists, its requests are added to the profile in it.
+   * At most MAX_RECORDED_FAMILIES families and MAX_RECORDED_PATTERNS patterns per family are recorded; requests past
+   * that are not recorded.
+   *
+   * @param dir              keep the profiles in this directory
+   * @param saveEveryMinutes save the profiles that have changed this often; 0 to save only on saveRecording()
+   *                         and stopRecording()
+   * @throws IOException if dir is not a directory and cant be made
+   */
+  public static synchronized void startRecording(File dir, int saveEveryMinutes) throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs())
+      throw new IOException("Cant make directory " + dir);
+    stopRecording();
+    Recorder r = new Recorder(dir);
+    if (saveEveryMinutes > 0) {
+      long period = saveEveryMinutes * 60L * 1000L;
+      r.timer = new Timer("AccessProfile", true);
+      r.timer.scheduleAtFixedRate(new SaveTask(r), period, period);
+    }
+    recorder = r;
+  }
+
+  /**
+   * Add a request to the recorded profile of the variable's dataset family, if startRecording() has been called.
+   *
+   * @param v      the variable read
+   * @param ranges the ranges read, in the order of its dimensions; a null list or null Range is the whole dimension
+   * @see #getFamily(String)
+   */
+  public static void recordAccess(Variable v, List<Range> ranges) {
+    Recorder r = recorder;
+    if (r == null) return;
+    NetcdfFile ncfile = v.getNetcdfFile();
+    String location = (ncfile == null) ? null : ncfile.getLocation();
+    if (location != null)
+      r.record(getFamily(location), v, ranges);
+  }
+
+  /**
+   * Add a request to the recorded profile of a dataset family, if startRecording() has been called.
+   *
+   * @param family the dataset family
+   * @param v      the variable read
+   * @param ranges the ranges read, in the order of its dimensions; a null list or null Range is the whole dimension
+   */
+  public static void recordAccess(String family, Variable v, List<Range> ranges) {
+    Recorder r = recorder;
+    if (r != null)
+      r.record(family, v, ranges);
+  }
+
+  /**
+   * The family of a dataset: its location with the dates and times taken out, so that the files of a collection
+   * make one family. Runs of 4 or more digits, and path elements that are all digits, are replaced by #.
+   *
+   * @param location dataset location
+   * @return the family
+   */
+  public static String getFamily(String location) {
+    return familyDigits.matcher(location.replace('\\', '/')).replaceAll("#");
+  }
+
+  /**
+   * The file that a family's recorded profile is kept in.
+   *
+   * @param dir    the directory passed to startRecording()
+   * @param family the dataset family
+   * @return the file, named from the last element of the family
+   */
+  public static File getRecordingFile(File dir, String family) {
+    String name = family.substring(family.lastIndexOf('/') + 1).replaceAll("[^A-Za-z0-9._-]", "_");
+    return new File(dir, String.format("%s-%08x.txt", name, family.hashCode()));
+  }
+
+  /**
+   * Write the recorded profiles that have changed since they were last saved.
+   */
+  public static synchronized void saveRecording() throws IOException {
+    Recorder r = recorder;
+    if (r != null) r.save();
+  }
+
+  /**
+   * Save and stop recording.
+   */
+  public static synchronized void stopRecording() {
+    Recorder r = recorder;
+    if (r == null) return;
+    recorder = null;
+    if (r.timer != null) r.timer.cancel();
+    try {
+      r.save();
+    } catch (IOException e) {
+      log.error("AccessProfile cant save to " + r.dir, e);
+    }
+  }
+
+  private static class Recorder {
+    private final File dir;
+    private final Map<String, AccessProfile> families = new ConcurrentHashMap<>(); // family, profile
+    private Timer timer;
+    private volatile boolean full;
+
+    Recorder(File dir) {
+      this.dir = dir;
+    }
+
+    void record(String family, Variable v, List<Range> ranges) {
+      AccessProfile profile = families.get(family);
+      if (profile == null) {
+        if (families.size() >= MAX_RECORDED_FAMILIES) {
+          if (!full) log.warn("AccessProfile is recording {} families, not recording {}", families.size(), family);
+          full = true;
+          return;
+        }
+        profile = families.computeIfAbsent(family, this::load);
+      }
+      profile.record(v, ranges, MAX_RECORDED_PATTERNS);
+    }
+
+    private AccessProfile load(String family) {
+      File file = getRecordingFile(dir, family);
+      if (file.exists()) {
+        try {
+          return read(file.getPath());
+        } catch (IOException | IllegalArgumentException e) {
+          log.warn("AccessProfile cant read " + file + ", starting over", e);
+        }
+      }
+      return new AccessProfile();
+    }
+
+    // synchronized by saveRecording(), stopRecording() and SaveTask
+    void save() throws IOException {
+      IOException failed = null;
+      for (Map.Entry<String, AccessProfile> entry : families.entrySet()) {
+        AccessProfile profile = entry.getValue();
+        if (!profile.modified) continue;
+        profile.modified = false;  // before writing, so requests recorded while writing are saved next time
+        try {
+          save(entry.getKey(), profile);
+        } catch (IOException e) {
+          profile.modified = true;
+          failed = e;
+        }
+      }
+      if (failed != null) throw failed;
+    }
+
+    private void save(String family, AccessProfile profile) throws IOException {
+      File file = getRecordingFile(dir, family);
+      File tmp = new File(file.getPath() + ".tmp");
+      try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+        writer.write("# family " + family + System.lineSeparator());
+        profile.write(writer);
+      }
+      if (!tmp.renameTo(file)) {  // Windows wont rename onto an existing file
+        if (!file.delete() || !tmp.renameTo(file))
+          throw new IOException("Cant rename " + tmp + " to " + file);
+      }
+    }
+  }
+
+  private static class SaveTask extends TimerTask {
+    private final Recorder r;
+
+    SaveTask(Recorder r) {
+      this.r = r;
+    }
+
+    @Override
+    public void run() {
+      synchronized (AccessProfile.class) {
+        if (recorder != r) return;  // stopped
+        try {
+          r.save();
+        } catch (IOException e) {
+          log.error("AccessProfile cant save to " + r.dir, e);
+        }
+      }
+    }
+  }
+
+  /////////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * Number of indices read along each named dimension, for one variable or all of them.
+   */
+  public static class Pattern {
+    private final String varName;
+    private final Map<String, Integer> counts; // dimension name, count or ALL
+    private final DoubleAdder weight = new DoubleAdder();
+
+    private Pattern(String varName, Map<String, Integer> counts) {
+      this.varName = varName;
+      this.counts = Collections.unmodifiableMap(new TreeMap<>(counts));
+    }
+
+    public String getVariableName() {
+      return varName;
+    }
+
+    public double getWeight() {
+      return weight.sum();
+    }
+
+    /**
+     * @return the number of indices read along the named dimension: 1 if not listed, or ALL
+     */
+    public int getCount(String dimName) {
+      Integer count = counts.get(dimName);
+      return (count == null) ? 1 : count;
+    }
+
+    /**
+     * The number of indices read along each dimension, no more than its length.
+     *
+     * @param dims  dimensions of the variable
+     * @param shape their lengths
+     * @return the counts, same rank as shape
+     */
+    public int[] getCounts(List<Dimension> dims, int[] shape) {
+      int[] result = new int[shape.length];
+      for (int i = 0; i < shape.length; i++) {
+        String name = dims.get(i).getShortName();
+        int count = (name == null) ? 1 : getCount(name);
+        result[i] = (count == ALL) ? shape[i] : Math.min(count, shape[i]);
+      }
+      return result;
+    }
+
+    private String key() {
+      return key(varName, counts);
+    }
+
+    private static String key(String varName, Map<String, Integer> counts) {
+      StringBuilder sb = new StringBuilder(varName);
+      for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+        int count = entry.getValue();
+        sb.append(' ').append(entry.getKey()).append('=').append(count == ALL ? "all" : Integer.toString(count));
+      }
+      return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+      return getWeight() + " " + key();
+    }
+  }
+
+  private final Map<String, Pattern> patterns = new ConcurrentHashMap<>(); // key, pattern
+  private volatile boolean modified;  // since last saved by the Recorder
+
+  /**
+   * Add a pattern, or add to the weight of the same pattern.
+   *
+   * @param varName variable short name, or ANY_VARIABLE
+   * @param counts  dimension name, count or ALL; the count is 1 for dimensions that are not listed
+   * @param weight  relative weight
+   */
+  public void add(String varName, Map<String, Integer> counts, double weight) {
+    add(varName, counts, weight, Integer.MAX_VALUE);
+  }
+
+  // a new pattern is dropped if there are already maxPatterns
+  private void add(String varName, Map<String, Integer> counts, double weight, int maxPatterns) {
+    Map<String, Integer> listed = new TreeMap<>();
+    for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+      if (entry.getValue() != 1)
+        listed.put(entry.getKey(), entry.getValue());
+    }
+
+    String key = Pattern.key(varName, listed);
+    Pattern p = patterns.get(key);
+    if (p == null) {
+      if (patterns.size() >= maxPatterns) return;
+      p = patterns.computeIfAbsent(key, k -> new Pattern(varName, listed));
+    }
+    p.weight.add(weight);
+    modified = true;
+  }
+
+  /**
+   * Add one request. The count along each dimension is the distance from the first to the last index read, rounded up
+   * to a power of 2 so that similar requests make one pattern, or ALL if the request spans the whole dimension.
+   *
+   * @param v      the variable read
+   * @param ranges the ranges read, in the order of its dimensions; a null list or null Range is the whole dimension
+   */
+  public void record(Variable v, List<Range> ranges) {
+    record(v, ranges, Integer.MAX_VALUE);
+  }
+
+  private void record(Variable v, List<Range> ranges, int maxPatterns) {
+    Map<String, Integer> counts = new TreeMap<>();
+    int[] shape = v.getShape();
+    for (int i = 0; i < shape.length; i++) {
+      String name = v.getDimension(i).getShortName();
+      if (name == null) continue;  // anonymous
+      Range r = (ranges == null) ? null : ranges.get(i);
+      if (r != null && r.length() == 0) return;  // nothing read
+      int span = (r == null) ? shape[i] : r.last() - r.first() + 1;
+      if (span >= shape[i])
+        counts.put(name, ALL);
+      else if (span > 1)
+        counts.put(name, Math.min(Integer.highestOneBit(span - 1) << 1, shape[i]));
+    }
+    add(v.getShortName(), counts, 1, maxPatterns);
+  }
+
+  /**
+   * @return all the patterns, sorted by variable name and counts
+   */
+  public List<Pattern> getPatterns() {
+    List<Pattern> result = new ArrayList<>(patterns.values());
+    result.sort(Comparator.comparing(Pattern::key));
+    return result;
+  }
+
+  /**
+   * The patterns that apply to a variable: those with its name, or if there are none, those for ANY_VARIABLE.
+   *
+   * @param v the variable
+   * @return the patterns, may be empty
+   */
+  public List<Pattern> getPatterns(Variable v) {
+    List<Pattern> all = getPatterns();
+    List<Pattern> result = new ArrayList<>();
+    for (Pattern p : all) {
+      if (p.varName.equals(v.getShortName())) result.add(p);
+    }
+    if (result.isEmpty()) {
+      for (Pattern p : all) {
+        if (p.varName.equals(ANY_VARIABLE)) result.add(p);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Write the profile in text form, largest weight first.
+   *
+   * @param writer write to here
+   * @throws IOException on write error
+   */
+  public void write(Writer writer) throws IOException {
+    List<Pattern> sorted = getPatterns();
+    Map<Pattern, Double> weights = new HashMap<>();  // the weights as of now, they may be added to while sorting
+    for (Pattern p : sorted) weights.put(p, p.getWeight());
+    sorted.sort((p1, p2) -> Double.compare(weights.get(p2), weights.get(p1)));  // stable, so ties are by key
+
+    PrintWriter pw = new PrintWriter(writer);
+    pw.println("# weight variable dimension=count; unlisted dimensions have count 1");
+    for (Pattern p : sorted) {
+      double w = weights.get(p);
+      String weight = (w == Math.rint(w)) ? Long.toString((long) w) : Double.toString(w);
+      pw.println(weight + " " + p.key());
+    }
+    pw.flush();
+    if (pw.checkError())
+      throw new IOException("AccessProfile write failed");
+  }
+
+  @Override
+  public String toString() {
+    StringWriter sw = new StringWriter();
+    try {
+      write(sw);
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // cant happen
+    }
+    return sw.toString();
+  }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.write;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterDescription;
+import com.beust.jcommander.ParameterException;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.nc2.*;
+import ucar.nc2.dataset.NetcdfDataset;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Report the predicted and measured cost of the reads in an AccessProfile, for each chunking strategy.
+ * The prediction is the cost model of Nc4ChunkingStrategyProfile: the bytes of the chunks touched, plus an overhead
+ * per chunk. The measurement copies the input to netCDF-4 with each strategy, then times reads drawn from the profile.
+ * Measured times include the operating system and chunk caches, so they are best compared between strategies rather
+ * than taken as absolute.
+ */
+public class ChunkingCostReport {
+
+  private static class CommandLine {
+    @Parameter(names = {"-i", "--input"}, description = "Input dataset.", required = true)
+    public File inputFile;
+
+    @Parameter(names = {"-ap", "--accessProfile"}, description = "Access profile: weighted read patterns, " +
+            "one per line, like '90 * time=all'.", required = true)
+    public File profileFile;
+
+    @Parameter(names = {"-st", "--strategies"}, description = "Comma separated chunking strategies to compare. " +
+            "Allowed values = [standard, grib, none, profile]")
+    public String strategies = "standard,grib,profile";
+
+    @Parameter(names = {"-co", "--chunkOverhead"}, description = "Cost of reading a chunk, in bytes, on top of its size.")
+    public int chunkOverhead = 64 * 1000;
+
+    @Parameter(names = {"-m", "--measure"}, description = "Write a netCDF-4 copy with each strategy and time the reads. " +
+            "Needs the netCDF-C library.")
+    public boolean measure = false;
+
+    @Parameter(names = {"-n", "--nreads"}, description = "Number of reads to time for each variable.")
+    public int nreads = 100;
+
+    @Parameter(names = {"-o", "--outputDir"}, description = "Directory for the netCDF-4 copies. Default is the " +
+            "temporary directory; the copies are deleted.")
+    public File outputDir;
+
+    @Parameter(names = {"-d", "--deflateLevel"}, description = "Compression level of the copies.")
+    public int deflateLevel = 5;
+
+    @Parameter(names = {"-sh", "--shuffle"}, description = "Enable the shuffle filter in the copies.")
+    public boolean shuffle = true;
+
+    @Parameter(names = {"-h", "--help"}, description = "Display this help and exit", help = true)
+    public boolean help = false;
+
+    private static class ParameterDescriptionComparator implements Comparator<ParameterDescription> {
+      // Display parameters in this order in the usage information.
+      private final List<String> orderedParamNames = Arrays.asList(
+              "--input", "--accessProfile", "--strategies", "--chunkOverhead", "--measure", "--nreads", "--outputDir",
+              "--deflateLevel", "--shuffle", "--help");
+
+      @Override
+      public int compare(ParameterDescription p0, ParameterDescription p1) {
+        int index0 = orderedParamNames.indexOf(p0.getLongestName());
+        int index1 = orderedParamNames.indexOf(p1.getLongestName());
+        assert index0 >= 0 : "Unexpected parameter name: " + p0.getLongestName();
+        assert index1 >= 0 : "Unexpected parameter name: " + p1.getLongestName();
+
+        return Integer.compare(index0, index1);
+      }
+    }
+
+    private final JCommander jc;
+
+    public CommandLine(String progName, String[] args) throws ParameterException {
+      this.jc = new JCommander(this, args);  // Parses args and uses them to initialize *this*.
+      jc.setProgramName(progName);           // Displayed in the usage information.
+      jc.setParameterDescriptionComparator(new ParameterDescriptionComparator());
+    }
+
+    public void printUsage() {
+      jc.usage();
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////
+
+  private final NetcdfFile ncfile;
+  private final Nc4ChunkingStrategyProfile costModel;
+  private final Map<String, Nc4Chunking> strategies = new LinkedHashMap<>();
+
+  /**
+   * @param ncfile     the dataset to chunk
+   * @param profile    how it is read
+   * @param strategies names of the strategies to compare: Nc4Chunking.Strategy names, or "profile"
+   * @param deflateLevel compression level
+   * @param shuffle    use the shuffle filter
+   */
+  public ChunkingCostReport(NetcdfFile ncfile, AccessProfile profile, List<String> strategies, int deflateLevel, boolean shuffle) {
+    this.ncfile = ncfile;
+    this.costModel = Nc4ChunkingStrategyProfile.factory(profile, ncfile, deflateLevel, shuffle);
+    for (String name : strategies) {
+      name = name.trim();
+      if (name.equals("profile"))
+        this.strategies.put(name, costModel);
+      else
+        this.strategies.put(name, Nc4ChunkingStrategy.factory(Nc4Chunking.Strategy.valueOf(name), deflateLevel, shuffle));
+    }
+  }
+
+  public Nc4ChunkingStrategyProfile getCostModel() {
+    return costModel;
+  }
+
+  // the variables that the profile has patterns for
+  private List<Variable> getProfiledVariables() {
+    List<Variable> result = new ArrayList<>();
+    for (Variable v : ncfile.getVariables()) {
+      if (v.getRank() > 0 && !(v instanceof Structure) && !costModel.getProfile().getPatterns(v).isEmpty())
+        result.add(v);
+    }
+    return result;
+  }
+
+  private long[] getChunking(Nc4Chunking chunker, Variable v) {
+    return chunker.isChunked(v) ? chunker.computeChunking(v) : null;
+  }
+
+  /**
+   * The chunking and predicted cost of each variable in the profile, for each strategy.
+   *
+   * @param f write the report here
+   * @return strategy name, predicted bytes per read over all variables
+   */
+  public Map<String, Double> predict(Formatter f) {
+    Map<String, Double> totals = new LinkedHashMap<>();
+    double totalWeight = 0;
+    for (Variable v : getProfiledVariables()) {
+      double weight = 0;
+      for (AccessProfile.Pattern p : costModel.getProfile().getPatterns(v))
+        weight += p.getWeight();
+      totalWeight += weight;
+
+      f.format("%s%n", v.getNameAndDimensions());
+      for (Map.Entry<String, Nc4Chunking> entry : strategies.entrySet()) {
+        long[] chunking = getChunking(entry.getValue(), v);
+        double cost = costModel.expectedCost(v, chunking);
+        f.format("  %-10s %-24s predicted %12.1f Kbytes/read%n", entry.getKey(),
+                chunking == null ? "contiguous" : Arrays.toString(chunking), cost / 1000);
+        totals.merge(entry.getKey(), weight * cost, Double::sum);
+      }
+    }
+
+    for (Map.Entry<String, Double> entry : totals.entrySet())
+      entry.setValue(totalWeight == 0 ? 0 : entry.getValue() / totalWeight);
+    return totals;
+  }
+
+  /**
+   * Copy the file to netCDF-4 with each strategy, and time nreads reads drawn from the profile for each variable.
+   *
+   * @param dir    write the copies here
+   * @param nreads number of reads for each variable
+   * @param f      write the report here
+   * @return strategy name, measured msecs per read over all variables
+   * @throws IOException on read or write error, or if netCDF-4 files cant be written
+   */
+  public Map<String, Double> measure(File dir, int nreads, Formatter f) throws IOException {
+    Map<String, Double> totals = new LinkedHashMap<>();
+    for (Map.Entry<String, Nc4Chunking> entry : strategies.entrySet()) {
+      File copy = File.createTempFile("chunking-" + entry.getKey(), ".nc4", dir);
+      try {
+        FileWriter2 writer = new FileWriter2(ncfile, copy.getPath(), NetcdfFileWriter.Version.netcdf4, entry.getValue());
+        long start = System.nanoTime();
+        NetcdfFile ncfileOut = writer.write();
+        if (ncfileOut != null) ncfileOut.close();
+        f.format("%s: wrote %d Kbytes in %.1f secs%n", entry.getKey(), copy.length() / 1000, (System.nanoTime() - start) / 1.0e9);
+
+        double totalMsecs = 0;
+        int count = 0;
+        try (NetcdfFile ncfileCopy = NetcdfFile.open(copy.getPath())) {
+          for (Variable v : getProfiledVariables()) {
+            Variable vcopy = ncfileCopy.findVariable(v.getFullNameEscaped());
+            if (vcopy == null) continue;
+            double msecs = timeReads(vcopy, v, nreads);
+            f.format("  %-32s measured %10.3f msecs/read%n", v.getShortName(), msecs);
+            totalMsecs += msecs * nreads;
+            count += nreads;
+          }
+        }
+        totals.put(entry.getKey(), count == 0 ? 0 : totalMsecs / count);
+
+      } finally {
+        if (!copy.delete())
+          copy.deleteOnExit();
+      }
+    }
+    return totals;
+  }
+
+  // reads at random positions, with patterns chosen by weight; the same reads for each strategy
+  private double timeReads(Variable vcopy, Variable v, int nreads) throws IOException {
+    List<AccessProfile.Pattern> patterns = costModel.getProfile().getPatterns(v);
+    double totalWeight = 0;
+    for (AccessProfile.Pattern p : patterns)
+      totalWeight += p.getWeight();
+
+    int[] shape = vcopy.getShape();
+    Random random = new Random(v.getFullName().hashCode());
+    long elapsed = 0;
+    for (int n = 0; n < nreads; n++) {
+      double pick = random.nextDouble() * totalWeight;
+      AccessProfile.Pattern pattern = patterns.get(patterns.size() - 1);
+      for (AccessProfile.Pattern p : patterns) {
+        pick -= p.getWeight();
+        if (pick < 0) {
+          pattern = p;
+          break;
+        }
+      }
+
+      int[] count = pattern.getCounts(vcopy.getDimensions(), shape);
+      int[] origin = new int[shape.length];
+      for (int i = 0; i < shape.length; i++)
+        origin[i] = random.nextInt(shape[i] - count[i] + 1);
+
+      long start = System.nanoTime();
+      try {
+        vcopy.read(new Section(origin, count));
+      } catch (InvalidRangeException e) {
+        throw new IllegalStateException(e); // cant happen
+      }
+      elapsed += System.nanoTime() - start;
+    }
+    return elapsed / 1.0e6 / nreads;
+  }
+
+  public static void main(String[] args) throws Exception {
+    String progName = ChunkingCostReport.class.getName();
+
+    try {
+      CommandLine cmdLine = new CommandLine(progName, args);
+
+      if (cmdLine.help) {
+        cmdLine.printUsage();
+        return;
+      }
+
+      AccessProfile profile = AccessProfile.read(cmdLine.profileFile.getPath());
+      try (NetcdfFile ncfile = NetcdfDataset.openFile(cmdLine.inputFile.getAbsolutePath(), null)) {
+        ChunkingCostReport report = new ChunkingCostReport(ncfile, profile, Arrays.asList(cmdLine.strategies.split(",")),
+                cmdLine.deflateLevel, cmdLine.shuffle);
+        report.getCostModel().setChunkOverhead(cmdLine.chunkOverhead);
+
+        Formatter f = new Formatter(System.out);
+        Map<String, Double> predicted = report.predict(f);
+        Map<String, Double> measured = null;
+        if (cmdLine.measure) {
+          try {
+            measured = report.measure(cmdLine.outputDir, cmdLine.nreads, f);
+          } catch (IOException | UnsupportedOperationException e) { // no netCDF-C library
+            f.format("%nCant measure: %s%n", e.getMessage());
+          }
+        }
+
+        f.format("%nstrategy   predicted Kbytes/read%s%n", measured == null ? "" : "   measured msecs/read");
+        for (Map.Entry<String, Double> entry : predicted.entrySet()) {
+          f.format("%-10s %21.1f", entry.getKey(), entry.getValue() / 1000);
+          if (measured != null) f.format(" %22.3f", measured.get(entry.getKey()));
+          f.format("%n");
+        }
+        f.flush();
+      }
+
+    } catch (ParameterException | IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.printf("Try \"%s --help\" for more information.%n", progName);
+    }
+  }
+}
@@ -0,0 +1,324 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.write;
+
+import ucar.nc2.Dimension;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Chunk to minimize the expected cost of the reads in an AccessProfile.
+ * The cost of a read is the bytes of the chunks it touches, plus a fixed overhead per chunk for the seek and
+ * decompression. Variables that have no patterns in the profile are chunked like Nc4ChunkingDefault.
+ * <p>
+ * For example, when most requests are time series at a point, the chunks are long along time and small in the
+ * other dimensions; with the default chunking, such a request reads a whole map at each time.
+ *
+ * @see AccessProfile
+ */
+public class Nc4ChunkingStrategyProfile extends Nc4ChunkingDefault {
+  private static final int MAX_CHUNKSIZE_BYTES = 4 * 1000 * 1000; // the netCDF-C chunk cache is 4 Mbytes per variable
+  private static final int CHUNK_OVERHEAD_BYTES = 64 * 1000;
+  private static final int UNLIMITED_LENGTH = 1000;
+  private static final long MAX_EXHAUSTIVE_SEARCH = 1000 * 1000;
+
+  /**
+   * A strategy for copying fileIn, which expects the length of its unlimited dimension.
+   *
+   * @param profile      how the copy will be read
+   * @param fileIn       the file to copy
+   * @param deflateLevel 0 corresponds to no compression and 9 to maximum compression
+   * @param shuffle      true to turn shuffling on
+   * @return the strategy
+   */
+  public static Nc4ChunkingStrategyProfile factory(AccessProfile profile, NetcdfFile fileIn, int deflateLevel, boolean shuffle) {
+    Nc4ChunkingStrategyProfile result = new Nc4ChunkingStrategyProfile(profile, deflateLevel, shuffle);
+    Dimension unlimited = fileIn.getUnlimitedDimension();
+    if (unlimited != null && unlimited.getLength() > 0)
+      result.setUnlimitedLength(unlimited.getLength());
+    return result;
+  }
+
+  ////////////////////////////////////////////////////
+
+  private final AccessProfile profile;
+
+  private int maxChunkSize = MAX_CHUNKSIZE_BYTES;
+  private int chunkOverhead = CHUNK_OVERHEAD_BYTES;
+  private int unlimitedLength = UNLIMITED_LENGTH;
+
+  public Nc4ChunkingStrategyProfile(AccessProfile profile, int deflateLevel, boolean shuffle) {
+    super(deflateLevel, shuffle);
+    this.profile = profile;
+  }
+
+  public AccessProfile getProfile() {
+    return profile;
+  }
+
+  public int getMaxChunkSize() {
+    return maxChunkSize;
+  }
+
+  /**
+   * @param maxChunkSize largest chunk in bytes, unless the minimum chunk size is larger
+   */
+  public void setMaxChunkSize(int maxChunkSize) {
+    this.maxChunkSize = maxChunkSize;
+  }
+
+  public int getChunkOverhead() {
+    return chunkOverhead;
+  }
+
+  /**
+   * @param chunkOverhead cost of reading one chunk, in bytes, on top of its size: roughly the bytes that the disk
+   *                      reads in the time of a seek
+   */
+  public void setChunkOverhead(int chunkOverhead) {
+    this.chunkOverhead = chunkOverhead;
+  }
+
+  public int getUnlimitedLength() {
+    return unlimitedLength;
+  }
+
+  /**
+   * @param unlimitedLength the expected length of unlimited dimensions, which are empty when the chunking is chosen
+   */
+  public void setUnlimitedLength(int unlimitedLength) {
+    this.unlimitedLength = unlimitedLength;
+  }
+
+  @Override
+  public long[] computeChunking(Variable v) {
+    List<AccessProfile.Pattern> patterns = profile.getPatterns(v);
+    if (patterns.isEmpty() || v.getRank() == 0)
+      return super.computeChunking(v);
+    return convertToLong(computeChunking(v, getExpectedShape(v), patterns));
+  }
+
+  /**
+   * The shape of v, with the unlimited length for its unlimited dimensions if they are shorter.
+   */
+  public int[] getExpectedShape(Variable v) {
+    int[] shape = v.getShape();
+    for (int i = 0; i < shape.length; i++) {
+      if (v.getDimension(i).isUnlimited())
+        shape[i] = Math.max(shape[i], unlimitedLength);
+      shape[i] = Math.max(shape[i], 1);
+    }
+    return shape;
+  }
+
+  /**
+   * The expected cost of reading v with the patterns of the profile, when it has the given chunking.
+   *
+   * @param v        the variable
+   * @param chunking its chunk shape, or null if its not chunked
+   * @return expected bytes per read, including the overhead; 0 if the profile has no patterns for v
+   */
+  public double expectedCost(Variable v, long[] chunking) {
+    List<AccessProfile.Pattern> patterns = profile.getPatterns(v);
+    int[] shape = getExpectedShape(v);
+    List<int[]> counts = new ArrayList<>();
+    double[] weights = new double[patterns.size()];
+    double totalWeight = makeCounts(v.getDimensions(), shape, patterns, counts, weights);
+    if (totalWeight == 0) return 0;
+
+    int elemSize = v.getElementSize();
+    double total = 0;
+    for (int p = 0; p < counts.size(); p++) {
+      int[] count = counts.get(p);
+      double cost;
+      if (chunking == null) {
+        cost = contiguousCost(shape, count, elemSize);
+      } else {
+        int[] chunk = new int[shape.length];
+        for (int i = 0; i < shape.length; i++)
+          chunk[i] = (int) Math.max(1, Math.min(shape[i], chunking[i]));
+        cost = chunkedCost(shape, chunk, count, elemSize);
+      }
+      total += weights[p] * cost;
+    }
+    return total / totalWeight;
+  }
+
+  // the counts of each pattern along each dimension, and the weights; return the total weight
+  private double makeCounts(List<Dimension> dims, int[] shape, List<AccessProfile.Pattern> patterns, List<int[]> counts, double[] weights) {
+    double totalWeight = 0;
+    for (AccessProfile.Pattern p : patterns) {
+      weights[counts.size()] = p.getWeight();
+      counts.add(p.getCounts(dims, shape));
+      totalWeight += p.getWeight();
+    }
+    return totalWeight;
+  }
+
+  // a read at a random position reads 1 + (count - 1) / chunk chunks on average along each dimension
+  private double chunkedCost(int[] shape, int[] chunk, int[] count, int elemSize) {
+    double nchunks = 1;
+    long chunkSize = elemSize;
+    for (int i = 0; i < shape.length; i++) {
+      int maxChunks = (shape[i] + chunk[i] - 1) / chunk[i];
+      nchunks *= Math.min(maxChunks, 1 + (count[i] - 1) / (double) chunk[i]);
+      chunkSize *= chunk[i];
+    }
+    return nchunks * (chunkSize + chunkOverhead);
+  }
+
+  // a contiguous read is one run for each index of the dimensions left of the rightmost partial one
+  private double contiguousCost(int[] shape, int[] count, int elemSize) {
+    long bytes = elemSize;
+    for (int c : count)
+      bytes *= c;
+
+    int partial = shape.length - 1;
+    while (partial >= 0 && count[partial] == shape[partial])
+      partial--;
+    double nruns = 1;
+    for (int i = 0; i < partial; i++)
+      nruns *= count[i];
+    return bytes + nruns * chunkOverhead;
+  }
+
+  private int[] computeChunking(Variable v, int[] shape, List<AccessProfile.Pattern> patterns) {
+    int rank = shape.length;
+    int elemSize = v.getElementSize();
+    List<int[]> counts = new ArrayList<>();
+    double[] weights = new double[patterns.size()];
+    makeCounts(v.getDimensions(), shape, patterns, counts, weights);
+
+    long varSize = elemSize;
+    for (int len : shape)
+      varSize *= len;
+    long minSize = Math.min(getMinChunksize(), varSize);
+    long maxSize = Math.max(maxChunkSize, minSize);
+
+    // candidate chunk lengths along each dimension: powers of 2 and the whole dimension
+    int[][] candidates = new int[rank][];
+    long ncombos = 1;
+    for (int i = 0; i < rank; i++) {
+      List<Integer> lens = new ArrayList<>();
+      for (int len = 1; len < shape[i]; len *= 2)
+        lens.add(len);
+      lens.add(shape[i]);
+      candidates[i] = new int[lens.size()];
+      for (int j = 0; j < lens.size(); j++)
+        candidates[i][j] = lens.get(j);
+      ncombos *= lens.size();
+    }
+
+    Search search = new Search(shape, counts, weights, elemSize, minSize, maxSize);
+    if (ncombos <= MAX_EXHAUSTIVE_SEARCH) {
+      search.exhaustive(candidates, new int[rank], 0, elemSize);
+
+    } else { // improve one dimension at a time, starting from the default chunking
+      int[] chunk = fitSize(fitDefault(super.computeChunking(v), shape), shape, elemSize, minSize, maxSize);
+      boolean improved = search.consider(chunk);  // false if it couldnt be fit, then use the default
+      for (int pass = 0; improved && pass < 10; pass++) {
+        improved = false;
+        for (int i = 0; i < rank; i++) {
+          for (int len : candidates[i]) {
+            int[] trial = search.best.clone();
+            trial[i] = len;
+            improved |= search.consider(trial);
+          }
+        }
+      }
+    }
+
+    return (search.best != null) ? search.best : fitDefault(super.computeChunking(v), shape);
+  }
+
+  private int[] fitDefault(long[] chunking, int[] shape) {
+    int[] result = new int[shape.length];
+    for (int i = 0; i < shape.length; i++)
+      result[i] = (int) Math.max(1, Math.min(shape[i], chunking[i]));
+    return result;
+  }
+
+  // halve the longest chunk lengths until the chunk is no bigger than maxSize, then lengthen the fastest varying
+  // dimensions until it is no smaller than minSize; it may still be out of bounds when they are close
+  private int[] fitSize(int[] chunk, int[] shape, int elemSize, long minSize, long maxSize) {
+    long size = elemSize;
+    for (int len : chunk)
+      size *= len;
+
+    while (size > maxSize) {
+      int longest = 0;
+      for (int i = 1; i < chunk.length; i++)
+        if (chunk[i] > chunk[longest]) longest = i;
+      if (chunk[longest] == 1) break;
+      size /= chunk[longest];
+      chunk[longest] = (chunk[longest] + 1) / 2;
+      size *= chunk[longest];
+    }
+
+    for (int i = chunk.length - 1; i >= 0 && size < minSize; i--) {
+      long rest = size / chunk[i];
+      chunk[i] = (int) Math.min(shape[i], (minSize + rest - 1) / rest);
+      size = rest * chunk[i];
+    }
+    return chunk;
+  }
+
+  private class Search {
+    final int[] shape;
+    final List<int[]> counts;
+    final double[] weights;
+    final int elemSize;
+    final long minSize, maxSize;
+
+    int[] best;
+    double bestCost = Double.MAX_VALUE;
+    long bestSize;
+
+    Search(int[] shape, List<int[]> counts, double[] weights, int elemSize, long minSize, long maxSize) {
+      this.shape = shape;
+      this.counts = counts;
+      this.weights = weights;
+      this.elemSize = elemSize;
+      this.minSize = minSize;
+      this.maxSize = maxSize;
+    }
+
+    void exhaustive(int[][] candidates, int[] chunk, int dim, long size) {
+      if (dim == chunk.length) {
+        consider(chunk.clone());
+        return;
+      }
+      for (int len : candidates[dim]) {
+        if (size * len > maxSize) break; // candidates are increasing
+        chunk[dim] = len;
+        exhaustive(candidates, chunk, dim + 1, size * len);
+      }
+    }
+
+    // return true if chunk is the new best: lowest cost, then largest, which compresses better
+    boolean consider(int[] chunk) {
+      long size = elemSize;
+      for (int len : chunk)
+        size *= len;
+      if (size < minSize || size > maxSize) return false;
+
+      double cost = 0;
+      for (int p = 0; p < counts.size(); p++)
+        cost += weights[p] * chunkedCost(shape, chunk, counts.get(p), elemSize);
+
+      if (cost < bestCost || (cost == bestCost && size > bestSize)) {
+        best = chunk;
+        bestCost = cost;
+        bestSize = size;
+        return true;
+      }
+      return false;
+    }
+  }
+}
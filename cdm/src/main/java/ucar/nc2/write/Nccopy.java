@@ -14,6 +14,7 @@ import ucar.nc2.NetcdfFileWriter;
 import ucar.nc2.util.CancelTaskImpl;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Formatter;
@@ -54,6 +55,18 @@ public class Nccopy {
             "Only used in NetCDF 4. This option is ignored unless a non-zero deflate level is specified.")
     public boolean shuffle = true;
 
+    @Parameter(names = {"-ap", "--accessProfile"}, description = "Chunk to minimize the cost of the reads in this " +
+            "access profile, instead of using the strategy. Only used in NetCDF 4. See ChunkingCostReport.")
+    public File accessProfile;
+
+    @Parameter(names = {"-t", "--threads"}, description = "Number of threads reading the input while the output is " +
+            "written, in pieces aligned with the output chunks. 1 copies one variable at a time.")
+    public int nthreads = 1;
+
+    @Parameter(names = {"-p", "--progress"}, description = "Print the progress of the copy: the percentage of " +
+            "the data copied with more than one thread, else the variable being copied.")
+    public boolean progress = false;
+
     @Parameter(names = {"-h", "--help"}, description = "Display this help and exit", help = true)
     public boolean help = false;
 
@@ -61,7 +74,8 @@ public class Nccopy {
     private static class ParameterDescriptionComparator implements Comparator<ParameterDescription> {
       // Display parameters in this order in the usage information.
       private final List<String> orderedParamNames = Arrays.asList(
-              "--input", "--output", "--format", "--isLargeFile", "--strategy", "--deflateLevel", "--shuffle", "--help");
+              "--input", "--output", "--format", "--isLargeFile", "--strategy", "--deflateLevel", "--shuffle",
+              "--accessProfile", "--threads", "--progress", "--help");
 
       @Override
       public int compare(ParameterDescription p0, ParameterDescription p1) {
@@ -88,12 +102,39 @@ public class Nccopy {
       jc.usage();
     }
 
-    public Nc4Chunking getNc4Chunking() {
+    public Nc4Chunking getNc4Chunking(NetcdfFile ncfileIn) throws IOException {
+      if (accessProfile != null)
+        return Nc4ChunkingStrategyProfile.factory(AccessProfile.read(accessProfile.getPath()), ncfileIn, deflateLevel, shuffle);
       return Nc4ChunkingStrategy.factory(strategy, deflateLevel, shuffle);
     }
 
   }
 
+  // prints the progress of the copy, a percentage with more than one thread, else the variable being copied
+  private static class ProgressTask extends CancelTaskImpl {
+    private final boolean isPercent;
+
+    ProgressTask(boolean isPercent) {
+      this.isPercent = isPercent;
+    }
+
+    @Override
+    public void setProgress(String msg, int progress) {
+      super.setProgress(msg, progress);
+      if (progress < 0) return;
+      if (isPercent)
+        System.out.printf("%n%3d%% %s", progress, msg);
+      else
+        System.out.printf("%n%s", msg);
+    }
+
+    @Override
+    public void setDone(boolean done) {
+      super.setDone(done);
+      System.out.println();
+    }
+  }
+
   public static void main(String[] args) throws Exception {
     String progName = Nccopy.class.getName();
 
@@ -107,14 +148,15 @@ public class Nccopy {
 
       String datasetIn = cmdLine.inputFile.getAbsolutePath();
       String datasetOut = cmdLine.outputFile.getAbsolutePath();
-      CancelTaskImpl cancel = new CancelTaskImpl();
+      CancelTaskImpl cancel = cmdLine.progress ? new ProgressTask(cmdLine.nthreads > 1) : new CancelTaskImpl();
       Formatter errlog = new Formatter();
       System.out.printf("NetcdfDatataset read from %s write %s to %s ", datasetIn, cmdLine.format, datasetOut);
 
       try ( NetcdfFile ncfileIn = ucar.nc2.dataset.NetcdfDataset.openFile(datasetIn, cancel)){
 
-        FileWriter2 writer = new ucar.nc2.FileWriter2(ncfileIn, datasetOut, cmdLine.format, cmdLine.getNc4Chunking());
+        FileWriter2 writer = new ucar.nc2.FileWriter2(ncfileIn, datasetOut, cmdLine.format, cmdLine.getNc4Chunking(ncfileIn));
         writer.getNetcdfFileWriter().setLargeFile(cmdLine.isLargeFile);
+        writer.setNumThreads(cmdLine.nthreads);
         NetcdfFile ncfileOut = writer.write(cancel);
 
         if (ncfileOut != null) ncfileOut.close();
@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.geoloc;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.BitSet;
+
+/**
+ * A spatial index of the cells of a 2D (curvilinear) lat/lon grid, to find the cell that contains a lat/lon point.
+ * <p>
+ * The cells are given by their edges, lat(nrows+1, ncols+1) and lon(nrows+1, ncols+1), as made by
+ * CoordinateAxis2D.makeEdges(). Each cell's bounding box is put into a regular grid of buckets over the edges,
+ * with about two cells per bucket. A lookup only tests the cells of the point's bucket, so it takes about the same
+ * time anywhere in the grid, unlike a walk from a first guess, which can be slow or fail to converge on distorted
+ * grids like ROMS or tripolar ocean grids. The nearest cell to a point outside the cells is found with a k-d tree
+ * of the cell centers, made the first time it is needed.
+ * <p>
+ * Make one per horizontal coordinate system and keep it; it may then be used by any number of threads.
+ * The edge arrays are not copied and must not be changed.
+ * Longitudes are normalized to start at the minimum edge longitude. Cells that span more than 180 degrees of longitude
+ * are taken to cross the seam and are unwrapped. Cells with a missing (NaN) corner are never found.
+ * Nearest cell distances are measured in degrees on the lat/lon plane, without wrapping.
+ */
+@ThreadSafe
+public class LatLonCellIndex {
+  private static final int CELLS_PER_BUCKET = 2;
+  private static final int MAX_BUCKETS_PER_CELL = 1024;  // larger cells are tested for every point
+
+  private final int nrows, ncols;
+  private final double[] latEdge, lonEdge;  // (nrows+1) * (ncols+1)
+  private final double latMin, latMax, lonMin, lonMax;
+  private final int nbx, nby;
+  private final double bucketWidth, bucketHeight;
+  private final int[] bucketStart;  // cells of bucket b are cells[bucketStart[b]] to cells[bucketStart[b+1]-1]
+  private final int[] cells;        // cell = row * ncols + col
+  private final int[] bigCells;
+  private final BitSet wraps;                      // cells that cross the longitude seam, never changed once made
+  private volatile CenterTree centerTree;          // made at the first nearest cell search
+
+  /**
+   * Constructor.
+   *
+   * @param nrows   number of rows of cells
+   * @param ncols   number of columns of cells
+   * @param latEdge latitude of the cell corners, (nrows+1) * (ncols+1) in row major order
+   * @param lonEdge longitude of the cell corners, (nrows+1) * (ncols+1) in row major order
+   */
+  public LatLonCellIndex(int nrows, int ncols, double[] latEdge, double[] lonEdge) {
+    if (latEdge.length != (nrows + 1) * (ncols + 1) || lonEdge.length != latEdge.length)
+      throw new IllegalArgumentException("edges must have (nrows+1) * (ncols+1) values");
+    this.nrows = nrows;
+    this.ncols = ncols;
+    this.latEdge = latEdge;
+    this.lonEdge = lonEdge;
+    this.wraps = findWraps(nrows, ncols, lonEdge);
+
+    double latMin = Double.MAX_VALUE, latMax = -Double.MAX_VALUE;
+    double lonMin = Double.MAX_VALUE, lonMax = -Double.MAX_VALUE;
+    for (int i = 0; i < latEdge.length; i++) {
+      if (Double.isNaN(latEdge[i]) || Double.isNaN(lonEdge[i])) continue;
+      latMin = Math.min(latMin, latEdge[i]);
+      latMax = Math.max(latMax, latEdge[i]);
+      lonMin = Math.min(lonMin, lonEdge[i]);
+      lonMax = Math.max(lonMax, lonEdge[i]);
+    }
+    if (latMin > latMax) { // all missing
+      latMin = latMax = lonMin = lonMax = 0;
+    }
+    this.latMin = latMin;
+    this.latMax = latMax;
+    this.lonMin = lonMin;
+    this.lonMax = lonMax;
+
+    // buckets about as square as the domain
+    double width = Math.max(lonMax - lonMin, 1.0e-6);
+    double height = Math.max(latMax - latMin, 1.0e-6);
+    int nbuckets = Math.max(1, (nrows * ncols) / CELLS_PER_BUCKET);
+    this.nbx = (int) Math.max(1, Math.min(nbuckets, Math.round(Math.sqrt(nbuckets * width / height))));
+    this.nby = Math.max(1, nbuckets / nbx);
+    this.bucketWidth = width / nbx;
+    this.bucketHeight = height / nby;
+
+    // count the cells in each bucket, then fill them in
+    int[] count = new int[nbx * nby + 1];
+    int nbig = 0;
+    double[] bounds = new double[4];
+    for (int cell = 0; cell < nrows * ncols; cell++) {
+      if (!cellBounds(cell, bounds)) continue;
+      if (isBig(bounds)) {
+        nbig++;
+        continue;
+      }
+      addToBuckets(bounds, count, null, cell);
+    }
+
+    this.bucketStart = new int[nbx * nby + 1];
+    for (int b = 0; b < nbx * nby; b++)
+      bucketStart[b + 1] = bucketStart[b] + count[b];
+    this.cells = new int[bucketStart[nbx * nby]];
+    this.bigCells = new int[nbig];
+
+    int[] next = new int[nbx * nby + 1];
+    System.arraycopy(bucketStart, 0, next, 0, nbx * nby);
+    nbig = 0;
+    for (int cell = 0; cell < nrows * ncols; cell++) {
+      if (!cellBounds(cell, bounds)) continue;
+      if (isBig(bounds)) {
+        bigCells[nbig++] = cell;
+        continue;
+      }
+      addToBuckets(bounds, next, cells, cell);
+    }
+  }
+
+  public int getNrows() {
+    return nrows;
+  }
+
+  public int getNcols() {
+    return ncols;
+  }
+
+  /**
+   * Find the cell that contains a point.
+   *
+   * @param lat       latitude of the point
+   * @param lon       longitude of the point
+   * @param rectIndex put the (row, col) of the cell here, if found
+   * @return true if found
+   */
+  public boolean findCell(double lat, double lon, int[] rectIndex) {
+    int cell = findCell(lat, lon);
+    if (cell < 0) return false;
+    rectIndex[0] = cell / ncols;
+    rectIndex[1] = cell % ncols;
+    return true;
+  }
+
+  /**
+   * Find the cell that contains a point, or the cell whose center is closest to it.
+   *
+   * @param lat       latitude of the point
+   * @param lon       longitude of the point
+   * @param rectIndex put the (row, col) of the cell here, if found
+   * @return true if found, false only if there are no cells
+   */
+  public boolean findNearestCell(double lat, double lon, int[] rectIndex) {
+    int cell = findCell(lat, lon);
+    if (cell < 0) cell = findNearestCenter(lat, lon);
+    if (cell < 0) return false;
+    rectIndex[0] = cell / ncols;
+    rectIndex[1] = cell % ncols;
+    return true;
+  }
+
+  /**
+   * Find the cells of many points.
+   *
+   * @param lats    latitudes of the points
+   * @param lons    longitudes of the points
+   * @param nearest if a point is not in any cell, use the cell whose center is closest to it
+   * @return for each point, its cell as row * ncols + col, or -1 if not found
+   */
+  public int[] findCells(double[] lats, double[] lons, boolean nearest) {
+    if (lats.length != lons.length)
+      throw new IllegalArgumentException("must have the same number of lats and lons");
+    int[] result = new int[lats.length];
+    for (int i = 0; i < lats.length; i++) {
+      result[i] = findCell(lats[i], lons[i]);
+      if (result[i] < 0 && nearest)
+        result[i] = findNearestCenter(lats[i], lons[i]);
+    }
+    return result;
+  }
+
+  ////////////////////////////////////////////////////////////////////////////
+
+  private int findCell(double lat, double lon) {
+    if (Double.isNaN(lat) || Double.isNaN(lon)) return -1;
+    if (lat < latMin || lat > latMax) return -1;
+    double x = LatLonPointImpl.lonNormalFrom(lon, lonMin);
+    int b = bucketY(lat) * nbx + bucketX(x);  // past lonMax may still be in a cell that crosses the seam
+    for (int i = bucketStart[b]; i < bucketStart[b + 1]; i++) {
+      if (contains(cells[i], lat, x)) return cells[i];
+    }
+    for (int cell : bigCells) {
+      if (contains(cell, lat, x)) return cell;
+    }
+    return -1;
+  }
+
+  private int findNearestCenter(double lat, double lon) {
+    if (Double.isNaN(lat) || Double.isNaN(lon)) return -1;
+    double x = LatLonPointImpl.lonNormalFrom(lon, lonMin);
+    if (x > lonMax && x - lonMax > lonMin - (x - 360))  // closer to the west side
+      x -= 360;
+
+    CenterTree tree = centerTree;
+    if (tree == null) {
+      synchronized (this) {
+        if (centerTree == null) centerTree = new CenterTree();
+        tree = centerTree;
+      }
+    }
+    return tree.nearest(lat, x);
+  }
+
+  /*
+   * A k-d tree of the cell centers, stored in place: the median of [lo, hi) is at (lo + hi) / 2, with the smaller
+   * ones on the left, splitting on lat at even depths and lon at odd depths.
+   * Points far from any cell are common (land, outside the grid), and a tree finds their nearest center
+   * much faster than searching outward through the buckets.
+   */
+  private class CenterTree {
+    private final int[] cellIds;
+    private final double[] lats, lons;
+
+    CenterTree() {
+      int n = 0;
+      double[] bounds = new double[4];
+      for (int cell = 0; cell < nrows * ncols; cell++)
+        if (cellBounds(cell, bounds)) n++;
+
+      cellIds = new int[n];
+      lats = new double[n];
+      lons = new double[n];
+      double[] center = new double[2];
+      n = 0;
+      for (int cell = 0; cell < nrows * ncols; cell++) {
+        if (!cellBounds(cell, bounds)) continue;
+        cellCenter(cell, center);
+        cellIds[n] = cell;
+        lats[n] = center[0];
+        lons[n] = center[1];
+        n++;
+      }
+      build(0, n, 0);
+    }
+
+    private void build(int lo, int hi, int depth) {
+      if (hi - lo < 2) return;
+      int mid = (lo + hi) >>> 1;
+      select(lo, hi - 1, mid, (depth % 2 == 0) ? lats : lons);
+      build(lo, mid, depth + 1);
+      build(mid + 1, hi, depth + 1);
+    }
+
+    // partially sort [left, right] so that k is in its sorted place
+    private void select(int left, int right, int k, double[] key) {
+      while (right > left) {
+        double pivot = key[(left + right) >>> 1];
+        int i = left, j = right;
+        while (i <= j) {
+          while (key[i] < pivot) i++;
+          while (key[j] > pivot) j--;
+          if (i <= j) swap(i++, j--);
+        }
+        if (k <= j) right = j;
+        else if (k >= i) left = i;
+        else return;
+      }
+    }
+
+    private void swap(int i, int j) {
+      int c = cellIds[i];
+      cellIds[i] = cellIds[j];
+      cellIds[j] = c;
+      double t = lats[i];
+      lats[i] = lats[j];
+      lats[j] = t;
+      t = lons[i];
+      lons[i] = lons[j];
+      lons[j] = t;
+    }
+
+    int nearest(double lat, double x) {
+      double[] best = {Double.MAX_VALUE, -1}; // squared distance, position
+      nearest(0, cellIds.length, 0, lat, x, best);
+      return best[1] < 0 ? -1 : cellIds[(int) best[1]];
+    }
+
+    private void nearest(int lo, int hi, int depth, double lat, double x, double[] best) {
+      if (lo >= hi) return;
+      int mid = (lo + hi) >>> 1;
+      double dy = lat - lats[mid];
+      double dx = x - lons[mid];
+      double dist2 = dx * dx + dy * dy;
+      if (dist2 < best[0] || (dist2 == best[0] && cellIds[mid] < cellIds[(int) best[1]])) {
+        best[0] = dist2;
+        best[1] = mid;
+      }
+
+      double diff = (depth % 2 == 0) ? dy : dx;
+      if (diff < 0) {
+        nearest(lo, mid, depth + 1, lat, x, best);
+        if (diff * diff <= best[0]) nearest(mid + 1, hi, depth + 1, lat, x, best);
+      } else {
+        nearest(mid + 1, hi, depth + 1, lat, x, best);
+        if (diff * diff <= best[0]) nearest(lo, mid, depth + 1, lat, x, best);
+      }
+    }
+  }
+
+  private void cellCenter(int cell, double[] center) {
+    int row = cell / ncols;
+    int col = cell % ncols;
+    int c1 = row * (ncols + 1) + col;
+    int c4 = c1 + ncols + 1;
+    double[] lons = {lonEdge[c1], lonEdge[c1 + 1], lonEdge[c4 + 1], lonEdge[c4]};
+    if (wraps.get(cell)) unwrap(lons);
+    center[0] = (latEdge[c1] + latEdge[c1 + 1] + latEdge[c4 + 1] + latEdge[c4]) / 4;
+    center[1] = LatLonPointImpl.lonNormalFrom((lons[0] + lons[1] + lons[2] + lons[3]) / 4, lonMin);
+  }
+
+  /*
+   * Is the point inside the cell? The cell is taken to be convex: the point is inside if the triangles it makes
+   * with each side, going around the cell, all have the same orientation. See GridCoordinate2D.contains().
+   * Points on a side are inside.
+   */
+  private boolean contains(int cell, double lat, double x) {
+    int row = cell / ncols;
+    int col = cell % ncols;
+    int c1 = row * (ncols + 1) + col;
+    int c4 = c1 + ncols + 1;
+
+    double x1 = lonEdge[c1], x2 = lonEdge[c1 + 1], x3 = lonEdge[c4 + 1], x4 = lonEdge[c4];
+    double y1 = latEdge[c1], y2 = latEdge[c1 + 1], y3 = latEdge[c4 + 1], y4 = latEdge[c4];
+
+    if (!wraps.get(cell))
+      return contains(x1, y1, x2, y2, x3, y3, x4, y4, x, lat);
+
+    double[] xs = {x1, x2, x3, x4};
+    unwrap(xs);
+    return contains(xs[0], y1, xs[1], y2, xs[2], y3, xs[3], y4, x, lat) ||
+            contains(xs[0], y1, xs[1], y2, xs[2], y3, xs[3], y4, x + 360, lat);
+  }
+
+  private static boolean contains(double x1, double y1, double x2, double y2, double x3, double y3, double x4, double y4,
+                                  double x, double y) {
+    double d1 = det(x1, y1, x2, y2, x, y);
+    double d2 = det(x2, y2, x3, y3, x, y);
+    double d3 = det(x3, y3, x4, y4, x, y);
+    double d4 = det(x4, y4, x1, y1, x, y);
+    return (d1 >= 0 && d2 >= 0 && d3 >= 0 && d4 >= 0) || (d1 <= 0 && d2 <= 0 && d3 <= 0 && d4 <= 0);
+  }
+
+  private static double det(double x0, double y0, double x1, double y1, double x2, double y2) {
+    return x1 * y2 - y1 * x2 - x0 * y2 + y0 * x2 + x0 * y1 - y0 * x1;
+  }
+
+  // cells whose longitudes span more than 180 degrees; made before any lookup so that it is only ever read after
+  private static BitSet findWraps(int nrows, int ncols, double[] lonEdge) {
+    BitSet wraps = new BitSet(nrows * ncols);
+    for (int cell = 0; cell < nrows * ncols; cell++) {
+      int row = cell / ncols;
+      int col = cell % ncols;
+      int c1 = row * (ncols + 1) + col;
+      int c4 = c1 + ncols + 1;
+      double x1 = lonEdge[c1], x2 = lonEdge[c1 + 1], x3 = lonEdge[c4 + 1], x4 = lonEdge[c4];
+      double min = Math.min(Math.min(x1, x2), Math.min(x3, x4));
+      double max = Math.max(Math.max(x1, x2), Math.max(x3, x4));
+      if (max - min > 180) wraps.set(cell);  // false if a corner is NaN
+    }
+    return wraps;
+  }
+
+  // bounds = minLon, maxLon, minLat, maxLat, with lon unwrapped; false if a corner is missing
+  private boolean cellBounds(int cell, double[] bounds) {
+    int row = cell / ncols;
+    int col = cell % ncols;
+    int c1 = row * (ncols + 1) + col;
+    int c4 = c1 + ncols + 1;
+    double[] lons = {lonEdge[c1], lonEdge[c1 + 1], lonEdge[c4 + 1], lonEdge[c4]};
+    double[] lats = {latEdge[c1], latEdge[c1 + 1], latEdge[c4 + 1], latEdge[c4]};
+
+    double x0 = Double.MAX_VALUE, x1 = -Double.MAX_VALUE, y0 = Double.MAX_VALUE, y1 = -Double.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      if (Double.isNaN(lons[i]) || Double.isNaN(lats[i])) return false;
+      x0 = Math.min(x0, lons[i]);
+      x1 = Math.max(x1, lons[i]);
+      y0 = Math.min(y0, lats[i]);
+      y1 = Math.max(y1, lats[i]);
+    }
+    if (wraps.get(cell)) {
+      unwrap(lons);
+      x0 = Math.min(Math.min(lons[0], lons[1]), Math.min(lons[2], lons[3]));
+      x1 = Math.max(Math.max(lons[0], lons[1]), Math.max(lons[2], lons[3]));
+    }
+    bounds[0] = x0;
+    bounds[1] = x1;
+    bounds[2] = y0;
+    bounds[3] = y1;
+    return true;
+  }
+
+  // move the corners on the other side of the seam by 360
+  private static void unwrap(double[] lons) {
+    double max = Math.max(Math.max(lons[0], lons[1]), Math.max(lons[2], lons[3]));
+    for (int i = 0; i < 4; i++)
+      if (lons[i] < max - 180) lons[i] += 360;
+  }
+
+  private boolean isBig(double[] bounds) {
+    long nx = bucketX(Math.min(bounds[1], lonMax)) - bucketX(Math.max(bounds[0], lonMin)) + 1;
+    long ny = bucketY(bounds[3]) - bucketY(bounds[2]) + 1;
+    return nx * ny > MAX_BUCKETS_PER_CELL;
+  }
+
+  // count (if cells == null) or add the cell to each bucket that its bounds overlap
+  private void addToBuckets(double[] bounds, int[] next, int[] cells, int cell) {
+    addToBuckets(bounds[0], bounds[1], bounds, next, cells, cell);
+    if (bounds[1] > lonMax)  // unwrapped past the seam, also goes at the start
+      addToBuckets(bounds[0] - 360, bounds[1] - 360, bounds, next, cells, cell);
+  }
+
+  private void addToBuckets(double x0, double x1, double[] bounds, int[] next, int[] cells, int cell) {
+    if (x1 < lonMin || x0 > lonMax) return;
+    int bx0 = bucketX(x0), bx1 = bucketX(x1);
+    int by0 = bucketY(bounds[2]), by1 = bucketY(bounds[3]);
+    for (int by = by0; by <= by1; by++) {
+      for (int bx = bx0; bx <= bx1; bx++) {
+        int b = by * nbx + bx;
+        if (cells != null) cells[next[b]] = cell;
+        next[b]++;
+      }
+    }
+  }
+
+  private int bucketX(double x) {
+    int bx = (int) ((x - lonMin) / bucketWidth);
+    return Math.max(0, Math.min(nbx - 1, bx));
+  }
+
+  private int bucketY(double y) {
+    int by = (int) ((y - latMin) / bucketHeight);
+    return Math.max(0, Math.min(nby - 1, by));
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.unidata.io;
+
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A contiguous range of bytes in a file: offset and length.
+ * Used to request vectored reads from RandomAccessFile.
+ *
+ * @see RandomAccessFile#readRanges(java.util.List, int)
+ */
+@Immutable
+public class ByteRange {
+  private final long offset;
+  private final int length;
+
+  /**
+   * Constructor.
+   *
+   * @param offset starting offset in the file, in bytes
+   * @param length number of bytes
+   */
+  public ByteRange(long offset, int length) {
+    if (offset < 0)
+      throw new IllegalArgumentException("Negative offset " + offset);
+    if (length < 0)
+      throw new IllegalArgumentException("Negative length " + length);
+    this.offset = offset;
+    this.length = length;
+  }
+
+  public long getOffset() {
+    return offset;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  /**
+   * @return offset of the byte following this range
+   */
+  public long getEnd() {
+    return offset + length;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    ByteRange that = (ByteRange) o;
+    return offset == that.offset && length == that.length;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Long.hashCode(offset) + length;
+  }
+
+  @Override
+  public String toString() {
+    return offset + ":" + length;
+  }
+}
@@ -4,94 +4,256 @@
  */
 package ucar.unidata.io;
 
+import ucar.unidata.util.StringUtil2;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.MappedByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
 
 /**
- * Use NIO MappedByteBuffer to implement a RandomAccessFile.
- * Limited to 2G size. Not currently used - NOT UP TO DATE DO NOT USE
+ * Use NIO MappedByteBuffers to implement a read-only RandomAccessFile.
+ * The file is mapped in segments of at most segmentSize bytes, so there is no limit on the file size.
+ * Segments are mapped the first time they are read.
+ * <p/>
+ * The bulk primitive reads (readFloat(float[], int, int) etc) and readByteBufferAt() go straight to the mapped
+ * memory, without copying through the read buffer. Bytes beyond the length of the file when it was opened
+ * (eg a netcdf-3 file that is being appended to) are read through the file as usual.
+ * <p/>
+ * Use for local files that are read often, and are not modified in place.
+ * RandomAccessFile.acquire() returns one of these for locations chosen with addDirectory() and setPattern().
+ * <p/>
+ * The segments are dropped when the file is closed, and unmapped by the garbage collector once no read and no buffer
+ * returned by readByteBufferAt() still uses them. Unmapping them explicitly would crash the JVM if one did.
+ * On Windows, the file can not be deleted or rewritten until then.
+ *
  * @author john
  */
 public class MMapRandomAccessFile extends RandomAccessFile {
+  static public final long defaultSegmentSize = 1L << 30; // 1 Gbyte
 
-  private MappedByteBuffer source;
+  static private final List<String> directories = new CopyOnWriteArrayList<>();
+  static private volatile Pattern pattern;
 
   /**
-    * Constructor for in-memory "files"
-    * @param location used as a name
-    * @param mode the open mode
-    * @throws java.io.IOException on error
-    */
-  public MMapRandomAccessFile(String location, String mode) throws IOException {
-    super(location, mode, 1);
-    FileChannel channel = file.getChannel();
-    source = channel.map( readonly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, (long) 0, channel.size());
-    //channel.close();
+   * Memory map files in this directory, or any directory below it. Typically the directory of a dataset root.
+   *
+   * @param dir directory path
+   */
+  static public void addDirectory(String dir) {
+    dir = StringUtil2.replace(dir, '\\', "/");
+    if (!dir.endsWith("/")) dir = dir + "/";
+    directories.add(dir);
+  }
 
-    bufferStart = 0;
-	  dataSize = (int) channel.size();
-	  dataEnd = channel.size();
-    filePosition = 0;
-    buffer = null;
-    endOfFile = false;
+  /**
+   * Memory map files whose location matches this regular expression.
+   *
+   * @param regexp regular expression matched against the whole location, or null to match nothing
+   */
+  static public void setPattern(String regexp) {
+    pattern = (regexp == null) ? null : Pattern.compile(regexp);
   }
 
+  /**
+   * Do not memory map any files.
+   */
+  static public void clearPolicy() {
+    directories.clear();
+    pattern = null;
+  }
 
-  public void flush() throws IOException {
-    if (bufferModified) {
-      source.force();
-      bufferModified = false;
+  /**
+   * Should this file be memory mapped when opened for reading?
+   *
+   * @param location file location, using '/' separators
+   * @return true if location is in one of the directories, or matches the pattern
+   */
+  static public boolean useMMap(String location) {
+    for (String dir : directories) {
+      if (location.startsWith(dir)) return true;
     }
+    Pattern p = pattern;
+    return (p != null) && p.matcher(location).matches();
+  }
+
+  ///////////////////////////////////////////////////////////////////////////////////////////
+
+  private final long segmentSize;
+  private final long mappedLength;
+  private final AtomicReferenceArray<MappedByteBuffer> segments;
+
+  /**
+   * Constructor, opens the file read-only.
+   *
+   * @param location file location
+   * @param mode     must be "r"
+   * @throws java.io.IOException on error
+   */
+  public MMapRandomAccessFile(String location, String mode) throws IOException {
+    this(location, mode, defaultBufferSize, defaultSegmentSize);
+  }
+
+  /**
+   * Constructor, opens the file read-only.
+   *
+   * @param location    file location
+   * @param mode        must be "r"
+   * @param bufferSize  size of the buffer used by the single value reads
+   * @param segmentSize map the file in pieces of at most this many bytes; must be <= Integer.MAX_VALUE
+   * @throws java.io.IOException on error
+   */
+  public MMapRandomAccessFile(String location, String mode, int bufferSize, long segmentSize) throws IOException {
+    super(location, checkMode(mode), bufferSize);
+    if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Illegal segmentSize " + segmentSize);
+    this.segmentSize = segmentSize;
+
+    if (fileChannel == null)
+      fileChannel = file.getChannel();
+    this.mappedLength = fileChannel.size();
+    this.segments = new AtomicReferenceArray<>((int) ((mappedLength + segmentSize - 1) / segmentSize));
+  }
+
+  private static String checkMode(String mode) {
+    if (!"r".equals(mode))
+      throw new IllegalArgumentException("MMapRandomAccessFile is read-only, mode must be \"r\"");
+    return mode;
   }
 
-  public long length( ) {
-    return dataEnd;
+  // the segment containing pos, which must be < mappedLength
+  private MappedByteBuffer getSegment(int segno) throws IOException {
+    MappedByteBuffer seg = segments.get(segno);
+    if (seg == null) {
+      long start = segno * segmentSize;
+      long size = Math.min(segmentSize, mappedLength - start);
+      seg = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, size);
+      if (!segments.compareAndSet(segno, null, seg))
+        seg = segments.get(segno); // another thread got there first
+    }
+    return seg;
   }
 
-  public void seek( long pos ) {
-    filePosition = pos;
-    if( filePosition < dataEnd )
-      source.position((int) filePosition);
-    else
-      endOfFile = true;
+  /**
+   * A view of the mapped file from pos to the end of its segment, BIG_ENDIAN.
+   * Independent of all other views, so safe to use from many threads.
+   */
+  private ByteBuffer view(long pos) throws IOException {
+    int segno = (int) (pos / segmentSize);
+    ByteBuffer bb = getSegment(segno).duplicate();
+    bb.position((int) (pos - segno * segmentSize));
+    return bb;
   }
 
-   public void unread( ) {
-     seek( filePosition-1);
-   }
+  @Override
+  protected int read_(long pos, byte[] b, int offset, int len) throws IOException {
+    int total = 0;
+    while (total < len && pos + total < mappedLength) {
+      ByteBuffer bb = view(pos + total);
+      int n = Math.min(len - total, bb.remaining());
+      bb.get(b, offset + total, n);
+      total += n;
+    }
+
+    // past the mapped region
+    ByteBuffer rest = ByteBuffer.wrap(b, offset + total, len - total);
+    while (rest.hasRemaining()) {
+      int n = fileChannel.read(rest, pos + total);
+      if (n < 0) break;
+      total += n;
+    }
+    return total;
+  }
 
-  public int read() throws IOException {
-    // If the file position is within the data, return the byte...
-    if( filePosition < dataEnd ) {
-      filePosition++;
-      return source.get() & 0xff;
+  @Override
+  protected int readPositional_(long pos, byte[] b, int offset, int len) throws IOException {
+    int n = read_(pos, b, offset, len);
+    return (n == 0 && len > 0) ? -1 : n;
+  }
 
-    } else {
-       return -1;
+  /**
+   * Zero-copy when the range lies within one mapped segment: the returned buffer shares the mapped memory.
+   */
+  @Override
+  public ByteBuffer readByteBufferAt(long pos, int len) throws IOException {
+    if (pos + len <= mappedLength) {
+      ByteBuffer bb = view(pos);
+      if (bb.remaining() >= len) {
+        bb.limit(bb.position() + len);
+        return bb.slice().asReadOnlyBuffer();
+      }
     }
+    return super.readByteBufferAt(pos, len);
   }
 
-   public int readBytes( byte dst[], int offset, int length ) throws IOException {
-     if( endOfFile ) return -1;
+  // If n elements of elemSize starting at the file pointer are in one mapped segment, return a view of them in the
+  // current byte order, and advance the file pointer. Otherwise return null.
+  private ByteBuffer bulkView(int n, int elemSize) throws IOException {
+    long nbytes = (long) n * elemSize;
+    if (n <= 0 || filePosition + nbytes > mappedLength)
+      return null;
+    ByteBuffer bb = view(filePosition);
+    if (bb.remaining() < nbytes)
+      return null;
+    bb.order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+    filePosition += nbytes;
+    return bb;
+  }
 
-     length = (int) Math.min( length, dataEnd - filePosition);
-     if (length > 0) {
-       source.get(dst, offset, length);
-       filePosition += length;
-     }
-     return length;
-   }
+  @Override
+  public void readShort(short[] pa, int start, int n) throws IOException {
+    ByteBuffer bb = bulkView(n, 2);
+    if (bb != null) bb.asShortBuffer().get(pa, start, n);
+    else super.readShort(pa, start, n);
+  }
 
-  public void write( int b ) throws IOException {
-     source.put( (byte)b);
-     filePosition++;
-     bufferModified = true;
+  @Override
+  public void readInt(int[] pa, int start, int n) throws IOException {
+    ByteBuffer bb = bulkView(n, 4);
+    if (bb != null) bb.asIntBuffer().get(pa, start, n);
+    else super.readInt(pa, start, n);
   }
 
-  public void writeBytes( byte dst[], int offset, int length ) throws IOException {
-    source.put(dst, offset, length);
-    filePosition += length;
+  @Override
+  public void readLong(long[] pa, int start, int n) throws IOException {
+    ByteBuffer bb = bulkView(n, 8);
+    if (bb != null) bb.asLongBuffer().get(pa, start, n);
+    else super.readLong(pa, start, n);
   }
 
-}
\ No newline at end of file
+  @Override
+  public void readFloat(float[] pa, int start, int n) throws IOException {
+    ByteBuffer bb = bulkView(n, 4);
+    if (bb != null) bb.asFloatBuffer().get(pa, start, n);
+    else super.readFloat(pa, start, n);
+  }
+
+  @Override
+  public void readDouble(double[] pa, int start, int n) throws IOException {
+    ByteBuffer bb = bulkView(n, 8);
+    if (bb != null) bb.asDoubleBuffer().get(pa, start, n);
+    else super.readDouble(pa, start, n);
+  }
+
+  /**
+   * Close the file and drop its segments, unless it is only released to the file cache.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    super.close();
+    if (file == null) { // really closed
+      for (int i = 0; i < segments.length(); i++)
+        segments.set(i, null);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "MMapRandomAccessFile " + location;
+  }
+}
@@ -16,9 +16,12 @@ import ucar.unidata.util.StringUtil2;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.WritableByteChannel;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -163,7 +166,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
   static private final ucar.nc2.util.cache.FileFactory factory = new FileFactory() {
     public FileCacheable open(DatasetUrl durl, int buffer_size, CancelTask cancelTask, Object iospMessage) throws IOException {
       String location = StringUtil2.replace(durl.trueurl, "\\", "/"); // canonicalize the name
-      RandomAccessFile result = new RandomAccessFile(location, "r", buffer_size);
+      RandomAccessFile result = openForReading(location, buffer_size);
       result.cacheState = 1;  // in use
       return result;
     }
@@ -185,16 +188,23 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     return cache;
   }
 
+  // open for reading, memory mapped if MMapRandomAccessFile.useMMap() says so
+  static private RandomAccessFile openForReading(String location, int buffer_size) throws IOException {
+    if (MMapRandomAccessFile.useMMap(location))
+      return new MMapRandomAccessFile(location, "r", buffer_size, MMapRandomAccessFile.defaultSegmentSize);
+    return new RandomAccessFile(location, "r", buffer_size);
+  }
+
   static public RandomAccessFile acquire(String location) throws IOException {
     if (cache == null)
-      return new RandomAccessFile(location, "r");
+      return openForReading(location, defaultBufferSize);
     else
       return (RandomAccessFile) cache.acquire(factory, new DatasetUrl(null, location));
   }
 
   static public RandomAccessFile acquire(String location, int buffer_size) throws IOException {
     if (cache == null)
-      return new RandomAccessFile(location, "r", buffer_size);
+      return openForReading(location, buffer_size);
     else
       return (RandomAccessFile) cache.acquire(factory, location, new DatasetUrl(null, location), buffer_size, null, null);
   }
@@ -748,6 +758,261 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
     return n;
   }
 
+  //////////////////////////////////////////////////////////////////////////////////////////////
+  // vectored reads
+
+  /**
+   * Default maximum gap, in bytes, between two ranges that are read together by readRanges().
+   */
+  static public final int defaultMaxRangeGap = 4096;
+
+  /**
+   * Maximum size of a single read made by readRanges() when coalescing ranges that are apart or adjacent.
+   * A single range larger than this, or ranges that overlap, are still read in one piece.
+   */
+  static public final int maxCoalescedRead = 16 * 1000 * 1000;
+
+  // the largest byte array that can be allocated; copied from ArrayList
+  static private final int maxArrayLength = Integer.MAX_VALUE - 8;
+
+  /**
+   * Read a list of byte ranges, using defaultMaxRangeGap.
+   *
+   * @param ranges read these; may be in any order and may overlap
+   * @return one ByteBuffer for each range, in the same order as ranges
+   * @throws IOException on read error, or if a range extends past the end of the file
+   * @see #readRanges(List, int)
+   */
+  public List<ByteBuffer> readRanges(List<ByteRange> ranges) throws IOException {
+    return readRanges(ranges, defaultMaxRangeGap);
+  }
+
+  /**
+   * Read a list of byte ranges. The ranges are sorted by offset, and ranges that are less than maxGap bytes apart
+   * are coalesced into a single read. Each range is returned as a (big endian) ByteBuffer view of the bytes read.
+   * <p>
+   * This uses positional reads on the underlying file, and does not use or change the file pointer or the buffer,
+   * so it does not interfere with other reads. It does not see writes that have not been flushed.
+   *
+   * @param ranges read these; may be in any order and may overlap
+   * @param maxGap coalesce ranges whose gap is not larger than this, in bytes
+   * @return one ByteBuffer for each range, in the same order as ranges
+   * @throws IOException on read error, if a range extends past the end of the file, or if overlapping ranges
+   *   span more than 2 GB
+   */
+  public List<ByteBuffer> readRanges(List<ByteRange> ranges, int maxGap) throws IOException {
+    List<ByteRange> blocks = coalesce(ranges, maxGap);
+    List<byte[]> blockData = new ArrayList<>(blocks.size());
+    for (ByteRange block : blocks)
+      blockData.add(readRange(block));
+    return slice(ranges, blocks, blockData);
+  }
+
+  /**
+   * Read a list of byte ranges asynchronously. Like readRanges(), but each coalesced read is a separate task
+   * on the given executor, so that independent reads may proceed concurrently.
+   *
+   * @param ranges   read these; may be in any order and may overlap
+   * @param maxGap   coalesce ranges whose gap is not larger than this, in bytes
+   * @param executor run the reads on this
+   * @return future of one ByteBuffer for each range, in the same order as ranges.
+   *   Completes exceptionally with an UncheckedIOException on read error, or if overlapping ranges span more than 2 GB.
+   */
+  public CompletableFuture<List<ByteBuffer>> readRangesAsync(List<ByteRange> ranges, int maxGap, Executor executor) {
+    List<ByteRange> blocks;
+    try {
+      blocks = coalesce(ranges, maxGap);
+    } catch (IOException e) {
+      CompletableFuture<List<ByteBuffer>> failed = new CompletableFuture<>();
+      failed.completeExceptionally(new UncheckedIOException(e));
+      return failed;
+    }
+    List<CompletableFuture<byte[]>> futures = new ArrayList<>(blocks.size());
+    for (ByteRange block : blocks) {
+      futures.add(CompletableFuture.supplyAsync(() -> {
+        try {
+          return readRange(block);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }, executor));
+    }
+
+    return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(v -> {
+      List<byte[]> blockData = new ArrayList<>(futures.size());
+      for (CompletableFuture<byte[]> f : futures)
+        blockData.add(f.join());
+      return slice(ranges, blocks, blockData);
+    });
+  }
+
+  /**
+   * Sort the ranges and merge the ones that overlap or are separated by no more than maxGap bytes.
+   * Ranges that overlap are always merged, so that each range lies inside exactly one block; ranges that dont are
+   * merged only up to maxCoalescedRead.
+   *
+   * @param ranges the requested ranges, any order
+   * @param maxGap maximum gap to coalesce, in bytes
+   * @return the blocks to read, sorted by offset, each covering one or more of the ranges
+   * @throws IOException if overlapping ranges span more bytes than fit in one array
+   */
+  static List<ByteRange> coalesce(List<ByteRange> ranges, int maxGap) throws IOException {
+    List<ByteRange> sorted = new ArrayList<>(ranges);
+    sorted.sort(Comparator.comparingLong(ByteRange::getOffset));
+
+    List<ByteRange> blocks = new ArrayList<>();
+    long start = -1, end = -1;
+    for (ByteRange r : sorted) {
+      boolean overlaps = r.getOffset() < end;
+      if (start >= 0 && (overlaps || (r.getOffset() <= end + maxGap && r.getEnd() - start <= maxCoalescedRead))) {
+        end = Math.max(end, r.getEnd());
+        continue;
+      }
+      if (start >= 0)
+        blocks.add(makeBlock(start, end));
+      start = r.getOffset();
+      end = r.getEnd();
+    }
+    if (start >= 0)
+      blocks.add(makeBlock(start, end));
+    return blocks;
+  }
+
+  static private ByteRange makeBlock(long start, long end) throws IOException {
+    if (end - start > maxArrayLength)
+      throw new IOException("Overlapping ranges starting at " + start + " span " + (end - start) +
+              " bytes, more than can be read at once");
+    return new ByteRange(start, (int) (end - start));
+  }
+
+  // each range is contained in exactly one of the sorted, disjoint blocks
+  private List<ByteBuffer> slice(List<ByteRange> ranges, List<ByteRange> blocks, List<byte[]> blockData) {
+    long[] blockStarts = new long[blocks.size()];
+    for (int i = 0; i < blocks.size(); i++)
+      blockStarts[i] = blocks.get(i).getOffset();
+
+    List<ByteBuffer> result = new ArrayList<>(ranges.size());
+    for (ByteRange r : ranges) {
+      int idx = Arrays.binarySearch(blockStarts, r.getOffset());
+      if (idx < 0) idx = -idx - 2; // the block starting before r
+      int pos = (int) (r.getOffset() - blockStarts[idx]);
+      result.add(ByteBuffer.wrap(blockData.get(idx), pos, r.getLength()).slice());
+    }
+    return result;
+  }
+
+  private byte[] readRange(ByteRange range) throws IOException {
+    byte[] data = new byte[range.getLength()];
+    readFullyAt(range.getOffset(), data, 0, data.length);
+    return data;
+  }
+
+  /**
+   * Read directly from the file at the given position, without going through the buffer, and without
+   * using or changing the file pointer. Safe to call from multiple threads.
+   * Subclasses without a local file must override read_() with a positional read, which this then uses.
+   *
+   * @param pos    start here in the file
+   * @param b      put data into this buffer
+   * @param offset buffer offset
+   * @param len    this number of bytes
+   * @return actual number of bytes read, or -1 if pos is at or past the end of the file
+   * @throws IOException on io error
+   */
+  protected int readPositional_(long pos, byte[] b, int offset, int len) throws IOException {
+    if (file == null)
+      return read_(pos, b, offset, len);
+
+    java.nio.channels.FileChannel channel = fileChannel;
+    if (channel == null)
+      channel = fileChannel = file.getChannel(); // always the same channel object
+
+    ByteBuffer bb = ByteBuffer.wrap(b, offset, len);
+    int total = 0;
+    while (bb.hasRemaining()) {
+      int n = channel.read(bb, pos + total);
+      if (n < 0) break;
+      total += n;
+    }
+    if (debugAccess) {
+      if (showRead)
+        System.out.println(" **readPositional_ " + location + " = " + len + " bytes at " + pos);
+      debug_nseeks.incrementAndGet();
+      debug_nbytes.addAndGet(total);
+    }
+    return (total == 0 && len > 0) ? -1 : total;
+  }
+
+  /**
+   * Positional read: read up to len bytes starting at pos, without using the buffer, the file pointer or the byte order.
+   * Unlike the other read methods, this does not change any state of this object, so many threads may call it
+   * at the same time on one shared RandomAccessFile.
+   * Data written but not yet flushed is not seen; use only on files opened read-only, or after flush().
+   *
+   * @param pos start here in the file
+   * @param b   put data into this buffer
+   * @param off buffer offset
+   * @param len this number of bytes
+   * @return actual number of bytes read, or -1 if pos is at or past the end of the file
+   * @throws IOException on io error
+   */
+  public int readAt(long pos, byte[] b, int off, int len) throws IOException {
+    return readPositional_(pos, b, off, len);
+  }
+
+  /**
+   * Positional read of exactly len bytes starting at pos. Safe to call from many threads, see readAt().
+   *
+   * @param pos start here in the file
+   * @param b   put data into this buffer
+   * @param off buffer offset
+   * @param len this number of bytes
+   * @throws EOFException if the end of the file is reached before len bytes are read
+   * @throws IOException  on io error
+   */
+  public void readFullyAt(long pos, byte[] b, int off, int len) throws IOException {
+    int done = 0;
+    while (done < len) {
+      int n = readPositional_(pos + done, b, off + done, len - done);
+      if (n <= 0)
+        throw new EOFException("Reading " + location + " at " + (pos + done) + " file length = " + length());
+      done += n;
+    }
+  }
+
+  /**
+   * Positional read of exactly len bytes starting at pos, returned as a ByteBuffer. Safe to call from many threads,
+   * see readAt(). The ByteBuffer may share memory with the file (see MMapRandomAccessFile), so must not be modified.
+   * Its byte order is BIG_ENDIAN, regardless of the byte order of this file.
+   *
+   * @param pos start here in the file
+   * @param len this number of bytes
+   * @return the bytes read, from position 0 to limit len
+   * @throws EOFException if the end of the file is reached before len bytes are read
+   * @throws IOException  on io error
+   */
+  public ByteBuffer readByteBufferAt(long pos, int len) throws IOException {
+    byte[] b = new byte[len];
+    readFullyAt(pos, b, 0, len);
+    return ByteBuffer.wrap(b);
+  }
+
+  /**
+   * @return true if the file was opened read-only, so that positional reads always see the current contents.
+   */
+  public boolean isReadOnly() {
+    return readonly;
+  }
+
+  /**
+   * @return true if this is a local file opened read-only, so that positional reads go straight to its FileChannel.
+   *   Remote and in-memory subclasses do positional reads through read_(), which may cost much more than
+   *   reading through the buffer.
+   */
+  public boolean isLocalReadOnly() {
+    return readonly && (file != null);
+  }
+
   /**
    * Read up to <code>len</code> bytes into an array, at a specified
    * offset. This will block until at least one byte has been read.
@@ -1105,7 +1370,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @param n     read this many elements
    * @throws IOException on read error
    */
-  public final void readShort(short[] pa, int start, int n) throws IOException {
+  public void readShort(short[] pa, int start, int n) throws IOException {
     for (int i = 0; i < n; i++) {
       pa[start + i] = readShort();
     }
@@ -1258,7 +1523,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @param n     read this many elements
    * @throws IOException on read error
    */
-  public final void readInt(int[] pa, int start, int n) throws IOException {
+  public void readInt(int[] pa, int start, int n) throws IOException {
     for (int i = 0; i < n; i++) {
       pa[start + i] = readInt();
     }
@@ -1324,7 +1589,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @param n     read this many elements
    * @throws IOException on read error
    */
-  public final void readLong(long[] pa, int start, int n) throws IOException {
+  public void readLong(long[] pa, int start, int n) throws IOException {
     for (int i = 0; i < n; i++) {
       pa[start + i] = readLong();
     }
@@ -1361,7 +1626,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @param n     read this many elements
    * @throws IOException on read error
    */
-  public final void readFloat(float[] pa, int start, int n) throws IOException {
+  public void readFloat(float[] pa, int start, int n) throws IOException {
     for (int i = 0; i < n; i++) {
       pa[start + i] = Float.intBitsToFloat(readInt());
     }
@@ -1398,7 +1663,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
    * @param n     read this many elements
    * @throws IOException on read error
    */
-  public final void readDouble(double[] pa, int start, int n) throws IOException {
+  public void readDouble(double[] pa, int start, int n) throws IOException {
     for (int i = 0; i < n; i++) {
       pa[start + i] = Double.longBitsToDouble(readLong());
     }
@@ -5,6 +5,8 @@
 
 package ucar.unidata.io.http;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.http.Header;
 import ucar.httpservices.HTTPFactory;
 import ucar.httpservices.HTTPMethod;
@@ -16,12 +18,34 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Formatter;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Gives access to files over HTTP, using "Accept-Ranges" HTTP header to do random access.
  * This version uses a single instance of HttpClient, following performance guidelines at
  * http://jakarta.apache.org/commons/httpclient/performance.html
  * Plus other improvements.
+ * <p/>
+ * Optionally (see setBlockCache()) the file is read in fixed size blocks, which are kept in a per-file LRU cache.
+ * Consecutive missing blocks are fetched with one Range request. When reads are sequential, more blocks are read ahead,
+ * doubling each time up to maxReadAheadBlocks. With setPrefetch(), the blocks following each read are also fetched
+ * in the background.
+ * <p/>
+ * Requests made for readers share one HTTPSession, and are made one at a time. Since nothing makes a session safe to
+ * use from more than one thread, each background prefetch takes a session of its own from a per-file pool, and gives
+ * it back when done, so its connection is reused by the next prefetch.
  *
  * @author John Caron, based on work by Donald Denbo
  */
@@ -31,12 +55,81 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
   static public final int maxHTTPBufferSize = 10 * 1000 * 1000;     // 10 M
   static private final boolean debug = false, debugDetails = false;
 
+  // block cache, applies to files opened afterwards
+  static private volatile int blockCacheBlockSize = 0; // 0 = no block cache
+  static private volatile int blockCacheMaxBlocks = 0;
+  static private volatile int blockCacheMaxReadAhead = 0;
+
+  // background prefetch of blocks
+  static private volatile ExecutorService prefetchExecutor = null;
+  static private volatile int prefetchBlocks = 0;
+
+  /**
+   * Read files opened after this call in blocks of blockSize bytes, and keep up to maxBlocks of them per file,
+   * evicting the least recently used.
+   *
+   * @param blockSize          block size in bytes, or 0 for no block cache (the default).
+   * @param maxBlocks          maximum number of blocks kept for each file.
+   * @param maxReadAheadBlocks when reads are sequential, read up to this many extra blocks in the same request.
+   */
+  static public void setBlockCache(int blockSize, int maxBlocks, int maxReadAheadBlocks) {
+    blockCacheMaxBlocks = Math.max(maxBlocks, 1);
+    blockCacheMaxReadAhead = Math.max(maxReadAheadBlocks, 0);
+    blockCacheBlockSize = Math.max(blockSize, 0);
+  }
+
+  /**
+   * After each read from a file with a block cache, fetch the following nblocks blocks in the background.
+   *
+   * @param nthreads number of threads shared by all files, or 0 for no prefetch (the default).
+   * @param nblocks  number of blocks to prefetch.
+   */
+  static public synchronized void setPrefetch(int nthreads, int nblocks) {
+    if (prefetchExecutor != null)
+      prefetchExecutor.shutdownNow();
+    prefetchExecutor = null;
+    prefetchBlocks = 0;
+    if (nthreads <= 0 || nblocks <= 0) return;
+
+    AtomicInteger count = new AtomicInteger();
+    prefetchExecutor = Executors.newFixedThreadPool(nthreads, r -> {
+      Thread t = new Thread(r, "HTTPRandomAccessFile-prefetch-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    prefetchBlocks = nblocks;
+  }
+
+  /**
+   * Stop the prefetch threads.
+   */
+  static public void shutdown() {
+    setPrefetch(0, 0);
+  }
+
   ///////////////////////////////////////////////////////////////////////////////////
 
   private String url;
   private HTTPSession session = null;
+  private final Object sessionLock = new Object(); // requests on session are made one at a time
+  private volatile boolean closed = false;
   private long total_length = 0;
 
+  private final int blockSize; // 0 = no block cache
+  private final int maxReadAhead;
+  private final Cache<Long, byte[]> blocks;
+  private final ConcurrentHashMap<Long, CompletableFuture<byte[]>> prefetching = new ConcurrentHashMap<>();
+  private final Deque<HTTPSession> prefetchSessions = new ConcurrentLinkedDeque<>(); // idle, at most one per thread
+  private volatile long lastBlock = -2;  // last block read, to detect sequential reads
+  private volatile int readAhead = 0;    // current number of read ahead blocks
+
+  // statistics
+  private final AtomicLong nrequests = new AtomicLong();
+  private final AtomicLong bytesTransferred = new AtomicLong();
+  private final AtomicLong bytesUsed = new AtomicLong();
+  private final AtomicLong blockHits = new AtomicLong();
+  private final AtomicLong blockMisses = new AtomicLong();
+
   public HTTPRandomAccessFile(String url) throws IOException {
     this(url, defaultHTTPBufferSize);
     location = url;
@@ -47,6 +140,9 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
     super(bufferSize);
     file = null;
     this.url = url;
+    this.blockSize = blockCacheBlockSize;
+    this.maxReadAhead = blockCacheMaxReadAhead;
+    this.blocks = (blockSize > 0) ? CacheBuilder.newBuilder().maximumSize(blockCacheMaxBlocks).<Long, byte[]>build() : null;
     location = url;
     if (debugLeaks)
       allFiles.add(location);
@@ -90,7 +186,10 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
     if (needtest && !rangeOk(url))
       throw new IOException("Server does not support byte Ranges");
 
-    if (total_length > 0) {
+    if (blocks != null) {
+      setBufferSize(blockSize); // the block cache does the buffering
+
+    } else if (total_length > 0) {
       // this means that we will read the file in one gulp then deal with it in memory
       int useBuffer = (int) Math.min(total_length, maxHTTPBufferSize); // entire file size if possible
       useBuffer = Math.max(useBuffer, defaultHTTPBufferSize); // minimum buffer
@@ -104,10 +203,16 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
     if (debugLeaks)
       openFiles.remove(location);
 
-    if (session != null) {
-      session.close();
-      session = null;
+    closed = true;
+    synchronized (sessionLock) {
+      if (session != null) {
+        session.close();
+        session = null;
+      }
     }
+    closePrefetchSessions();
+    if (blocks != null)
+      blocks.invalidateAll();
   }
 
   private boolean rangeOk(String url)
@@ -170,13 +275,171 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
    */
   @Override
   protected int read_(long pos, byte[] buff, int offset, int len) throws IOException {
+    int n = (blocks == null) ? readRemote(pos, buff, offset, len) : readBlocks(pos, buff, offset, len);
+    if (n > 0) bytesUsed.addAndGet(n);
+    return n;
+  }
+
+  private int readBlocks(long pos, byte[] buff, int offset, int len) throws IOException {
+    if (pos >= total_length) return -1;
+    len = (int) Math.min(len, total_length - pos);
+    if (len <= 0) return 0;
+
+    long first = pos / blockSize;
+    long last = (pos + len - 1) / blockSize;
+    long nblocks = (total_length + blockSize - 1) / blockSize;
+
+    // sequential reads double the read ahead, random reads turn it off
+    long prev = lastBlock;
+    int ra = (first == prev || first == prev + 1) ? Math.min(Math.max(2 * readAhead, 1), maxReadAhead) : 0;
+    readAhead = ra;
+    lastBlock = last;
+
+    int done = 0;
+    for (long b = first; b <= last; b++) {
+      byte[] data = getCachedBlock(b);
+      if (data == null) {
+        // fetch this and the following missing blocks in one request
+        long end = b;
+        long endWant = Math.min(last + ra, nblocks - 1);
+        while (end < endWant && blocks.getIfPresent(end + 1) == null && !prefetching.containsKey(end + 1))
+          end++;
+        data = fetchBlocks(b, end, null)[0];
+      }
+
+      int blockOffset = (int) (pos + done - b * blockSize);
+      int n = Math.min(len - done, data.length - blockOffset);
+      System.arraycopy(data, blockOffset, buff, offset + done, n);
+      done += n;
+    }
+
+    prefetch(last + 1, Math.min(last + prefetchBlocks, nblocks - 1));
+    return done;
+  }
+
+  // from the cache, or a background fetch; null if neither
+  private byte[] getCachedBlock(long blockno) throws IOException {
+    byte[] data = blocks.getIfPresent(blockno);
+    if (data == null) {
+      CompletableFuture<byte[]> future = prefetching.get(blockno);
+      if (future != null) {
+        try {
+          data = future.join();
+        } catch (Exception e) {
+          data = null; // prefetch failed, fetch it now
+        }
+      }
+    }
+    if (data != null) blockHits.incrementAndGet();
+    return data;
+  }
+
+  // read blocks first to last (inclusive) in one request, put them in the cache and return them.
+  // prefetchSession is the session of a background prefetch, or null to use the shared session.
+  private byte[][] fetchBlocks(long first, long last, HTTPSession prefetchSession) throws IOException {
+    long start = first * blockSize;
+    int len = (int) (Math.min((last + 1) * blockSize, total_length) - start);
+    byte[] data = new byte[len];
+    int n = (prefetchSession == null) ? readRemote(start, data, 0, len) : readRemote(prefetchSession, start, data, 0, len);
+    if (n < len)
+      throw new IOException("Short read " + url + " at " + start + " want " + len + " got " + n);
+
+    byte[][] result = new byte[(int) (last - first + 1)][];
+    for (int i = 0; i < result.length; i++) {
+      int from = i * blockSize;
+      result[i] = Arrays.copyOfRange(data, from, Math.min(from + blockSize, len));
+      blocks.put(first + i, result[i]);
+    }
+    blockMisses.addAndGet(result.length);
+    return result;
+  }
+
+  private void prefetch(long first, long last) {
+    ExecutorService executor = prefetchExecutor;
+    if (executor == null || first > last || closed) return;
+
+    long b = first;
+    while (b <= last) {
+      if (blocks.getIfPresent(b) != null || prefetching.containsKey(b)) {
+        b++;
+        continue;
+      }
+      // a run of missing blocks
+      long end = b;
+      while (end < last && blocks.getIfPresent(end + 1) == null && !prefetching.containsKey(end + 1))
+        end++;
+      submitPrefetch(executor, b, end);
+      b = end + 1;
+    }
+  }
+
+  private void submitPrefetch(ExecutorService executor, long first, long last) {
+    List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+    for (long b = first; b <= last; b++) {
+      CompletableFuture<byte[]> f = new CompletableFuture<>();
+      futures.add(f);
+      prefetching.put(b, f);
+    }
+
+    Runnable task = () -> {
+      HTTPSession prefetchSession = null;
+      try {
+        if (closed) throw new IOException(url + " is closed");
+        prefetchSession = takePrefetchSession();
+        byte[][] data = fetchBlocks(first, last, prefetchSession);
+        releasePrefetchSession(prefetchSession);
+        for (int i = 0; i < data.length; i++)
+          futures.get(i).complete(data[i]);
+      } catch (Throwable t) {
+        if (prefetchSession != null) prefetchSession.close(); // dont reuse it after a failure
+        for (CompletableFuture<byte[]> f : futures) f.completeExceptionally(t);
+      } finally {
+        for (long b = first; b <= last; b++)
+          prefetching.remove(b);
+      }
+    };
+
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) { // shut down
+      for (CompletableFuture<byte[]> f : futures) f.cancel(false);
+      for (long b = first; b <= last; b++)
+        prefetching.remove(b);
+    }
+  }
+
+  private HTTPSession takePrefetchSession() throws IOException {
+    HTTPSession s = prefetchSessions.pollFirst();
+    return (s != null) ? s : HTTPFactory.newSession(url);
+  }
+
+  private void releasePrefetchSession(HTTPSession s) {
+    prefetchSessions.addFirst(s);
+    if (closed) closePrefetchSessions(); // close() may have run before we put it back
+  }
+
+  private void closePrefetchSessions() {
+    HTTPSession s;
+    while ((s = prefetchSessions.pollFirst()) != null)
+      s.close();
+  }
+
+  private int readRemote(long pos, byte[] buff, int offset, int len) throws IOException {
+    synchronized (sessionLock) {
+      if (session == null)
+        throw new IOException(url + " is closed");
+      return readRemote(session, pos, buff, offset, len);
+    }
+  }
+
+  private int readRemote(HTTPSession httpSession, long pos, byte[] buff, int offset, int len) throws IOException {
     long end = pos + len - 1;
     if (end >= total_length)
       end = total_length - 1;
 
     if (debug) System.out.println(" HTTPRandomAccessFile bytes=" + pos + "-" + end + ": ");
 
-    try (HTTPMethod method = HTTPFactory.Get(session,url)) {
+    try (HTTPMethod method = HTTPFactory.Get(httpSession, url)) {
       method.setFollowRedirects(true);
       method.setRange(pos,end);
       doConnect(method);
@@ -194,6 +457,8 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
 
       InputStream is = method.getResponseAsStream();
       readLen = copy(is, buff, offset, readLen);
+      nrequests.incrementAndGet();
+      bytesTransferred.addAndGet(readLen);
       return readLen;
 
     }
@@ -230,6 +495,50 @@ public class HTTPRandomAccessFile extends ucar.unidata.io.RandomAccessFile {
       return fileLength;
   }
 
+  /**
+   * @return number of HTTP Range requests made for data
+   */
+  public long getRequestCount() {
+    return nrequests.get();
+  }
+
+  /**
+   * @return number of bytes received from the server
+   */
+  public long getBytesTransferred() {
+    return bytesTransferred.get();
+  }
+
+  /**
+   * @return number of bytes returned to readers of this file
+   */
+  public long getBytesUsed() {
+    return bytesUsed.get();
+  }
+
+  /**
+   * @return number of blocks found in the block cache or being prefetched
+   */
+  public long getBlockHits() {
+    return blockHits.get();
+  }
+
+  /**
+   * @return number of blocks fetched from the server, including read ahead and prefetch
+   */
+  public long getBlockMisses() {
+    return blockMisses.get();
+  }
+
+  public void showStats(Formatter f) {
+    f.format("%s: requests=%d bytesTransferred=%d bytesUsed=%d", url, getRequestCount(), getBytesTransferred(),
+            getBytesUsed());
+    if (blocks != null)
+      f.format(" blockSize=%d blocks=%d blockHits=%d blockMisses=%d", blockSize, blocks.size(), getBlockHits(),
+              getBlockMisses());
+    f.format("%n");
+  }
+
   /**
    * Always returns {@code 0L}, as we cannot easily determine the last time that a remote file was modified.
    *
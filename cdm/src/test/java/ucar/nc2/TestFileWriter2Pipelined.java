@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.*;
+import ucar.nc2.util.CancelTaskImpl;
+import ucar.nc2.util.CompareNetcdf2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Formatter;
+import java.util.List;
+
+/**
+ * Copying with FileWriter2.setNumThreads() must make the same file as copying on one thread.
+ */
+public class TestFileWriter2Pipelined {
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void chunkAlignedSections() {
+    checkSections(new int[] {10, 7, 13}, new int[] {3, 7, 5}, 100);
+    checkSections(new int[] {10, 7, 13}, new int[] {3, 7, 5}, 1);     // one chunk is larger
+    checkSections(new int[] {10, 7, 13}, new int[] {3, 7, 5}, 10000); // all of it
+    checkSections(new int[] {10, 7, 13}, new int[] {1, 1, 1}, 50);    // contiguous
+    checkSections(new int[] {5, 4}, new int[] {8, 8}, 20);           // chunk larger than the array
+    checkSections(new int[] {}, new int[] {}, 20);                   // scalar
+
+    Assert.assertEquals(0, FileWriter2.makeChunkAlignedSections(new int[] {0, 4}, new int[] {1, 4}, 20).size());
+  }
+
+  // the sections must cover the array once, in index order, and be made of whole chunks except at the upper edges
+  private void checkSections(int[] shape, int[] chunkShape, long maxElems) {
+    List<Section> sections = FileWriter2.makeChunkAlignedSections(shape, chunkShape, maxElems);
+    long chunkSize = Index.computeSize(chunkShape);
+    int[] count = new int[(int) Index.computeSize(shape)];
+    Index index = Index.factory(shape);
+    int last = -1;
+
+    for (Section s : sections) {
+      int[] origin = s.getOrigin();
+      int[] sshape = s.getShape();
+      for (int i = 0; i < shape.length; i++) {
+        Assert.assertEquals(s.toString(), 0, origin[i] % chunkShape[i]);
+        Assert.assertTrue(s.toString(), sshape[i] % chunkShape[i] == 0 || origin[i] + sshape[i] == shape[i]);
+      }
+      Assert.assertTrue(s.toString(), s.computeSize() <= Math.max(maxElems, chunkSize));
+
+      int first = index.set(origin).currentElement();
+      Assert.assertTrue(s.toString(), first > last);
+      last = first;
+
+      Section.Iterator iter = s.getIterator(shape);
+      while (iter.hasNext())
+        count[iter.next(null)]++;
+    }
+
+    for (int c : count)
+      Assert.assertEquals(1, c);
+  }
+
+  @Test
+  public void netcdf3() throws IOException, InvalidRangeException {
+    File fileIn = makeFile();
+    File sequential = tempFolder.newFile();
+    copy(fileIn, sequential, 1, 1000);
+
+    for (long maxPieceSize : new long[] {1000, 4, 1000 * 1000}) {
+      File pipelined = tempFolder.newFile();
+      CancelTaskImpl cancel = copy(fileIn, pipelined, 4, maxPieceSize);
+      Assert.assertEquals(100, cancel.getProgress());
+
+      try (NetcdfFile org = NetcdfFile.open(sequential.getPath()); NetcdfFile copy = NetcdfFile.open(pipelined.getPath())) {
+        Formatter f = new Formatter();
+        boolean ok = CompareNetcdf2.compareFiles(org, copy, f, true, false, false);
+        Assert.assertTrue("maxPieceSize=" + maxPieceSize + "\n" + f, ok);
+      }
+    }
+  }
+
+  private CancelTaskImpl copy(File fileIn, File fileOut, int nthreads, long maxPieceSize) throws IOException {
+    CancelTaskImpl cancel = new CancelTaskImpl();
+    try (NetcdfFile ncfileIn = NetcdfFile.open(fileIn.getPath())) {
+      FileWriter2 writer = new FileWriter2(ncfileIn, fileOut.getPath(), NetcdfFileWriter.Version.netcdf3, null);
+      writer.setNumThreads(nthreads);
+      writer.setMaxPieceSize(maxPieceSize);
+      NetcdfFile ncfileOut = writer.write(cancel);
+      Assert.assertNotNull(ncfileOut);
+      ncfileOut.close();
+    }
+    return cancel;
+  }
+
+  private File makeFile() throws IOException, InvalidRangeException {
+    File file = tempFolder.newFile();
+    try (NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, file.getPath())) {
+      writer.addUnlimitedDimension("time");
+      writer.addDimension(null, "y", 17);
+      writer.addDimension(null, "x", 23);
+      writer.addDimension(null, "len", 6);
+      Variable temp = writer.addVariable(null, "temp", DataType.FLOAT, "time y x");
+      Variable count = writer.addVariable(null, "count", DataType.INT, "y x");
+      Variable name = writer.addVariable(null, "name", DataType.CHAR, "y len");
+      Variable scale = writer.addVariable(null, "scale", DataType.DOUBLE, "");
+      writer.create();
+
+      int nt = 11;
+      Array tempData = Array.factory(DataType.FLOAT, new int[] {nt, 17, 23});
+      for (int i = 0; i < tempData.getSize(); i++)
+        tempData.setFloat(i, i * 0.5f);
+      writer.write(temp, new int[3], tempData);
+
+      Array countData = Array.factory(DataType.INT, new int[] {17, 23});
+      for (int i = 0; i < countData.getSize(); i++)
+        countData.setInt(i, -i);
+      writer.write(count, countData);
+
+      ArrayChar nameData = new ArrayChar.D2(17, 6);
+      for (int i = 0; i < 17; i++)
+        nameData.setString(i, "row" + i);
+      writer.write(name, nameData);
+
+      writer.write(scale, new ArrayDouble.D0());
+    }
+    return file;
+  }
+}
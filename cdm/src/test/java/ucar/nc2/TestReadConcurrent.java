@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayStructureBB;
+import ucar.ma2.Range;
+import ucar.ma2.Section;
+import ucar.unidata.io.RandomAccessFile;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Many threads reading from one open netcdf-3 file, using positional reads.
+ */
+public class TestReadConcurrent {
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private Object javaArray(Array data) {
+    if (data instanceof ArrayStructureBB)
+      return ((ArrayStructureBB) data).getByteBuffer().array();
+    return data.copyTo1DJavaArray();
+  }
+
+  private void check(String filename) throws Exception {
+    Map<String, Object> expected = new HashMap<>();
+    try (NetcdfFile ncfile = TestDir.openFileLocal(filename)) {
+      ncfile.sendIospMessage(NetcdfFile.IOSP_MESSAGE_ADD_RECORD_STRUCTURE);
+      for (Variable v : ncfile.getVariables())
+        expected.put(v.getFullName(), javaArray(v.read()));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try (NetcdfFile ncfile = TestDir.openFileLocal(filename)) {
+      ncfile.sendIospMessage(NetcdfFile.IOSP_MESSAGE_ADD_RECORD_STRUCTURE);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 32; t++) {
+        for (Variable v : ncfile.getVariables()) {
+          v.setCaching(false);
+          futures.add(executor.submit(() -> {
+            Object want = expected.get(v.getFullName());
+            Assert.assertTrue(v.getFullName(), java.util.Objects.deepEquals(want, javaArray(v.read())));
+            return null;
+          }));
+        }
+      }
+      for (Future<?> f : futures) f.get();
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testRecordFile() throws Exception {
+    check("testWriteRecord.nc");
+  }
+
+  @Test
+  public void testNonRecordFile() throws Exception {
+    check("jan.nc");
+  }
+
+  // positional reads of strided sections and record subsets must match the buffered reads of a file opened "rw"
+  @Test
+  public void testSectionsMatchBuffered() throws Exception {
+    File copy = tempFolder.newFile();
+    Files.copy(new File(TestDir.cdmLocalTestDataDir + "testWriteRecord.nc").toPath(), copy.toPath(),
+            java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+
+    try (NetcdfFile positional = NetcdfFile.open(copy.getPath());
+         NetcdfFile buffered = NetcdfFile.open(new RandomAccessFile(copy.getPath(), "rw"), copy.getPath(), null, null)) {
+      positional.sendIospMessage(NetcdfFile.IOSP_MESSAGE_ADD_RECORD_STRUCTURE);
+      buffered.sendIospMessage(NetcdfFile.IOSP_MESSAGE_ADD_RECORD_STRUCTURE);
+
+      for (Variable v : positional.getVariables()) {
+        Variable vb = buffered.findVariable(v.getFullNameEscaped());
+        v.setCaching(false);
+        vb.setCaching(false);
+        List<Range> ranges = new ArrayList<>();
+        for (int len : v.getShape())
+          ranges.add(len > 1 ? new Range(len / 3, len - 1, 2) : new Range(0, Math.max(0, len - 1)));
+        for (Section section : new Section[] {new Section(v.getShape()), new Section(ranges)}) {
+          Object want = javaArray(vb.read(section));
+          Assert.assertTrue(v.getFullName() + section, java.util.Objects.deepEquals(want, javaArray(v.read(section))));
+        }
+      }
+    }
+  }
+}
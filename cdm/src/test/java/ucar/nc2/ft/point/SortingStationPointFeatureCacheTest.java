@@ -12,7 +12,9 @@ import java.util.LinkedList;
 import java.util.List;
 import com.google.common.collect.Ordering;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ucar.ma2.DataType;
@@ -27,6 +29,9 @@ import ucar.nc2.time.CalendarDateUnit;
 public class SortingStationPointFeatureCacheTest {
     private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+    @Rule
+    public final TemporaryFolder tempFolder = new TemporaryFolder();
+
     @Test
     public void test1() throws Exception {
         StructureDataScalar stationData = new StructureDataScalar("StationFeature");  // leave it empty.
@@ -119,4 +124,58 @@ public class SortingStationPointFeatureCacheTest {
             Assert.assertTrue(PointTestUtil.equals(pointIterExpected, pointIterActual));
         }
     }
+
+    @Test
+    public void spillToDisk() throws URISyntaxException, NoFactoryFoundException, IOException {
+        // Ties in the comparator must come out in the order they were added, as they do in memory.
+        Comparator<StationPointFeature> longestStationNameFirst =
+                (o1, o2) -> -Integer.compare(o1.getStation().getName().length(), o2.getStation().getName().length());
+
+        for (Comparator<StationPointFeature> comp :
+                Arrays.asList(SortingStationPointFeatureCache.stationNameComparator, longestStationNameFirst)) {
+            for (long maxInMemBytes : new long[] {1, 1000}) {
+                try (FeatureDatasetPoint fdInput = PointTestUtil.openPointDataset("cacheTestInput1.ncml");
+                        SortingStationPointFeatureCache inMem = new SortingStationPointFeatureCache(comp);
+                        SortingStationPointFeatureCache spilled = new SortingStationPointFeatureCache(comp)) {
+                    spilled.setMaxInMemBytes(maxInMemBytes);
+                    inMem.addAll(fdInput);
+                    spilled.addAll(fdInput);
+
+                    Assert.assertTrue(
+                            PointTestUtil.equals(inMem.getPointFeatureIterator(), spilled.getPointFeatureIterator()));
+                    // and again
+                    Assert.assertTrue(
+                            PointTestUtil.equals(inMem.getPointFeatureIterator(), spilled.getPointFeatureIterator()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mergeInPasses() throws URISyntaxException, NoFactoryFoundException, IOException {
+        // one run file per feature, merged 2 or 3 at a time
+        Comparator<StationPointFeature> longestStationNameFirst =
+                (o1, o2) -> -Integer.compare(o1.getStation().getName().length(), o2.getStation().getName().length());
+
+        for (int maxOpenRuns : new int[] {2, 3}) {
+            File tempDir = tempFolder.newFolder();
+            try (FeatureDatasetPoint fdInput = PointTestUtil.openPointDataset("cacheTestInput1.ncml");
+                    SortingStationPointFeatureCache inMem = new SortingStationPointFeatureCache(longestStationNameFirst);
+                    SortingStationPointFeatureCache spilled = new SortingStationPointFeatureCache(longestStationNameFirst)) {
+                spilled.setMaxInMemBytes(1);
+                spilled.setMaxOpenRuns(maxOpenRuns);
+                spilled.setTempDir(tempDir);
+                inMem.addAll(fdInput);
+                spilled.addAll(fdInput);
+                Assert.assertTrue(tempDir.list().length > maxOpenRuns);
+
+                Assert.assertTrue(
+                        PointTestUtil.equals(inMem.getPointFeatureIterator(), spilled.getPointFeatureIterator()));
+                Assert.assertTrue(tempDir.list().length <= maxOpenRuns);
+                Assert.assertTrue(
+                        PointTestUtil.equals(inMem.getPointFeatureIterator(), spilled.getPointFeatureIterator()));
+            }
+            Assert.assertEquals(0, tempDir.list().length);
+        }
+    }
 }
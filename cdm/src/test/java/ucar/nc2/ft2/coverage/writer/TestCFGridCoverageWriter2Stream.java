@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.ft2.coverage.writer;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.MAMath;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.Variable;
+import ucar.nc2.constants.CF;
+import ucar.nc2.ft2.coverage.CoverageCollection;
+import ucar.nc2.ft2.coverage.CoverageDatasetFactory;
+import ucar.nc2.ft2.coverage.FeatureDatasetCoverage;
+import ucar.nc2.util.Optional;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+
+/**
+ * Compare a netcdf-3 file streamed by CFGridCoverageWriter2.makeNetcdf3Stream() with one written to disk.
+ */
+public class TestCFGridCoverageWriter2Stream {
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testStream() throws Exception {
+    compare(false);
+  }
+
+  @Test
+  public void testStreamWithLatLon2D() throws Exception {
+    compare(true);
+  }
+
+  private void compare(boolean addLatLon) throws IOException, InvalidRangeException, URISyntaxException {
+    File testFile = new File(getClass().getResource("/ucar/nc2/ft2/coverage/crossSeamProjection.ncml").toURI());
+    File diskFile = tempFolder.newFile();
+    File streamFile = tempFolder.newFile();
+
+    try (FeatureDatasetCoverage featDsetCov = CoverageDatasetFactory.open(testFile.getAbsolutePath())) {
+      Assert.assertNotNull(featDsetCov);
+      CoverageCollection covColl = featDsetCov.getCoverageCollections().get(0);
+
+      NetcdfFileWriter writer = NetcdfFileWriter.createNew(diskFile.getAbsolutePath(), false);
+      long size = CFGridCoverageWriter2.writeOrTestSize(covColl, null, null, addLatLon, false, writer).get();
+
+      Optional<CFGridCoverageWriter2.Netcdf3Stream> streamo =
+              CFGridCoverageWriter2.makeNetcdf3Stream(covColl, null, null, addLatLon);
+      Assert.assertTrue(streamo.getErrorMessage(), streamo.isPresent());
+      CFGridCoverageWriter2.Netcdf3Stream stream = streamo.get();
+      Assert.assertEquals(size, stream.getSizeOfVars());
+
+      try (OutputStream out = new FileOutputStream(streamFile)) {
+        stream.write(out);
+      }
+      Assert.assertEquals(stream.getFileSize(), streamFile.length());
+    }
+
+    try (NetcdfFile disk = NetcdfFile.open(diskFile.getPath());
+         NetcdfFile streamed = NetcdfFile.open(streamFile.getPath())) {
+      Assert.assertEquals(disk.getDimensions().size(), streamed.getDimensions().size());
+      Assert.assertEquals(disk.getVariables().size(), streamed.getVariables().size());
+      for (Attribute att : disk.getGlobalAttributes()) {
+        if (att.getShortName().equals("History")) continue; // has a timestamp
+        Assert.assertEquals(att, streamed.findGlobalAttribute(att.getShortName()));
+      }
+
+      for (Variable v : disk.getVariables()) {
+        Variable sv = streamed.findVariable(v.getFullNameEscaped());
+        Assert.assertNotNull(v.getFullName(), sv);
+        Assert.assertEquals(v.getDataType(), sv.getDataType());
+        Assert.assertArrayEquals(v.getShape(), sv.getShape());
+        Assert.assertEquals(v.getAttributes(), sv.getAttributes());
+        if (v.findAttribute(CF.GRID_MAPPING_NAME) != null) continue; // no data, disk file leaves it unwritten
+        Array want = v.read();
+        Array got = sv.read();
+        Assert.assertTrue(v.getFullName(), MAMath.nearlyEquals(want, got));
+      }
+    }
+  }
+}
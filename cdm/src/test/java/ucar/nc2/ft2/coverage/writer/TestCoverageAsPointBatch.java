@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.ft2.coverage.writer;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.ArrayDouble;
+import ucar.ma2.ArrayFloat;
+import ucar.ma2.DataType;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.Variable;
+import ucar.nc2.constants.FeatureType;
+import ucar.nc2.ft.FeatureDatasetFactoryManager;
+import ucar.nc2.ft.FeatureDatasetPoint;
+import ucar.nc2.ft.PointFeature;
+import ucar.nc2.ft.StationTimeSeriesFeature;
+import ucar.nc2.ft.StationTimeSeriesFeatureCollection;
+import ucar.nc2.ft.point.writer.CFPointWriter;
+import ucar.nc2.ft2.coverage.CoverageCollection;
+import ucar.nc2.ft2.coverage.CoverageDatasetFactory;
+import ucar.nc2.ft2.coverage.FeatureDatasetCoverage;
+import ucar.nc2.ft2.coverage.HorizCoordSys;
+import ucar.nc2.ft2.coverage.SubsetParams;
+import ucar.nc2.util.Optional;
+import ucar.unidata.geoloc.LatLonPoint;
+import ucar.unidata.geoloc.LatLonPointImpl;
+import ucar.unidata.geoloc.ProjectionPoint;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compare time series at a batch of points with the grid values of the cells the points are in.
+ */
+public class TestCoverageAsPointBatch {
+  private static final int NT = 3, NY = 40, NX = 50;
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void latLon1D() throws Exception {
+    File file = makeFile("latlon");
+    check(file, 20.0, 45.0, -120.0, -70.0);
+  }
+
+  @Test
+  public void projection() throws Exception {
+    File file = makeFile("lambert");
+    check(file, 25.0, 50.0, -110.0, -85.0);
+  }
+
+  @Test
+  public void latLon2D() throws Exception {
+    File file = makeFile("2D");
+    check(file, 20.0, 45.0, -120.0, -70.0);
+  }
+
+  @Test
+  public void sameAsSinglePoint() throws Exception {
+    File file = makeFile("latlon");
+    List<LatLonPoint> points = randomPoints(new Random(11), 20, 25.0, 39.0, -110.0, -80.0);
+
+    try (FeatureDatasetCoverage fdc = CoverageDatasetFactory.open(file.getPath())) {
+      CoverageCollection gcd = fdc.getCoverageCollections().get(0);
+      SubsetParams subset = new SubsetParams().set(SubsetParams.timeAll, true);
+      Map<String, List<Double>> got = new HashMap<>();
+      Assert.assertEquals(points.size(), readStations(new CoverageAsPoint(gcd, Collections.singletonList("temp"), subset, points), got).size());
+
+      for (int i = 0; i < points.size(); i++) {
+        LatLonPoint p = points.get(i);
+        SubsetParams one = new SubsetParams().set(SubsetParams.timeAll, true)
+                .set(SubsetParams.latlonPoint, new LatLonPointImpl(p.getLatitude(), p.getLongitude()));
+        Map<String, List<Double>> want = new HashMap<>();
+        readStations(new CoverageAsPoint(gcd, Collections.singletonList("temp"), one), want);
+        Assert.assertEquals(1, want.size());
+        Map.Entry<String, List<Double>> station = want.entrySet().iterator().next();
+        Assert.assertEquals(station.getValue(), got.get(station.getKey() + "_" + i));
+      }
+    }
+  }
+
+  private void check(File file, double latMin, double latMax, double lonMin, double lonMax) throws Exception {
+    List<LatLonPoint> points = randomPoints(new Random(42), 300, latMin, latMax, lonMin, lonMax);
+    points.add(points.get(0));  // same cell
+    points.add(new LatLonPointImpl(-60.0, 10.0)); // outside
+
+    try (FeatureDatasetCoverage fdc = CoverageDatasetFactory.open(file.getPath())) {
+      CoverageCollection gcd = fdc.getCoverageCollections().get(0);
+      HorizCoordSys hcs = gcd.getHorizCoordSys();
+
+      // the cell each point is in, in station order
+      List<int[]> cells = new ArrayList<>();
+      for (LatLonPoint p : points) {
+        Optional<HorizCoordSys.CoordReturn> index;
+        if (hcs.isProjection()) {
+          ProjectionPoint pp = hcs.getTransform().getProjection().latLonToProj(p);
+          index = hcs.findXYindexFromCoord(pp.getX(), pp.getY());
+        } else {
+          index = hcs.findXYindexFromCoord(p.getLongitude(), p.getLatitude());
+        }
+        if (index.isPresent())
+          cells.add(new int[] {index.get().y, index.get().x});
+      }
+      Assert.assertTrue(cells.size() > points.size() / 2);
+      Assert.assertTrue(cells.size() < points.size());
+
+      SubsetParams subset = new SubsetParams().set(SubsetParams.timeAll, true);
+      for (long maxReadSize : new long[] {CoverageAsPoint.defaultMaxReadSize, 100 * NT * 4, 1}) {
+        CoverageAsPoint covp = new CoverageAsPoint(gcd, Collections.singletonList("temp"), subset, points);
+        covp.setMaxReadSize(maxReadSize);
+        Map<String, List<Double>> byName = new HashMap<>();
+        List<List<Double>> got = readStations(covp, byName);
+        Assert.assertEquals(cells.size(), got.size());
+        Assert.assertEquals(cells.size(), byName.size());  // the repeated point is its own station
+
+        // stations are in tile order, compare as sets of time series
+        List<List<Double>> want = new ArrayList<>();
+        for (int[] cell : cells) {
+          List<Double> series = new ArrayList<>();
+          for (int t = 0; t < NT; t++)
+            series.add(value(t, cell[0], cell[1]));
+          want.add(series);
+        }
+        Assert.assertEquals(sorted(want), sorted(got));
+      }
+    }
+  }
+
+  @Test
+  public void writeRepeatedPoint() throws Exception {
+    File file = makeFile("latlon");
+    List<LatLonPoint> points = new ArrayList<>();
+    points.add(new LatLonPointImpl(30.1, -100.2));
+    points.add(new LatLonPointImpl(35.3, -90.4));
+    points.add(new LatLonPointImpl(30.1, -100.2));
+    points.add(new LatLonPointImpl(30.1001, -100.2001)); // same name to 3 decimals
+
+    File out = tempFolder.newFile("points.nc");
+    Map<String, List<Double>> want = new HashMap<>();
+    try (FeatureDatasetCoverage fdc = CoverageDatasetFactory.open(file.getPath())) {
+      CoverageCollection gcd = fdc.getCoverageCollections().get(0);
+      SubsetParams subset = new SubsetParams().set(SubsetParams.timeAll, true);
+      CoverageAsPoint covp = new CoverageAsPoint(gcd, Collections.singletonList("temp"), subset, points);
+      readStations(covp, want);
+      try (FeatureDatasetPoint fdp = covp.asFeatureDatasetPoint()) {
+        Assert.assertEquals(points.size() * NT, CFPointWriter.writeFeatureCollection(fdp, out.getPath(), NetcdfFileWriter.Version.netcdf3));
+      }
+    }
+    Assert.assertEquals(points.size(), want.size());
+
+    Map<String, List<Double>> got = new HashMap<>();
+    try (FeatureDatasetPoint fdp = (FeatureDatasetPoint) FeatureDatasetFactoryManager.open(FeatureType.STATION, out.getPath(), null, new Formatter())) {
+      StationTimeSeriesFeatureCollection stations = (StationTimeSeriesFeatureCollection) fdp.getPointFeatureCollectionList().get(0);
+      Assert.assertEquals(points.size(), stations.getStationFeatures().size());
+      for (StationTimeSeriesFeature station : stations) {
+        List<Double> series = new ArrayList<>();
+        for (PointFeature pf : station)
+          series.add(pf.getDataAll().convertScalarDouble("temp"));
+        got.put(station.getName(), series);
+      }
+    }
+    Assert.assertEquals(want, got);
+  }
+
+  private List<List<Double>> readStations(CoverageAsPoint covp, Map<String, List<Double>> byName) throws Exception {
+    List<List<Double>> result = new ArrayList<>();
+    try (FeatureDatasetPoint fdp = covp.asFeatureDatasetPoint()) {
+      StationTimeSeriesFeatureCollection stations = (StationTimeSeriesFeatureCollection) fdp.getPointFeatureCollectionList().get(0);
+      for (StationTimeSeriesFeature station : stations) {
+        List<Double> series = new ArrayList<>();
+        for (PointFeature pf : station)
+          series.add(pf.getDataAll().getScalarDouble("temp"));
+        result.add(series);
+        byName.put(station.getName(), series);
+      }
+    }
+    return result;
+  }
+
+  private List<String> sorted(List<List<Double>> series) {
+    List<String> result = new ArrayList<>();
+    for (List<Double> s : series)
+      result.add(s.toString());
+    Collections.sort(result);
+    return result;
+  }
+
+  private List<LatLonPoint> randomPoints(Random random, int n, double latMin, double latMax, double lonMin, double lonMax) {
+    List<LatLonPoint> result = new ArrayList<>();
+    for (int i = 0; i < n; i++)
+      result.add(new LatLonPointImpl(latMin + (latMax - latMin) * random.nextDouble(), lonMin + (lonMax - lonMin) * random.nextDouble()));
+    return result;
+  }
+
+  private static double value(int t, int y, int x) {
+    return t * 10000 + y * 100 + x;
+  }
+
+  private File makeFile(String kind) throws Exception {
+    File file = tempFolder.newFile(kind + ".nc");
+    try (NetcdfFileWriter writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, file.getPath())) {
+      writer.addGroupAttribute(null, new Attribute("Conventions", "CF-1.6"));
+      writer.addDimension(null, "time", NT);
+      Variable time = writer.addVariable(null, "time", DataType.DOUBLE, "time");
+      time.addAttribute(new Attribute("units", "hours since 2018-01-01T00:00:00Z"));
+
+      String xname = kind.equals("latlon") ? "lon" : "x";
+      String yname = kind.equals("latlon") ? "lat" : "y";
+      writer.addDimension(null, yname, NY);
+      writer.addDimension(null, xname, NX);
+      Variable temp = writer.addVariable(null, "temp", DataType.FLOAT, "time " + yname + " " + xname);
+      temp.addAttribute(new Attribute("units", "K"));
+
+      Variable y = writer.addVariable(null, yname, DataType.DOUBLE, yname);
+      Variable x = writer.addVariable(null, xname, DataType.DOUBLE, xname);
+      Variable lat2D = null, lon2D = null;
+      switch (kind) {
+        case "latlon":
+          y.addAttribute(new Attribute("units", "degrees_north"));
+          x.addAttribute(new Attribute("units", "degrees_east"));
+          break;
+        case "lambert":
+          y.addAttribute(new Attribute("units", "km"));
+          y.addAttribute(new Attribute("standard_name", "projection_y_coordinate"));
+          x.addAttribute(new Attribute("units", "km"));
+          x.addAttribute(new Attribute("standard_name", "projection_x_coordinate"));
+          temp.addAttribute(new Attribute("grid_mapping", "proj"));
+          Variable proj = writer.addVariable(null, "proj", DataType.INT, "");
+          proj.addAttribute(new Attribute("grid_mapping_name", "lambert_conformal_conic"));
+          proj.addAttribute(new Attribute("standard_parallel", 25.0));
+          proj.addAttribute(new Attribute("longitude_of_central_meridian", -95.0));
+          proj.addAttribute(new Attribute("latitude_of_projection_origin", 25.0));
+          break;
+        default:
+          lat2D = writer.addVariable(null, "lat", DataType.DOUBLE, "y x");
+          lat2D.addAttribute(new Attribute("units", "degrees_north"));
+          lon2D = writer.addVariable(null, "lon", DataType.DOUBLE, "y x");
+          lon2D.addAttribute(new Attribute("units", "degrees_east"));
+          temp.addAttribute(new Attribute("coordinates", "lat lon"));
+      }
+      writer.create();
+
+      double[] times = new double[NT];
+      for (int t = 0; t < NT; t++)
+        times[t] = 6 * t;
+      writer.write(time, ArrayDouble.factory(DataType.DOUBLE, new int[] {NT}, times));
+
+      ArrayFloat.D3 data = new ArrayFloat.D3(NT, NY, NX);
+      for (int t = 0; t < NT; t++)
+        for (int j = 0; j < NY; j++)
+          for (int i = 0; i < NX; i++)
+            data.set(t, j, i, (float) value(t, j, i));
+      writer.write(temp, data);
+
+      ArrayDouble.D1 yvals = new ArrayDouble.D1(NY);
+      ArrayDouble.D1 xvals = new ArrayDouble.D1(NX);
+      for (int j = 0; j < NY; j++)
+        yvals.set(j, kind.equals("latlon") ? 20.0 + 0.5 * j : kind.equals("lambert") ? -200.0 + 60.0 * j : j);
+      for (int i = 0; i < NX; i++)
+        xvals.set(i, kind.equals("latlon") ? -120.0 + i : kind.equals("lambert") ? -1500.0 + 60.0 * i : i);
+      writer.write(y, yvals);
+      writer.write(x, xvals);
+
+      if (lat2D != null) { // a sheared grid
+        ArrayDouble.D2 lats = new ArrayDouble.D2(NY, NX);
+        ArrayDouble.D2 lons = new ArrayDouble.D2(NY, NX);
+        for (int j = 0; j < NY; j++) {
+          for (int i = 0; i < NX; i++) {
+            lats.set(j, i, 20.0 + 0.5 * j + 0.05 * i);
+            lons.set(j, i, -120.0 + i + 0.2 * j);
+          }
+        }
+        writer.write(lat2D, lats);
+        writer.write(lon2D, lons);
+      }
+    }
+    return file;
+  }
+}
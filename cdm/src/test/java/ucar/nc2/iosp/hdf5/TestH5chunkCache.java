@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp.hdf5;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test H5chunkCache bookkeeping.
+ */
+public class TestH5chunkCache {
+
+  private H5chunkCache.Key key(String location, long lastModified, int... offset) {
+    return new H5chunkCache.Key(location, lastModified, "var", offset);
+  }
+
+  @Test
+  public void testHitMiss() {
+    H5chunkCache cache = new H5chunkCache(1000);
+    Assert.assertNull(cache.get(key("a", 1, 0, 0)));
+    cache.put(key("a", 1, 0, 0), new byte[100]);
+    Assert.assertNotNull(cache.get(key("a", 1, 0, 0)));
+    Assert.assertNull(cache.get(key("a", 1, 0, 10)));
+    Assert.assertNull(cache.get(key("a", 2, 0, 0))); // different lastModified never matches
+
+    Assert.assertEquals(1, cache.getHitCount());
+    Assert.assertEquals(3, cache.getMissCount());
+  }
+
+  @Test
+  public void testBoundedBytes() {
+    H5chunkCache cache = new H5chunkCache(1000);
+    for (int i = 0; i < 50; i++)
+      cache.put(key("a", 1, i), new byte[100]);
+    Assert.assertTrue(cache.getBytes() <= 1000);
+    Assert.assertTrue(cache.getEvictionCount() >= 40);
+
+    cache.put(key("a", 1, 99), new byte[1001]); // bigger than the cache: not kept
+    Assert.assertNull(cache.get(key("a", 1, 99)));
+  }
+
+  @Test
+  public void testLargeChunk() {
+    H5chunkCache cache = new H5chunkCache(1000);
+    int segmentBytes = 1000 / H5chunkCache.CONCURRENCY_LEVEL;
+    cache.put(key("a", 1, 0), new byte[segmentBytes]);
+    Assert.assertNotNull(cache.get(key("a", 1, 0)));
+
+    cache.put(key("a", 1, 1), new byte[segmentBytes + 1]); // would evict itself from its segment: not kept
+    Assert.assertNull(cache.get(key("a", 1, 1)));
+    Assert.assertEquals(0, cache.getEvictionCount());
+  }
+
+  @Test
+  public void testChangedFile() {
+    H5chunkCache cache = new H5chunkCache(1000);
+    cache.fileOpened("a", 1);
+    cache.fileOpened("b", 1);
+    cache.put(key("a", 1, 0), new byte[10]);
+    cache.put(key("b", 1, 0), new byte[10]);
+
+    cache.fileOpened("a", 1); // unchanged
+    Assert.assertNotNull(cache.get(key("a", 1, 0)));
+
+    cache.fileOpened("a", 2); // changed
+    Assert.assertNull(cache.get(key("a", 1, 0)));
+    Assert.assertNotNull(cache.get(key("b", 1, 0)));
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp.netcdf3;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.nc2.NetcdfFile;
+import ucar.unidata.util.test.CompareNetcdf;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.*;
+
+/**
+ * Write netcdf-3 files with N3outputStreamWriter, in classic and 64-bit offset format, and compare with the original.
+ */
+public class TestN3outputStreamWriter {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testClassic() throws IOException {
+    write("jan.nc", false);
+  }
+
+  @Test
+  public void testLargeFile() throws IOException {
+    write("jan.nc", true);
+  }
+
+  private void write(String name, boolean largeFile) throws IOException {
+    File fileOut = tempFolder.newFile();
+    try (NetcdfFile fileIn = NetcdfFile.open(TestDir.cdmLocalTestDataDir + name)) {
+      Assert.assertNull(fileIn.getUnlimitedDimension());
+      N3outputStreamWriter writer = new N3outputStreamWriter(fileIn);
+      writer.setLargeFile(largeFile);
+      try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileOut)))) {
+        writer.writeHeader(stream, 0);
+        writer.writeDataAll(stream);
+      }
+      Assert.assertEquals(writer.getFileSize(), fileOut.length());
+      byte[] magic = new byte[4];
+      try (DataInputStream in = new DataInputStream(new FileInputStream(fileOut))) {
+        in.readFully(magic);
+      }
+      Assert.assertArrayEquals(largeFile ? N3header.MAGIC_LONG : N3header.MAGIC, magic);
+
+      try (NetcdfFile file2 = NetcdfFile.open(fileOut.getPath())) {
+        Assert.assertTrue(CompareNetcdf.compareFiles(fileIn, file2, false, false, false));
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp.netcdf3;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.unidata.io.http.HTTPRandomAccessFile;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A netCDF-3 file read over HTTP goes through the HTTPRandomAccessFile buffer, not positional reads,
+ * so a small file is fetched once however many variables are read.
+ */
+public class TestN3rafHttp {
+  private static final Pattern rangePattern = Pattern.compile("bytes=(\\d+)-(\\d+)");
+  private static final String filename = TestDir.cdmLocalTestDataDir + "testWrite.nc";
+
+  private byte[] content;
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicLong bytesSent = new AtomicLong();
+  private HttpServer server;
+  private String url;
+
+  @Before
+  public void startServer() throws IOException {
+    content = Files.readAllBytes(new File(filename).toPath());
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/testWrite.nc", this::handle);
+    server.start();
+    url = "http://localhost:" + server.getAddress().getPort() + "/testWrite.nc";
+  }
+
+  @After
+  public void stopServer() {
+    server.stop(0);
+    HTTPRandomAccessFile.shutdown();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    if (exchange.getRequestMethod().equals("HEAD")) {
+      exchange.getResponseHeaders().add("Content-Length", Integer.toString(content.length));
+      exchange.sendResponseHeaders(200, -1);
+      return;
+    }
+
+    int start = 0, end = content.length - 1;
+    if (range != null) {
+      Matcher m = rangePattern.matcher(range);
+      Assert.assertTrue(range, m.matches());
+      start = Integer.parseInt(m.group(1));
+      end = Math.min(Integer.parseInt(m.group(2)), content.length - 1);
+      exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+    }
+    requests.incrementAndGet();
+    bytesSent.addAndGet(end - start + 1);
+    exchange.sendResponseHeaders(range == null ? 200 : 206, end - start + 1);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(content, start, end - start + 1);
+    }
+  }
+
+  @Test
+  public void readAllVariables() throws IOException {
+    try (NetcdfFile local = NetcdfFile.open(filename); NetcdfFile remote = NetcdfFile.open(url)) {
+      Assert.assertTrue(remote.getIosp() instanceof N3raf);
+      Assert.assertFalse(((N3raf) remote.getIosp()).isReadPositional());
+      Assert.assertTrue(((N3raf) local.getIosp()).isReadPositional());
+
+      int nvars = 0;
+      for (Variable v : local.getVariables()) {
+        Array want = v.read();
+        Array got = remote.findVariable(v.getFullNameEscaped()).read();
+        Assert.assertEquals(v.getFullName(), want.toString(), got.toString());
+        nvars++;
+      }
+      Assert.assertTrue(nvars > 1);
+    }
+
+    Assert.assertEquals(1, requests.get());  // the whole file fits in the buffer
+    Assert.assertEquals(content.length, bytesSent.get());
+  }
+}
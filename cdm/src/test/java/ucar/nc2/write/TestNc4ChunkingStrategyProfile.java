@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.write;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.DataType;
+import ucar.ma2.Range;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.Variable;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test AccessProfile and the chunking it leads to.
+ */
+public class TestNc4ChunkingStrategyProfile {
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private NetcdfFileWriter writer;
+  private Variable temp, height, series;
+
+  @Before
+  public void makeVariables() throws Exception {
+    writer = NetcdfFileWriter.createNew(NetcdfFileWriter.Version.netcdf3, tempFolder.newFile().getPath());
+    writer.addDimension(null, "time", 1000);
+    writer.addDimension(null, "lat", 200);
+    writer.addDimension(null, "lon", 300);
+    writer.addUnlimitedDimension("obs");
+    temp = writer.addVariable(null, "temp", DataType.FLOAT, "time lat lon");
+    height = writer.addVariable(null, "height", DataType.FLOAT, "lat lon");
+    series = writer.addVariable(null, "series", DataType.DOUBLE, "obs lat");
+  }
+
+  @After
+  public void closeWriter() throws Exception {
+    writer.abort();
+  }
+
+  @Test
+  public void readAndWrite() throws Exception {
+    AccessProfile profile = AccessProfile.read(new StringReader(
+            "# weight variable dimensions\n" +
+            "90 * time=all\n" +
+            "\n" +
+            "10 temp lat=all lon=all  # maps\n" +
+            "5 temp lon=ALL lat=all time=1\n"));
+
+    List<AccessProfile.Pattern> patterns = profile.getPatterns();
+    Assert.assertEquals(2, patterns.size());  // the same pattern twice
+    Assert.assertEquals(15.0, profile.getPatterns(temp).get(0).getWeight(), 0.0);
+    Assert.assertEquals(90.0, profile.getPatterns(height).get(0).getWeight(), 0.0);
+
+    AccessProfile.Pattern map = profile.getPatterns(temp).get(0);
+    Assert.assertEquals(AccessProfile.ALL, map.getCount("lat"));
+    Assert.assertEquals(1, map.getCount("time"));
+    Assert.assertArrayEquals(new int[] {1, 200, 300}, map.getCounts(temp.getDimensions(), temp.getShape()));
+
+    AccessProfile again = AccessProfile.read(new StringReader(profile.toString()));
+    Assert.assertEquals(profile.toString(), again.toString());
+    Assert.assertTrue(profile.toString(), profile.toString().indexOf("90 * time=all") < profile.toString().indexOf("15 temp"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void badCount() throws Exception {
+    AccessProfile.read(new StringReader("1 * time=some\n"));
+  }
+
+  @Test
+  public void record() throws Exception {
+    AccessProfile profile = new AccessProfile();
+    profile.record(temp, Arrays.asList(new Range(0, 999), new Range(17, 17), new Range(20, 20)));
+    profile.record(temp, Arrays.asList(null, new Range(40, 40), new Range(0, 0)));
+    profile.record(temp, Arrays.asList(new Range(5, 5), new Range(0, 99, 3), new Range(0, 299)));
+    profile.record(temp, null);
+    profile.record(temp, Arrays.asList(new Range(5, 5), Range.EMPTY, new Range(0, 299)));  // nothing read
+
+    Assert.assertEquals(
+            "# weight variable dimension=count; unlisted dimensions have count 1\n" +
+            "2 temp time=all\n" +
+            "1 temp lat=128 lon=all\n" +   // span 100, rounded up to a power of 2
+            "1 temp lat=all lon=all time=all\n", profile.toString().replace("\r", ""));
+  }
+
+  @Test
+  public void timeSeries() throws Exception {
+    Nc4ChunkingStrategyProfile profile = new Nc4ChunkingStrategyProfile(
+            AccessProfile.read(new StringReader("1 * time=all\n")), 5, true);
+    long[] chunking = profile.computeChunking(temp);
+    Assert.assertEquals(Arrays.toString(chunking), 1000, chunking[0]);
+
+    long[] standard = new Nc4ChunkingDefault().computeChunking(temp);
+    Assert.assertTrue(profile.expectedCost(temp, chunking) < profile.expectedCost(temp, standard) / 100);
+    Assert.assertTrue(profile.expectedCost(temp, chunking) <= profile.expectedCost(temp, null));
+  }
+
+  @Test
+  public void mostlyTimeSeries() throws Exception {
+    // an occasional map read of small chunks costs a lot, so the chunks are not as long along time
+    Nc4ChunkingStrategyProfile profile = new Nc4ChunkingStrategyProfile(
+            AccessProfile.read(new StringReader("99 * time=all\n1 * lat=all lon=all\n")), 5, true);
+    long[] chunking = profile.computeChunking(temp);
+    long[] standard = new Nc4ChunkingDefault().computeChunking(temp);
+    Assert.assertTrue(Arrays.toString(chunking), chunking[0] > standard[0] && chunking[0] < 1000);
+    Assert.assertTrue(profile.expectedCost(temp, chunking) < profile.expectedCost(temp, standard) / 10);
+    Assert.assertTrue(profile.expectedCost(temp, chunking) < profile.expectedCost(temp, new long[] {1000, 1, 2}));
+  }
+
+  @Test
+  public void maps() throws Exception {
+    Nc4ChunkingStrategyProfile profile = new Nc4ChunkingStrategyProfile(
+            AccessProfile.read(new StringReader("1 * lat=all lon=all\n")), 5, true);
+    long[] chunking = profile.computeChunking(temp);
+    Assert.assertEquals(Arrays.toString(chunking), 1, chunking[0]);
+    Assert.assertEquals(Arrays.toString(chunking), 200 * 300, chunking[1] * chunking[2]);
+  }
+
+  @Test
+  public void bounds() throws Exception {
+    Nc4ChunkingStrategyProfile profile = new Nc4ChunkingStrategyProfile(
+            AccessProfile.read(new StringReader("1 * time=all\n")), 5, true);
+    profile.setMaxChunkSize(1000);
+    long[] chunking = profile.computeChunking(temp);
+    long size = 4 * chunking[0] * chunking[1] * chunking[2];
+    Assert.assertTrue(Arrays.toString(chunking), size >= profile.getMinChunksize());  // min wins
+    Assert.assertTrue(Arrays.toString(chunking), size < 2 * profile.getMinChunksize());
+  }
+
+  // too many dimensions for the exhaustive search, and a default chunking that is out of bounds
+  @Test
+  public void manyDimensions() throws Exception {
+    StringBuilder dims = new StringBuilder();
+    for (int i = 0; i < 13; i++) {
+      writer.addDimension(null, "d" + i, 4);
+      dims.append(" d").append(i);
+    }
+    Variable v = writer.addVariable(null, "many", DataType.FLOAT, dims.toString().trim());
+
+    Nc4ChunkingStrategyProfile profile = new Nc4ChunkingStrategyProfile(
+            AccessProfile.read(new StringReader("1 * d0=all\n")), 5, true);
+    profile.setMaxChunkSize(100000);
+    checkSize(profile, profile.computeChunking(v));
+    Assert.assertEquals(4, profile.computeChunking(v)[0]);
+
+    profile = new Nc4ChunkingStrategyProfile(AccessProfile.read(new StringReader("1 * d0=all\n")), 5, true);
+    profile.setDefaultChunkSize(16 * 1000 * 1000);
+    checkSize(profile, profile.computeChunking(v));
+  }
+
+  private void checkSize(Nc4ChunkingStrategyProfile profile, long[] chunking) {
+    long size = 4;
+    for (long len : chunking)
+      size *= len;
+    Assert.assertTrue(Arrays.toString(chunking), size >= profile.getMinChunksize());
+    Assert.assertTrue(Arrays.toString(chunking), size <= profile.getMaxChunkSize());
+  }
+
+  @Test
+  public void noPatterns() throws Exception {
+    Nc4ChunkingStrategyProfile profile = new Nc4ChunkingStrategyProfile(
+            AccessProfile.read(new StringReader("1 temp time=all\n")), 5, true);
+    Assert.assertArrayEquals(new Nc4ChunkingDefault().computeChunking(height), profile.computeChunking(height));
+    Assert.assertEquals(0.0, profile.expectedCost(height, null), 0.0);
+  }
+
+  @Test
+  public void unlimited() throws Exception {
+    Nc4ChunkingStrategyProfile profile = new Nc4ChunkingStrategyProfile(
+            AccessProfile.read(new StringReader("1 series obs=all\n")), 5, true);
+    profile.setUnlimitedLength(5000);
+    Assert.assertArrayEquals(new int[] {5000, 200}, profile.getExpectedShape(series));
+    Assert.assertEquals(5000, profile.computeChunking(series)[0]);
+  }
+
+  @Test
+  public void recording() throws Exception {
+    File dir = tempFolder.newFolder();
+    String family = AccessProfile.getFamily(height.getNetcdfFile().getLocation());
+    File file = AccessProfile.getRecordingFile(dir, family);
+    try {
+      AccessProfile.startRecording(dir, 0);
+      AccessProfile.recordAccess(height, Arrays.asList(null, null));
+      AccessProfile.saveRecording();
+      AccessProfile.recordAccess(height, null);
+    } finally {
+      AccessProfile.stopRecording();
+    }
+    AccessProfile.recordAccess(height, null);  // not recording
+
+    AccessProfile.startRecording(dir, 0);  // adds to the saved profile
+    AccessProfile.recordAccess(height, null);
+    AccessProfile.stopRecording();
+    List<AccessProfile.Pattern> patterns = AccessProfile.read(file.getPath()).getPatterns();
+    Assert.assertEquals(1, patterns.size());
+    Assert.assertEquals(3.0, patterns.get(0).getWeight(), 0.0);
+  }
+
+  @Test
+  public void recordingByFamily() throws Exception {
+    File dir = tempFolder.newFolder();
+    try {
+      AccessProfile.startRecording(dir, 0);
+      AccessProfile.recordAccess("/data/gfs/#/GFS_#_#.grib2", temp, null);
+      AccessProfile.recordAccess("/data/nam/#/NAM_#_#.grib2", temp, Arrays.asList(null, new Range(0, 0), new Range(0, 0)));
+      for (int i = 0; i < AccessProfile.MAX_RECORDED_FAMILIES; i++)  // past the limit are not recorded
+        AccessProfile.recordAccess("/data/other" + i, temp, null);
+    } finally {
+      AccessProfile.stopRecording();
+    }
+
+    AccessProfile gfs = AccessProfile.read(AccessProfile.getRecordingFile(dir, "/data/gfs/#/GFS_#_#.grib2").getPath());
+    Assert.assertEquals(1, gfs.getPatterns().size());
+    Assert.assertEquals(AccessProfile.ALL, gfs.getPatterns().get(0).getCount("lat"));
+    AccessProfile nam = AccessProfile.read(AccessProfile.getRecordingFile(dir, "/data/nam/#/NAM_#_#.grib2").getPath());
+    Assert.assertEquals(1, nam.getPatterns().size());
+    Assert.assertEquals(1, nam.getPatterns().get(0).getCount("lat"));
+    File[] files = dir.listFiles();
+    Assert.assertNotNull(files);
+    Assert.assertEquals(AccessProfile.MAX_RECORDED_FAMILIES, files.length);
+  }
+
+  @Test
+  public void family() {
+    Assert.assertEquals("/data/gfs/#/#/#/GFS_Global_0p25deg_#_#.grib2",
+            AccessProfile.getFamily("/data/gfs/2018/10/10/GFS_Global_0p25deg_20181010_0600.grib2"));
+    Assert.assertEquals("C:/data/run#/model1.nc", AccessProfile.getFamily("C:\\data\\run0042\\model1.nc"));
+    Assert.assertNotEquals(AccessProfile.getRecordingFile(new File("."), "/a/x.nc"),
+            AccessProfile.getRecordingFile(new File("."), "/b/x.nc"));
+  }
+
+  @Test
+  public void boundedPatterns() throws Exception {
+    File dir = tempFolder.newFolder();
+    try {
+      AccessProfile.startRecording(dir, 0);
+      for (int i = 0; i <= AccessProfile.MAX_RECORDED_PATTERNS; i++)  // the last one is not recorded
+        AccessProfile.recordAccess("family", writer.addVariable(null, "v" + i, DataType.FLOAT, "lat"), null);
+      AccessProfile.recordAccess("family", height, null);
+      AccessProfile.recordAccess("family", writer.findVariable("v0"), null);  // but old ones still are
+    } finally {
+      AccessProfile.stopRecording();
+    }
+
+    AccessProfile profile = AccessProfile.read(AccessProfile.getRecordingFile(dir, "family").getPath());
+    Assert.assertEquals(AccessProfile.MAX_RECORDED_PATTERNS, profile.getPatterns().size());
+    Assert.assertEquals(2.0, profile.getPatterns(writer.findVariable("v0")).get(0).getWeight(), 0.0);
+    Assert.assertTrue(profile.getPatterns(height).isEmpty());
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.geoloc;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Compare LatLonCellIndex with a brute force search of every cell.
+ */
+public class TestLatLonCellIndex {
+  private static final int NROWS = 60, NCOLS = 80;
+
+  // a curved, sheared grid; lon starts at lon0
+  private double[][] makeEdges(double lon0) {
+    double[] lat = new double[(NROWS + 1) * (NCOLS + 1)];
+    double[] lon = new double[lat.length];
+    for (int v = 0; v <= NROWS; v++) {
+      for (int u = 0; u <= NCOLS; u++) {
+        int i = v * (NCOLS + 1) + u;
+        lat[i] = 10.0 + 0.4 * v + 0.05 * u + 0.5 * Math.sin(u / 9.0);
+        lon[i] = LatLonPointImpl.lonNormal(lon0 + 0.25 * u + 0.1 * v + 0.3 * Math.sin(v / 7.0));
+      }
+    }
+    return new double[][] {lat, lon};
+  }
+
+  @Test
+  public void findsSameCellAsBruteForce() {
+    checkRandomPoints(makeEdges(-120.0), -120.0);
+  }
+
+  @Test
+  public void crossesTheSeam() {
+    double[][] edges = makeEdges(170.0);  // lon goes from 170 to -160
+    checkRandomPoints(edges, 170.0);
+
+    LatLonCellIndex index = new LatLonCellIndex(NROWS, NCOLS, edges[0], edges[1]);
+    int[] rectIndex = new int[2];
+    Assert.assertTrue(index.findCell(20.0, 180.0, rectIndex));
+    Assert.assertTrue(index.findCell(20.0, -178.0, rectIndex));
+    Assert.assertTrue(index.findCell(20.0, 182.0, rectIndex));
+    Assert.assertFalse(index.findCell(20.0, 100.0, rectIndex));
+  }
+
+  @Test
+  public void missingCorners() {
+    double[][] edges = makeEdges(-120.0);
+    int corner = 30 * (NCOLS + 1) + 40;
+    edges[0][corner] = Double.NaN;
+
+    LatLonCellIndex index = new LatLonCellIndex(NROWS, NCOLS, edges[0], edges[1]);
+    double lat = (edges[0][corner + 1] + edges[0][corner - 1]) / 2;
+    double lon = edges[1][corner];
+    int[] rectIndex = new int[2];
+    Assert.assertFalse(index.findCell(lat, lon, rectIndex));
+    Assert.assertTrue(index.findNearestCell(lat, lon, rectIndex));
+  }
+
+  @Test
+  public void nearestCellOutside() {
+    double[][] edges = makeEdges(-120.0);
+    LatLonCellIndex index = new LatLonCellIndex(NROWS, NCOLS, edges[0], edges[1]);
+    Random random = new Random(17);
+    int[] rectIndex = new int[2];
+    for (int i = 0; i < 500; i++) {
+      double lat = -10.0 + 60.0 * random.nextDouble();
+      double lon = -140.0 + 50.0 * random.nextDouble();
+      if (index.findCell(lat, lon, rectIndex)) continue;
+
+      Assert.assertTrue(index.findNearestCell(lat, lon, rectIndex));
+      double want = Double.MAX_VALUE;
+      for (int cell = 0; cell < NROWS * NCOLS; cell++)
+        want = Math.min(want, centerDistance(edges, cell, lat, lon));
+      Assert.assertEquals(want, centerDistance(edges, rectIndex[0] * NCOLS + rectIndex[1], lat, lon), 1.0e-9);
+    }
+  }
+
+  private void checkRandomPoints(double[][] edges, double lon0) {
+    LatLonCellIndex index = new LatLonCellIndex(NROWS, NCOLS, edges[0], edges[1]);
+    Random random = new Random(42);
+    int n = 2000, nfound = 0;
+    double[] lats = new double[n];
+    double[] lons = new double[n];
+    int[] want = new int[n];
+    int[] rectIndex = new int[2];
+    for (int i = 0; i < n; i++) {
+      lats[i] = 8.0 + 32.0 * random.nextDouble();
+      lons[i] = LatLonPointImpl.lonNormal(lon0 - 2.0 + 32.0 * random.nextDouble());
+      want[i] = bruteForce(edges, lats[i], LatLonPointImpl.lonNormalFrom(lons[i], lon0 - 5.0));
+
+      boolean found = index.findCell(lats[i], lons[i], rectIndex);
+      Assert.assertEquals(want[i] >= 0, found);
+      if (found) {
+        Assert.assertEquals(want[i], rectIndex[0] * NCOLS + rectIndex[1]);
+        nfound++;
+      }
+    }
+    Assert.assertTrue(nfound > n / 3);
+    Assert.assertArrayEquals(want, index.findCells(lats, lons, false));
+  }
+
+  private int bruteForce(double[][] edges, double lat, double lon) {
+    for (int cell = 0; cell < NROWS * NCOLS; cell++) {
+      double[] x = new double[4], y = new double[4];
+      corners(edges, cell, y, x);
+      for (int k = 0; k < 4; k++)
+        x[k] = LatLonPointImpl.lonNormalFrom(x[k], lon - 180.0);  // same side as the point
+      if (inside(x, y, lon, lat)) return cell;
+    }
+    return -1;
+  }
+
+  private double centerDistance(double[][] edges, int cell, double lat, double lon) {
+    double[] x = new double[4], y = new double[4];
+    corners(edges, cell, y, x);
+    double dx = (x[0] + x[1] + x[2] + x[3]) / 4 - lon;
+    double dy = (y[0] + y[1] + y[2] + y[3]) / 4 - lat;
+    return Math.sqrt(dx * dx + dy * dy);
+  }
+
+  private void corners(double[][] edges, int cell, double[] lat, double[] lon) {
+    int c1 = (cell / NCOLS) * (NCOLS + 1) + cell % NCOLS;
+    int[] c = {c1, c1 + 1, c1 + NCOLS + 2, c1 + NCOLS + 1};
+    for (int k = 0; k < 4; k++) {
+      lat[k] = edges[0][c[k]];
+      lon[k] = edges[1][c[k]];
+    }
+  }
+
+  // point in convex quadrilateral: the cross products with every side have the same sign
+  private boolean inside(double[] x, double[] y, double px, double py) {
+    int npos = 0, nneg = 0;
+    for (int k = 0; k < 4; k++) {
+      int k1 = (k + 1) % 4;
+      double cross = (x[k1] - x[k]) * (py - y[k]) - (y[k1] - y[k]) * (px - x[k]);
+      if (cross > 0) npos++;
+      if (cross < 0) nneg++;
+    }
+    return npos == 0 || nneg == 0;
+  }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.unidata.util.test.TestDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Test MMapRandomAccessFile, using a small segment size so that reads cross segment boundaries.
+ */
+public class TestMMapRandomAccessFile {
+  private static final int segmentSize = 1000;
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File makeFile(int size) throws IOException {
+    byte[] data = new byte[size];
+    for (int i = 0; i < size; i++) data[i] = (byte) (i % 251);
+    File file = tempFolder.newFile();
+    Files.write(file.toPath(), data);
+    return file;
+  }
+
+  @Test
+  public void testBulkReads() throws IOException {
+    File file = makeFile(10 * 1000 + 17);
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r");
+         RandomAccessFile mmap = new MMapRandomAccessFile(file.getPath(), "r", 100, segmentSize)) {
+      for (int order : new int[]{RandomAccessFile.BIG_ENDIAN, RandomAccessFile.LITTLE_ENDIAN}) {
+        raf.order(order);
+        mmap.order(order);
+        for (long pos = 0; pos < 9000; pos += 333) {
+          int n = (int) (pos % 200) + 1;
+          float[] want = new float[n];
+          float[] got = new float[n];
+          raf.seek(pos);
+          raf.readFloat(want, 0, n);
+          mmap.seek(pos);
+          mmap.readFloat(got, 0, n);
+          Assert.assertArrayEquals("pos=" + pos, want, got, 0.0f);
+          Assert.assertEquals(raf.getFilePointer(), mmap.getFilePointer());
+          Assert.assertEquals(raf.readInt(), mmap.readInt()); // single reads after a bulk read
+
+          short[] wants = new short[n];
+          short[] gots = new short[n];
+          raf.seek(pos);
+          raf.readShort(wants, 0, n);
+          mmap.seek(pos);
+          mmap.readShort(gots, 0, n);
+          Assert.assertArrayEquals("pos=" + pos, wants, gots);
+
+          double[] wantd = new double[n / 2];
+          double[] gotd = new double[n / 2];
+          raf.seek(pos);
+          raf.readDouble(wantd, 0, n / 2);
+          mmap.seek(pos);
+          mmap.readDouble(gotd, 0, n / 2);
+          Assert.assertArrayEquals("pos=" + pos, wantd, gotd, 0.0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testPositionalReads() throws IOException {
+    File file = makeFile(5 * 1000);
+    try (RandomAccessFile mmap = new MMapRandomAccessFile(file.getPath(), "r", 100, segmentSize)) {
+      byte[] b = new byte[2500];
+      mmap.readFullyAt(900, b, 0, b.length); // crosses 3 segments
+      for (int i = 0; i < b.length; i++)
+        Assert.assertEquals((byte) ((900 + i) % 251), b[i]);
+
+      ByteBuffer bb = mmap.readByteBufferAt(1100, 800); // within one segment
+      Assert.assertTrue(bb.isDirect());
+      Assert.assertEquals(800, bb.remaining());
+      for (int i = 0; i < 800; i++)
+        Assert.assertEquals((byte) ((1100 + i) % 251), bb.get(i));
+
+      bb = mmap.readByteBufferAt(1900, 200); // crosses a segment
+      for (int i = 0; i < 200; i++)
+        Assert.assertEquals((byte) ((1900 + i) % 251), bb.get(i));
+
+      Assert.assertEquals(-1, mmap.readAt(5000, b, 0, 10));
+    }
+  }
+
+  @Test
+  public void testAppendedFile() throws IOException {
+    File file = makeFile(1500);
+    try (RandomAccessFile mmap = new MMapRandomAccessFile(file.getPath(), "r", 100, segmentSize)) {
+      byte[] more = new byte[500];
+      for (int i = 0; i < more.length; i++) more[i] = (byte) ((1500 + i) % 251);
+      try (FileOutputStream out = new FileOutputStream(file, true)) {
+        out.write(more);
+      }
+
+      Assert.assertEquals(2000, mmap.length());
+      byte[] b = new byte[400];
+      mmap.readFullyAt(1400, b, 0, b.length); // partly past the mapped length
+      for (int i = 0; i < b.length; i++)
+        Assert.assertEquals((byte) ((1400 + i) % 251), b[i]);
+    }
+  }
+
+  @Test
+  public void testViewOutlivesClose() throws IOException {
+    File file = makeFile(2500);
+    ByteBuffer view;
+    RandomAccessFile mmap = new MMapRandomAccessFile(file.getPath(), "r", 100, segmentSize);
+    try {
+      view = mmap.readByteBufferAt(1010, 100);
+    } finally {
+      mmap.close();
+    }
+    mmap.close(); // closing more than once is ok
+
+    // the segment stays mapped while it is used
+    for (int i = 0; i < 100; i++)
+      Assert.assertEquals((byte) ((1010 + i) % 251), view.get(i));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testReadOnly() throws IOException {
+    File file = makeFile(10);
+    new MMapRandomAccessFile(file.getPath(), "rw");
+  }
+
+  @Test
+  public void testPolicy() throws IOException {
+    String filename = new File(TestDir.cdmLocalTestDataDir, "jan.nc").getPath().replace('\\', '/');
+    try {
+      MMapRandomAccessFile.setPattern(".*/jan\\.nc");
+      Assert.assertTrue(MMapRandomAccessFile.useMMap(filename));
+      Assert.assertFalse(MMapRandomAccessFile.useMMap(filename.replace("jan.nc", "feb.nc")));
+      try (RandomAccessFile raf = RandomAccessFile.acquire(filename)) {
+        Assert.assertTrue(raf instanceof MMapRandomAccessFile);
+      }
+
+      MMapRandomAccessFile.clearPolicy();
+      Assert.assertFalse(MMapRandomAccessFile.useMMap(filename));
+      MMapRandomAccessFile.addDirectory(new File(TestDir.cdmLocalTestDataDir).getPath());
+      Assert.assertTrue(MMapRandomAccessFile.useMMap(filename));
+    } finally {
+      MMapRandomAccessFile.clearPolicy();
+    }
+  }
+
+  @Test
+  public void testReadNetcdf3() throws IOException {
+    compareRead("jan.nc");
+  }
+
+  @Test
+  public void testReadHdf5() throws IOException {
+    compareRead("chunked.h5");
+    compareRead("testCFGridWriter.nc4");
+  }
+
+  private void compareRead(String name) throws IOException {
+    String filename = new File(TestDir.cdmLocalTestDataDir, name).getPath();
+    try (NetcdfFile regular = NetcdfFile.open(filename);
+         NetcdfFile mapped = NetcdfFile.open(new MMapRandomAccessFile(filename, "r", 100, 4096), filename, null, null)) {
+      for (Variable v : regular.getVariables()) {
+        Variable mv = mapped.findVariable(v.getFullNameEscaped());
+        Assert.assertTrue(v.getFullName(),
+                Arrays.deepEquals(new Object[]{v.read().copyTo1DJavaArray()}, new Object[]{mv.read().copyTo1DJavaArray()}));
+      }
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Test RandomAccessFile.readRanges() and positional reads
+ */
+public class TestReadRanges {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File makeFile(int size) throws IOException {
+    byte[] data = new byte[size];
+    for (int i = 0; i < size; i++) data[i] = (byte) (i % 251);
+    File file = tempFolder.newFile();
+    Files.write(file.toPath(), data);
+    return file;
+  }
+
+  private void check(ByteRange r, ByteBuffer bb) {
+    Assert.assertEquals(r.toString(), r.getLength(), bb.remaining());
+    for (int i = 0; i < r.getLength(); i++)
+      Assert.assertEquals(r.toString(), (byte) ((r.getOffset() + i) % 251), bb.get(i));
+  }
+
+  @Test
+  public void testCoalesce() throws IOException {
+    List<ByteRange> ranges = Arrays.asList(new ByteRange(1000, 10), new ByteRange(0, 10), new ByteRange(20, 10),
+            new ByteRange(25, 2), new ByteRange(5000, 1));
+    List<ByteRange> blocks = RandomAccessFile.coalesce(ranges, 100);
+    Assert.assertEquals(Arrays.asList(new ByteRange(0, 30), new ByteRange(1000, 10), new ByteRange(5000, 1)), blocks);
+
+    blocks = RandomAccessFile.coalesce(ranges, 0);
+    Assert.assertEquals(4, blocks.size());
+  }
+
+  @Test
+  public void testOverlapsPastMaxRead() throws IOException {
+    int max = RandomAccessFile.maxCoalescedRead;
+    int mb = 1000 * 1000;
+    List<ByteRange> ranges = Arrays.asList(
+            new ByteRange(0, mb),
+            new ByteRange(0, max + mb),            // same start, larger than the max
+            new ByteRange(5 * mb, mb),             // nested
+            new ByteRange(max, 3 * mb / 2),        // overlaps the end
+            new ByteRange(max + 3 * mb / 2, 10),   // adjacent, but the block is full
+            new ByteRange(max + 2 * mb, 10));
+    List<ByteRange> blocks = RandomAccessFile.coalesce(ranges, 100);
+    Assert.assertEquals(Arrays.asList(new ByteRange(0, max + 3 * mb / 2), new ByteRange(max + 3 * mb / 2, 10),
+            new ByteRange(max + 2 * mb, 10)), blocks);
+
+    File file = makeFile(max + 3 * mb);
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r")) {
+      List<ByteBuffer> result = raf.readRanges(ranges, 100);
+      for (int i = 0; i < ranges.size(); i++)
+        check(ranges.get(i), result.get(i));
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testOverlapsPastArrayLength() throws IOException {
+    int gb = 1000 * 1000 * 1000;
+    List<ByteRange> ranges = Arrays.asList(new ByteRange(0, 3 * gb / 2), new ByteRange(gb, 3 * gb / 2));
+    RandomAccessFile.coalesce(ranges, 0);
+  }
+
+  @Test
+  public void testReadRanges() throws IOException {
+    File file = makeFile(100 * 1000);
+    List<ByteRange> ranges = new ArrayList<>();
+    for (int i = 0; i < 200; i++)
+      ranges.add(new ByteRange((i * 7919L) % 99000, (i * 31) % 1000));
+
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r")) {
+      raf.seek(1234);
+      List<ByteBuffer> result = raf.readRanges(ranges, 500);
+      Assert.assertEquals(ranges.size(), result.size());
+      for (int i = 0; i < ranges.size(); i++)
+        check(ranges.get(i), result.get(i));
+
+      // file pointer is not changed
+      Assert.assertEquals(1234, raf.getFilePointer());
+      Assert.assertEquals(1234 % 251, raf.read());
+    }
+  }
+
+  @Test
+  public void testReadRangesAsync() throws Exception {
+    File file = makeFile(100 * 1000);
+    List<ByteRange> ranges = new ArrayList<>();
+    for (int i = 0; i < 100; i++)
+      ranges.add(new ByteRange(i * 997L, 100));
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r")) {
+      List<ByteBuffer> result = raf.readRangesAsync(ranges, 0, executor).get();
+      for (int i = 0; i < ranges.size(); i++)
+        check(ranges.get(i), result.get(i));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test(expected = EOFException.class)
+  public void testPastEnd() throws IOException {
+    File file = makeFile(1000);
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r")) {
+      raf.readRanges(Arrays.asList(new ByteRange(10, 10), new ByteRange(990, 20)));
+    }
+  }
+
+  @Test
+  public void testReadFullyAtConcurrent() throws Exception {
+    File file = makeFile(100 * 1000);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r")) {
+      raf.seek(777);
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 16; t++) {
+        final int seed = t;
+        futures.add(executor.submit(() -> {
+          byte[] b = new byte[1000];
+          for (int i = 0; i < 200; i++) {
+            ByteRange r = new ByteRange(((seed * 1009L + i * 7919L) % 99000), 1 + (i * 13) % 1000);
+            raf.readFullyAt(r.getOffset(), b, 0, r.getLength());
+            check(r, ByteBuffer.wrap(b, 0, r.getLength()));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> f : futures) f.get();
+
+      // file pointer is not changed
+      Assert.assertEquals(777, raf.getFilePointer());
+      Assert.assertEquals(-1, raf.readAt(raf.length(), new byte[10], 0, 10));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test(expected = EOFException.class)
+  public void testReadFullyAtPastEnd() throws IOException {
+    File file = makeFile(1000);
+    try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r")) {
+      raf.readFullyAt(990, new byte[20], 0, 20);
+    }
+  }
+
+  @Test
+  public void testInMemory() throws IOException {
+    byte[] data = new byte[1000];
+    for (int i = 0; i < data.length; i++) data[i] = (byte) (i % 251);
+    try (RandomAccessFile raf = new InMemoryRandomAccessFile("test", data)) {
+      List<ByteRange> ranges = Arrays.asList(new ByteRange(900, 100), new ByteRange(3, 300));
+      List<ByteBuffer> result = raf.readRanges(ranges);
+      check(ranges.get(0), result.get(0));
+      check(ranges.get(1), result.get(1));
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Test the HTTPRandomAccessFile block cache against an embedded HTTP server that supports Range requests.
+ */
+public class TestHTTPRandomAccessFileBlockCache {
+  private static final Pattern rangePattern = Pattern.compile("bytes=(\\d+)-(\\d+)");
+  private static final int fileSize = 100 * 1000 + 7;
+
+  private final byte[] content = new byte[fileSize];
+  private final AtomicInteger rangeRequests = new AtomicInteger();
+  private HttpServer server;
+  private ExecutorService serverExecutor;
+  private String url;
+
+  @Before
+  public void startServer() throws IOException {
+    for (int i = 0; i < content.length; i++) content[i] = (byte) (i % 251);
+
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/data.bin", this::handle);
+    serverExecutor = Executors.newFixedThreadPool(8);
+    server.setExecutor(serverExecutor); // answer requests concurrently
+    server.start();
+    url = "http://localhost:" + server.getAddress().getPort() + "/data.bin";
+  }
+
+  @After
+  public void stopServer() {
+    server.stop(0);
+    serverExecutor.shutdownNow();
+    HTTPRandomAccessFile.setBlockCache(0, 0, 0);
+    HTTPRandomAccessFile.shutdown();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+    String range = exchange.getRequestHeaders().getFirst("Range");
+    if (exchange.getRequestMethod().equals("HEAD")) {
+      exchange.getResponseHeaders().add("Content-Length", Integer.toString(content.length));
+      exchange.sendResponseHeaders(200, -1);
+
+    } else if (range == null) {
+      exchange.sendResponseHeaders(200, content.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(content);
+      }
+
+    } else {
+      Matcher m = rangePattern.matcher(range);
+      Assert.assertTrue(range, m.matches());
+      int start = Integer.parseInt(m.group(1));
+      int end = Math.min(Integer.parseInt(m.group(2)), content.length - 1);
+      rangeRequests.incrementAndGet();
+      exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+      exchange.sendResponseHeaders(206, end - start + 1);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(content, start, end - start + 1);
+      }
+    }
+  }
+
+  private void check(HTTPRandomAccessFile raf, long pos, int len) throws IOException {
+    byte[] b = new byte[len];
+    raf.seek(pos);
+    raf.readFully(b);
+    for (int i = 0; i < len; i++)
+      Assert.assertEquals("pos=" + (pos + i), content[(int) pos + i], b[i]);
+  }
+
+  @Test
+  public void testNoBlockCache() throws IOException {
+    try (HTTPRandomAccessFile raf = new HTTPRandomAccessFile(url)) {
+      check(raf, 0, 100);
+      check(raf, 99000, 1007);
+      Assert.assertEquals(1, raf.getRequestCount()); // whole file fits in the buffer
+      Assert.assertEquals(fileSize, raf.getBytesTransferred());
+    }
+  }
+
+  @Test
+  public void testRandomReads() throws IOException {
+    HTTPRandomAccessFile.setBlockCache(4096, 100, 8);
+    try (HTTPRandomAccessFile raf = new HTTPRandomAccessFile(url)) {
+      check(raf, 50000, 10);
+      check(raf, 10, 10);
+      check(raf, 50004, 10); // same block
+      check(raf, 70000, 5000); // crosses blocks
+      check(raf, 10, 10);
+      long requests = raf.getRequestCount();
+      Assert.assertTrue("requests=" + requests, requests <= 4);
+      Assert.assertTrue(raf.getBlockHits() > 0);
+      Assert.assertTrue(raf.getBytesTransferred() < fileSize / 2);
+    }
+  }
+
+  @Test
+  public void testSequentialReadAhead() throws IOException {
+    HTTPRandomAccessFile.setBlockCache(1000, 200, 16);
+    try (HTTPRandomAccessFile raf = new HTTPRandomAccessFile(url)) {
+      for (long pos = 0; pos < fileSize - 100; pos += 100)
+        check(raf, pos, 100);
+      check(raf, fileSize - 100, 100);
+
+      // read ahead grows to 16 blocks, so ~101 blocks need far fewer than 101 requests
+      long requests = raf.getRequestCount();
+      Assert.assertTrue("requests=" + requests, requests < 20);
+      Assert.assertEquals(fileSize, raf.getBytesTransferred());
+    }
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    HTTPRandomAccessFile.setBlockCache(1000, 4, 0);
+    try (HTTPRandomAccessFile raf = new HTTPRandomAccessFile(url)) {
+      check(raf, 0, 10);
+      for (int i = 1; i <= 10; i++)
+        check(raf, i * 5000, 10);
+      long requests = raf.getRequestCount();
+      check(raf, 0, 10); // evicted, must be read again
+      Assert.assertEquals(requests + 1, raf.getRequestCount());
+    }
+  }
+
+  @Test
+  public void testPrefetch() throws Exception {
+    HTTPRandomAccessFile.setBlockCache(1000, 200, 0);
+    HTTPRandomAccessFile.setPrefetch(2, 4);
+    try (HTTPRandomAccessFile raf = new HTTPRandomAccessFile(url)) {
+      check(raf, 0, 10);
+      for (int i = 0; i < 100 && raf.getBlockMisses() < 5; i++)
+        Thread.sleep(10);
+      long requests = raf.getRequestCount();
+      check(raf, 1000, 4000); // blocks 1-4 were prefetched
+      Assert.assertTrue(raf.getBlockHits() >= 4);
+      Assert.assertTrue(raf.getRequestCount() <= requests + 1); // at most the next prefetch
+    }
+  }
+
+  // positional reads from many threads, while prefetches run in the background
+  @Test
+  public void testConcurrentReads() throws Exception {
+    HTTPRandomAccessFile.setBlockCache(1000, 20, 4);
+    HTTPRandomAccessFile.setPrefetch(4, 3);
+    ExecutorService readers = Executors.newFixedThreadPool(8);
+    try (HTTPRandomAccessFile raf = new HTTPRandomAccessFile(url)) {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        final Random random = new Random(t);
+        futures.add(readers.submit(() -> {
+          for (int i = 0; i < 20; i++) {
+            int pos = random.nextInt(fileSize - 3000);
+            int len = 1 + random.nextInt(3000);
+            byte[] b = new byte[len];
+            raf.readFullyAt(pos, b, 0, len);
+            for (int j = 0; j < len; j++)
+              Assert.assertEquals("pos=" + (pos + j), content[pos + j], b[j]);
+          }
+          return null;
+        }));
+      }
+      for (Future<?> f : futures) f.get();
+      Assert.assertTrue(raf.getBlockMisses() > 0);
+    } finally {
+      readers.shutdown();
+    }
+  }
+}
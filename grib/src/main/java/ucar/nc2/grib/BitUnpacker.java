@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 1998-2018 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.grib;
+
+import java.io.EOFException;
+
+/**
+ * Reads bit packed unsigned integers from a byte array, loading the bytes into a 64 bit word up to 8 at a time.
+ * Same results as ucar.nc2.iosp.BitReader, for use when the packed data has been read into memory.
+ */
+public final class BitUnpacker {
+  private final byte[] buf;
+  private final int end;
+  private int bytePos;   // next byte to load into word
+  private long word;     // the low nbits bits of word have not been consumed yet
+  private int nbits;
+
+  /**
+   * Constructor
+   *
+   * @param buf   packed data
+   * @param start start of the packed data in buf
+   * @param end   end (exclusive) of the packed data in buf
+   */
+  public BitUnpacker(byte[] buf, int start, int end) {
+    this.buf = buf;
+    this.bytePos = start;
+    this.end = end;
+  }
+
+  /**
+   * Go to the start of the next byte, unless already there.
+   */
+  public void incrByte() {
+    nbits -= nbits & 7;  // whole bytes are loaded, so the partial byte is the low bits
+  }
+
+  /**
+   * Read the next nb bits and return an unsigned long.
+   *
+   * @param nb the number of bits to read, must be 0 <= nb <= 64.
+   * @return result
+   * @throws EOFException if there are not nb bits left
+   */
+  public long bits2UInt(int nb) throws EOFException {
+    if (nb > 32) {
+      long hi = bits2UInt(nb - 32);
+      return (hi << 32) | bits2UInt(32);
+    }
+    if (nbits < nb) {
+      fill();
+      if (nbits < nb)
+        throw new EOFException();
+    }
+    nbits -= nb;
+    return (word >>> nbits) & ((1L << nb) - 1);
+  }
+
+  // load as many whole bytes as fit into word; at least 4 bytes since nbits < 32 when called
+  private void fill() {
+    int nbytes = (64 - nbits) >>> 3;
+    if (bytePos + 8 <= end) {
+      long next = ((buf[bytePos] & 0xffL) << 56) | ((buf[bytePos + 1] & 0xffL) << 48)
+              | ((buf[bytePos + 2] & 0xffL) << 40) | ((buf[bytePos + 3] & 0xffL) << 32)
+              | ((buf[bytePos + 4] & 0xffL) << 24) | ((buf[bytePos + 5] & 0xffL) << 16)
+              | ((buf[bytePos + 6] & 0xffL) << 8) | (buf[bytePos + 7] & 0xffL);
+      int shift = nbytes << 3;
+      word = (shift == 64) ? next : (word << shift) | (next >>> (64 - shift));
+      bytePos += nbytes;
+      nbits += shift;
+
+    } else { // near the end
+      while (nbytes-- > 0 && bytePos < end) {
+        word = (word << 8) | (buf[bytePos++] & 0xffL);
+        nbits += 8;
+      }
+    }
+  }
+
+}
@@ -32,6 +32,7 @@ import ucar.nc2.util.CloseableIterator;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * Builds indexes for collections of Grib1 files.
@@ -67,63 +68,73 @@ public class Grib1CollectionBuilder extends GribCollectionBuilder {
 
     logger.debug(" dcm={}", dcm);
 
-    // place each record into its group
+    List<MFile> mfiles = new ArrayList<>();
     try (CloseableIterator<MFile> iter = dcm.getFileIterator()) { // not sorted
       if (iter == null)
         return new ArrayList<>(); // empty
+      while (iter.hasNext())
+        mfiles.add(iter.next());
+    }
 
-      while (iter.hasNext()) {
-        MFile mfile = iter.next();
+    // read or create the gbx9 indexes, maybe in parallel; null on failure
+    List<Callable<Grib1Index>> tasks = new ArrayList<>(mfiles.size());
+    for (MFile mfile : mfiles) {
+      tasks.add(() -> {
         Grib1Index index;
         try {
           if (Grib.debugGbxIndexOnly) {
-            index = (Grib1Index) GribIndex.open(true, mfile);
-            if (index == null) continue;
+            return (Grib1Index) GribIndex.open(true, mfile);
           } else {
             // here is where gbx9 files get recreated
             index = (Grib1Index) GribIndex.readOrCreateIndexFromSingleFile(true, mfile, CollectionUpdateType.test, logger);
           }
-          allFiles.add(mfile);  // add on success
-
         } catch (IOException ioe) {
           logger.error("Grib1CollectionBuilder " + name + " : reading/Creating gbx9 index for file " + mfile.getPath() + " failed", ioe);
-          continue;
+          return null;
         }
-        if (index == null) {
+        if (index == null)
           logger.error("Grib1CollectionBuilder " + name + " : reading/Creating gbx9 index for file " + mfile.getPath() + " failed");
-          continue;
+        return index;
+      });
+    }
+    List<Grib1Index> indexes = GribCdmIndex.invokeAll(tasks);
+
+    // place each record into its group, in file order
+    for (int i = 0; i < mfiles.size(); i++) {
+      MFile mfile = mfiles.get(i);
+      Grib1Index index = indexes.get(i);
+      if (index == null) continue; // failed
+      allFiles.add(mfile);  // add on success
+
+      for (Grib1Record gr : index.getRecords()) { // we are using entire Grib1Record - likely this is the memory bottleneck for how big a collection can handle
+        if (this.cust == null) {
+          cust = Grib1Customizer.factory(gr, null);
+          cust.setTimeUnitConverter(gribConfig.getTimeUnitConverter());
+        }
+        if (filterIntervals(gr, gribConfig.intvFilter)) {
+          statsAll.filter++;
+          continue; // skip
         }
 
-        for (Grib1Record gr : index.getRecords()) { // we are using entire Grib1Record - likely this is the memory bottleneck for how big a collection can handle
-          if (this.cust == null) {
-            cust = Grib1Customizer.factory(gr, null);
-            cust.setTimeUnitConverter(gribConfig.getTimeUnitConverter());
-          }
-          if (filterIntervals(gr, gribConfig.intvFilter)) {
-            statsAll.filter++;
-            continue; // skip
-          }
-
-          gr.setFile(fileno); // each record tracks which file it belongs to
-          Grib1Gds gds = gr.getGDS();  // use GDS to group records
-          int hashCode = gribConfig.convertGdsHash(gds.hashCode());  // allow external config to muck with gdsHash. Why? because of error in encoding and we need exact hash matching
-          if (0 == hashCode) continue; // skip this group
-          //GdsHashObject gdsHashObject = new GdsHashObject(gr.getGDS(), hashOverride);
-
-          CalendarDate runtimeDate = gr.getReferenceDate();
-          long runtime = singleRuntime ? runtimeDate.getMillis() : 0;  // seperate Groups for each runtime, if singleRuntime is true
-          GroupAndRuntime gar = new GroupAndRuntime(hashCode, runtime);
-          Grib1CollectionWriter.Group g = gdsMap.get(gar);
-          if (g == null) {
-            g = new Grib1CollectionWriter.Group(gr.getGDSsection(), hashCode, runtimeDate);
-            gdsMap.put(gar, g);
-          }
-          g.records.add(gr);
-          g.runtimes.add(runtimeDate.getMillis());
+        gr.setFile(fileno); // each record tracks which file it belongs to
+        Grib1Gds gds = gr.getGDS();  // use GDS to group records
+        int hashCode = gribConfig.convertGdsHash(gds.hashCode());  // allow external config to muck with gdsHash. Why? because of error in encoding and we need exact hash matching
+        if (0 == hashCode) continue; // skip this group
+        //GdsHashObject gdsHashObject = new GdsHashObject(gr.getGDS(), hashOverride);
+
+        CalendarDate runtimeDate = gr.getReferenceDate();
+        long runtime = singleRuntime ? runtimeDate.getMillis() : 0;  // seperate Groups for each runtime, if singleRuntime is true
+        GroupAndRuntime gar = new GroupAndRuntime(hashCode, runtime);
+        Grib1CollectionWriter.Group g = gdsMap.get(gar);
+        if (g == null) {
+          g = new Grib1CollectionWriter.Group(gr.getGDSsection(), hashCode, runtimeDate);
+          gdsMap.put(gar, g);
         }
-        fileno++;
-        statsAll.recordsTotal += index.getRecords().size();
+        g.records.add(gr);
+        g.runtimes.add(runtimeDate.getMillis());
       }
+      fileno++;
+      statsAll.recordsTotal += index.getRecords().size();
     }
 
     // rectilyze each group independently
@@ -178,6 +189,7 @@ public class Grib1CollectionBuilder extends GribCollectionBuilder {
     List<Grib1CollectionWriter.Group> groups2 = new ArrayList<>();
     for (Object g : groups) groups2.add((Grib1CollectionWriter.Group) g);  // why copy ?
     File indexFileInCache = GribIndexCache.getFileOrCache(indexFilepath);
+    GribCdmIndex.indexFileChanged(indexFileInCache.getPath());
     return writer.writeIndex(name, indexFileInCache, masterRuntime, groups2, files, type, dateRange);
   }
 
@@ -31,7 +31,7 @@ public class Grib1CollectionBuilderFromIndex extends GribCollectionBuilderFromIn
       FeatureCollectionConfig config, org.slf4j.Logger logger) {
 
     Grib1CollectionBuilderFromIndex builder = new Grib1CollectionBuilderFromIndex(name, config, logger);
-    if (!builder.readIndex(raf))
+    if (!builder.readIndex(raf, GribCdmIndex.isMemoryMappedIndex()))
       return null;
 
     if (builder.gc.getFiles().size() == 0) {
@@ -26,7 +26,7 @@ class Grib1PartitionBuilderFromIndex extends Grib1CollectionBuilderFromIndex {
       FeatureCollectionConfig config, org.slf4j.Logger logger) {
 
     Grib1PartitionBuilderFromIndex builder = new Grib1PartitionBuilderFromIndex(name, config, logger);
-    if (builder.readIndex(raf))
+    if (builder.readIndex(raf, GribCdmIndex.isMemoryMappedIndex()))
       return new Grib1Partition(builder.pc);
 
     return null;
@@ -94,9 +94,16 @@ class Grib1PartitionBuilderFromIndex extends Grib1CollectionBuilderFromIndex {
    */
   @Override
   protected GribCollectionMutable.VariableIndex readVariableExtensions(GribCollectionMutable.GroupGC group, GribCollectionProto.Variable proto, GribCollectionMutable.VariableIndex vi) {
-    List<GribCollectionProto.PartitionVariable> pvList = proto.getPartVariableList();
-    PartitionCollectionMutable.VariableIndexPartitioned vip = pc.makeVariableIndexPartitioned(group, vi, pvList.size());
-    vip.setPartitions(pvList);
+    PartitionCollectionMutable.VariableIndexPartitioned vip;
+    int deferredNparts = MappedIndexFile.getDeferredNparts(proto);
+    if (deferredNparts >= 0) {  // partition variables are read from the mapped index when first used
+      vip = pc.makeVariableIndexPartitioned(group, vi, deferredNparts);
+      vip.setPartitions(pc.mappedIndex, proto);
+    } else {
+      List<GribCollectionProto.PartitionVariable> pvList = proto.getPartVariableList();
+      vip = pc.makeVariableIndexPartitioned(group, vi, pvList.size());
+      vip.setPartitions(pvList);
+    }
 
     // cant put this in the constructor
     vip.ndups = vi.ndups;
@@ -31,6 +31,7 @@ import ucar.nc2.util.CloseableIterator;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * Builds indexes for collections of Grib2 files.
@@ -65,66 +66,76 @@ class Grib2CollectionBuilder extends GribCollectionBuilder {
 
     logger.debug(" dcm={}", dcm);
 
-    // place each record into its group
     int totalRecords = 0;
+    List<MFile> mfiles = new ArrayList<>();
     try (CloseableIterator<MFile> iter = dcm.getFileIterator()) { // not sorted
       if (iter == null)
         return new ArrayList<>(); // empty
+      while (iter.hasNext())
+        mfiles.add(iter.next());
+    }
 
-      while (iter.hasNext()) {
-        MFile mfile = iter.next();
+    // read or create the gbx9 indexes, maybe in parallel; null on failure
+    List<Callable<Grib2Index>> tasks = new ArrayList<>(mfiles.size());
+    for (MFile mfile : mfiles) {
+      tasks.add(() -> {
         Grib2Index index;
-
         try {
           if (Grib.debugGbxIndexOnly) {
-             index = (Grib2Index) GribIndex.open(false, mfile);
-           } else {
-             // this is where gbx9 files get recreated
-             index = (Grib2Index) GribIndex.readOrCreateIndexFromSingleFile(false, mfile, CollectionUpdateType.test, logger);
-           }
-          allFiles.add(mfile);  // add on success
-
+            index = (Grib2Index) GribIndex.open(false, mfile);
+          } else {
+            // this is where gbx9 files get recreated
+            index = (Grib2Index) GribIndex.readOrCreateIndexFromSingleFile(false, mfile, CollectionUpdateType.test, logger);
+          }
         } catch (IOException ioe) {
           logger.error("Grib2CollectionBuilder " + name + " : reading/Creating gbx9 index for file " + mfile.getPath() + " failed", ioe);
-          continue;
+          return null;
         }
-        if (index == null) {
+        if (index == null)
           logger.error("Grib2CollectionBuilder " + name + " : reading/Creating gbx9 index for file " + mfile.getPath() + " failed");
-          continue;
+        return index;
+      });
+    }
+    List<Grib2Index> indexes = GribCdmIndex.invokeAll(tasks);
+
+    // place each record into its group, in file order
+    for (int i = 0; i < mfiles.size(); i++) {
+      MFile mfile = mfiles.get(i);
+      Grib2Index index = indexes.get(i);
+      if (index == null) continue; // failed
+      allFiles.add(mfile);  // add on success
+      int n = index.getNRecords();
+      totalRecords += n;
+
+      for (Grib2Record gr : index.getRecords()) { // we are using entire Grib2Record - memory limitations
+        if (this.cust == null) {
+          this.cust = Grib2Tables.factory(gr);
+          cust.setTimeUnitConverter(gribConfig.getTimeUnitConverter());
+        }
+        if (filterIntervals(gr, gribConfig.intvFilter)) {
+          statsAll.filter++;
+          continue; // skip
         }
-        int n = index.getNRecords();
-        totalRecords += n;
-
-        for (Grib2Record gr : index.getRecords()) { // we are using entire Grib2Record - memory limitations
-          if (this.cust == null) {
-            this.cust = Grib2Tables.factory(gr);
-            cust.setTimeUnitConverter(gribConfig.getTimeUnitConverter());
-          }
-          if (filterIntervals(gr, gribConfig.intvFilter)) {
-            statsAll.filter++;
-            continue; // skip
-          }
 
-          gr.setFile(fileno); // each record tracks which file it belongs to
-          Grib2Gds gds = gr.getGDS();  // use GDS to group records
-          int hashCode = gribConfig.convertGdsHash(gds.hashCode());  // allow external config to muck with gdsHash. Why? because of error in encoding and we need exact hash matching
-          if (0 == hashCode) continue; // skip this group
-          // GdsHashObject gdsHashObject = new GdsHashObject(gr.getGDS(), hashCode);
-
-          CalendarDate runtimeDate = gr.getReferenceDate();
-          long runtime = singleRuntime ? runtimeDate.getMillis() : 0;  // seperate Groups for each runtime, if singleRuntime is true
-          GroupAndRuntime gar = new GroupAndRuntime(hashCode, runtime);
-          Grib2CollectionWriter.Group g = gdsMap.get(gar);
-          if (g == null) {
-            g = new Grib2CollectionWriter.Group(gr.getGDSsection(), hashCode, runtimeDate);
-            gdsMap.put(gar, g);
-          }
-          g.records.add(gr);
-          g.runtimes.add(runtimeDate.getMillis());
+        gr.setFile(fileno); // each record tracks which file it belongs to
+        Grib2Gds gds = gr.getGDS();  // use GDS to group records
+        int hashCode = gribConfig.convertGdsHash(gds.hashCode());  // allow external config to muck with gdsHash. Why? because of error in encoding and we need exact hash matching
+        if (0 == hashCode) continue; // skip this group
+        // GdsHashObject gdsHashObject = new GdsHashObject(gr.getGDS(), hashCode);
+
+        CalendarDate runtimeDate = gr.getReferenceDate();
+        long runtime = singleRuntime ? runtimeDate.getMillis() : 0;  // seperate Groups for each runtime, if singleRuntime is true
+        GroupAndRuntime gar = new GroupAndRuntime(hashCode, runtime);
+        Grib2CollectionWriter.Group g = gdsMap.get(gar);
+        if (g == null) {
+          g = new Grib2CollectionWriter.Group(gr.getGDSsection(), hashCode, runtimeDate);
+          gdsMap.put(gar, g);
         }
-        fileno++;
-        statsAll.recordsTotal += index.getRecords().size();
+        g.records.add(gr);
+        g.runtimes.add(runtimeDate.getMillis());
       }
+      fileno++;
+      statsAll.recordsTotal += index.getRecords().size();
     }
 
     if (totalRecords == 0) {
@@ -195,6 +206,7 @@ class Grib2CollectionBuilder extends GribCollectionBuilder {
     List<Grib2CollectionWriter.Group> groups2 = new ArrayList<>();
     for (Object g : groups) groups2.add((Grib2CollectionWriter.Group) g); // copy to change GribCollectionBuilder.Group ->  Grib2CollectionWriter.Group
     File indexFileInCache = GribIndexCache.getFileOrCache(indexFilepath);
+    GribCdmIndex.indexFileChanged(indexFileInCache.getPath());
     return writer.writeIndex(name, indexFileInCache, masterRuntime, groups2, files, type, dateRange);
   }
 
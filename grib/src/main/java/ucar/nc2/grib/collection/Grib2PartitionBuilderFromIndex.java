@@ -27,7 +27,7 @@ public class Grib2PartitionBuilderFromIndex extends Grib2CollectionBuilderFromIn
       FeatureCollectionConfig config, org.slf4j.Logger logger) {
 
     Grib2PartitionBuilderFromIndex builder = new Grib2PartitionBuilderFromIndex(name, config, logger);
-    if (builder.readIndex(raf))
+    if (builder.readIndex(raf, GribCdmIndex.isMemoryMappedIndex()))
       return new Grib2Partition(builder.pc);
 
     return null;
@@ -96,9 +96,16 @@ public class Grib2PartitionBuilderFromIndex extends Grib2CollectionBuilderFromIn
 
   @Override
   protected GribCollectionMutable.VariableIndex readVariableExtensions(GribCollectionMutable.GroupGC group, GribCollectionProto.Variable proto, GribCollectionMutable.VariableIndex vi) {
-    List<GribCollectionProto.PartitionVariable> pvList = proto.getPartVariableList();
-    PartitionCollectionMutable.VariableIndexPartitioned vip = pc.makeVariableIndexPartitioned(group, vi, pvList.size());
-    vip.setPartitions(pvList);
+    PartitionCollectionMutable.VariableIndexPartitioned vip;
+    int deferredNparts = MappedIndexFile.getDeferredNparts(proto);
+    if (deferredNparts >= 0) {  // partition variables are read from the mapped index when first used
+      vip = pc.makeVariableIndexPartitioned(group, vi, deferredNparts);
+      vip.setPartitions(pc.mappedIndex, proto);
+    } else {
+      List<GribCollectionProto.PartitionVariable> pvList = proto.getPartVariableList();
+      vip = pc.makeVariableIndexPartitioned(group, vi, pvList.size());
+      vip.setPartitions(pvList);
+    }
 
     // cant put this in the constructor
     vip.ndups = vi.ndups;
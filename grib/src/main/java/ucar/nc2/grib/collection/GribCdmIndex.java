@@ -34,11 +34,17 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Formatter;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Utilities for creating GRIB CDM index (ncx) files, both collections and partitions
@@ -72,6 +78,173 @@ public class GribCdmIndex implements IndexReader {
     gribCollectionCache = cache;
   }
 
+  // memory map ncx files opened as GribCollectionImmutable, and decode partition variables and records on first use
+  private static boolean memoryMappedIndex = false;
+
+  /**
+   * Memory map the ncx index files that are opened as a GribCollectionImmutable. The top level of the index is decoded
+   * when opened, the partition variable lists and the record arrays of each variable when the variable is first used.
+   * Off by default, since a mapped file cannot be deleted or rewritten on some operating systems while it is in use.
+   *
+   * @param b true to memory map
+   */
+  public static void setMemoryMappedIndex(boolean b) {
+    memoryMappedIndex = b;
+  }
+
+  public static boolean isMemoryMappedIndex() {
+    return memoryMappedIndex;
+  }
+
+  // partition indexes read while building a partition collection index; null means not kept
+  private static volatile PartitionIndexCache partitionIndexCache;
+
+  /**
+   * Keep the partition indexes that are read while building the index of a partition collection, so that the next
+   * update only reads the partitions that were added or rewritten. Off by default. Useful in the TDM, which updates
+   * the same collections over and over.
+   *
+   * @param maxPartitions maximum number of partition indexes kept; 0 or less turns it off.
+   */
+  public static synchronized void setPartitionIndexCache(int maxPartitions) {
+    partitionIndexCache = (maxPartitions > 0) ? new PartitionIndexCache(maxPartitions) : null;
+  }
+
+  public static void showPartitionIndexCache(Formatter f) {
+    PartitionIndexCache cache = partitionIndexCache;
+    if (cache == null)
+      f.format("PartitionIndexCache is off%n");
+    else
+      cache.show(f);
+  }
+
+  @Nullable
+  static PartitionIndexCache getPartitionIndexCache() {
+    return partitionIndexCache;
+  }
+
+  // used by PartitionCollectionMutable.Partition when building a partition collection index. return null on failure
+  @Nullable
+  static GribCollectionMutable openPartitionIndex(String indexFilename, FeatureCollectionConfig config, Logger logger) {
+    PartitionIndexCache cache = partitionIndexCache;
+    if (cache == null)
+      return openMutableGCFromIndex(indexFilename, config, false, true, logger);
+
+    File indexFileInCache = GribIndexCache.getExistingFileOrCache(indexFilename);
+    if (indexFileInCache == null)
+      return null;
+    String path = indexFileInCache.getPath();
+    GribCollectionMutable result = cache.get(path, indexFileInCache.lastModified(), indexFileInCache.length(), config);
+    if (result == null) {
+      result = openMutableGCFromIndex(indexFilename, config, false, true, logger);
+      if (result != null) {
+        try {
+          result.close(); // shared from now on, so let go of the index raf; the caller's close() does nothing
+        } catch (IOException ioe) {
+          logger.warn("GribCdmIndex.openPartitionIndex close failed on {}", path, ioe);
+        }
+        cache.put(path, result, config);
+      }
+    }
+    return result;
+  }
+
+  // an index file was rewritten
+  static void indexFileChanged(String path) {
+    PartitionIndexCache cache = partitionIndexCache;
+    if (cache != null)
+      cache.remove(path);
+  }
+
+  // parallel index building; null means build serially
+  private static volatile ForkJoinPool indexPool;
+
+  /**
+   * Build the indexes of one collection update on a shared pool of worker threads. Off by default.
+   * The gbx9 indexes of the files in a collection, the ncx4 indexes of the partitions of a partition collection, and the
+   * union of the coordinates of each variable across partitions are then made in parallel. The results are always
+   * combined in the serial order, so the index files are identical to the ones made serially.
+   *
+   * @param nthreads size of the shared pool; 0 or less turns parallel index building off.
+   */
+  public static synchronized void setIndexThreads(int nthreads) {
+    if (indexPool != null) {
+      indexPool.shutdown();
+      indexPool = null;
+    }
+    if (nthreads <= 0) return;
+
+    AtomicInteger count = new AtomicInteger();
+    indexPool = new ForkJoinPool(nthreads, pool -> {
+      ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+      t.setName("GribCdmIndex-index-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    }, null, false);
+  }
+
+  public static int getIndexThreads() {
+    ForkJoinPool pool = indexPool;
+    return (pool == null) ? 0 : pool.getParallelism();
+  }
+
+  /**
+   * Run the tasks on the index pool, or in order in the calling thread if there is no pool.
+   * May be called from inside a task; the waiting worker then runs other tasks instead of blocking.
+   * All tasks are run even if some fail; the exception of the first failed task in list order is then thrown.
+   *
+   * @return the results, in the order of the tasks
+   */
+  @SuppressWarnings("unchecked")
+  static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) throws IOException {
+    int n = tasks.size();
+    List<T> result = new ArrayList<>(n);
+    ForkJoinPool pool = indexPool;
+
+    if (pool == null || n < 2) {
+      for (Callable<T> task : tasks) {
+        try {
+          result.add(task.call());
+        } catch (IOException | RuntimeException e) {
+          throw e;
+        } catch (Exception e) {
+          throw new IOException(e);
+        }
+      }
+      return result;
+    }
+
+    Object[] values = new Object[n];
+    Throwable[] errors = new Throwable[n];
+    List<ForkJoinTask<?>> forks = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      Callable<T> task = tasks.get(i);
+      int idx = i;
+      ForkJoinTask<?> fork = ForkJoinTask.adapt(() -> {
+        try {
+          values[idx] = task.call();
+        } catch (Throwable t) {
+          errors[idx] = t;
+        }
+      });
+      if (ForkJoinTask.getPool() == pool)
+        fork.fork();     // nested: join() below helps out
+      else
+        pool.execute(fork);
+      forks.add(fork);
+    }
+
+    for (int i = 0; i < n; i++) {
+      forks.get(i).join();
+      if (errors[i] instanceof IOException) throw (IOException) errors[i];
+      if (errors[i] instanceof RuntimeException) throw (RuntimeException) errors[i];
+      if (errors[i] instanceof Error) throw (Error) errors[i];
+      if (errors[i] != null) throw new IOException(errors[i]);
+      result.add((T) values[i]);
+    }
+    return result;
+  }
+
   // open GribCollectionImmutable from an existing index file. return null on failure
   static GribCollectionImmutable acquireGribCollection(FileFactory factory, Object hashKey,
       String location, int buffer_size, CancelTask cancelTask, Object spiObject) throws IOException {
@@ -92,6 +265,8 @@ public class GribCdmIndex implements IndexReader {
 
   public static void shutdown() {
     if (gribCollectionCache != null) gribCollectionCache.clearCache(true);
+    setIndexThreads(0);
+    setPartitionIndexCache(0);
   }
 
   /////////////////////////////////////////////////////////////////////////////////////////////////
@@ -372,22 +547,38 @@ public class GribCdmIndex implements IndexReader {
     long start = System.currentTimeMillis();
     Formatter errlog = new Formatter();
 
+    List<MCollection> parts = new ArrayList<>();
+    List<Callable<Formatter>> tasks = new ArrayList<>();
     for (MCollection part : tp.makePartitions(updateType)) {
-      try {
-        updateGribCollection(isGrib1, part, updateType, FeatureCollectionConfig.PartitionType.timePeriod, logger, errlog);
+      parts.add(part);
+      tasks.add(() -> {
+        Formatter partlog = new Formatter();
+        try {
+          updateGribCollection(isGrib1, part, updateType, FeatureCollectionConfig.PartitionType.timePeriod, logger, partlog);
+          return partlog;
 
-      } catch (Throwable t) {
-        logger.warn("Error making partition " + part.getRoot(), t);
-        tp.removePartition(part); // keep on truckin; can happen if directory is empty
-      }
-    }   // loop over component grib collections
+        } catch (Throwable t) {
+          logger.warn("Error making partition " + part.getRoot(), t);
+          return null;
+        }
+      });
+    }
+
+    List<Formatter> partlogs = invokeAll(tasks);  // component grib collections, maybe in parallel
+    for (int i = 0; i < parts.size(); i++) {
+      if (partlogs.get(i) == null)
+        tp.removePartition(parts.get(i)); // keep on truckin; can happen if directory is empty
+      else
+        errlog.format("%s", partlogs.get(i));
+    }
+    long childrenTook = System.currentTimeMillis() - start;
 
 
     try {
       boolean changed = updatePartition(isGrib1, tp, updateType, logger, errlog);
 
       long took = System.currentTimeMillis() - start;
-      errlog.format(" INFO updateTimePartition %s took %d msecs%n", tp.getRoot(), took);
+      errlog.format(" INFO updateTimePartition %s took %d msecs (children %d msecs)%n", tp.getRoot(), took, childrenTook);
       logger.debug("GribCdmIndex.updateTimePartition complete (%s) on %s errlog=%s%n", changed, tp.getRoot(), errlog);
       return changed;
 
@@ -440,25 +631,39 @@ public class GribCdmIndex implements IndexReader {
 
     // check the children partitions first
     if (updateType != CollectionUpdateType.testIndexOnly) {   // skip children on testIndexOnly
+      List<MCollection> parts = new ArrayList<>();
+      List<Callable<Boolean>> tasks = new ArrayList<>();
       for (MCollection part : dpart.makePartitions(updateType)) {
         part.putAuxInfo(FeatureCollectionConfig.AUX_CONFIG, config);
-        try {
-          if (part instanceof DirectoryPartition) {   // LOOK if child partition fails, the parent partition doesnt know that - suckage
-            updateDirectoryCollectionRecurse(isGrib1, (DirectoryPartition) part, config, updateType, logger);
-          } else {
-            Path partPath = Paths.get(part.getRoot());
-            updateLeafCollection(isGrib1, config, updateType, false, logger, partPath); // LOOK why not using part ??
-          }
-        } catch (IllegalStateException t) {
-          logger.warn("Error making partition {} '{}'", part.getRoot(), t.getMessage());
-          dpart.removePartition(part); // keep on truckin; can happen if directory is empty
+        parts.add(part);
+        tasks.add(() -> {
+          try {
+            if (part instanceof DirectoryPartition) {   // LOOK if child partition fails, the parent partition doesnt know that - suckage
+              updateDirectoryCollectionRecurse(isGrib1, (DirectoryPartition) part, config, updateType, logger);
+            } else {
+              Path partPath = Paths.get(part.getRoot());
+              updateLeafCollection(isGrib1, config, updateType, false, logger, partPath); // LOOK why not using part ??
+            }
+            return true;
 
-        } catch (Throwable t) {
-          logger.error("Error making partition " + part.getRoot(), t);
-          dpart.removePartition(part);
-        }
+          } catch (IllegalStateException t) {
+            logger.warn("Error making partition {} '{}'", part.getRoot(), t.getMessage());
+            return false;
+
+          } catch (Throwable t) {
+            logger.error("Error making partition " + part.getRoot(), t);
+            return false;
+          }
+        });
       }   // loop over partitions
+
+      List<Boolean> ok = invokeAll(tasks);  // children, maybe in parallel
+      for (int i = 0; i < parts.size(); i++) {
+        if (!ok.get(i))
+          dpart.removePartition(parts.get(i)); // keep on truckin; can happen if directory is empty
+      }
     }
+    long childrenTook = System.currentTimeMillis() - start;
 
     try {
       // update the partition
@@ -466,7 +671,7 @@ public class GribCdmIndex implements IndexReader {
       boolean changed = updatePartition(isGrib1, dpart, updateType, logger, errlog);
 
       long took = System.currentTimeMillis() - start;
-      errlog.format(" INFO updateDirectoryCollectionRecurse %s took %d msecs%n", dpart.getRoot(), took);
+      errlog.format(" INFO updateDirectoryCollectionRecurse %s took %d msecs (children %d msecs)%n", dpart.getRoot(), took, childrenTook);
       logger.debug("GribCdmIndex.updateDirectoryCollectionRecurse complete (%s) on %s errlog=%s%n", changed, dpart.getRoot(), errlog);
       return changed;
 
@@ -540,24 +745,40 @@ public class GribCdmIndex implements IndexReader {
 
       // redo the children here
       if (updateType != CollectionUpdateType.testIndexOnly) {   // skip children on testIndexOnly
+        List<MCollection> parts = new ArrayList<>();
+        List<Callable<Formatter>> tasks = new ArrayList<>();
         partition.iterateOverMFileCollection(mfile -> {
           MCollection part = new CollectionSingleFile(mfile, logger);
           part.putAuxInfo(FeatureCollectionConfig.AUX_CONFIG, config);
-
-          try {
-            boolean changed = updateGribCollection(isGrib1, part, updateType, FeatureCollectionConfig.PartitionType.file, logger, errlog);
-            if (changed) anyChange.set(true);
-
-          } catch (IllegalStateException t) {
-            logger.warn("Error making partition {} '{}'", part.getRoot(), t.getMessage());
-            partition.removePartition(part); // keep on truckin; can happen if directory is empty
-
-          } catch (Throwable t) {
-            logger.error("Error making partition " + part.getRoot(), t);
-            partition.removePartition(part);
-          }
+          parts.add(part);
+
+          tasks.add(() -> {
+            Formatter partlog = new Formatter();
+            try {
+              boolean changed = updateGribCollection(isGrib1, part, updateType, FeatureCollectionConfig.PartitionType.file, logger, partlog);
+              if (changed) anyChange.set(true);
+              return partlog;
+
+            } catch (IllegalStateException t) {
+              logger.warn("Error making partition {} '{}'", part.getRoot(), t.getMessage());
+              return null;
+
+            } catch (Throwable t) {
+              logger.error("Error making partition " + part.getRoot(), t);
+              return null;
+            }
+          });
         });
+
+        List<Formatter> partlogs = invokeAll(tasks);  // one collection for each file, maybe in parallel
+        for (int i = 0; i < parts.size(); i++) {
+          if (partlogs.get(i) == null)
+            partition.removePartition(parts.get(i)); // keep on truckin; can happen if directory is empty
+          else
+            errlog.format("%s", partlogs.get(i));
+        }
       }
+      long childrenTook = System.currentTimeMillis() - start;
 
       // LOOK what if theres only one file?
 
@@ -566,7 +787,7 @@ public class GribCdmIndex implements IndexReader {
         boolean recreated = updatePartition(isGrib1, partition, updateType, logger, errlog);
 
         long took = System.currentTimeMillis() - start;
-        if (recreated) logger.info("RewriteFilePartition {} took {} msecs", partition.getCollectionName(), took);
+        if (recreated) logger.info("RewriteFilePartition {} took {} msecs (children {} msecs)", partition.getCollectionName(), took, childrenTook);
         return recreated;
 
       } catch (IllegalStateException t) {
@@ -61,6 +61,17 @@ abstract class GribCollectionBuilderFromIndex {
   protected abstract String getMagicStart();
 
   protected boolean readIndex(RandomAccessFile raf) {
+    return readIndex(raf, false);
+  }
+
+  /**
+   * Read the index.
+   *
+   * @param raf       the index file, already open
+   * @param mapIndex  memory map the index file, and defer reading the partition variable lists and records to first use
+   * @return true on success
+   */
+  protected boolean readIndex(RandomAccessFile raf, boolean mapIndex) {
 
     gc.setIndexRaf(raf);
     try {
@@ -96,8 +107,16 @@ abstract class GribCollectionBuilderFromIndex {
       }
       logger.debug("GribCollectionBuilderFromIndex proto len = %d%n", size);
 
-      byte[] m = new byte[size];
-      raf.readFully(m);
+      MappedIndexFile mapped = mapIndex ? MappedIndexFile.map(raf.getLocation()) : null;
+      GribCollectionProto.GribCollection proto;
+      if (mapped != null) {
+        gc.mappedIndex = mapped;
+        proto = mapped.readGribCollection(raf.getFilePointer(), size, true);
+      } else {
+        byte[] m = new byte[size];
+        raf.readFully(m);
+        proto = GribCollectionProto.GribCollection.parseFrom(m);
+      }
 
       /*
       message GribCollection {
@@ -126,8 +145,6 @@ abstract class GribCollectionBuilderFromIndex {
       }
        */
 
-      GribCollectionProto.GribCollection proto = GribCollectionProto.GribCollection.parseFrom(m);
-
       // need to read this first to get this.tables initialized
       gc.center = proto.getCenter();
       gc.subcenter = proto.getSubcenter();
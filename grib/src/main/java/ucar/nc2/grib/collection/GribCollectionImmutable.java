@@ -51,7 +51,7 @@ import java.util.*;
 
 /**
  * An Immutable GribCollection, corresponds to one index (ncx) file.
- * The index file has already been read; it is opened and the closed when a variable is first accessed to read in the record array (sa).
+ * The index file has already been read; it is opened and the closed when a variable is first accessed to read in the record table.
  * <p>
  * Could use the Proto equivalents, and eliminate GribCollectionMutable ?
  *
@@ -102,6 +102,7 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
   protected final Map<Integer, MFile> fileMap; // all the files used in the GC; key is the index in original collection, GC has subset of them
   protected final GribTables cust;
   protected final String indexFilename;       // full path of index Filename
+  private final MappedIndexFile mappedIndex;  // if not null, read the records from here
 
   private FileCacheIF objCache = null;  // optional object cache - used in the TDS
 
@@ -125,6 +126,7 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
     this.fileMap = gc.fileMap;
     this.cust = gc.cust;
     this.dateRange = gc.dateRange;
+    this.mappedIndex = gc.mappedIndex;
 
     if (gc.indexFilename != null) {
       indexFilename = gc.indexFilename;
@@ -446,7 +448,7 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
     }
   }
 
-  @Immutable      // except for sa
+  @Immutable      // except for records
   public class VariableIndex {
     final GroupGC group;     // belongs to this group
     final VariableIndex.Info info;
@@ -460,7 +462,7 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
     final int ndups, nrecords, nmissing;
 
     // read in on demand
-    private SparseArray<Record> sa;   // for GC only; lazily read; same array shape as variable, minus x and y
+    private RecordTable records;   // for GC only; lazily read; same array shape as variable, minus x and y
 
     protected VariableIndex(GroupGC g, GribCollectionMutable.VariableIndex gcVar) {
       this.group = g;
@@ -477,45 +479,23 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
     }
 
     public synchronized void readRecords() throws IOException {
-      if (this.sa != null) return;
+      if (this.records != null) return;
 
       if (recordsLen == 0)
         return;
-      byte[] b = new byte[recordsLen];
 
-      try (RandomAccessFile indexRaf = RandomAccessFile.acquire(indexFilename)) {
-
-        indexRaf.seek(recordsPos);
-        indexRaf.readFully(b);
-
-        /*
-        message SparseArray {
-          repeated uint32 size = 2 [packed=true];     // multidim sizes = shape[]
-          repeated uint32 track = 3 [packed=true];    // 1-based index into record list, 0 == missing
-          repeated Record records = 4;                // List<Record>
-          uint32 ndups = 5;                           // duplicates found when creating
+      try {
+        if (mappedIndex != null) {
+          this.records = RecordTable.fromProto(GribCollectionProto.SparseArray.parseFrom(mappedIndex.slice(recordsPos, recordsLen)));
+          return;
         }
-       */
-        GribCollectionProto.SparseArray proto = GribCollectionProto.SparseArray.parseFrom(b);
-
-        int nsizes = proto.getSizeCount();
-        int[] size = new int[nsizes];
-        for (int i = 0; i < nsizes; i++)
-          size[i] = proto.getSize(i);
-
-        int ntrack = proto.getTrackCount();
-        int[] track = new int[ntrack];
-        for (int i = 0; i < ntrack; i++)
-          track[i] = proto.getTrack(i);
-
-        int n = proto.getRecordsCount();
-        List<Record> records = new ArrayList<>(n);
-        for (int i = 0; i < n; i++) {
-          GribCollectionProto.Record pr = proto.getRecords(i);
-          records.add(new Record(pr.getFileno(), pr.getStartPos(), pr.getBmsOffset(), pr.getDrsOffset()));
+
+        byte[] b = new byte[recordsLen];
+        try (RandomAccessFile indexRaf = RandomAccessFile.acquire(indexFilename)) {
+          indexRaf.seek(recordsPos);
+          indexRaf.readFully(b);
         }
-        int ndups = proto.getNdups();
-        this.sa = new SparseArray<>(size, track, records, ndups);
+        this.records = RecordTable.fromProto(GribCollectionProto.SparseArray.parseFrom(b));
 
       } catch (com.google.protobuf.InvalidProtocolBufferException e) {
         logger.error(" file={} recordsLen={} recordPos={}", indexFilename, recordsLen, recordsPos);
@@ -524,11 +504,11 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
     }
 
     synchronized Record getRecordAt(int sourceIndex) {
-      return sa.getContent(sourceIndex);
+      return records.getRecordAt(sourceIndex);
     }
 
     synchronized Record getRecordAt(int[] sourceIndex) {
-      return sa.getContent(sourceIndex);
+      return records.getRecordAt(sourceIndex);
     }
 
     ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -610,7 +590,7 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
 
         want[count++] = idx;
       }
-      return sa.getContent(want);
+      return records.getRecordAt(want);
     }
 
     public List<Coordinate> getCoordinates() {
@@ -646,12 +626,20 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
       return coordIndex;
     }
 
+    // null until readRecords() is called
+    @Nullable
+    public RecordTable getRecordTable() {
+      return records;
+    }
+
+    // makes the Record objects, so only for debugging and display
+    @Nullable
     public SparseArray<Record> getSparseArray() {
-      return sa;
+      return records == null ? null : records.toSparseArray();
     }
 
     public int getNRecords() {
-      return sa == null ? -1 : sa.countNotMissing();
+      return records == null ? -1 : records.countNotMissing();
     }
 
     public int getTableVersion() {
@@ -985,6 +973,45 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
 
   }
 
+  /**
+   * Report the estimated memory used by the record tables and coordinates, per group.
+   * Also shows what the records would take as one Record object each, for comparison.
+   *
+   * @param f           report to here
+   * @param readRecords if true, read in the record tables that have not been read yet; otherwise only report those already in memory
+   * @return estimated total bytes of the record tables
+   */
+  public long showMemoryFootprint(Formatter f, boolean readRecords) throws IOException {
+    long recordsTotal = 0, objectsTotal = 0, coordsTotal = 0;
+    f.format("Memory footprint of %s%n", name);
+    for (Dataset ds : datasets) {
+      f.format(" Dataset %s%n", ds.getType());
+      for (GroupGC g : ds.groups) {
+        long recordsBytes = 0, objectsBytes = 0, coordsBytes = 0;
+        int nvars = 0, nread = 0, nrecords = 0;
+        for (VariableIndex v : g.variList) {
+          nvars++;
+          if (readRecords) v.readRecords();
+          RecordTable table = v.getRecordTable();
+          if (table == null) continue;
+          nread++;
+          nrecords += table.getNRecords();
+          recordsBytes += table.estMemorySize();
+          objectsBytes += table.estMemorySizeAsObjects();
+        }
+        for (Coordinate coord : g.coords)
+          coordsBytes += coord.estMemorySize();
+        f.format("  Group %s: vars=%d read=%d records=%d recordsKB=%d (as objects=%d) coordsKB=%d%n",
+            g.getDescription(), nvars, nread, nrecords, recordsBytes / 1000, objectsBytes / 1000, coordsBytes / 1000);
+        recordsTotal += recordsBytes;
+        objectsTotal += objectsBytes;
+        coordsTotal += coordsBytes;
+      }
+    }
+    f.format(" Total recordsKB=%d (as objects=%d) coordsKB=%d%n", recordsTotal / 1000, objectsTotal / 1000, coordsTotal / 1000);
+    return recordsTotal;
+  }
+
   private void showIndexFile(Formatter f) {
     if (indexFilename == null) return;
     f.format("indexFile=%s%n", indexFilename);
@@ -1069,6 +1096,13 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
   }
 
   RandomAccessFile getDataRaf(int fileno) throws IOException {
+    RandomAccessFile want = RandomAccessFile.acquire(getDataFile(fileno).getPath());
+    want.order(RandomAccessFile.BIG_ENDIAN);
+    return want;
+  }
+
+  // the data file, which must exist
+  File getDataFile(int fileno) throws FileNotFoundException {
     // absolute location
     MFile mfile = fileMap.get(fileno);
     String filename = mfile.getPath();
@@ -1087,10 +1121,7 @@ public abstract class GribCollectionImmutable implements Closeable, FileCacheabl
     if (!dataFile.exists()) {
       throw new FileNotFoundException("data file not found = " + dataFile.getPath());
     }
-
-    RandomAccessFile want = RandomAccessFile.acquire(dataFile.getPath());
-    want.order(RandomAccessFile.BIG_ENDIAN);
-    return want;
+    return dataFile;
   }
 
   String getDataRafFilename(int fileno) {
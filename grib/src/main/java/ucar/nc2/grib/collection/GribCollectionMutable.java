@@ -90,6 +90,7 @@ public class GribCollectionMutable implements Closeable {
 
   // not stored in index
   protected RandomAccessFile indexRaf; // this is the raf of the index (ncx) file
+  protected MappedIndexFile mappedIndex; // the index file, if it was memory mapped when read
   protected String indexFilename;
   protected long lastModified;
   protected long fileSize;
@@ -340,7 +341,8 @@ public class GribCollectionMutable implements Closeable {
     }
 
     // get the variable in this group that has same object equality as want
-    public GribCollectionMutable.VariableIndex findVariableByHash(GribCollectionMutable.VariableIndex want) {
+    // may be called from several threads when building a partition index in parallel
+    public synchronized GribCollectionMutable.VariableIndex findVariableByHash(GribCollectionMutable.VariableIndex want) {
       if (varMap == null) {
         varMap = new HashMap<>(variList.size() * 2);
         for (VariableIndex vi : variList) {
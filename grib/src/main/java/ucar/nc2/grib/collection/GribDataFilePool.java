@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 1998-2018 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.grib.collection;
+
+import javax.annotation.concurrent.ThreadSafe;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A bounded pool of open GRIB data files, used when reading the records of a PartitionCollection.
+ * <p>
+ * Without the pool, each data file read goes through Partition.getGribCollection() to find the data file,
+ * then RandomAccessFile.acquire() to open it. A point time series request over a long partitioned collection
+ * repeats that for thousands of partitions, and then again on the next request.
+ * The pool remembers the data filenames of each partition, so a partition's GribCollection is only opened the
+ * first time one of its files is read.
+ * <p>
+ * Data files are opened with RandomAccessFile.acquire(). When the global RandomAccessFile FileCache is on, released
+ * files go back to it, so it decides how long they stay open and scouring closes them as usual. When it is off, the
+ * pool itself keeps up to maxOpenFiles data files open while they are not in use.
+ * <p>
+ * A RandomAccessFile from acquire() is used by only one thread until it is given back with release().
+ * Partitions are keyed by their index filename and last modified time, so a partition whose index is rewritten
+ * gets a new entry. Least recently used partitions and open files are dropped when over the limits.
+ */
+@ThreadSafe
+public class GribDataFilePool {
+  private final int maxOpenFiles, maxPartitions;
+  private final Map<String, PartitionFiles> partitions;      // key = partition index filename and lastModified
+  private final Map<String, ArrayDeque<RandomAccessFile>> idle;  // key = data file location
+  private final Map<RandomAccessFile, String> lent = new IdentityHashMap<>();
+  private int nidle;
+  private long hits, misses, opens;
+
+  private static class PartitionFiles {
+    final String name;
+    final Map<Integer, String> dataFiles = new HashMap<>();  // key = fileno
+    long hits, misses;
+
+    PartitionFiles(String name) {
+      this.name = name;
+    }
+  }
+
+  /**
+   * Constructor.
+   * @param maxOpenFiles  keep at most this many data files open while not in use.
+   * @param maxPartitions remember the data files of at most this many partitions.
+   */
+  public GribDataFilePool(int maxOpenFiles, int maxPartitions) {
+    this.maxOpenFiles = maxOpenFiles;
+    this.maxPartitions = maxPartitions;
+    this.partitions = new LinkedHashMap<String, PartitionFiles>(16, .75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, PartitionFiles> eldest) {
+        return size() > GribDataFilePool.this.maxPartitions;
+      }
+    };
+    this.idle = new LinkedHashMap<>(16, .75f, true);
+  }
+
+  /**
+   * Get an open data file of a partition. Caller must call release() when done with it.
+   *
+   * @param part          the partition
+   * @param indexFilename the partition's index file
+   * @param fileno        file number in the partition
+   * @return open file, positioned anywhere, in big endian order
+   */
+  RandomAccessFile acquire(PartitionCollectionImmutable.Partition part, String indexFilename, int fileno) throws IOException {
+    String key = indexFilename + "@" + part.getLastModified();
+
+    String location;
+    synchronized (this) {
+      PartitionFiles files = partitions.computeIfAbsent(key, k -> new PartitionFiles(part.getName()));
+      location = files.dataFiles.get(fileno);
+      if (location != null) {
+        RandomAccessFile raf = pollIdle(location);
+        if (raf != null) {
+          files.hits++;
+          hits++;
+          lent.put(raf, location);
+          return raf;
+        }
+      }
+      files.misses++;
+      misses++;
+    }
+
+    if (location == null) {
+      try (GribCollectionImmutable gc = part.getGribCollection()) {
+        location = gc.getDataFile(fileno).getPath();
+      }
+      synchronized (this) {
+        PartitionFiles files = partitions.get(key);
+        if (files != null) files.dataFiles.put(fileno, location);
+      }
+    }
+
+    RandomAccessFile raf = RandomAccessFile.acquire(location);
+    raf.order(RandomAccessFile.BIG_ENDIAN);
+    synchronized (this) {
+      opens++;
+      lent.put(raf, location);
+    }
+    return raf;
+  }
+
+  /**
+   * Give back a file from acquire(). If the global RandomAccessFile FileCache is on, the file is released to it.
+   * Otherwise it is kept open for reuse, or closed if the pool is full. Files not from this pool are closed.
+   */
+  void release(RandomAccessFile raf) throws IOException {
+    RandomAccessFile evict = null;
+    boolean useFileCache = RandomAccessFile.getGlobalFileCache() != null;
+    synchronized (this) {
+      String location = lent.remove(raf);
+      if (location != null && maxOpenFiles > 0 && !useFileCache) {
+        idle.computeIfAbsent(location, k -> new ArrayDeque<>()).push(raf);
+        nidle++;
+        raf = null;
+        if (nidle > maxOpenFiles)
+          evict = pollEldest();
+      }
+    }
+    if (raf != null) raf.close();
+    if (evict != null) evict.close();
+  }
+
+  private RandomAccessFile pollIdle(String location) {
+    ArrayDeque<RandomAccessFile> files = idle.get(location);
+    if (files == null) return null;
+    RandomAccessFile raf = files.poll();
+    if (files.isEmpty()) idle.remove(location);
+    if (raf != null) nidle--;
+    return raf;
+  }
+
+  private RandomAccessFile pollEldest() {
+    Iterator<Map.Entry<String, ArrayDeque<RandomAccessFile>>> iter = idle.entrySet().iterator();
+    if (!iter.hasNext()) return null;
+    Map.Entry<String, ArrayDeque<RandomAccessFile>> eldest = iter.next();
+    RandomAccessFile raf = eldest.getValue().pollLast();
+    if (eldest.getValue().isEmpty()) iter.remove();
+    if (raf != null) nidle--;
+    return raf;
+  }
+
+  /** Close the files that are not in use, and forget the partitions. Files in use are closed when released. */
+  public void clear() {
+    List<RandomAccessFile> close = new ArrayList<>();
+    synchronized (this) {
+      for (ArrayDeque<RandomAccessFile> files : idle.values())
+        close.addAll(files);
+      idle.clear();
+      nidle = 0;
+      partitions.clear();
+      lent.clear();
+    }
+    for (RandomAccessFile raf : close) {
+      try {
+        raf.close();
+      } catch (IOException ioe) {
+        // ignore
+      }
+    }
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  /** Number of data files opened by the pool. */
+  public synchronized long getOpens() {
+    return opens;
+  }
+
+  public synchronized int getOpenFiles() {
+    return nidle + lent.size();
+  }
+
+  /**
+   * Show the pool statistics, and the hits and misses of each partition.
+   */
+  public synchronized void show(Formatter f) {
+    f.format("GribDataFilePool maxOpenFiles=%d maxPartitions=%d%n", maxOpenFiles, maxPartitions);
+    f.format("  hits= %d miss= %d opens= %d open= %d in use= %d partitions= %d%n", hits, misses, opens,
+        nidle + lent.size(), lent.size(), partitions.size());
+    f.format("    hit   miss  files  partition%n");
+    for (Map.Entry<String, PartitionFiles> entry : partitions.entrySet()) {
+      PartitionFiles files = entry.getValue();
+      f.format(" %6d %6d %6d  %s (%s)%n", files.hits, files.misses, files.dataFiles.size(), files.name, entry.getKey());
+    }
+  }
+}
@@ -7,6 +7,7 @@ package ucar.nc2.grib.collection;
 
 import com.google.common.base.Throwables;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ucar.nc2.grib.coord.CoordinateTime2D;
@@ -22,13 +23,21 @@ import ucar.nc2.grib.grib1.Grib1SectionProductDefinition;
 import ucar.nc2.grib.grib1.tables.Grib1Customizer;
 import ucar.nc2.grib.grib2.Grib2Record;
 import ucar.nc2.grib.grib2.Grib2RecordScanner;
+import ucar.nc2.grib.grib2.Grib2SectionIndicator;
 import ucar.nc2.grib.grib2.table.Grib2Tables;
 import ucar.nc2.util.Misc;
+import ucar.unidata.io.InMemoryRandomAccessFile;
 import ucar.unidata.io.RandomAccessFile;
 
 import javax.annotation.concurrent.Immutable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Grib Data Reader.
@@ -49,9 +58,86 @@ public abstract class GribDataReader {
       return new Grib2DataReader(gribCollection, vindex);
   }
 
-  protected abstract float[] readData(RandomAccessFile rafData, DataRecord dr) throws IOException;
+  /**
+   * Read and decode one record.
+   * @param rafData read from here
+   * @param pos the record starts at this position in rafData; dr.record.pos unless the record has been copied
+   * @param dr the record
+   * @param dest if not null, decode into dest starting at destPos when the reader is able to
+   * @param destPos starting index in dest
+   * @return dest if the data was decoded into it, otherwise a new array
+   */
+  protected abstract float[] readData(RandomAccessFile rafData, long pos, DataRecord dr, @Nullable float[] dest,
+      int destPos) throws IOException;
+  /** Length in bytes of the GRIB message that starts at pos. */
+  protected abstract long getMessageLength(RandomAccessFile rafData, long pos) throws IOException;
   protected abstract void show(RandomAccessFile rafData, long dataPos) throws IOException;
 
+  //////////////////////////////////////////////////////////////////////////////////
+  // parallel decoding of records
+
+  private static volatile ExecutorService decodeExecutor;  // null means decode serially
+  private static volatile int decodeMaxThreadsPerRead;
+
+  /**
+   * Decode the records of a multi-record read on a shared pool of worker threads. Off by default.
+   * The records are still read from the file in sorted order by the calling thread, and the data returned is
+   * identical to the serial read.
+   *
+   * @param nthreads          size of the shared pool; 0 or less turns parallel decoding off.
+   * @param maxThreadsPerRead maximum number of threads that a single read may use; 0 or less means nthreads.
+   */
+  public static synchronized void setDecodeThreads(int nthreads, int maxThreadsPerRead) {
+    if (decodeExecutor != null) {
+      decodeExecutor.shutdown();
+      decodeExecutor = null;
+    }
+    if (nthreads <= 0) return;
+
+    decodeMaxThreadsPerRead = (maxThreadsPerRead <= 0) ? nthreads : Math.min(maxThreadsPerRead, nthreads);
+    AtomicInteger count = new AtomicInteger();
+    decodeExecutor = Executors.newFixedThreadPool(nthreads, r -> {
+      Thread t = new Thread(r, "GribDataReader-decode-" + count.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  //////////////////////////////////////////////////////////////////////////////////
+  // pool of open data files for partitioned reads
+
+  private static volatile GribDataFilePool dataFilePool;  // null means open the data files for each read
+
+  /**
+   * Keep the data files of partitioned collections open between reads, and remember which files each partition has.
+   * Off by default.
+   *
+   * @param maxOpenFiles  keep at most this many data files open while not in use, if the global RandomAccessFile
+   *                      FileCache is off; 0 or less turns the pool off.
+   * @param maxPartitions remember the data files of at most this many partitions; 0 or less means 10 * maxOpenFiles.
+   */
+  public static synchronized void setDataFilePool(int maxOpenFiles, int maxPartitions) {
+    if (dataFilePool != null) {
+      dataFilePool.clear();
+      dataFilePool = null;
+    }
+    if (maxOpenFiles <= 0) return;
+    dataFilePool = new GribDataFilePool(maxOpenFiles, (maxPartitions <= 0) ? 10 * maxOpenFiles : maxPartitions);
+  }
+
+  @Nullable
+  public static GribDataFilePool getDataFilePool() {
+    return dataFilePool;
+  }
+
+  /**
+   * Stop the worker threads used for parallel decoding, and close the data file pool, if any.
+   */
+  public static void shutdown() {
+    setDecodeThreads(0, 0);
+    setDataFilePool(0, 0);
+  }
+
   /////////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
   public static GribCollectionImmutable.Record currentDataRecord;
   public static GribDataValidator validator;
@@ -226,6 +312,7 @@ public abstract class GribDataReader {
 
     int currFile = -1;
     RandomAccessFile rafData = null;
+    RecordDecoder decoder = new RecordDecoder(dataReceiver);
     try {
       for (DataRecord dr : records) {
         if (Grib.debugIndexOnly || Grib.debugGbxIndexOnly) {
@@ -253,12 +340,13 @@ public abstract class GribDataReader {
           show(rafData, dr.record.pos + dr.record.drsOffset);
         }
 
-        float[] data = readData(rafData, dr);
         GdsHorizCoordSys hcs = vindex.group.getGdsHorizCoordSys();
-        dataReceiver.addData(data, dr.resultIndex, hcs.nx);
+        decoder.decode(rafData, dr, hcs.nx);
       }
+      decoder.finish();
 
     } finally {
+      decoder.cancel();
       if (rafData != null) rafData.close();  // make sure its closed even on exception
     }
   }
@@ -273,6 +361,8 @@ public abstract class GribDataReader {
 
     PartitionCollectionImmutable.DataRecord lastRecord = null;
     RandomAccessFile rafData = null;
+    GribDataFilePool pool = dataFilePool;
+    RecordDecoder decoder = new RecordDecoder(dataReceiver);
     try {
 
       for (DataRecord dr : records) {
@@ -285,8 +375,10 @@ public abstract class GribDataReader {
         }
 
         if ((rafData == null) || !drp.usesSameFile(lastRecord)) {
-          if (rafData != null) rafData.close();
-          rafData = drp.usePartition.getRaf(drp.partno, dr.record.fileno);
+          if (rafData != null) closeRaf(pool, rafData);
+          rafData = null;
+          rafData = (pool != null) ? drp.usePartition.getRaf(pool, drp.partno, dr.record.fileno) :
+              drp.usePartition.getRaf(drp.partno, dr.record.fileno);
         }
         lastRecord = drp;
 
@@ -299,13 +391,118 @@ public abstract class GribDataReader {
           show(rafData, dr.record.pos + dr.record.drsOffset);
         }
 
-        float[] data = readData(rafData, dr);
         GdsHorizCoordSys hcs = dr.hcs;
-        dataReceiver.addData(data, dr.resultIndex, hcs.nx);
+        decoder.decode(rafData, dr, hcs.nx);
       }
+      decoder.finish();
 
     } finally {
-      if (rafData != null) rafData.close();  // make sure its closed even on exception
+      decoder.cancel();
+      if (rafData != null) closeRaf(pool, rafData);  // make sure its closed even on exception
+    }
+  }
+
+  private void closeRaf(@Nullable GribDataFilePool pool, RandomAccessFile rafData) throws IOException {
+    if (pool != null)
+      pool.release(rafData);
+    else
+      rafData.close();
+  }
+
+  /*
+   Decodes the records, in the order they are passed to decode(), and sends the data to the DataReceiver.
+   When the decode pool is on, the calling thread reads each GRIB message into memory, so the file is still read in
+   sorted order, and a worker thread decodes it. The data is sent to the DataReceiver by the calling thread, in
+   the same order as the serial read, with at most maxThreads records in flight.
+   When the DataReceiver wants the whole horizontal grid, records are decoded directly into the result array.
+   */
+  private class RecordDecoder {
+    private final DataReceiverIF dataReceiver;
+    private final ExecutorService executor = decodeExecutor;
+    private final int maxThreads = decodeMaxThreadsPerRead;
+    private final Deque<Decoding> inflight = new ArrayDeque<>();
+    private float[] scratch; // reused by the serial read when the record can't be decoded into the result
+
+    RecordDecoder(DataReceiverIF dataReceiver) {
+      this.dataReceiver = dataReceiver;
+    }
+
+    void decode(RandomAccessFile rafData, DataRecord dr, int nx) throws IOException {
+      int npoints = dr.hcs.gdsNumberPoints;
+      int directIndex = (dr.hcs.nxRaw == nx) ? dataReceiver.getDirectIndex(dr.resultIndex, nx, npoints) : -1;
+      float[] direct = (directIndex >= 0) ? dataReceiver.getDirectStorage() : null;
+
+      if (executor == null || maxThreads <= 1) {
+        float[] data;
+        if (direct != null) {
+          data = readData(rafData, dr.record.pos, dr, direct, directIndex);
+        } else {
+          if (scratch == null || scratch.length < npoints) scratch = new float[npoints];
+          data = readData(rafData, dr.record.pos, dr, scratch, 0);
+        }
+        if (data != direct) dataReceiver.addData(data, dr.resultIndex, nx);
+        return;
+      }
+
+      if (inflight.size() >= maxThreads) // bound the number of threads and messages in memory used by this read
+        inflight.removeFirst().addData();
+
+      long pos = dr.record.pos;
+      long len = Math.min(getMessageLength(rafData, pos), rafData.length() - pos);
+      byte[] message = new byte[(int) len];
+      rafData.seek(pos);
+      rafData.readFully(message);
+
+      String location = rafData.getLocation();
+      Future<float[]> future = executor.submit(() -> {
+        RandomAccessFile messageRaf = new InMemoryRandomAccessFile(location, message);
+        messageRaf.order(RandomAccessFile.BIG_ENDIAN); // same as getDataRaf()
+        return readData(messageRaf, 0, dr, direct, directIndex);
+      });
+      inflight.addLast(new Decoding(dr, nx, direct, future));
+    }
+
+    void finish() throws IOException {
+      while (!inflight.isEmpty())
+        inflight.removeFirst().addData();
+    }
+
+    void cancel() {
+      for (Decoding d : inflight) d.future.cancel(true);
+      inflight.clear();
+    }
+
+    private class Decoding {
+      final DataRecord dr;
+      final int nx;
+      final float[] direct;
+      final Future<float[]> future;
+
+      Decoding(DataRecord dr, int nx, float[] direct, Future<float[]> future) {
+        this.dr = dr;
+        this.nx = nx;
+        this.direct = direct;
+        this.future = future;
+      }
+
+      void addData() throws IOException {
+        float[] data;
+        try {
+          data = future.get();
+
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("GribDataReader read interrupted");
+
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+          if (cause instanceof IOException) throw (IOException) cause;
+          if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+          if (cause instanceof Error) throw (Error) cause;
+          throw new IOException(cause);
+        }
+        if (data != direct) dataReceiver.addData(data, dr.resultIndex, nx);
+      }
     }
   }
 
@@ -339,6 +536,21 @@ public abstract class GribDataReader {
     void addData(float[] data, int resultIndex, int nx);
     void setDataToZero(); // only used when debugging with gbx/ncx only, to fake the data
     Array getArray();
+
+    /**
+     * Optional: where in getDirectStorage() the data for resultIndex can be decoded directly, instead of being
+     * passed to addData().
+     * @param npoints number of points in the record
+     * @return starting index, or -1 if the data must be passed to addData()
+     */
+    default int getDirectIndex(int resultIndex, int nx, int npoints) {
+      return -1;
+    }
+
+    /** The array that getDirectIndex() refers to. */
+    default float[] getDirectStorage() {
+      return null;
+    }
   }
 
   public static class DataReceiver implements DataReceiverIF {
@@ -346,11 +558,13 @@ public abstract class GribDataReader {
     private final RangeIterator yRange;
     private final RangeIterator xRange;
     private final int horizSize;
+    private final boolean wholeGrid; // no horizontal subsetting, so the data can be decoded into dataArray
 
     DataReceiver(int[] shape, RangeIterator yRange, RangeIterator xRange) {
       this.yRange = yRange;
       this.xRange = xRange;
       this.horizSize = yRange.length() * xRange.length();
+      this.wholeGrid = startsAtZeroStrideOne(yRange) && startsAtZeroStrideOne(xRange);
 
       long len = Section.computeSize(shape);
       if (len > 100 * 1000 * 1000*4) { // LOOK make configurable
@@ -376,6 +590,22 @@ public abstract class GribDataReader {
       }
     }
 
+    private static boolean startsAtZeroStrideOne(RangeIterator r) {
+      return (r instanceof Range) && ((Range) r).first() == 0 && ((Range) r).stride() == 1;
+    }
+
+    @Override
+    public int getDirectIndex(int resultIndex, int nx, int npoints) {
+      if (wholeGrid && xRange.length() == nx && npoints == horizSize)
+        return resultIndex * horizSize;
+      return -1;
+    }
+
+    @Override
+    public float[] getDirectStorage() {
+      return (float[]) dataArray.getStorage();
+    }
+
     // optimization
     @Override
     public void setDataToZero() {
@@ -438,12 +668,19 @@ public abstract class GribDataReader {
     }
 
     @Override
-    protected float[] readData(RandomAccessFile rafData, GribDataReader.DataRecord dr) throws IOException {
+    protected float[] readData(RandomAccessFile rafData, long pos, GribDataReader.DataRecord dr, float[] dest,
+        int destPos) throws IOException {
       GdsHorizCoordSys hcs = dr.hcs;
-      long dataPos = dr.record.pos + dr.record.drsOffset;
-      long bmsPos = (dr.record.bmsOffset > 0) ? dr.record.pos + dr.record.bmsOffset : 0;
+      long dataPos = pos + dr.record.drsOffset;
+      long bmsPos = (dr.record.bmsOffset > 0) ? pos + dr.record.bmsOffset : 0;
       return Grib2Record.readData(rafData, dataPos, bmsPos, hcs.gdsNumberPoints, hcs.getScanMode(),
-              hcs.nxRaw, hcs.nyRaw, hcs.nptsInLine);
+              hcs.nxRaw, hcs.nyRaw, hcs.nptsInLine, dest, destPos);
+    }
+
+    @Override
+    protected long getMessageLength(RandomAccessFile rafData, long pos) throws IOException {
+      rafData.seek(pos);
+      return new Grib2SectionIndicator(rafData).getMessageLength();
     }
 
     @Override
@@ -474,8 +711,15 @@ public abstract class GribDataReader {
     }
 
     @Override
-    protected float[] readData(RandomAccessFile rafData, DataRecord dr) throws IOException {
-      return Grib1Record.readData(rafData, dr.record.pos);
+    protected float[] readData(RandomAccessFile rafData, long pos, DataRecord dr, float[] dest, int destPos)
+        throws IOException {
+      return Grib1Record.readData(rafData, pos);
+    }
+
+    @Override
+    protected long getMessageLength(RandomAccessFile rafData, long pos) throws IOException {
+      rafData.seek(pos);
+      return new Grib1Record(rafData).getIs().getMessageLength();
     }
 
     @Override
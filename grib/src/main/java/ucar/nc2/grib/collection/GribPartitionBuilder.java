@@ -36,6 +36,7 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * superclass to build Grib1/2 PartitionCollections
@@ -108,9 +109,20 @@ abstract class GribPartitionBuilder {
   ///////////////////////////////////////////////////
   // build the index
 
+  // elapsed msecs of each step of createPartitionedIndex, for the log
+  private final Formatter stepTimes = new Formatter();
+  private long stepStart;
+
+  private void endStep(String step) {
+    long now = System.nanoTime();
+    stepTimes.format(" %s=%d", step, (now - stepStart) / 1000000);
+    stepStart = now;
+  }
+
   // return true if changed, exception on failure
   boolean createPartitionedIndex(CollectionUpdateType forcePartition, Formatter errlog) throws IOException {
     if (errlog == null) errlog = new Formatter(); // info will be discarded
+    stepStart = System.nanoTime();
 
     // create partitions from the partitionManager
     for (MCollection dcmp : partitionManager.makePartitions(forcePartition)) {
@@ -118,6 +130,7 @@ abstract class GribPartitionBuilder {
       result.addPartition(dcmp);
     }
     result.sortPartitions(); // after this the partition list is immutable
+    endStep("partitions");
 
     // choose the "canonical" partition, aka prototype
     // only used in copyInfo
@@ -140,6 +153,7 @@ abstract class GribPartitionBuilder {
 
       result.dateRange = gc.dateRange;
     }
+    endStep("canonical");
 
     // check consistency across vert and ens coords
     // create partitioned variables
@@ -150,14 +164,25 @@ abstract class GribPartitionBuilder {
       throw new IllegalStateException("makeDataset2D failed, index not written on =" + result.showLocation() + "; errs=" + errlog);
     }
 
+    endStep("unionize");
+
     // Make Best for a TwoD
     if (ds2D.gctype == GribCollectionImmutable.Type.TwoD)
       makeDatasetBest(ds2D, false);
     //else if (ds2D.gctype == GribCollectionImmutable.Type.MRUTC)
     //  makeTime2runtime(ds2D, false);
+    endStep("best");
 
     // ready to write the index file
-    return writeIndex(result, errlog);
+    boolean ok = writeIndex(result, errlog);
+    endStep("write");
+
+    PartitionIndexCache cache = GribCdmIndex.getPartitionIndexCache();
+    if (cache != null)
+      stepTimes.format(" (partitionIndexCache hits=%d misses=%d)", cache.getHits(), cache.getMisses());
+    errlog.format(" INFO %s %d partitions, step msecs:%s%n", name, n, stepTimes);
+    logger.info("GribPartitionBuilder {} {} partitions, step msecs:{}", name, n, stepTimes);
+    return ok;
   }
 
   // each dataset / group has one of these, across all partitions
@@ -201,56 +226,66 @@ abstract class GribPartitionBuilder {
     Map<Object, GroupPartitions> groupMap = new HashMap<>(40);  // gdsHashObject, GroupPartition
     CoordinateBuilder runtimeAllBuilder = new CoordinateRuntime.Builder2(null); // ok to use Builder2 for both grib1 and grib2 because not extracting
 
-    int countPartition = 0;
-    CalendarDateRange dateRangeAll = null;
-    boolean rangeOverlaps = false;
+    // read the partition indexes, maybe in parallel
+    List<Callable<GribCollectionMutable>> openTasks = new ArrayList<>(npart);
     for (PartitionCollectionMutable.Partition tpp : result.getPartitions()) {
-      try (GribCollectionMutable gc = tpp.makeGribCollection()) {  // LOOK open/close each child partition. could leave open ? they are NOT in cache
-        if (gc == null) continue; // skip if they dont exist
-
-        // note its not recursive, maybe leave open, or cache; actually we keep a pointer to the partition's group in the GroupPartitions
-        CoordinateRuntime partRuntime = gc.masterRuntime;
-        runtimeAllBuilder.addAll(partRuntime);  // make a complete set of runtime Coordinates
-        masterRuntimes.add(partRuntime);        // make master runtimes
-
-        GribCollectionMutable.Dataset ds2dp = gc.getDatasetCanonical(); // the twoD or GC dataset
-
-        // date ranges must not overlap in order to use MRUTP
-        if (dateRangeAll == null)
-          dateRangeAll = gc.dateRange;
-        else if (!rangeOverlaps) {
-          rangeOverlaps = dateRangeAll.intersects(gc.dateRange);
-          dateRangeAll = dateRangeAll.extend(gc.dateRange);
+      openTasks.add(() -> {
+        try (GribCollectionMutable gc = tpp.makeGribCollection()) {  // LOOK open/close each child partition. could leave open ? they are NOT in cache
+          return gc;
         }
+      });
+    }
+    List<GribCollectionMutable> partitionGCs = GribCdmIndex.invokeAll(openTasks);
+    endStep("read");
 
-        /* see if its only got one time coord
-        if (ds2dp.gctype == GribCollectionImmutable.Type.SRC) {
-          for (GribCollectionMutable.GroupGC group : ds2dp.getGroups()) {
-            for (Coordinate coord : group.getCoordinates()) { // all time coords must have only one time
-              if (coord instanceof CoordinateTime2D) {
-                CoordinateTime2D coord2D = (CoordinateTime2D) coord;
-                if (coord2D.getNtimes() > 1)
-                  allAre1D = false;
+    int countPartition = 0;
+    CalendarDateRange dateRangeAll = null;
+    boolean rangeOverlaps = false;
+    for (GribCollectionMutable gc : partitionGCs) {
+      if (gc == null) continue; // skip if they dont exist
+
+      // note its not recursive, maybe leave open, or cache; actually we keep a pointer to the partition's group in the GroupPartitions
+      CoordinateRuntime partRuntime = gc.masterRuntime;
+      runtimeAllBuilder.addAll(partRuntime);  // make a complete set of runtime Coordinates
+      masterRuntimes.add(partRuntime);        // make master runtimes
+
+      GribCollectionMutable.Dataset ds2dp = gc.getDatasetCanonical(); // the twoD or GC dataset
+
+      // date ranges must not overlap in order to use MRUTP
+      if (dateRangeAll == null)
+        dateRangeAll = gc.dateRange;
+      else if (!rangeOverlaps) {
+        rangeOverlaps = dateRangeAll.intersects(gc.dateRange);
+        dateRangeAll = dateRangeAll.extend(gc.dateRange);
+      }
 
-            } else if (coord instanceof CoordinateTimeAbstract && coord.getSize() > 1)
+      /* see if its only got one time coord
+      if (ds2dp.gctype == GribCollectionImmutable.Type.SRC) {
+        for (GribCollectionMutable.GroupGC group : ds2dp.getGroups()) {
+          for (Coordinate coord : group.getCoordinates()) { // all time coords must have only one time
+            if (coord instanceof CoordinateTime2D) {
+              CoordinateTime2D coord2D = (CoordinateTime2D) coord;
+              if (coord2D.getNtimes() > 1)
                 allAre1D = false;
-            }
-          }
-        } else if (ds2dp.gctype == GribCollectionImmutable.Type.MRC || ds2dp.gctype == GribCollectionImmutable.Type.TwoD) {
-          allAre1D = false;
-        } */
-
-        int groupIdx = 0;
-        for (GribCollectionMutable.GroupGC g : ds2dp.groups) { // for each group in the partition
-          GroupPartitions gs = groupMap.get(g.getGdsHash());
-          if (gs == null) {
-            gs = new GroupPartitions(ds2D.addGroupCopy(g), npart);
-            groupMap.put(g.getGdsHash(), gs);
+
+          } else if (coord instanceof CoordinateTimeAbstract && coord.getSize() > 1)
+              allAre1D = false;
           }
-          gs.componentGroups[countPartition] = g;
-          gs.componentGroupIndex[countPartition] = groupIdx++;
         }
-      } // close the gc
+      } else if (ds2dp.gctype == GribCollectionImmutable.Type.MRC || ds2dp.gctype == GribCollectionImmutable.Type.TwoD) {
+        allAre1D = false;
+      } */
+
+      int groupIdx = 0;
+      for (GribCollectionMutable.GroupGC g : ds2dp.groups) { // for each group in the partition
+        GroupPartitions gs = groupMap.get(g.getGdsHash());
+        if (gs == null) {
+          gs = new GroupPartitions(ds2D.addGroupCopy(g), npart);
+          groupMap.put(g.getGdsHash(), gs);
+        }
+        gs.componentGroups[countPartition] = g;
+        gs.componentGroupIndex[countPartition] = groupIdx++;
+      }
       countPartition++;
     } // loop over partition
 
@@ -307,28 +342,38 @@ abstract class GribPartitionBuilder {
       boolean isDense = false; // (config != null) && "dense".equals(config.gribConfig.getParameter("CoordSys"));  // for now, assume non-dense
       CoordinateSharer sharify = new CoordinateSharer(isDense, logger);
 
-      // for each variable, create union of coordinates across the partitions
+      // for each variable, create union of coordinates across the partitions, maybe in parallel; null on failure
+      List<Callable<List<Coordinate>>> unionTasks = new ArrayList<>(resultGroup.variList.size());
       for (GribCollectionMutable.VariableIndex viResult : resultGroup.variList) {
-        PartitionCollectionMutable.VariableIndexPartitioned vip = (PartitionCollectionMutable.VariableIndexPartitioned) viResult;
-        vip.finish(); // create the SA, remove list LOOK, could do it differently
-
-        // loop over partitions, make union coordinate; also time filter the intervals
-        CoordinatePartitionUnionizer unionizer = new CoordinatePartitionUnionizer(viResult, intvMap, logger);
-        for (int partno = 0; partno < npart; partno++) {
-          GribCollectionMutable.GroupGC group = gp.componentGroups[partno];
-          if (group == null) continue; // tolerate missing groups
-          GribCollectionMutable.VariableIndex vi = group.findVariableByHash(viResult);
-          if (vi == null) continue; // tolerate missing variables
-          try {
-            PartitionCollectionMutable.Partition part = ds2D.gctype.isUniqueTime() ? null : result.getPartition(partno);
-            unionizer.addCoords(vi.getCoordinates(), part);
-          } catch (IllegalStateException e) {
-            logger.error(e.getMessage() + " on dataset " + name);
-            return null;
-          }
-        }  // loop over partition
+        unionTasks.add(() -> {
+          PartitionCollectionMutable.VariableIndexPartitioned vip = (PartitionCollectionMutable.VariableIndexPartitioned) viResult;
+          vip.finish(); // create the SA, remove list LOOK, could do it differently
+
+          // loop over partitions, make union coordinate; also time filter the intervals
+          CoordinatePartitionUnionizer unionizer = new CoordinatePartitionUnionizer(viResult, intvMap, logger);
+          for (int partno = 0; partno < npart; partno++) {
+            GribCollectionMutable.GroupGC group = gp.componentGroups[partno];
+            if (group == null) continue; // tolerate missing groups
+            GribCollectionMutable.VariableIndex vi = group.findVariableByHash(viResult);
+            if (vi == null) continue; // tolerate missing variables
+            try {
+              PartitionCollectionMutable.Partition part = ds2D.gctype.isUniqueTime() ? null : result.getPartition(partno);
+              unionizer.addCoords(vi.getCoordinates(), part);
+            } catch (IllegalStateException e) {
+              logger.error(e.getMessage() + " on dataset " + name);
+              return null;
+            }
+          }  // loop over partition
+
+          return unionizer.finish();  // the viResult coordinates have been ortho/regularized
+        });
+      }
+      List<List<Coordinate>> unionCoords = GribCdmIndex.invokeAll(unionTasks);
 
-        viResult.coords = unionizer.finish();  // the viResult coordinates have been ortho/regularized
+      for (int varIdx = 0; varIdx < resultGroup.variList.size(); varIdx++) {
+        GribCollectionMutable.VariableIndex viResult = resultGroup.variList.get(varIdx);
+        viResult.coords = unionCoords.get(varIdx);
+        if (viResult.coords == null) return null;
         sharify.addCoords(viResult.coords);
       } // loop over variable
 
@@ -458,6 +503,7 @@ abstract class GribPartitionBuilder {
   */
   protected boolean writeIndex(PartitionCollectionMutable pc, Formatter f) throws IOException {
     File idxFile = GribIndexCache.getFileOrCache(partitionManager.getIndexFilename(GribCdmIndex.NCX_SUFFIX));
+    GribCdmIndex.indexFileChanged(idxFile.getPath());
     if (idxFile.exists()) {
       RandomAccessFile.eject(idxFile.getPath());
       if (!idxFile.delete())
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 1998-2018 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.grib.collection;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.UnknownFieldSet;
+import ucar.nc2.util.cache.SmartArrayInt;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * A read-only memory mapped ncx4 index file.
+ * <p>
+ * The GribCollection message can be decoded without the partition variable lists of its Variables, which are most of a
+ * large partition index. Each list is replaced by unknown fields holding the count and the location of the
+ * Variable message in the file, and is decoded from the mapped file when the variable is first used.
+ * The SparseArray record messages are also read from the mapped file, instead of reopening the index.
+ * <p>
+ * The mapping stays valid after the index is deleted and rewritten, on systems that allow deleting an open file.
+ */
+final class MappedIndexFile {
+  // these replace Variable.partVariable (field 100) when decoding lazily
+  static final int NPARTS_FIELD = 1000;
+  static final int VARIABLE_POS_FIELD = 1001;
+  static final int VARIABLE_LEN_FIELD = 1002;
+
+  // field numbers on the path GribCollection.dataset / Dataset.groups / Group.variables / Variable.partVariable
+  private static final int[] PATH = {4, 2, 2, 100};
+
+  /**
+   * Map the whole index file.
+   *
+   * @param location index filename
+   * @return the mapped file, or null if it is too large to map into a single buffer
+   */
+  static MappedIndexFile map(String location) throws IOException {
+    try (FileChannel channel = FileChannel.open(Paths.get(location), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE)
+        return null;
+      return new MappedIndexFile(location, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+    }
+  }
+
+  private final String location;
+  private final MappedByteBuffer buffer;
+
+  private MappedIndexFile(String location, MappedByteBuffer buffer) {
+    this.location = location;
+    this.buffer = buffer;
+  }
+
+  String getLocation() {
+    return location;
+  }
+
+  long getSize() {
+    return buffer.capacity();
+  }
+
+  /**
+   * A read-only view of len bytes starting at pos, independent of other views.
+   */
+  ByteBuffer slice(long pos, int len) throws IOException {
+    if (pos < 0 || len < 0 || pos + len > buffer.capacity())
+      throw new IOException("MappedIndexFile " + location + ": section " + pos + "+" + len + " outside of file size " + buffer.capacity());
+    ByteBuffer view = buffer.duplicate();
+    view.position((int) pos);
+    view.limit((int) pos + len);
+    return view.slice();
+  }
+
+  /**
+   * Decode the GribCollection message at pos.
+   *
+   * @param pos                  start of the message in the file
+   * @param len                  size of the message
+   * @param deferPartVariables   leave out Variable.partVariable lists, to be read later with readPartitionVariables
+   */
+  GribCollectionProto.GribCollection readGribCollection(long pos, int len, boolean deferPartVariables) throws IOException {
+    if (!deferPartVariables)
+      return GribCollectionProto.GribCollection.parseFrom(slice(pos, len));
+    return GribCollectionProto.GribCollection.parseFrom(new Filter().filter((int) pos, (int) pos + len, 0));
+  }
+
+  /**
+   * Decode the partition variable list that readGribCollection left out of this Variable.
+   *
+   * @param deferred the decoded Variable, without its partVariable list
+   * @return partno, groupno, varno arrays, or null if none were left out
+   */
+  SmartArrayInt[] readPartitionVariables(GribCollectionProto.Variable deferred) throws IOException {
+    UnknownFieldSet unknown = deferred.getUnknownFields();
+    if (!unknown.hasField(VARIABLE_POS_FIELD))
+      return null;
+    long varPos = unknown.getField(VARIABLE_POS_FIELD).getVarintList().get(0);
+    int varLen = unknown.getField(VARIABLE_LEN_FIELD).getVarintList().get(0).intValue();
+
+    List<GribCollectionProto.PartitionVariable> pvList = GribCollectionProto.Variable.parseFrom(slice(varPos, varLen)).getPartVariableList();
+    int n = pvList.size();
+    int[] partno = new int[n];
+    int[] groupno = new int[n];
+    int[] varno = new int[n];
+    for (int i = 0; i < n; i++) {
+      GribCollectionProto.PartitionVariable pv = pvList.get(i);
+      partno[i] = pv.getPartno();
+      groupno[i] = pv.getGroupno();
+      varno[i] = pv.getVarno();
+    }
+    return new SmartArrayInt[]{new SmartArrayInt(partno), new SmartArrayInt(groupno), new SmartArrayInt(varno)};
+  }
+
+  /**
+   * Number of partition variables that readGribCollection left out of this Variable, or -1 if none were left out.
+   */
+  static int getDeferredNparts(GribCollectionProto.Variable deferred) {
+    UnknownFieldSet unknown = deferred.getUnknownFields();
+    if (!unknown.hasField(NPARTS_FIELD))
+      return -1;
+    return unknown.getField(NPARTS_FIELD).getVarintList().get(0).intValue();
+  }
+
+  // copies a message, recursing down PATH and dropping the last field on it; skips over everything else as raw bytes
+  private class Filter {
+    private int cursor;
+
+    byte[] filter(int start, int end, int depth) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.min(end - start, 1 << 16));
+      CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+      int ndropped = 0;
+
+      cursor = start;
+      while (cursor < end) {
+        int fieldStart = cursor;
+        long tag = readVarint();
+        int fieldNumber = (int) (tag >>> 3);
+        int wireType = (int) (tag & 7);
+
+        if (wireType == 2 && fieldNumber == PATH[depth]) {
+          int len = (int) readVarint();
+          int contentStart = cursor;
+          int contentEnd = contentStart + len;
+          if (depth == PATH.length - 1) {
+            ndropped++;
+          } else {
+            byte[] content = filter(contentStart, contentEnd, depth + 1);
+            out.writeByteArray(fieldNumber, content);
+          }
+          cursor = contentEnd;
+
+        } else {
+          skipField(wireType);
+          copy(fieldStart, cursor, out);
+        }
+      }
+
+      if (ndropped > 0) {
+        out.writeUInt32(NPARTS_FIELD, ndropped);
+        out.writeUInt64(VARIABLE_POS_FIELD, start);
+        out.writeUInt32(VARIABLE_LEN_FIELD, end - start);
+      }
+      out.flush();
+      cursor = end;
+      return bytes.toByteArray();
+    }
+
+    private long readVarint() throws IOException {
+      long result = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        byte b = buffer.get(cursor++);
+        result |= (long) (b & 0x7f) << shift;
+        if ((b & 0x80) == 0)
+          return result;
+      }
+      throw new IOException("MappedIndexFile " + location + ": malformed varint at " + cursor);
+    }
+
+    private void skipField(int wireType) throws IOException {
+      switch (wireType) {
+        case 0:
+          readVarint();
+          break;
+        case 1:
+          cursor += 8;
+          break;
+        case 2:
+          int len = (int) readVarint();
+          cursor += len;
+          break;
+        case 5:
+          cursor += 4;
+          break;
+        default:
+          throw new IOException("MappedIndexFile " + location + ": unexpected wire type " + wireType + " at " + cursor);
+      }
+    }
+
+    private void copy(int start, int end, CodedOutputStream out) throws IOException {
+      ByteBuffer view = buffer.duplicate();
+      view.position(start);
+      view.limit(end);
+      out.writeRawBytes(view.slice());  // writes the whole capacity of the buffer
+    }
+  }
+}
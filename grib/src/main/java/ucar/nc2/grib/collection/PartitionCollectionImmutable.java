@@ -162,6 +162,12 @@ public abstract class PartitionCollectionImmutable extends GribCollectionImmutab
     }
   }
 
+  // caller must give it back with pool.release()
+  RandomAccessFile getRaf(GribDataFilePool pool, int partno, int fileno) throws IOException {
+    Partition part = getPartition(partno);
+    return pool.acquire(part, new File(directory, part.getFilename()).getPath(), fileno);
+  }
+
   // debugging
   public String getFilename(int partno, int fileno) throws IOException {
     Partition part = getPartition(partno);
@@ -267,12 +273,16 @@ public abstract class PartitionCollectionImmutable extends GribCollectionImmutab
 
   }
 
-  @Immutable
+  @Immutable      // except for the lazily read partition arrays
   public class VariableIndexPartitioned extends GribCollectionImmutable.VariableIndex {
     final int nparts;
-    final SmartArrayInt partnoSA;  // conceptually int[nparts] : index into PartitionCollectionImmutable.partitions[] -> Partition
-    final SmartArrayInt groupnoSA; // once you have the partition, which group in that partition's dataset? Partition.Dataset.Group[] -> Group
-    final SmartArrayInt varnoSA;   // once you have the group, which variable? Group[] -> Variable
+    private SmartArrayInt partnoSA;  // conceptually int[nparts] : index into PartitionCollectionImmutable.partitions[] -> Partition
+    private SmartArrayInt groupnoSA; // once you have the partition, which group in that partition's dataset? Partition.Dataset.Group[] -> Group
+    private SmartArrayInt varnoSA;   // once you have the group, which variable? Group[] -> Variable
+
+    // memory mapped index: the three arrays above are read on first use
+    private MappedIndexFile deferredIndex;
+    private GribCollectionProto.Variable deferredProto;
 
     // partition only
     // final SmartArrayInt time2runtime; // oneD only: for each timeIndex, which runtime coordinate does it use? 1-based so 0 = missing;
@@ -288,6 +298,18 @@ public abstract class PartitionCollectionImmutable extends GribCollectionImmutab
       this.partnoSA = pother.partnoSA;
       this.groupnoSA = pother.groupnoSA;
       this.varnoSA = pother.varnoSA;
+      this.deferredIndex = pother.deferredIndex;
+      this.deferredProto = pother.deferredProto;
+    }
+
+    private synchronized void readPartitions() throws IOException {
+      if (deferredProto == null) return;
+      SmartArrayInt[] parts = deferredIndex.readPartitionVariables(deferredProto);
+      this.partnoSA = parts[0];
+      this.groupnoSA = parts[1];
+      this.varnoSA = parts[2];
+      deferredIndex = null;
+      deferredProto = null;
     }
 
     public int getNparts() {
@@ -300,6 +322,12 @@ public abstract class PartitionCollectionImmutable extends GribCollectionImmutab
 
     public void show(Formatter sb) {
       sb.format("VariableIndexPartitioned%n");
+      try {
+        readPartitions();
+      } catch (IOException e) {
+        sb.format(" failed to read partitions: %s%n", e.getMessage());
+        return;
+      }
       sb.format(" partno=");
       this.partnoSA.show(sb);
       sb.format("%n groupno=");
@@ -467,6 +495,7 @@ public abstract class PartitionCollectionImmutable extends GribCollectionImmutab
       if (vip == null)
         throw new IllegalStateException();
 
+      vip.readPartitions();
       int partWant = vip.partnoSA.findIdx(partno); // which partition ? index into PartitionCollectionImmutable.partitions[]. variable doesnt have to exist in all partitions
       if (partWant < 0 || partWant >= vip.nparts) {
         if (Grib.debugRead) logger.debug("  cant find partition=%d in vip=%s%n", partno, vip);
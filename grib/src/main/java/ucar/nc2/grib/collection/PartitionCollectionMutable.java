@@ -48,6 +48,10 @@ public class PartitionCollectionMutable extends GribCollectionMutable {
     SmartArrayInt groupnoSA;
     SmartArrayInt varnoSA;
 
+    // when the index is memory mapped, the partno, groupno, varno arrays are read from here on first use; see GribCdmIndex.setMemoryMappedIndex
+    MappedIndexFile deferredIndex;
+    GribCollectionProto.Variable deferredProto;
+
     List<PartitionForVariable2D> partList; // used only when creating, then discarded in finish
 
     VariableIndexPartitioned(GroupGC g, VariableIndex other, int nparts) {
@@ -73,6 +77,12 @@ public class PartitionCollectionMutable extends GribCollectionMutable {
       partList = null; // GC
     }
 
+    void setPartitions(MappedIndexFile index, GribCollectionProto.Variable deferred) {
+      this.deferredIndex = index;
+      this.deferredProto = deferred;
+      partList = null; // GC
+    }
+
     public void finish() {
       if (partList == null) return;  // nothing to do
       if (partList.size() > nparts)  // might be smaller due to failed partition
@@ -231,7 +241,7 @@ public class PartitionCollectionMutable extends GribCollectionMutable {
     // the children must already exist
     @Nullable
     public GribCollectionMutable makeGribCollection() {
-      GribCollectionMutable result = GribCdmIndex.openMutableGCFromIndex(dcm.getIndexFilename(GribCdmIndex.NCX_SUFFIX), config, false, true, logger);
+      GribCollectionMutable result = GribCdmIndex.openPartitionIndex(dcm.getIndexFilename(GribCdmIndex.NCX_SUFFIX), config, logger);
       if (result == null) {
         logger.error("Failed on openMutableGCFromIndex {}", dcm.getIndexFilename(GribCdmIndex.NCX_SUFFIX));
         return null;
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 1998-2018 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.grib.collection;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import thredds.featurecollection.FeatureCollectionConfig;
+
+import java.util.Formatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The partition indexes read while building the index of a PartitionCollection, kept for the next update of the
+ * same collection. A rolling real-time collection then only reads the indexes of the partitions that were added or
+ * rewritten since the last update, instead of every partition index, each time the top index is rebuilt.
+ * <p>
+ * An entry is used only if the index file has the same last modified time and length as when it was read, and the
+ * FeatureCollectionConfig is the same object. The cached GribCollectionMutable is shared and must not be modified;
+ * GribPartitionBuilder only copies from it.
+ * Least recently used entries are dropped when there are more than maxPartitions.
+ */
+@ThreadSafe
+class PartitionIndexCache {
+  private final int maxPartitions;
+  private final Map<String, Entry> map;
+  private long hits, misses;
+
+  private static class Entry {
+    final GribCollectionMutable gc;
+    final FeatureCollectionConfig config;
+
+    Entry(GribCollectionMutable gc, FeatureCollectionConfig config) {
+      this.gc = gc;
+      this.config = config;
+    }
+  }
+
+  PartitionIndexCache(int maxPartitions) {
+    this.maxPartitions = maxPartitions;
+    this.map = new LinkedHashMap<String, Entry>(2 * maxPartitions, .75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > PartitionIndexCache.this.maxPartitions;
+      }
+    };
+  }
+
+  /**
+   * Get the partition index read from this file, if it has not changed since.
+   *
+   * @param path         index file path
+   * @param lastModified current last modified time of the index file
+   * @param length       current length of the index file
+   * @param config       config the caller would read it with
+   * @return cached collection or null
+   */
+  @Nullable
+  synchronized GribCollectionMutable get(String path, long lastModified, long length, FeatureCollectionConfig config) {
+    Entry entry = map.get(path);
+    if (entry != null && entry.config == config && entry.gc.lastModified == lastModified && entry.gc.fileSize == length) {
+      hits++;
+      return entry.gc;
+    }
+    if (entry != null)
+      map.remove(path);
+    misses++;
+    return null;
+  }
+
+  synchronized void put(String path, GribCollectionMutable gc, FeatureCollectionConfig config) {
+    map.put(path, new Entry(gc, config));
+  }
+
+  /** The index file was rewritten or deleted. */
+  synchronized void remove(String path) {
+    map.remove(path);
+  }
+
+  synchronized void clear() {
+    map.clear();
+  }
+
+  synchronized long getHits() {
+    return hits;
+  }
+
+  synchronized long getMisses() {
+    return misses;
+  }
+
+  synchronized void show(Formatter f) {
+    f.format("PartitionIndexCache size=%d max=%d hits=%d misses=%d%n", map.size(), maxPartitions, hits, misses);
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 1998-2018 John Caron and University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.grib.collection;
+
+import javax.annotation.Nullable;
+import ucar.nc2.grib.coord.SparseArray;
+import ucar.nc2.util.Misc;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+
+/**
+ * The records of one GribCollectionImmutable.VariableIndex, stored column-wise in primitive arrays.
+ * Same lookup as SparseArray<GribCollectionImmutable.Record>: track[totalSize] = {0 = missing, else = index+1 into the columns}.
+ * A Record object is only made when asked for, so a collection with millions of records does not keep millions of small objects.
+ */
+@Immutable
+public class RecordTable {
+  private final int[] shape;    // multidim sizes
+  private final int[] stride;   // for index calculation
+  private final int[] track;    // 1-based index into the columns, size totalSize, 0 = missing
+  private final int ndups;
+
+  // the columns, one entry per record
+  private final int[] fileno;
+  private final long[] pos;
+  private final int[] bmsOffset;
+  private final int[] drsOffset;
+
+  /**
+   * Create from the ncx4 SparseArray message, sizing the columns from the record count.
+   */
+  static RecordTable fromProto(GribCollectionProto.SparseArray proto) {
+    int nsizes = proto.getSizeCount();
+    int[] shape = new int[nsizes];
+    for (int i = 0; i < nsizes; i++)
+      shape[i] = proto.getSize(i);
+
+    int ntrack = proto.getTrackCount();
+    int[] track = new int[ntrack];
+    for (int i = 0; i < ntrack; i++)
+      track[i] = proto.getTrack(i);
+
+    int n = proto.getRecordsCount();
+    int[] fileno = new int[n];
+    long[] pos = new long[n];
+    int[] bmsOffset = new int[n];
+    int[] drsOffset = new int[n];
+    for (int i = 0; i < n; i++) {
+      GribCollectionProto.Record pr = proto.getRecords(i);
+      fileno[i] = pr.getFileno();
+      pos[i] = pr.getStartPos();
+      bmsOffset[i] = pr.getBmsOffset();
+      drsOffset[i] = pr.getDrsOffset();
+    }
+
+    return new RecordTable(shape, track, fileno, pos, bmsOffset, drsOffset, proto.getNdups());
+  }
+
+  RecordTable(int[] shape, int[] track, int[] fileno, long[] pos, int[] bmsOffset, int[] drsOffset, int ndups) {
+    this.shape = shape;
+    this.stride = calcStrides(shape);
+    this.track = track;
+    this.fileno = fileno;
+    this.pos = pos;
+    this.bmsOffset = bmsOffset;
+    this.drsOffset = drsOffset;
+    this.ndups = ndups;
+
+    int totalSize = 1;
+    for (int aSize : shape) totalSize *= aSize;
+    if (track.length != totalSize)
+      throw new IllegalStateException("track len " + track.length + " != totalSize " + totalSize);
+    if (pos.length != fileno.length || bmsOffset.length != fileno.length || drsOffset.length != fileno.length)
+      throw new IllegalStateException("record columns have different lengths");
+  }
+
+  private static int[] calcStrides(int[] shape) {
+    int[] strides = new int[shape.length];
+    int product = 1;
+    for (int ii = shape.length - 1; ii >= 0; ii--) {
+      strides[ii] = product;
+      product *= shape[ii];
+    }
+    return strides;
+  }
+
+  private int calcIndex(int... index) {
+    assert index.length == shape.length;
+    int result = 0;
+    for (int ii = 0; ii < index.length; ii++)
+      result += index[ii] * stride[ii];
+    return result;
+  }
+
+  /**
+   * Get the record at this index into the track array.
+   *
+   * @return the record, or null if missing
+   */
+  @Nullable
+  public GribCollectionImmutable.Record getRecordAt(int idx) {
+    int recordIdx = track[idx] - 1;
+    if (recordIdx < 0)
+      return null; // missing
+    return getRecord(recordIdx);
+  }
+
+  /**
+   * Get the record at this multidimensional index.
+   *
+   * @return the record, or null if missing
+   */
+  @Nullable
+  public GribCollectionImmutable.Record getRecordAt(int[] index) {
+    return getRecordAt(calcIndex(index));
+  }
+
+  /**
+   * Get the ith record, in the order they are stored in the index.
+   */
+  public GribCollectionImmutable.Record getRecord(int i) {
+    return new GribCollectionImmutable.Record(fileno[i], pos[i], bmsOffset[i], drsOffset[i]);
+  }
+
+  public int[] getShape() {
+    return shape.clone();
+  }
+
+  public int getTotalSize() {
+    return track.length;
+  }
+
+  public int getNRecords() {
+    return fileno.length;
+  }
+
+  public int getNdups() {
+    return ndups;
+  }
+
+  public int countNotMissing() {
+    int result = 0;
+    for (int idx : track)
+      if (idx > 0) result++;
+    return result;
+  }
+
+  /**
+   * Estimated memory size in bytes of this table: array headers plus the track and the four columns.
+   */
+  public long estMemorySize() {
+    return 96 + 16 * 7 + 4L * (shape.length + stride.length + track.length) + 20L * fileno.length;
+  }
+
+  /**
+   * Estimated memory size in bytes of the same records held in a SparseArray<GribCollectionImmutable.Record>,
+   * for comparison. Each Record is a 32 byte object plus a reference in the content list.
+   */
+  public long estMemorySizeAsObjects() {
+    return 276 + 4L * track.length + 40L * fileno.length;
+  }
+
+  /**
+   * Copy into a SparseArray of Record objects, for debugging and display.
+   */
+  public SparseArray<GribCollectionImmutable.Record> toSparseArray() {
+    List<GribCollectionImmutable.Record> records = new ArrayList<>(fileno.length);
+    for (int i = 0; i < fileno.length; i++)
+      records.add(getRecord(i));
+    return new SparseArray<>(shape.clone(), track.clone(), records, ndups);
+  }
+
+  public void show(Formatter f) {
+    f.format("RecordTable shape=[%s] nrecords=%d ndups=%d estMemorySize=%d (as objects=%d)%n",
+        Misc.showInts(shape), fileno.length, ndups, estMemorySize(), estMemorySizeAsObjects());
+  }
+}
@@ -21,7 +21,7 @@ import javax.annotation.concurrent.Immutable;
 @Immutable
 public abstract class CoordinateTimeAbstract implements Coordinate {
   public static final String MIXED_INTERVALS = "Mixed_intervals";
-  public static CalendarDateFactory cdf;
+  public static volatile CalendarDateFactory cdf;
 
   final String periodName;                   // used to create the udunit
   protected final int code;                  // unit of time (Grib1 table 4, Grib2 table 4.4), eg hour, day, month
@@ -34,7 +34,8 @@ public abstract class CoordinateTimeAbstract implements Coordinate {
   CoordinateTimeAbstract(int code, CalendarPeriod timeUnit, CalendarDate refDate, int[] time2runtime) {
     this.code = code;
     this.timeUnit = timeUnit;
-    this.refDate = (cdf == null) ? refDate : cdf.get(refDate);
+    CalendarDateFactory factory = cdf;  // may be reset by a partition build in another thread
+    this.refDate = (factory == null) ? refDate : factory.get(refDate);
     this.time2runtime = time2runtime;
 
     CalendarPeriod.Field cf = timeUnit.getField();
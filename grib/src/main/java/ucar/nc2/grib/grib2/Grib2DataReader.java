@@ -6,6 +6,7 @@
 package ucar.nc2.grib.grib2;
 
 import javax.annotation.Nullable;
+import ucar.nc2.grib.BitUnpacker;
 import ucar.nc2.grib.GribNumbers;
 import ucar.nc2.grib.GribUtils;
 import ucar.nc2.iosp.BitReader;
@@ -41,6 +42,14 @@ public class Grib2DataReader {
     }
   }
 
+  // Decode templates 5.0, 5.2 and 5.3 with BitUnpacker. Set to false to use the original BitReader code;
+  // package private, only the tests and benchmarks in this package switch it.
+  private static volatile boolean useBitUnpacker = true;
+
+  static void setUseBitUnpacker(boolean b) {
+    useBitUnpacker = b;
+  }
+
   ///////////////////////////////////////////////
 
   private final int dataTemplate;
@@ -83,6 +92,18 @@ public class Grib2DataReader {
 
   public float[] getData(RandomAccessFile raf, Grib2SectionBitMap bitmapSection, Grib2Drs gdrs)
       throws IOException {
+    return getData(raf, bitmapSection, gdrs, null, 0);
+  }
+
+  /**
+   * Read the data, decoding it directly into the caller's array when possible.
+   *
+   * @param dest    if not null and there is room for totalNPoints values starting at destPos, decode into it.
+   * @param destPos starting index in dest
+   * @return dest if the data was decoded into it, otherwise a new array.
+   */
+  public float[] getData(RandomAccessFile raf, Grib2SectionBitMap bitmapSection, Grib2Drs gdrs,
+      @Nullable float[] dest, int destPos) throws IOException {
     this.bitmap = bitmapSection.getBitmap(raf);
     this.bitmapIndicator = bitmapSection.getBitMapIndicator();
 
@@ -96,6 +117,26 @@ public class Grib2DataReader {
 
     raf.seek(startPos + 5); // skip past first 5 bytes in data section, now ready to read
 
+    if (useBitUnpacker && (dataTemplate == 0 || dataTemplate == 2 || dataTemplate == 3)) {
+      boolean useDest = (dest != null) && (destPos >= 0) && (dest.length - destPos >= totalNPoints);
+      float[] data = useDest ? dest : new float[totalNPoints];
+      int off = useDest ? destPos : 0;
+      BitUnpacker unpacker = readDataSection(raf);
+      switch (dataTemplate) {
+        case 0:
+          unpack0(unpacker, (Grib2Drs.Type0) gdrs, data, off);
+          break;
+        case 2:
+          unpack2(unpacker, (Grib2Drs.Type2) gdrs, data, off);
+          break;
+        default:
+          unpack3(unpacker, (Grib2Drs.Type3) gdrs, data, off);
+          break;
+      }
+      scanningModeCheck(data, off, totalNPoints, scanMode, nx);
+      return data;
+    }
+
     float[] data;
     switch (dataTemplate) {
       case 0:
@@ -122,7 +163,7 @@ public class Grib2DataReader {
 
     //int scanMode = gds.getGds().getScanMode();
     //int nx = gds.getGds().getNx();  // needs some smarts for different type Grids
-    scanningModeCheck(data, scanMode, nx);
+    scanningModeCheck(data, 0, data.length, scanMode, nx);
 
     return data;
   }
@@ -727,6 +768,365 @@ public class Grib2DataReader {
     return data;
   }
 
+  //////////////////////////////////////////////////////////////////////////////////////////////
+  // Templates 5.0, 5.2 and 5.3 decoded with BitUnpacker, a word at a time, into data[off, off+totalNPoints).
+  // Same results as getData0, getData2 and getData3, including the float arithmetic, without the temporary arrays.
+
+  private BitUnpacker readDataSection(RandomAccessFile raf) throws IOException {
+    long pos = startPos + 5;
+    int len = (int) Math.max(0, Math.min(dataLength - 5, raf.length() - pos));
+    byte[] buf = new byte[len];
+    raf.seek(pos);
+    raf.readFully(buf);
+    return new BitUnpacker(buf, 0, len);
+  }
+
+  // Grid point data - simple packing
+  private void unpack0(BitUnpacker unpacker, Grib2Drs.Type0 gdrs, float[] data, int off) throws IOException {
+    int nb = gdrs.numberOfBits;
+    float DD = (float) java.lang.Math.pow((double) 10, (double) gdrs.decimalScaleFactor);
+    float R = gdrs.referenceValue;
+    float EE = (float) java.lang.Math.pow(2.0, (double) gdrs.binaryScaleFactor);
+
+    if (bitmap == null) {
+      for (int i = 0; i < totalNPoints; i++) {
+        data[off + i] = (R + unpacker.bits2UInt(nb) * EE) / DD;
+      }
+    } else { // a byte of the bitmap at a time, since there are often long runs of missing or present points
+      for (int start = 0; start < totalNPoints; start += 8) {
+        int mask = bitmap[start / 8] & 0xff;
+        int n = Math.min(8, totalNPoints - start);
+        if (mask == 0) {
+          Arrays.fill(data, off + start, off + start + n, staticMissingValue);
+        } else if (mask == 0xff) {
+          for (int i = off + start; i < off + start + n; i++) {
+            data[i] = (R + unpacker.bits2UInt(nb) * EE) / DD;
+          }
+        } else {
+          for (int i = 0; i < n; i++) {
+            if ((mask & (0x80 >>> i)) != 0) {
+              data[off + start + i] = (R + unpacker.bits2UInt(nb) * EE) / DD;
+            } else {
+              data[off + start + i] = staticMissingValue;
+            }
+          }
+        }
+      }
+    }
+  }
+
+  // Grid point data - complex packing
+  private void unpack2(BitUnpacker unpacker, Grib2Drs.Type2 gdrs, float[] data, int off) throws IOException {
+    int mvm = gdrs.missingValueManagement;
+    float mv = getMissingValue(gdrs);
+
+    float DD = (float) java.lang.Math.pow((double) 10, (double) gdrs.decimalScaleFactor);
+    float R = gdrs.referenceValue;
+    float EE = (float) java.lang.Math.pow(2.0, (double) gdrs.binaryScaleFactor);
+    float ref_val = R / DD;
+
+    int NG = gdrs.numberOfGroups;
+    if (NG == 0) {
+      nGroups0(bitmapIndicator, ref_val, mv, data, off);
+      return;
+    }
+
+    // group reference values (X1), widths (NB) and lengths (L)
+    int[] X1 = new int[NG];
+    int nb = gdrs.numberOfBits;
+    if (nb != 0) {
+      for (int i = 0; i < NG; i++) {
+        X1[i] = (int) unpacker.bits2UInt(nb);
+      }
+    }
+
+    int[] NB = new int[NG];
+    nb = gdrs.bitsGroupWidths;
+    if (nb != 0) {
+      unpacker.incrByte();
+      for (int i = 0; i < NG; i++) {
+        NB[i] = (int) unpacker.bits2UInt(nb);
+      }
+    }
+
+    int[] L = new int[NG];
+    int ref = gdrs.referenceGroupLength;
+    int len_inc = gdrs.lengthIncrement;
+    nb = gdrs.bitsScaledGroupLength;
+    unpacker.incrByte();
+    for (int i = 0; i < NG; i++) {
+      L[i] = ref + (int) unpacker.bits2UInt(nb) * len_inc;
+    }
+    L[NG - 1] = gdrs.lengthLastGroup;
+    if (!checkLength(L)) {
+      Arrays.fill(data, off, off + totalNPoints, mv);
+      return;
+    }
+
+    // X2 values, Y = (R + (X1 + X2) * 2^E) / 10^D
+    int count = off;
+    unpacker.incrByte();
+    for (int i = 0; i < NG; i++) {
+      int nbi = NB[i];
+      int x1 = X1[i];
+      if (nbi == 0) {
+        float y = (mvm == 0) ? (R + x1 * EE) / DD : mv;
+        for (int j = 0; j < L[i]; j++) {
+          data[count++] = y;
+        }
+      } else if (mvm == 0) {
+        for (int j = 0; j < L[i]; j++) {
+          int X2 = (int) unpacker.bits2UInt(nbi);
+          data[count++] = (R + (x1 + X2) * EE) / DD;
+        }
+      } else { // X2 is also set to missing value if all bits set to 1's
+        int msng = bitsmv1[nbi];
+        for (int j = 0; j < L[i]; j++) {
+          int X2 = (int) unpacker.bits2UInt(nbi);
+          data[count++] = (X2 == msng) ? mv : (R + (x1 + X2) * EE) / DD;
+        }
+      }
+    }
+    Arrays.fill(data, count, off + totalNPoints, 0.0f);
+
+    if (bitmap != null) {
+      expandBitmap(data, off, mv);
+    }
+  }
+
+  // Grid point data - complex packing and spatial differencing
+  private void unpack3(BitUnpacker unpacker, Grib2Drs.Type3 gdrs, float[] data, int off) throws IOException {
+    int mvm = gdrs.missingValueManagement;
+    float mv = getMissingValue(gdrs);
+
+    float DD = (float) java.lang.Math.pow((double) 10, (double) gdrs.decimalScaleFactor);
+    float R = gdrs.referenceValue;
+    float EE = (float) java.lang.Math.pow(2.0, (double) gdrs.binaryScaleFactor);
+    float ref_val = R / DD;
+
+    int NG = gdrs.numberOfGroups;
+    if (NG == 0) {
+      nGroups0(bitmapIndicator, ref_val, mv, data, off);
+      return;
+    }
+
+    // 1st values of undifferenced scaled values and minimums
+    int os = gdrs.orderSpatial;
+    int nbitsd = gdrs.descriptorSpatial * 8;
+    if (nbitsd <= 0) {
+      Arrays.fill(data, off, off + totalNPoints, mv);
+      return;
+    }
+    int ival1 = readSigned(unpacker, nbitsd);
+    int ival2 = (os == 2) ? readSigned(unpacker, nbitsd) : 0;
+    int minsd = readSigned(unpacker, nbitsd);
+
+    // group reference values (X1), widths (NB) and lengths (L)
+    int[] X1 = new int[NG];
+    int nb = gdrs.numberOfBits;
+    if (nb != 0) {
+      unpacker.incrByte();
+      for (int i = 0; i < NG; i++) {
+        X1[i] = (int) unpacker.bits2UInt(nb);
+      }
+    }
+
+    int[] NB = new int[NG];
+    nb = gdrs.bitsGroupWidths;
+    if (nb != 0) {
+      unpacker.incrByte();
+      for (int i = 0; i < NG; i++) {
+        NB[i] = (int) unpacker.bits2UInt(nb);
+      }
+    }
+    int referenceGroupWidths = gdrs.referenceGroupWidths;
+    for (int i = 0; i < NG; i++) {
+      NB[i] += referenceGroupWidths;
+    }
+
+    int[] L = new int[NG];
+    int referenceGroupLength = gdrs.referenceGroupLength;
+    nb = gdrs.bitsScaledGroupLength;
+    int len_inc = gdrs.lengthIncrement;
+    if (nb != 0) {
+      unpacker.incrByte();
+      for (int i = 0; i < NG; i++) {
+        L[i] = (int) unpacker.bits2UInt(nb);
+      }
+    }
+
+    int totalL = 0;
+    for (int i = 0; i < NG; i++) {
+      L[i] = L[i] * len_inc + referenceGroupLength;
+      totalL += L[i];
+    }
+    totalL -= L[NG - 1];
+    totalL += gdrs.lengthLastGroup;
+    L[NG - 1] = gdrs.lengthLastGroup;
+
+    if (totalL != ((mvm != 0) ? totalNPoints : dataNPoints)) {
+      logger.warn("NPoints != {}.nPts: {}!={}", (mvm != 0) ? "gds" : "drs", totalL, totalNPoints);
+      Arrays.fill(data, off, off + totalNPoints, mv);
+      return;
+    }
+    if (!checkLength(L)) {
+      Arrays.fill(data, off, off + totalNPoints, mv);
+      return;
+    }
+
+    // X2 values, as floats so the spatial differencing is done exactly as in getData3()
+    int count = 0;
+    int dataSize = 0;
+    boolean[] dataBitMap = null;
+    unpacker.incrByte();
+    if (mvm == 0) {
+      for (int i = 0; i < NG; i++) {
+        int nbi = NB[i];
+        int x1 = X1[i];
+        if (nbi != 0) {
+          for (int j = 0; j < L[i]; j++) {
+            data[off + count++] = (int) unpacker.bits2UInt(nbi) + x1;
+          }
+        } else {
+          for (int j = 0; j < L[i]; j++) {
+            data[off + count++] = x1;
+          }
+        }
+      }
+      Arrays.fill(data, off + count, off + totalNPoints, 0.0f);
+
+    } else if (mvm == 1 || mvm == 2) {
+      // missing values are not added to data, but tracked in dataBitMap
+      dataBitMap = new boolean[totalNPoints];
+      for (int i = 0; i < NG; i++) {
+        int nbi = NB[i];
+        int x1 = X1[i];
+        if (nbi != 0) {
+          int msng1 = bitsmv1[nbi];
+          int msng2 = msng1 - 1;
+          for (int j = 0; j < L[i]; j++) {
+            float X2 = (int) unpacker.bits2UInt(nbi);
+            if (X2 == msng1 || mvm == 2 && X2 == msng2) {
+              dataBitMap[count] = false;
+            } else {
+              dataBitMap[count] = true;
+              data[off + dataSize++] = X2 + x1;
+            }
+            count++;
+          }
+        } else {
+          int msng1 = bitsmv1[gdrs.numberOfBits];
+          int msng2 = msng1 - 1;
+          boolean missing = (x1 == msng1) || (mvm == 2 && x1 == msng2);
+          for (int j = 0; j < L[i]; j++) {
+            dataBitMap[count++] = !missing;
+            if (!missing) {
+              data[off + dataSize++] = x1;
+            }
+          }
+        }
+      }
+
+    } else {
+      Arrays.fill(data, off, off + totalNPoints, 0.0f);
+    }
+
+    // spatial differencing
+    int n = (mvm == 0) ? totalNPoints : dataSize;
+    if (os == 1) {
+      data[off] = ival1;
+      for (int i = off + 1; i < off + n; i++) {
+        data[i] += minsd;
+        data[i] = data[i] + data[i - 1];
+      }
+    } else if (os == 2) {
+      data[off] = ival1;
+      data[off + 1] = ival2;
+      for (int i = off + 2; i < off + n; i++) {
+        data[i] += minsd;
+        data[i] = data[i] + (2 * data[i - 1]) - data[i - 2];
+      }
+    }
+
+    if (mvm == 0) {
+      for (int i = off; i < off + totalNPoints; i++) {
+        data[i] = (R + (data[i] * EE)) / DD;
+      }
+    } else if (mvm == 1 || mvm == 2) { // in place, working backwards
+      int count2 = dataSize;
+      for (int i = totalNPoints - 1; i >= 0; i--) {
+        data[off + i] = dataBitMap[i] ? (R + (data[off + --count2] * EE)) / DD : mv;
+      }
+    }
+
+    if (bitmap != null) {
+      expandBitmap(data, off, mv);
+    }
+  }
+
+  // the data is decoded in place, so it must not go past totalNPoints; if it would, log it and return false
+  private boolean checkLength(int[] L) {
+    long total = 0;
+    for (int len : L) {
+      total += len;
+    }
+    if (total > totalNPoints) {
+      logger.warn("Number of packed values {} > number of points {}", total, totalNPoints);
+      return false;
+    }
+    return true;
+  }
+
+  // sign bit followed by nbits-1 bits of magnitude
+  private int readSigned(BitUnpacker unpacker, int nbits) throws IOException {
+    int sign = (int) unpacker.bits2UInt(1);
+    int val = (int) unpacker.bits2UInt(nbits - 1);
+    return (sign == 1) ? -val : val;
+  }
+
+  private void nGroups0(int bitmap_flag, float ref, float mv1, float[] data, int off) {
+    if (bitmap_flag == 255) {
+      Arrays.fill(data, off, off + totalNPoints, ref);
+
+    } else if (bitmap_flag == 0 || bitmap_flag == 254) {
+      int mask = 0;
+      int mask_pointer = 0;
+      for (int i = 0; i < totalNPoints; i++) {
+        if ((i & 7) == 0) {
+          mask = bitmap[mask_pointer];
+          mask_pointer++;
+        }
+        data[off + i] = ((mask & 128) == 0) ? ref : mv1;
+        mask <<= 1;
+      }
+
+    } else {
+      throw new IllegalArgumentException("unknown bitmap type =" + bitmap_flag);
+    }
+  }
+
+  // Spread the values at the start of data[off..] to the points that are set in the bitmap, and set the others to mv.
+  // In place, working backwards.
+  private void expandBitmap(float[] data, int off, float mv) {
+    int idx = 0;
+    int nbytes = totalNPoints / 8;
+    for (int b = 0; b < nbytes; b++) {
+      idx += Integer.bitCount(bitmap[b] & 0xff);
+    }
+    for (int i = nbytes * 8; i < totalNPoints; i++) {
+      if (GribNumbers.testBitIsSet(bitmap[i / 8], i % 8)) {
+        idx++;
+      }
+    }
+    for (int i = totalNPoints - 1; i >= 0; i--) {
+      if (GribNumbers.testBitIsSet(bitmap[i / 8], i % 8)) {
+        data[off + i] = data[off + --idx];
+      } else {
+        data[off + i] = mv;
+      }
+    }
+  }
+
   // Grid point data - JPEG 2000 code stream format
   private float[] getData40(RandomAccessFile raf, Grib2Drs.Type40 gdrs) throws IOException {
     // 6-xx  jpeg2000 data block to decode
@@ -1075,7 +1475,7 @@ public class Grib2DataReader {
   // Rearrange the data array using the scanning mode.
   // LOOK: not handling scanMode generally
   // LOOK might be wrong for a quasi regular (thin) grid ??
-  private void scanningModeCheck(float[] data, int scanMode, int Xlength) {
+  private void scanningModeCheck(float[] data, int off, int n, int scanMode, int Xlength) {
     // Mode  0  +x, -y, adjacent x, adjacent rows same dir
     // Mode  64 +x, +y, adjacent x, adjacent rows same dir
     if ((scanMode == 0) || (scanMode == 64))  // dont flip Y - handle it in the HorizCoordSys
@@ -1087,7 +1487,7 @@ public class Grib2DataReader {
     if (!GribUtils.scanModeXisPositive(scanMode)) {
       float tmp;
       int mid = Xlength / 2;
-      for (int index = 0; index < data.length; index += Xlength) {
+      for (int index = off; index < off + n; index += Xlength) {
         for (int idx = 0; idx < mid; idx++) {
           tmp = data[index + idx];
           data[index + idx] = data[index + Xlength - idx - 1];
@@ -1100,8 +1500,8 @@ public class Grib2DataReader {
     if (!GribUtils.scanModeSameDirection(scanMode)) {
       float tmp;
       int mid = Xlength / 2;
-      for (int index = 0; index < data.length; index += Xlength) {
-        int row = index / Xlength;
+      for (int index = off; index < off + n; index += Xlength) {
+        int row = (index - off) / Xlength;
         if (row % 2 != 0) {  // odd numbered row, calculate reverse index
           for (int idx = 0; idx < mid; idx++) {
             tmp = data[index + idx];
@@ -321,6 +321,21 @@ public class Grib2Record {
    * @throws IOException on read error
    */
   public static float[] readData(RandomAccessFile raf, long drsPos, long bmsPos, int gdsNumberPoints, int scanMode, int nx, int ny, int[] nptsInLine) throws IOException {
+    return readData(raf, drsPos, bmsPos, gdsNumberPoints, scanMode, nx, ny, nptsInLine, null, 0);
+  }
+
+  /**
+   * Read data array, decoding it directly into dest when possible.
+   * Quasi-regular (thin) grids are always returned in a new array.
+   *
+   * @param dest    if not null, decode into dest starting at destPos, when there is room for gdsNumberPoints values
+   * @param destPos starting index in dest
+   * @return dest if the data was decoded into it, otherwise a new array
+   * @throws IOException on read error
+   * @see #readData(RandomAccessFile, long, long, int, int, int, int, int[])
+   */
+  public static float[] readData(RandomAccessFile raf, long drsPos, long bmsPos, int gdsNumberPoints, int scanMode, int nx, int ny,
+                                 int[] nptsInLine, @Nullable float[] dest, int destPos) throws IOException {
     raf.seek(drsPos);
     Grib2SectionDataRepresentation drs = new Grib2SectionDataRepresentation(raf);
     Grib2SectionBitMap bms = new Grib2SectionBitMap(raf);
@@ -334,7 +349,7 @@ public class Grib2Record {
 
     Grib2Drs gdrs = drs.getDrs(raf);
 
-    float[] data = reader.getData(raf, bms, gdrs);
+    float[] data = reader.getData(raf, bms, gdrs, (nptsInLine == null) ? dest : null, destPos);
 
     if (nptsInLine != null)
       data = QuasiRegular.convertQuasiGrid(data, nptsInLine, nx, ny, GribData.getInterpolationMethod());
@@ -50,8 +50,8 @@ public class Grib2Tables implements ucar.nc2.grib.GribTables, TimeUnitConverter
     return factory(ids.getCenter_id(), ids.getSubcenter_id(), ids.getMaster_table_version(), ids.getLocal_table_version(), pds.getGenProcessId());
   }
 
-  // Lazy instantiation.
-  public static Grib2Tables factory(int center, int subCenter, int masterVersion, int localVersion, int genProcessId) {
+  // Lazy instantiation. Synchronized since collection indexes may be built in parallel.
+  public static synchronized Grib2Tables factory(int center, int subCenter, int masterVersion, int localVersion, int genProcessId) {
     Grib2TablesId id = new Grib2TablesId(center, subCenter, masterVersion, localVersion, genProcessId);
     Grib2Tables cust = tables.get(id);
     if (cust != null) return cust;
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib;
+
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.nc2.iosp.BitReader;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Compare BitUnpacker with BitReader on random data and bit widths.
+ */
+public class TestBitUnpacker {
+
+  @Test
+  public void testRandom() throws IOException {
+    Random random = new Random(17);
+    byte[] buf = new byte[10000];
+    random.nextBytes(buf);
+
+    BitReader reader = new BitReader(buf);
+    BitUnpacker unpacker = new BitUnpacker(buf, 0, buf.length);
+    long nbitsRead = 0;
+    while (nbitsRead < 8 * (buf.length - 8)) {
+      if (random.nextInt(20) == 0) {
+        reader.incrByte();
+        unpacker.incrByte();
+        nbitsRead = (nbitsRead + 7) / 8 * 8;
+      }
+      int nb = random.nextInt(32); // BitReader sign extends when nb >= 32
+      Assert.assertEquals("nb=" + nb + " bit=" + nbitsRead, reader.bits2UInt(nb), unpacker.bits2UInt(nb));
+      nbitsRead += nb;
+    }
+  }
+
+  @Test
+  public void testOffsetAndEnd() throws IOException {
+    byte[] buf = {(byte) 0xff, (byte) 0xa5, (byte) 0x0f, (byte) 0xff};
+    BitUnpacker unpacker = new BitUnpacker(buf, 1, 3);
+    Assert.assertEquals(0xa, unpacker.bits2UInt(4));
+    unpacker.incrByte();
+    unpacker.incrByte();  // already on a byte boundary
+    Assert.assertEquals(0x0f, unpacker.bits2UInt(8));
+    try {
+      unpacker.bits2UInt(1);
+      Assert.fail();
+    } catch (EOFException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.collection;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import thredds.featurecollection.FeatureCollectionConfig;
+import thredds.featurecollection.FeatureCollectionType;
+import thredds.inventory.CollectionUpdateType;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.nc2.util.cache.FileCache;
+import ucar.nc2.util.cache.FileCacheIF;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+
+/**
+ * Test reading a partitioned GRIB collection through the GribDataReader data file pool.
+ */
+public class TestGribDataFilePool {
+  private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final String[] filenames = {"cosmo-eu.grib2", "cosmo.pds11.grib2"};
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void reset() {
+    GribDataReader.shutdown();
+  }
+
+  private String makeCollection() throws IOException {
+    File dir = tempFolder.newFolder();
+    for (String filename : filenames) {
+      Files.copy(new File("../grib/src/test/data/" + filename).toPath(), new File(dir, filename).toPath(),
+          StandardCopyOption.COPY_ATTRIBUTES);
+    }
+    String spec = dir.getPath().replace('\\', '/') + "/.*grib2$";
+    FeatureCollectionConfig config = new FeatureCollectionConfig("testPool", "test/pool", FeatureCollectionType.GRIB2,
+        spec, null, null, null, "file", null);
+    GribCdmIndex.updateGribCollection(config, CollectionUpdateType.always, logger);
+    return new File(dir, config.collectionName + GribCdmIndex.NCX_SUFFIX).getPath();
+  }
+
+  @Test
+  public void compareWithoutPool() throws IOException {
+    String topIndex = makeCollection();
+
+    List<Array> want = readAll(topIndex);
+
+    GribDataReader.setDataFilePool(2, 0);
+    GribDataFilePool pool = GribDataReader.getDataFilePool();
+    Assert.assertNotNull(pool);
+    List<Array> got = readAll(topIndex);
+    compare(want, got);
+    long opens = pool.getOpens();
+    Assert.assertTrue(opens > 0);
+    Assert.assertEquals(0, pool.getHits());
+
+    // the second read reuses the open files
+    got = readAll(topIndex);
+    compare(want, got);
+    Assert.assertTrue(pool.getHits() > 0);
+    Assert.assertTrue(pool.getOpens() < 2 * opens);
+    Assert.assertTrue(pool.getOpenFiles() <= 2);  // maxOpenFiles
+
+    Formatter f = new Formatter();
+    pool.show(f);
+    logger.debug("{}", f);
+  }
+
+  // with the RandomAccessFile FileCache on, released files go back to it, so it can scour them
+  @Test
+  public void releaseToFileCache() throws IOException {
+    String topIndex = makeCollection();
+    List<Array> want = readAll(topIndex);
+
+    FileCacheIF previous = RandomAccessFile.getGlobalFileCache();
+    FileCache cache = new FileCache("testPool", 0, 10, 20, -1);
+    RandomAccessFile.setGlobalFileCache(cache);
+    try {
+      GribDataReader.setDataFilePool(2, 0);
+      GribDataFilePool pool = GribDataReader.getDataFilePool();
+      Assert.assertNotNull(pool);
+      compare(want, readAll(topIndex));
+      Assert.assertTrue(pool.getOpens() > 0);
+      Assert.assertEquals(0, pool.getOpenFiles());
+
+      boolean cached = false;
+      for (String entry : cache.showCache())
+        cached |= entry.contains(filenames[0]);
+      Assert.assertTrue(cache.showCache().toString(), cached);
+
+      cache.clearCache(false);  // scouring closes them
+      Assert.assertEquals(cache.showCache().toString(), 0, cache.showCache().size());
+
+    } finally {
+      RandomAccessFile.setGlobalFileCache(previous); // setting ours disabled it
+      if (previous != null) previous.enable();
+    }
+  }
+
+  private List<Array> readAll(String filename) throws IOException {
+    List<Array> result = new ArrayList<>();
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      for (Variable v : ncfile.getVariables()) {
+        if (v.getRank() < 3 || v.getDataType() != DataType.FLOAT) continue; // data variables
+        result.add(v.read());
+      }
+    }
+    Assert.assertFalse(filename, result.isEmpty());
+    return result;
+  }
+
+  private void compare(List<Array> want, List<Array> got) {
+    Assert.assertEquals(want.size(), got.size());
+    for (int i = 0; i < want.size(); i++) {
+      float[] wantData = (float[]) want.get(i).get1DJavaArray(DataType.FLOAT);
+      float[] gotData = (float[]) got.get(i).get1DJavaArray(DataType.FLOAT);
+      Assert.assertArrayEquals("variable " + i, wantData, gotData, 0.0f);
+    }
+  }
+}
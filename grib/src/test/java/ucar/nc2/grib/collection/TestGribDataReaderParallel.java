@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.collection;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compare multi-record reads with parallel decoding against the serial read.
+ */
+@RunWith(Parameterized.class)
+public class TestGribDataReaderParallel {
+
+  @Parameterized.Parameters(name = "{0}")
+  public static List<Object[]> getTestParameters() {
+    List<Object[]> result = new ArrayList<>();
+    result.add(new Object[]{"../grib/src/test/data/ds.snow.grib2"});          // complex packing
+    result.add(new Object[]{"../grib/src/test/data/cosmo-eu.grib2"});
+    result.add(new Object[]{"../grib/src/test/data/ds.sky.grib2"});
+    result.add(new Object[]{"../grib/src/test/data/complex_packing.grib1"});
+    result.add(new Object[]{"../grib/src/test/data/thinGrid.grib1"});          // quasi-regular
+    return result;
+  }
+
+  private final String filename;
+
+  public TestGribDataReaderParallel(String filename) {
+    this.filename = filename;
+  }
+
+  @After
+  public void resetDecodeThreads() {
+    GribDataReader.shutdown();
+  }
+
+  @Test
+  public void compareWithSerial() throws IOException {
+    List<Array> serial = readAll();
+    GribDataReader.setDecodeThreads(4, 3);
+    List<Array> parallel = readAll();
+
+    Assert.assertEquals(serial.size(), parallel.size());
+    for (int i = 0; i < serial.size(); i++) {
+      float[] want = (float[]) serial.get(i).get1DJavaArray(DataType.FLOAT);
+      float[] got = (float[]) parallel.get(i).get1DJavaArray(DataType.FLOAT);
+      Assert.assertArrayEquals(filename + " variable " + i, want, got, 0.0f);
+    }
+  }
+
+  private List<Array> readAll() throws IOException {
+    List<Array> result = new ArrayList<>();
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) {
+      for (Variable v : ncfile.getVariables()) {
+        if (v.getRank() < 3 || v.getDataType() != DataType.FLOAT) continue; // multi-record data variables
+        result.add(v.read());
+      }
+    }
+    Assert.assertFalse(filename, result.isEmpty());
+    return result;
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.collection;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import thredds.featurecollection.FeatureCollectionConfig;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.util.cache.SmartArrayInt;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test reading ncx4 indexes through MappedIndexFile.
+ */
+public class TestMappedIndexFile {
+  private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void reset() {
+    GribCdmIndex.setMemoryMappedIndex(false);
+  }
+
+  @Test
+  public void testDeferPartitionVariables() throws IOException {
+    GribCollectionProto.Group.Builder group = GribCollectionProto.Group.newBuilder();
+    group.addCoords(GribCollectionProto.Coord.newBuilder().setCode(1).addValues(1.0f).addValues(2.0f));
+    for (int v = 0; v < 3; v++) {
+      GribCollectionProto.Variable.Builder var = GribCollectionProto.Variable.newBuilder()
+          .setDiscipline(v).setRecordsPos(1000 + v).setRecordsLen(10 * v).addCoordIdx(0).setNrecords(v);
+      for (int p = 0; p < 5 * v; p++)   // the first variable has no partitions
+        var.addPartVariable(GribCollectionProto.PartitionVariable.newBuilder().setPartno(p).setGroupno(v).setVarno(100 + p));
+      group.addVariables(var);
+    }
+    GribCollectionProto.GribCollection.Builder gc = GribCollectionProto.GribCollection.newBuilder()
+        .setName("test").setTopDir("/data").setCenter(7)
+        .addDataset(GribCollectionProto.Dataset.newBuilder().setType(GribCollectionProto.Dataset.Type.TwoD).addGroups(group))
+        .addPartitions(GribCollectionProto.Partition.newBuilder().setName("p0").setFilename("p0.ncx4"))
+        .addRun2Part(0);
+    byte[] message = gc.build().toByteArray();
+
+    File file = tempFolder.newFile();
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(new byte[17]);  // not at the start of the file
+      out.write(message);
+    }
+
+    MappedIndexFile mapped = MappedIndexFile.map(file.getPath());
+    Assert.assertNotNull(mapped);
+    GribCollectionProto.GribCollection want = mapped.readGribCollection(17, message.length, false);
+    GribCollectionProto.GribCollection got = mapped.readGribCollection(17, message.length, true);
+
+    Assert.assertEquals("test", got.getName());
+    Assert.assertEquals("/data", got.getTopDir());
+    Assert.assertEquals(7, got.getCenter());
+    Assert.assertEquals(want.getPartitionsList(), got.getPartitionsList());
+    Assert.assertEquals(want.getRun2PartList(), got.getRun2PartList());
+
+    GribCollectionProto.Group wantGroup = want.getDataset(0).getGroups(0);
+    GribCollectionProto.Group gotGroup = got.getDataset(0).getGroups(0);
+    Assert.assertEquals(wantGroup.getCoordsList(), gotGroup.getCoordsList());
+    Assert.assertEquals(3, gotGroup.getVariablesCount());
+
+    for (int v = 0; v < 3; v++) {
+      GribCollectionProto.Variable wantVar = wantGroup.getVariables(v);
+      GribCollectionProto.Variable gotVar = gotGroup.getVariables(v);
+      Assert.assertEquals(0, gotVar.getPartVariableCount());
+      Assert.assertEquals(wantVar.getRecordsPos(), gotVar.getRecordsPos());
+      Assert.assertEquals(wantVar.getRecordsLen(), gotVar.getRecordsLen());
+      Assert.assertEquals(wantVar.getCoordIdxList(), gotVar.getCoordIdxList());
+
+      if (v == 0) {
+        Assert.assertEquals(-1, MappedIndexFile.getDeferredNparts(gotVar));
+        Assert.assertNull(mapped.readPartitionVariables(gotVar));
+        continue;
+      }
+      Assert.assertEquals(wantVar.getPartVariableCount(), MappedIndexFile.getDeferredNparts(gotVar));
+      SmartArrayInt[] parts = mapped.readPartitionVariables(gotVar);
+      Assert.assertNotNull(parts);
+      for (int p = 0; p < wantVar.getPartVariableCount(); p++) {
+        GribCollectionProto.PartitionVariable pv = wantVar.getPartVariable(p);
+        Assert.assertEquals(pv.getPartno(), parts[0].get(p));
+        Assert.assertEquals(pv.getGroupno(), parts[1].get(p));
+        Assert.assertEquals(pv.getVarno(), parts[2].get(p));
+      }
+    }
+  }
+
+  @Test
+  public void compareWithUnmapped() throws IOException {
+    String[] filenames = {"ds.snow.grib2", "cosmo-eu.grib2", "ds.sky.grib2", "complex_packing.grib1", "thinGrid.grib1"};
+    for (String filename : filenames) {
+      File file = new File("../grib/src/test/data/" + filename + GribCdmIndex.NCX_SUFFIX);
+      try (NetcdfFile ncfile = NetcdfFile.open("../grib/src/test/data/" + filename)) { // makes the ncx4 index if needed
+        Assert.assertNotNull(ncfile);
+      }
+
+      List<RecordTable> want = readAll(file.getPath(), false);
+      List<RecordTable> got = readAll(file.getPath(), true);
+      Assert.assertFalse(file.getPath(), want.isEmpty());
+      Assert.assertEquals(file.getPath(), want.size(), got.size());
+      for (int i = 0; i < want.size(); i++) {
+        RecordTable wantTable = want.get(i);
+        RecordTable gotTable = got.get(i);
+        Assert.assertEquals(file.getPath(), wantTable.getTotalSize(), gotTable.getTotalSize());
+        for (int j = 0; j < wantTable.getTotalSize(); j++)
+          Assert.assertEquals(file.getPath(), String.valueOf(wantTable.getRecordAt(j)), String.valueOf(gotTable.getRecordAt(j)));
+      }
+    }
+  }
+
+  private List<RecordTable> readAll(String filename, boolean mapped) throws IOException {
+    GribCdmIndex.setMemoryMappedIndex(mapped);
+    List<RecordTable> result = new ArrayList<>();
+    try (GribCollectionImmutable gc = GribCdmIndex.openCdmIndex(filename, new FeatureCollectionConfig(), false, logger)) {
+      Assert.assertNotNull(filename, gc);
+      for (GribCollectionImmutable.Dataset ds : gc.getDatasets()) {
+        for (GribCollectionImmutable.GroupGC g : ds.getGroups()) {
+          for (GribCollectionImmutable.VariableIndex v : g.getVariables()) {
+            v.readRecords();
+            result.add(v.getRecordTable());
+          }
+        }
+      }
+    }
+    return result;
+  }
+}
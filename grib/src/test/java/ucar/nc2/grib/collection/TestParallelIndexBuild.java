@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.collection;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import thredds.featurecollection.FeatureCollectionConfig;
+import thredds.featurecollection.FeatureCollectionType;
+import thredds.inventory.CollectionUpdateType;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Test that GRIB collection indexes built with GribCdmIndex.setIndexThreads are identical to the ones built serially.
+ */
+public class TestParallelIndexBuild {
+  private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final String[] filenames = {"ds.snow.grib2", "ds.sky.grib2", "cosmo-eu.grib2", "sref_eta.grib2"};
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void reset() {
+    GribCdmIndex.setIndexThreads(0);
+  }
+
+  @Test
+  public void testDirectoryCollection() throws IOException {
+    File dir = copyFiles();
+    FeatureCollectionConfig config = makeConfig(dir, "directory");
+
+    Map<String, byte[]> serial = build(config, dir, CollectionUpdateType.always);
+    Assert.assertEquals(1, serial.size());
+    deleteIndexes(dir, true);
+
+    GribCdmIndex.setIndexThreads(4);
+    Map<String, byte[]> parallel = build(config, dir, CollectionUpdateType.always);
+    assertSame(serial, parallel);
+  }
+
+  @Test
+  public void testFilePartition() throws IOException {
+    File dir = copyFiles();
+    FeatureCollectionConfig config = makeConfig(dir, "file");
+
+    Map<String, byte[]> serial = build(config, dir, CollectionUpdateType.always);
+    Assert.assertEquals(filenames.length + 1, serial.size());
+    Map<String, Long> serialModified = new TreeMap<>();
+    for (File f : listIndexes(dir))
+      serialModified.put(f.getName(), f.lastModified());
+    deleteIndexes(dir, false);  // keep the gbx9 files older than the child indexes
+
+    // the children
+    GribCdmIndex.setIndexThreads(4);
+    Map<String, byte[]> parallel = build(config, dir, CollectionUpdateType.always);
+    Assert.assertEquals(serial.keySet(), parallel.keySet());
+    for (String name : serial.keySet()) {
+      if (!name.equals(config.collectionName + GribCdmIndex.NCX_SUFFIX))
+        Assert.assertArrayEquals(name, serial.get(name), parallel.get(name));
+    }
+
+    // the partition index stores the modification time of the child indexes
+    for (File f : listIndexes(dir)) {
+      Assert.assertTrue(f.setLastModified(serialModified.get(f.getName())));
+    }
+    Assert.assertTrue(new File(dir, config.collectionName + GribCdmIndex.NCX_SUFFIX).delete());
+    parallel = build(config, dir, CollectionUpdateType.test);
+    assertSame(serial, parallel);
+  }
+
+  private File copyFiles() throws IOException {
+    File dir = tempFolder.newFolder();
+    for (String filename : filenames) {
+      Files.copy(new File("../grib/src/test/data/" + filename).toPath(), new File(dir, filename).toPath(),
+          StandardCopyOption.COPY_ATTRIBUTES);
+    }
+    return dir;
+  }
+
+  private FeatureCollectionConfig makeConfig(File dir, String ptype) {
+    String spec = dir.getPath().replace('\\', '/') + "/.*grib2$";
+    return new FeatureCollectionConfig("testParallel", "test/parallel", FeatureCollectionType.GRIB2, spec,
+        null, null, null, ptype, null);
+  }
+
+  private Map<String, byte[]> build(FeatureCollectionConfig config, File dir, CollectionUpdateType updateType) throws IOException {
+    GribCdmIndex.updateGribCollection(config, updateType, logger);
+    Map<String, byte[]> result = new TreeMap<>();
+    for (File f : listIndexes(dir))
+      result.put(f.getName(), Files.readAllBytes(f.toPath()));
+    return result;
+  }
+
+  private File[] listIndexes(File dir) {
+    File[] files = dir.listFiles((d, name) -> name.endsWith(GribCdmIndex.NCX_SUFFIX));
+    Assert.assertNotNull(files);
+    Arrays.sort(files);
+    return files;
+  }
+
+  private void deleteIndexes(File dir, boolean gbx9) {
+    File[] files = dir.listFiles((d, name) -> name.endsWith(GribCdmIndex.NCX_SUFFIX) || (gbx9 && name.endsWith(".gbx9")));
+    Assert.assertNotNull(files);
+    for (File f : files) {
+      ucar.unidata.io.RandomAccessFile.eject(f.getPath());
+      Assert.assertTrue(f.getPath(), f.delete());
+    }
+  }
+
+  private void assertSame(Map<String, byte[]> want, Map<String, byte[]> got) {
+    Assert.assertEquals(want.keySet(), got.keySet());
+    for (String name : want.keySet())
+      Assert.assertArrayEquals(name, want.get(name), got.get(name));
+  }
+}
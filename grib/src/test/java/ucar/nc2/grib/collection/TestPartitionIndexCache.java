@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.collection;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import thredds.featurecollection.FeatureCollectionConfig;
+import thredds.featurecollection.FeatureCollectionType;
+import thredds.inventory.CollectionUpdateType;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Test that updating a file partition with GribCdmIndex.setPartitionIndexCache only reads the new partition indexes,
+ * and writes the same top index as an update without the cache.
+ */
+public class TestPartitionIndexCache {
+  private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final String[] filenames = {"ds.snow.grib2", "ds.sky.grib2", "cosmo-eu.grib2"};
+  private static final String added = "sref_eta.grib2";
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void reset() {
+    GribCdmIndex.setPartitionIndexCache(0);
+  }
+
+  @Test
+  public void testAppendFile() throws IOException {
+    File dir = tempFolder.newFolder();
+    for (String filename : filenames)
+      copyFile(filename, dir);
+    String spec = dir.getPath().replace('\\', '/') + "/.*grib2$";
+    FeatureCollectionConfig config = new FeatureCollectionConfig("testCache", "test/cache", FeatureCollectionType.GRIB2,
+        spec, null, null, null, "file", null);
+    File topIndex = new File(dir, config.collectionName + GribCdmIndex.NCX_SUFFIX);
+
+    GribCdmIndex.setPartitionIndexCache(100);
+    PartitionIndexCache cache = GribCdmIndex.getPartitionIndexCache();
+    GribCdmIndex.updateGribCollection(config, CollectionUpdateType.always, logger);
+    Assert.assertTrue(topIndex.exists());
+    Assert.assertEquals(filenames.length, cache.getMisses());  // each partition index is read once
+    long hits = cache.getHits();
+
+    // a new file arrives: only its partition index is read
+    copyFile(added, dir);
+    GribCdmIndex.updateGribCollection(config, CollectionUpdateType.test, logger);
+    Assert.assertEquals(filenames.length + 1, cache.getMisses());
+    Assert.assertTrue(cache.getHits() >= hits + filenames.length);
+    byte[] cached = Files.readAllBytes(topIndex.toPath());
+
+    // rebuild the top index from all the partition indexes
+    GribCdmIndex.setPartitionIndexCache(0);
+    ucar.unidata.io.RandomAccessFile.eject(topIndex.getPath());
+    Assert.assertTrue(topIndex.delete());
+    GribCdmIndex.updateGribCollection(config, CollectionUpdateType.test, logger);
+    Assert.assertArrayEquals(Files.readAllBytes(topIndex.toPath()), cached);
+  }
+
+  private void copyFile(String filename, File dir) throws IOException {
+    Files.copy(new File("../grib/src/test/data/" + filename).toPath(), new File(dir, filename).toPath(),
+        StandardCopyOption.COPY_ATTRIBUTES);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.collection;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import thredds.featurecollection.FeatureCollectionConfig;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.grib.coord.SparseArray;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Formatter;
+
+/**
+ * Test RecordTable, the columnar store of GribCollectionImmutable.VariableIndex records.
+ */
+public class TestRecordTable {
+  private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+  @Test
+  public void testFromProto() {
+    GribCollectionProto.SparseArray.Builder b = GribCollectionProto.SparseArray.newBuilder();
+    b.addSize(2).addSize(3);
+    int[] track = {1, 0, 2, 3, 0, 3};
+    for (int t : track) b.addTrack(t);
+    for (int i = 0; i < 3; i++) {
+      b.addRecords(GribCollectionProto.Record.newBuilder()
+          .setFileno(i).setStartPos(5000000000L + i).setBmsOffset(10 * i).setDrsOffset(100 + i));
+    }
+    b.setNdups(1);
+
+    RecordTable table = RecordTable.fromProto(b.build());
+    Assert.assertEquals(6, table.getTotalSize());
+    Assert.assertEquals(3, table.getNRecords());
+    Assert.assertEquals(4, table.countNotMissing());
+    Assert.assertEquals(1, table.getNdups());
+
+    Assert.assertNull(table.getRecordAt(1));
+    Assert.assertNull(table.getRecordAt(new int[]{1, 1}));
+    GribCollectionImmutable.Record r = table.getRecordAt(new int[]{1, 2});
+    Assert.assertNotNull(r);
+    Assert.assertEquals(2, r.fileno);
+    Assert.assertEquals(5000000002L, r.pos);
+    Assert.assertEquals(20, r.bmsOffset);
+    Assert.assertEquals(102, r.drsOffset);
+
+    SparseArray<GribCollectionImmutable.Record> sa = table.toSparseArray();
+    for (int i = 0; i < track.length; i++) {
+      GribCollectionImmutable.Record want = sa.getContent(i);
+      GribCollectionImmutable.Record got = table.getRecordAt(i);
+      if (want == null) {
+        Assert.assertNull(got);
+      } else {
+        Assert.assertNotNull(got);
+        Assert.assertEquals(want.toString(), got.toString());
+      }
+    }
+
+    Assert.assertTrue(table.estMemorySize() < table.estMemorySizeAsObjects());
+  }
+
+  @Test
+  public void testMemoryFootprint() throws IOException {
+    String filename = "../grib/src/test/data/ds.snow.grib2";
+    try (NetcdfFile ncfile = NetcdfFile.open(filename)) { // makes the ncx4 index if needed
+      Assert.assertNotNull(ncfile);
+    }
+
+    FeatureCollectionConfig config = new FeatureCollectionConfig();
+    try (GribCollectionImmutable gc = GribCdmIndex.openCdmIndex(filename + GribCdmIndex.NCX_SUFFIX, config, false, logger)) {
+      Assert.assertNotNull(gc);
+      Formatter f = new Formatter();
+      long bytes = gc.showMemoryFootprint(f, true);
+      logger.debug(f.toString());
+      Assert.assertTrue(bytes > 0);
+
+      for (GribCollectionImmutable.Dataset ds : gc.getDatasets()) {
+        for (GribCollectionImmutable.GroupGC g : ds.getGroups()) {
+          for (GribCollectionImmutable.VariableIndex v : g.getVariables()) {
+            RecordTable table = v.getRecordTable();
+            Assert.assertNotNull(table);
+            Assert.assertEquals(table.countNotMissing(), v.getNRecords());
+            for (int i = 0; i < table.getTotalSize(); i++) {
+              GribCollectionImmutable.Record r = v.getRecordAt(i);
+              if (r != null)
+                Assert.assertTrue(r.pos >= 0);
+            }
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.grib2;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.unidata.io.RandomAccessFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compare the BitUnpacker decoding of templates 5.0, 5.2 and 5.3 with the original BitReader code,
+ * for every record of those templates in the grib2 test files.
+ */
+public class TestGrib2Unpacking {
+  private final int[] count = new int[4];
+
+  @After
+  public void reset() {
+    Grib2DataReader.setUseBitUnpacker(true);
+  }
+
+  @Test
+  public void testAllTestFiles() throws IOException {
+    File[] files = new File("../grib/src/test/data/").listFiles((dir, name) -> name.endsWith(".grib2"));
+    Assert.assertNotNull(files);
+    Arrays.sort(files);
+    for (File file : files)
+      compare(file.getPath());
+
+    Assert.assertTrue(count[0] > 0);
+    Assert.assertTrue(count[2] > 0);
+    Assert.assertTrue(count[3] > 0);
+  }
+
+  private void compare(String filename) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(filename, "r")) {
+      raf.order(RandomAccessFile.BIG_ENDIAN);
+      Grib2RecordScanner scan = new Grib2RecordScanner(raf);
+      while (scan.hasNext()) {
+        Grib2Record gr = scan.next();
+        int template = gr.getDataRepresentationSection().getDataTemplate();
+        if (template != 0 && template != 2 && template != 3) continue;
+        count[template]++;
+
+        Grib2DataReader.setUseBitUnpacker(false);
+        float[] want = gr.readData(raf);
+        Grib2DataReader.setUseBitUnpacker(true);
+        float[] got = gr.readData(raf);
+        Assert.assertArrayEquals(filename + " " + gr.getDataSection().getStartingPosition(), want, got, 0.0f);
+
+        if (!gr.getGDS().isThin())
+          compareIntoDest(filename, raf, gr, want);
+      }
+    }
+  }
+
+  // decode into the middle of a larger array, which already has values in it
+  private void compareIntoDest(String filename, RandomAccessFile raf, Grib2Record gr, float[] want) throws IOException {
+    int npts = gr.getGDSsection().getNumberPoints();
+    Grib2SectionData dataSection = gr.getDataSection();
+    Grib2DataReader reader = new Grib2DataReader(gr.getDataRepresentationSection().getDataTemplate(), npts,
+            gr.getDataRepresentationSection().getDataPoints(), gr.getScanMode(), gr.getGDS().getNxRaw(),
+            dataSection.getStartingPosition(), dataSection.getMsgLength());
+
+    float[] dest = new float[npts + 20];
+    Arrays.fill(dest, -1.0f);
+    float[] result = reader.getData(raf, gr.getBitmapSection(), gr.getDataRepresentationSection().getDrs(raf), dest, 10);
+    Assert.assertSame(dest, result);
+    Assert.assertArrayEquals(filename, want, Arrays.copyOfRange(dest, 10, 10 + npts), 0.0f);
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals(-1.0f, dest[i], 0.0f);
+      Assert.assertEquals(-1.0f, dest[npts + 10 + i], 0.0f);
+    }
+  }
+}
@@ -179,6 +179,18 @@ public class Tdm {
     GribIndexCache.setDiskCache2(gribCache);
     tdmLogger.info("TDM initialized {}", gribCache);
 
+    int indexThreads = reader.getInt("GribCdmIndex.indexThreads", 0);
+    if (indexThreads > 0) {
+      GribCdmIndex.setIndexThreads(indexThreads);
+      tdmLogger.info(" TDM GribCdmIndex indexThreads= {}", indexThreads);
+    }
+
+    int partitionIndexCache = reader.getInt("GribCdmIndex.partitionIndexCache", 0);
+    if (partitionIndexCache > 0) {
+      GribCdmIndex.setPartitionIndexCache(partitionIndexCache);
+      tdmLogger.info(" TDM GribCdmIndex partitionIndexCache= {}", partitionIndexCache);
+    }
+
     return true;
   }
 
@@ -9,6 +9,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import thredds.server.config.TdsContext;
+import thredds.server.opendap.DDSCache;
+import thredds.server.opendap.GuardedDatasetCacheAndClone;
 import thredds.servlet.ServletUtil;
 import ucar.nc2.dataset.NetcdfDataset;
 
@@ -20,6 +22,10 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import ucar.nc2.grib.collection.GribCdmIndex;
+import ucar.nc2.grib.collection.GribDataFilePool;
+import ucar.nc2.grib.collection.GribDataReader;
+import ucar.nc2.iosp.hdf5.H5chunkCache;
+import ucar.nc2.iosp.hdf5.H5iosp;
 import ucar.nc2.util.cache.FileCacheIF;
 import ucar.unidata.io.RandomAccessFile;
 
@@ -135,6 +141,27 @@ public class DebugCommands {
           fc.showCache(f);
         }
 
+        GribDataFilePool gribPool = GribDataReader.getDataFilePool();
+        if (gribPool == null) f.format("%nGribDataFilePool : turned off%n");
+        else {
+          f.format("%n%n");
+          gribPool.show(f);
+        }
+
+        DDSCache ddsCache = GuardedDatasetCacheAndClone.getDDSCache();
+        if (ddsCache == null) f.format("%nDDSCache : turned off%n");
+        else {
+          f.format("%n%n");
+          ddsCache.show(f);
+        }
+
+        H5chunkCache h5cache = H5iosp.getChunkCache();
+        if (h5cache == null) f.format("%nH5chunkCache : turned off%n");
+        else {
+          f.format("%n%n");
+          h5cache.showCache(f);
+        }
+
         e.pw.flush();
       }
     };
@@ -146,6 +173,12 @@ public class DebugCommands {
          RandomAccessFile.getGlobalFileCache().clearCache(false);
          FileCacheIF fc = GribCdmIndex.gribCollectionCache;
          if (fc != null) fc.clearCache(false);
+         GribDataFilePool gribPool = GribDataReader.getDataFilePool();
+         if (gribPool != null) gribPool.clear();
+         DDSCache ddsCache = GuardedDatasetCacheAndClone.getDDSCache();
+         if (ddsCache != null) ddsCache.clear();
+         H5chunkCache h5cache = H5iosp.getChunkCache();
+         if (h5cache != null) h5cache.clearCache();
          e.pw.println("  ClearCache ok");
        }
      };
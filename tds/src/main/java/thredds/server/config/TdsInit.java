@@ -31,6 +31,9 @@ import ucar.nc2.NetcdfFile;
 import ucar.nc2.dataset.NetcdfDataset;
 import ucar.nc2.grib.GribIndexCache;
 import ucar.nc2.grib.collection.GribCdmIndex;
+import ucar.nc2.grib.collection.GribDataReader;
+import ucar.nc2.iosp.bufr.BufrIosp2;
+import ucar.nc2.iosp.hdf5.H5iosp;
 import ucar.nc2.jni.netcdf.Nc4Iosp;
 import ucar.nc2.ncml.Aggregation;
 import ucar.nc2.stream.CdmRemote;
@@ -39,7 +42,9 @@ import ucar.nc2.util.DebugFlagsImpl;
 import ucar.nc2.util.DiskCache;
 import ucar.nc2.util.DiskCache2;
 import ucar.nc2.util.cache.FileCache;
+import ucar.nc2.write.AccessProfile;
 import ucar.unidata.io.RandomAccessFile;
+import ucar.unidata.io.MMapRandomAccessFile;
 import ucar.util.prefs.PreferencesExt;
 import ucar.util.prefs.XMLStore;
 
@@ -278,6 +283,25 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
       // FormatsAvailabilityService.setFormatAvailability(SupportedFormat.NETCDF4EXT, true);
     }
 
+    /*
+      <H5iosp>
+        <chunkReadThreads>8</chunkReadThreads>
+        <maxChunkThreadsPerRead>4</maxChunkThreadsPerRead>
+        <chunkCacheMaxSize>200 Mb</chunkCacheMaxSize>
+      </H5iosp>
+    */
+    int chunkReadThreads = ThreddsConfig.getInt("H5iosp.chunkReadThreads", 0);
+    if (chunkReadThreads > 0) {
+      int maxChunkThreadsPerRead = ThreddsConfig.getInt("H5iosp.maxChunkThreadsPerRead", 0);
+      H5iosp.setChunkReadThreads(chunkReadThreads, maxChunkThreadsPerRead);
+      startupLog.info("TdsInit: H5iosp.setChunkReadThreads= " + chunkReadThreads + " maxPerRead = " + maxChunkThreadsPerRead);
+    }
+    long chunkCacheMaxSize = ThreddsConfig.getBytes("H5iosp.chunkCacheMaxSize", 0);
+    if (chunkCacheMaxSize > 0) {
+      H5iosp.setChunkCache(chunkCacheMaxSize);
+      startupLog.info("TdsInit: H5iosp.setChunkCache= " + chunkCacheMaxSize);
+    }
+
     // how to choose the typical dataset ?
     String typicalDataset = ThreddsConfig.get("Aggregation.typicalDataset", "penultimate");
     Aggregation.setTypicalDatasetMode(typicalDataset);
@@ -327,6 +351,79 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     GribIndexCache.setDiskCache2(gribCache);
     startupLog.info("TdsInit: GribIndex=" + gribCache);
 
+    /*
+      <GribCdmIndex>
+        <memoryMapped>true</memoryMapped>
+        <indexThreads>4</indexThreads>
+        <partitionIndexCache>1000</partitionIndexCache>
+      </GribCdmIndex>
+    */
+    boolean gribIndexMemoryMapped = ThreddsConfig.getBoolean("GribCdmIndex.memoryMapped", false);
+    GribCdmIndex.setMemoryMappedIndex(gribIndexMemoryMapped);
+    startupLog.info("TdsInit: GribCdmIndex.setMemoryMappedIndex= " + gribIndexMemoryMapped);
+
+    int gribIndexThreads = ThreddsConfig.getInt("GribCdmIndex.indexThreads", 0);
+    if (gribIndexThreads > 0) {
+      GribCdmIndex.setIndexThreads(gribIndexThreads);
+      startupLog.info("TdsInit: GribCdmIndex.setIndexThreads= " + gribIndexThreads);
+    }
+
+    int gribPartitionIndexCache = ThreddsConfig.getInt("GribCdmIndex.partitionIndexCache", 0);
+    if (gribPartitionIndexCache > 0) {
+      GribCdmIndex.setPartitionIndexCache(gribPartitionIndexCache);
+      startupLog.info("TdsInit: GribCdmIndex.setPartitionIndexCache= " + gribPartitionIndexCache);
+    }
+
+    /*
+      <GribDataReader>
+        <decodeThreads>8</decodeThreads>
+        <maxDecodeThreadsPerRead>4</maxDecodeThreadsPerRead>
+        <maxOpenFiles>200</maxOpenFiles>
+        <maxPartitions>2000</maxPartitions>
+      </GribDataReader>
+    */
+    int decodeThreads = ThreddsConfig.getInt("GribDataReader.decodeThreads", 0);
+    if (decodeThreads > 0) {
+      int maxDecodeThreadsPerRead = ThreddsConfig.getInt("GribDataReader.maxDecodeThreadsPerRead", 0);
+      GribDataReader.setDecodeThreads(decodeThreads, maxDecodeThreadsPerRead);
+      startupLog.info("TdsInit: GribDataReader.setDecodeThreads= " + decodeThreads + " maxPerRead = " + maxDecodeThreadsPerRead);
+    }
+
+    int gribMaxOpenFiles = ThreddsConfig.getInt("GribDataReader.maxOpenFiles", 0);
+    if (gribMaxOpenFiles > 0) {
+      int gribMaxPartitions = ThreddsConfig.getInt("GribDataReader.maxPartitions", 0);
+      GribDataReader.setDataFilePool(gribMaxOpenFiles, gribMaxPartitions);
+      startupLog.info("TdsInit: GribDataReader.setDataFilePool= " + gribMaxOpenFiles + " maxPartitions = " + gribMaxPartitions);
+    }
+
+    /*
+      <BufrIosp>
+        <decodeThreads>4</decodeThreads>
+      </BufrIosp>
+    */
+    int bufrDecodeThreads = ThreddsConfig.getInt("BufrIosp.decodeThreads", 0);
+    if (bufrDecodeThreads > 0) {
+      BufrIosp2.setDecodeThreads(bufrDecodeThreads);
+      startupLog.info("TdsInit: BufrIosp2.setDecodeThreads= " + bufrDecodeThreads);
+    }
+
+    /*
+      <AccessProfile>
+        <recordDir>/data/thredds/accessProfile/</recordDir>
+        <saveEveryMinutes>10</saveEveryMinutes>
+      </AccessProfile>
+    */
+    String accessProfileDir = ThreddsConfig.get("AccessProfile.recordDir", null);
+    if (accessProfileDir != null) {
+      int saveEveryMinutes = ThreddsConfig.getInt("AccessProfile.saveEveryMinutes", 10);
+      try {
+        AccessProfile.startRecording(new File(accessProfileDir), saveEveryMinutes);
+        startupLog.info("TdsInit: AccessProfile.startRecording= " + accessProfileDir + " saveEveryMinutes= " + saveEveryMinutes);
+      } catch (IOException e) {
+        startupLog.error("TdsInit: AccessProfile.startRecording failed on " + accessProfileDir, e);
+      }
+    }
+
     // LOOK just create the diskCache here and send it in
     ncssDiskCache.init();
 
@@ -378,6 +475,25 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
       startupLog.info("TdsInit: RandomAccessFile.initPartitionCache= [" + min + "," + max + "] scour = " + secs);
     }
 
+    // RandomAccessFile: memory map files in these directories, or matching this pattern
+    String mmapDirectories = ThreddsConfig.get("RandomAccessFile.mmapDirectories", null);
+    if (mmapDirectories != null) {
+      for (String mmapDir : mmapDirectories.split("[,\\s]+")) {
+        if (mmapDir.isEmpty()) continue;
+        MMapRandomAccessFile.addDirectory(mmapDir);
+        startupLog.info("TdsInit: RandomAccessFile.mmapDirectory= " + mmapDir);
+      }
+    }
+    String mmapPattern = ThreddsConfig.get("RandomAccessFile.mmapPattern", null);
+    if (mmapPattern != null) {
+      try {
+        MMapRandomAccessFile.setPattern(mmapPattern);
+        startupLog.info("TdsInit: RandomAccessFile.mmapPattern= " + mmapPattern);
+      } catch (java.util.regex.PatternSyntaxException e) {
+        startupLog.error("TdsInit: illegal RandomAccessFile.mmapPattern= " + mmapPattern, e);
+      }
+    }
+
     // NetcdfFileCache : default is allow 100 - 150 open files, cleanup every 12 minutes
     min = ThreddsConfig.getInt("NetcdfFileCache.minFiles", 100);
     max = ThreddsConfig.getInt("NetcdfFileCache.maxFiles", 150);
@@ -472,6 +588,10 @@ public class TdsInit implements ApplicationListener<ContextRefreshedEvent>, Disp
     // open file caches
     RandomAccessFile.shutdown();
     NetcdfDataset.shutdown();
+    H5iosp.shutdown();
+    GribDataReader.shutdown();
+    BufrIosp2.shutdown();
+    AccessProfile.stopRecording();
 
     // memory caches
     GribCdmIndex.shutdown();
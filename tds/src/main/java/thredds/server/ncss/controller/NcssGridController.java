@@ -88,7 +88,7 @@ public class NcssGridController extends AbstractNcssController {
       // throws exception if grid names not valid
       checkRequestedVars(gcd, params);
 
-      if (params.hasLatLonPoint()) {
+      if (params.hasLatLonPoint() || params.hasLatLonPoints()) {
         handleRequestGridAsPoint(res, params, datasetPath, gcd);
       } else {
         handleRequestGrid(res, params, datasetPath, gcd);
@@ -109,9 +109,6 @@ public class NcssGridController extends AbstractNcssController {
                 "Grid requests with vertCoord must have variables with same vertical levels.");
       }
 
-    String responseFile = getResponseFileName(datasetPath, version);
-    File netcdfResult = makeCFNetcdfFile(gcd, responseFile, params, version);
-
     // filename download attachment
     String suffix = version.getSuffix();
     int pos = datasetPath.lastIndexOf("/");
@@ -125,6 +122,23 @@ public class NcssGridController extends AbstractNcssController {
     httpHeaders.set(ContentType.HEADER, sf.getMimeType());
     httpHeaders.set(Constants.Content_Disposition, Constants.setContentDispositionValue(filename));
 
+    if (version == NetcdfFileWriter.Version.netcdf3) {
+      // netcdf3 is written straight to the client; the header gives us the exact content length
+      CFGridCoverageWriter2.Netcdf3Stream stream = makeCFNetcdf3Stream(gcd, params);
+      httpHeaders.set(Constants.Content_Length, Long.toString(stream.getFileSize()));
+      setResponseHeaders(res, httpHeaders);
+
+      stream.write(res.getOutputStream());
+      res.flushBuffer();
+      res.getOutputStream().close();
+      res.setStatus(HttpServletResponse.SC_OK);
+      return;
+    }
+
+    // netcdf4 must be written to disk first
+    String responseFile = getResponseFileName(datasetPath, version);
+    File netcdfResult = makeCFNetcdfFile(gcd, responseFile, params, version);
+
     // set content length
     httpHeaders.set(Constants.Content_Length, Constants.getContentLengthValue(netcdfResult));
 
@@ -136,6 +150,25 @@ public class NcssGridController extends AbstractNcssController {
     res.setStatus(HttpServletResponse.SC_OK);
   }
 
+  private CFGridCoverageWriter2.Netcdf3Stream makeCFNetcdf3Stream(CoverageCollection gcd, NcssGridParamsBean params)
+          throws InvalidRangeException, IOException {
+    SubsetParams subset = params.makeSubset(gcd);
+
+    Optional<CFGridCoverageWriter2.Netcdf3Stream> streamo = CFGridCoverageWriter2.makeNetcdf3Stream(
+            gcd, params.getVar(), subset, params.isAddLatLon());
+    if (!streamo.isPresent())
+      throw new InvalidRangeException("Request contains no data: " + streamo.getErrorMessage());
+    CFGridCoverageWriter2.Netcdf3Stream stream = streamo.get();
+
+    // Test maxFileDownloadSize
+    long maxFileDownloadSize = ThreddsConfig.getBytes("NetcdfSubsetService.maxFileDownloadSize", -1L);
+    if (maxFileDownloadSize > 0 && stream.getSizeOfVars() > maxFileDownloadSize)
+      throw new RequestTooLargeException(
+              "NCSS response too large = " + stream.getSizeOfVars() + " max = " + maxFileDownloadSize);
+
+    return stream;
+  }
+
   private File makeCFNetcdfFile(CoverageCollection gcd, String responseFilename, NcssGridParamsBean params,
           NetcdfFileWriter.Version version) throws InvalidRangeException, IOException {
     SubsetParams subset = params.makeSubset(gcd);
@@ -186,7 +219,10 @@ public class NcssGridController extends AbstractNcssController {
           CoverageCollection gcd) throws Exception {
     SupportedFormat sf = SupportedOperation.POINT_REQUEST.getSupportedFormat(params.getAccept());
 
-    CoverageAsPoint covp = new CoverageAsPoint(gcd, params.getVar(), params.makeSubset(gcd));
+    // a batch of points reads each part of the grid once for all the points in it
+    CoverageAsPoint covp = params.hasLatLonPoints() ?
+            new CoverageAsPoint(gcd, params.getVar(), params.makeSubset(gcd), params.getLatLonPoints()) :
+            new CoverageAsPoint(gcd, params.getVar(), params.makeSubset(gcd));
     try (FeatureDatasetPoint fd = covp.asFeatureDatasetPoint()) {
 
       // all subsetting is done in CoverageAsPoint
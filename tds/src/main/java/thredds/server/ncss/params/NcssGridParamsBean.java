@@ -13,9 +13,13 @@ import ucar.nc2.time.Calendar;
 import ucar.nc2.time.CalendarDate;
 import ucar.nc2.time.CalendarDateFormatter;
 import ucar.nc2.time.CalendarDateRange;
+import ucar.unidata.geoloc.LatLonPoint;
 import ucar.unidata.geoloc.LatLonPointImpl;
 import ucar.unidata.geoloc.ProjectionRect;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Parameters specific to ncss grid
  *
@@ -41,6 +45,8 @@ public class NcssGridParamsBean extends NcssParamsBean {
   private String runtime;
   private String timeOffset;
 
+  private String points;  // lat,lon;lat,lon;...
+
   public Double getMinx() {
     return minx;
   }
@@ -137,6 +143,37 @@ public class NcssGridParamsBean extends NcssParamsBean {
     this.timeOffset = timeOffset;
   }
 
+  public String getPoints() {
+    return points;
+  }
+
+  public void setPoints(String points) {
+    this.points = points;
+  }
+
+  public boolean hasLatLonPoints() {
+    return points != null;
+  }
+
+  /**
+   * Parse the points param.
+   * @return the points, in request order
+   * @throws IllegalArgumentException if not lat,lon;lat,lon;...
+   */
+  public List<LatLonPoint> getLatLonPoints() {
+    List<LatLonPoint> result = new ArrayList<>();
+    for (String point : points.split(";")) {
+      if (point.trim().isEmpty()) continue;
+      String[] latlon = point.split(",");
+      if (latlon.length != 2)
+        throw new IllegalArgumentException("point must be lat,lon: " + point);
+      result.add(new LatLonPointImpl(Double.parseDouble(latlon[0].trim()), Double.parseDouble(latlon[1].trim())));
+    }
+    if (result.isEmpty())
+      throw new IllegalArgumentException("no points");
+    return result;
+  }
+
   ////////////////////////////
   protected Double timeOffsetVal;
   protected boolean firstTimeOffset;
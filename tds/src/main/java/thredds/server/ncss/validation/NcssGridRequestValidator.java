@@ -13,7 +13,7 @@ import javax.validation.ConstraintValidatorContext;
 
 /**
  * Validator for ncss GridRequest
- * 1) if has either latitude or longitude, has both
+ * 1) if has either latitude or longitude, has both; points are lat,lon;lat,lon;...
  * 2) if has any of latlon bb, has all. north > south, east > west
  * 3) if has any of projection bb, has all. min < max
  * <p>
@@ -50,6 +50,16 @@ public class NcssGridRequestValidator implements ConstraintValidator<NcssGridReq
       }
     }
 
+    // list of lat/lon points
+    if (params.hasLatLonPoints()) {
+      try {
+        params.getLatLonPoints();
+      } catch (IllegalArgumentException e) {
+        isValid = false;
+        constraintValidatorContext.buildConstraintViolationWithTemplate("{thredds.server.ncSubset.validation.points}").addConstraintViolation();
+      }
+    }
+
     // lat/lon bb
     if (params.getNorth() != null || params.getSouth() != null || params.getEast() != null || params.getWest() != null) {
       if (!params.hasLatLonBB()) {
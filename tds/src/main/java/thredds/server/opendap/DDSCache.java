@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.opendap;
+
+import ucar.nc2.NetcdfFile;
+
+import javax.annotation.concurrent.Immutable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Formatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the DDS and DAS of OPeNDAP datasets, shared by all requests.
+ * <p>
+ * Making the NcDDS and NcDAS of a dataset with thousands of variables (eg a large GRIB collection) takes much longer
+ * than the rest of a .dds or .das request. Here they are made once and kept as templates that are never changed,
+ * and that hold no reference to the NetcdfFile they were made from.
+ * A request gets the DAS itself, and a copy of the DDS whose variables are bound to the NetcdfFile it opened.
+ * <p>
+ * Datasets are keyed by request path and location, and an entry is only used if the dataset's last modified time
+ * is the same as when it was made. Datasets that dont know their last modified time are not cached.
+ * Least recently used datasets are dropped when over the limit.
+ */
+@ThreadSafe
+public class DDSCache {
+  private final int maxDatasets;
+  private final Map<String, Templates> map;  // key = request path and location
+  private long hits, misses;
+
+  @Immutable
+  static class Templates {
+    final String key;
+    final long lastModified;
+    final NcDDS dds;  // use NcDDS.copyFor()
+    final NcDAS das;
+
+    Templates(String key, String reqPath, NetcdfFile ncfile) {
+      this.key = key;
+      this.lastModified = ncfile.getLastModified();
+      this.dds = NcDDS.makeTemplate(reqPath, ncfile);
+      this.das = new NcDAS(ncfile);
+    }
+  }
+
+  /**
+   * Constructor.
+   * @param maxDatasets keep the DDS and DAS of at most this many datasets.
+   */
+  public DDSCache(int maxDatasets) {
+    this.maxDatasets = maxDatasets;
+    this.map = new LinkedHashMap<String, Templates>(16, .75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Templates> eldest) {
+        return size() > DDSCache.this.maxDatasets;
+      }
+    };
+  }
+
+  /**
+   * Get the templates of a dataset, making them from ncfile if not cached or out of date.
+   *
+   * @param reqPath the request path of the dataset
+   * @param ncfile  the dataset, opened for this request
+   * @return the templates, do not modify
+   */
+  Templates get(String reqPath, NetcdfFile ncfile) {
+    String key = reqPath + " " + ncfile.getLocation();
+    long lastModified = ncfile.getLastModified();
+    synchronized (this) {
+      Templates t = map.get(key);
+      if (t != null && lastModified > 0 && t.lastModified == lastModified) {
+        hits++;
+        return t;
+      }
+      misses++;
+    }
+
+    Templates t = new Templates(key, reqPath, ncfile);  // dont hold the lock while reading the metadata
+    if (lastModified > 0) {
+      synchronized (this) {
+        map.put(key, t);
+      }
+    }
+    return t;
+  }
+
+  /** Remove a dataset whose templates cannot be used, so they are made again on the next request. */
+  synchronized void remove(Templates t) {
+    map.remove(t.key, t);
+  }
+
+  public synchronized void clear() {
+    map.clear();
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  public synchronized void show(Formatter f) {
+    long total = hits + misses;
+    f.format("DDSCache maxDatasets=%d datasets=%d hits=%d misses=%d hitRate=%.1f%%%n",
+            maxDatasets, map.size(), hits, misses, total == 0 ? 0.0 : 100.0 * hits / total);
+    for (Templates t : map.values())
+      f.format("  %s lastModified=%d%n", t.key, t.lastModified);
+  }
+}
@@ -12,14 +12,35 @@ import java.io.IOException;
 
 /**
  * This creates and caches DDS, DAS, then clones them when they are needed.
+ * If the DDSCache is on, the DDS and DAS templates are shared with other requests for the same dataset,
+ * and each DDS is a copy of the template with its variables bound to this NetcdfFile.
  */
 @Immutable
 public class GuardedDatasetCacheAndClone implements GuardedDataset {
   static protected org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(GuardedDataset.class);
 
+  static private volatile DDSCache ddsCache;
+
+  /**
+   * Share the DDS and DAS of recently used datasets among requests.
+   *
+   * @param maxDatasets keep at most this many datasets; 0 turns the cache off.
+   */
+  static public void setDDSCache(int maxDatasets) {
+    ddsCache = (maxDatasets > 0) ? new DDSCache(maxDatasets) : null;
+  }
+
+  /** @return the DDSCache, or null if turned off */
+  static public DDSCache getDDSCache() {
+    return ddsCache;
+  }
+
   private final boolean hasSession;
   private final NetcdfFile org_file;
-  private final NcDDS dds;
+  private final String reqPath;
+  private final DDSCache cache;
+  private final DDSCache.Templates templates;  // shared, null if not cached
+  private final NcDDS dds;  // null if cached
   private final NcDAS das;
 
   public void release() {
@@ -37,17 +58,35 @@ public class GuardedDatasetCacheAndClone implements GuardedDataset {
 
   public GuardedDatasetCacheAndClone(String reqPath, NetcdfFile ncfile, boolean hasSession) {
     this.org_file = ncfile;
-    this.dds = new NcDDS(reqPath, ncfile);
-    this.das = new NcDAS(ncfile);
+    this.reqPath = reqPath;
     this.hasSession = hasSession;
+    this.cache = ddsCache;
+    if (cache != null) {
+      this.templates = cache.get(reqPath, ncfile);
+      this.dds = null;
+      this.das = templates.das;
+    } else {
+      this.templates = null;
+      this.dds = new NcDDS(reqPath, ncfile);
+      this.das = new NcDAS(ncfile);
+    }
   }
 
   public opendap.servers.ServerDDS getDDS() {
-    return (opendap.servers.ServerDDS) dds.clone();
+    if (templates == null)
+      return (opendap.servers.ServerDDS) dds.clone();
+
+    NcDDS copy = templates.dds.copyFor(org_file);
+    if (copy == null) { // file changed without changing its last modified time
+      cache.remove(templates);
+      copy = new NcDDS(reqPath, org_file);
+    }
+    return copy;
   }
 
+  // the DAS is never changed by a request, so it isnt copied
   public opendap.dap.DAS getDAS() {
-    return (opendap.dap.DAS) das.clone();
+    return das;
   }
 
   public String toString() {
@@ -30,6 +30,9 @@ public interface HasNetcdfVariable {
   /** get the underlying proxy */
   public Variable getVariable();
 
+  /** rebind to the same variable in another open file */
+  public void setVariable(Variable v);
+
   // for structure members
   public void serialize(DataOutputStream sink, StructureData sdata, StructureMembers.Member m) throws IOException;
 }
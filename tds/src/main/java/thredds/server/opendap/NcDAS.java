@@ -90,6 +90,7 @@ public class NcDAS extends opendap.dap.DAS {
         log.error("Cant add EXTRA_DIMENSION", e);
       }
 
+    usedDims.clear(); // only needed while building; dont hold on to the file's dimensions
   }
 
   private void doVariable(Variable v, opendap.dap.AttributeTable parentTable) {
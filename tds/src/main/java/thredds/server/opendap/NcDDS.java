@@ -11,6 +11,8 @@ import ucar.ma2.DataType;
 
 import opendap.servers.*;
 import opendap.dap.BaseType;
+import opendap.dap.DConstructor;
+import opendap.dap.DVector;
 import ucar.nc2.dataset.CoordinateAxis;
 import ucar.nc2.dataset.NetcdfDataset;
 
@@ -268,6 +270,125 @@ public class NcDDS extends ServerDDS {
     return new NcSDStructure(s, list);
   }
 
+  //////////////////////////////////////////////////////////////////////////////////////////////
+  // templates
+
+  // the variables of a template's nodes, in the order of collectNodes(); null if this is not a template
+  private List<VariableId> templateVars;
+
+  // identifies a variable of a dataset, without holding on to it
+  private static class VariableId {
+    final String fullNameEscaped;
+    final DataType dataType;
+    final int[] shape;
+
+    VariableId(Variable v) {
+      this.fullNameEscaped = v.getFullNameEscaped();
+      this.dataType = v.getDataType();
+      this.shape = v.getShape();
+    }
+
+    // the same variable in another open instance of the dataset, or null if it has changed
+    Variable findIn(NetcdfFile ncfile) {
+      Variable v = ncfile.findVariable(fullNameEscaped);
+      if (v == null || v.getDataType() != dataType || !Arrays.equals(v.getShape(), shape))
+        return null;
+      return v;
+    }
+  }
+
+  /**
+   * Make a template of the DDS of a dataset. It holds no reference to ncfile, so it can be kept and shared
+   * after the file is closed. Use copyFor() to get a DDS that can be read from.
+   *
+   * @param name   name of the dataset, at bottom of DDS
+   * @param ncfile create DDS from this
+   * @return the template, do not modify
+   */
+  public static NcDDS makeTemplate(String name, NetcdfFile ncfile) {
+    NcDDS dds = new NcDDS(name, ncfile);
+    dds.coordvars = new HashMap<>();  // only needed while building
+    dds.ddsvars = new ArrayList<>();
+    dds.gridarrays = new HashMap<>();
+    dds.used = new HashMap<>();
+
+    List<VariableId> vars = new ArrayList<>();
+    for (BaseType node : dds.collectNodes()) {
+      Variable v = getVariable(node);
+      vars.add(v == null ? null : new VariableId(v));
+      setVariable(node, null);
+    }
+    dds.templateVars = vars;
+    return dds;
+  }
+
+  /**
+   * Make a copy of a template that reads its data from an open instance of the dataset.
+   * This is much cheaper than making a new NcDDS, since the grids and coordinates are not worked out again.
+   *
+   * @param ncfile the dataset
+   * @return the copy, or null if ncfile does not have the same variables as the template
+   */
+  public NcDDS copyFor(NetcdfFile ncfile) {
+    if (templateVars == null)
+      throw new IllegalStateException("NcDDS " + getClearName() + " is not a template");
+
+    NcDDS copy = (NcDDS) clone();
+    copy.templateVars = null;
+    List<BaseType> nodes = copy.collectNodes();
+    if (nodes.size() != templateVars.size()) return null;
+    for (int i = 0; i < nodes.size(); i++) {
+      VariableId id = templateVars.get(i);
+      if (id == null) continue;
+      Variable v = id.findIn(ncfile);
+      if (v == null || (nodes.get(i) instanceof NcSDStructure && !(v instanceof Structure)))
+        return null;
+      setVariable(nodes.get(i), v);
+    }
+    return copy;
+  }
+
+  // the nodes that can have a netcdf variable, in a fixed order
+  private List<BaseType> collectNodes() {
+    List<BaseType> result = new ArrayList<>();
+    Enumeration vars = getVariables();
+    while (vars.hasMoreElements())
+      collectNodes((BaseType) vars.nextElement(), result);
+    return result;
+  }
+
+  private static void collectNodes(BaseType bt, List<BaseType> result) {
+    if (bt instanceof HasNetcdfVariable || bt instanceof NcSDStructure)
+      result.add(bt);
+
+    if (bt instanceof DConstructor) {  // grid, structure members
+      Enumeration vars = ((DConstructor) bt).getVariables();
+      while (vars.hasMoreElements())
+        collectNodes((BaseType) vars.nextElement(), result);
+
+    } else if (bt instanceof DVector) {  // array element type
+      DVector vector = (DVector) bt;
+      if (vector.getContainerVar() != null)
+        collectNodes(vector.getContainerVar(), result);
+      BaseType template = vector.getPrimitiveVector().getTemplate();
+      if (template != null && template != vector.getContainerVar())
+        collectNodes(template, result);
+    }
+  }
+
+  private static Variable getVariable(BaseType node) {
+    if (node instanceof HasNetcdfVariable)
+      return ((HasNetcdfVariable) node).getVariable();
+    return ((NcSDStructure) node).getVariable();
+  }
+
+  private static void setVariable(BaseType node, Variable v) {
+    if (node instanceof HasNetcdfVariable)
+      ((HasNetcdfVariable) node).setVariable(v);
+    else
+      ((NcSDStructure) node).setVariable((Structure) v);
+  }
+
   /**
    * Returns a clone of this <code>?</code>.
    * See BaseType.cloneDAG()
@@ -6,6 +6,7 @@
 package thredds.server.opendap;
 
 import opendap.dap.InvalidDimensionException;
+import opendap.dap.NoSuchVariableException;
 import ucar.ma2.*;
 import ucar.nc2.*;
 
@@ -13,10 +14,16 @@ import opendap.servers.*;
 import opendap.dap.BaseType;
 import opendap.dap.DArrayDimension;
 import opendap.dap.PrimitiveVector;
+import ucar.nc2.dataset.VariableEnhanced;
+import ucar.nc2.iosp.IospHelper;
+import ucar.nc2.iosp.netcdf3.N3iosp;
+import ucar.nc2.write.AccessProfile;
 
 import java.io.IOException;
 import java.io.EOFException;
 import java.io.DataOutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -31,6 +38,20 @@ public class NcSDArray extends SDArray implements HasNetcdfVariable {
   static private org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(NcSDArray.class);
 
   private static final boolean debug = false, debugRead = false;
+
+  // largest piece of a streamed array, in bytes; 0 means dont stream
+  private static volatile int streamChunkSize = 8 * 1000 * 1000;
+
+  /**
+   * Numeric arrays are serialized in pieces of at most this many bytes, without reading the whole array into memory.
+   * A netcdf-3 variable is copied straight from the file to the response with Variable.readToByteChannel().
+   *
+   * @param nbytes largest piece in bytes; 0 or less reads the whole array before serializing it, as before.
+   */
+  static public void setStreamChunkSize(int nbytes) {
+    streamChunkSize = nbytes;
+  }
+
   private Variable ncVar = null;
   //ignore protected BaseType elemType;
 
@@ -59,6 +80,10 @@ public class NcSDArray extends SDArray implements HasNetcdfVariable {
     return ncVar;
   }
 
+  public void setVariable(Variable v) {
+    this.ncVar = v;
+  }
+
   /**
    * Read the data values (parameters are ignored).
    * Use the start, stop and stride values, typically set by the constraint evaluator.
@@ -82,6 +107,7 @@ public class NcSDArray extends SDArray implements HasNetcdfVariable {
       List<Range> ranges = new ArrayList<>(n);
       for (int i = 0; i < n; i++)
         ranges.add(new Range(getStart(i), getStop(i), getStride(i)));
+      AccessProfile.recordAccess(ncVar, ranges);
 
       try {
         a = ncVar.read(ranges);
@@ -174,6 +200,114 @@ public class NcSDArray extends SDArray implements HasNetcdfVariable {
     setRead(true);
   }
 
+  /**
+   * Serialize the array in pieces, if it has a numeric type that can be streamed and has not already been read.
+   * Otherwise read the whole array and serialize it with SDArray.serialize().
+   */
+  @Override
+  public void serialize(String dataset, DataOutputStream sink, CEEvaluator ce, Object specialO)
+          throws NoSuchVariableException, DAP2ServerSideException, IOException {
+    int chunkSize = streamChunkSize;
+    if (chunkSize <= 0 || isRead() || !canStream()) {
+      super.serialize(dataset, sink, ce, specialO);
+      return;
+    }
+    if (!ce.evalClauses(specialO)) return;
+
+    long tstart = System.currentTimeMillis();
+    try {
+      int n = numDimensions();
+      List<Range> ranges = new ArrayList<>(n);
+      for (int i = 0; i < n; i++)
+        ranges.add(new Range(getStart(i), getStop(i), getStride(i)));
+      int length = (int) new Section(ranges).computeSize();
+      AccessProfile.recordAccess(ncVar, ranges);
+
+      // same as SDArray: both XDR and OPeNDAP read the length
+      sink.writeInt(length);
+      sink.writeInt(length);
+
+      // a netcdf-3 variable reads straight from the file, others read each piece into an Array
+      boolean direct = !(ncVar instanceof VariableEnhanced) && ncVar.getNetcdfFile() != null &&
+              ncVar.getNetcdfFile().getIosp() instanceof N3iosp;
+      WritableByteChannel channel = direct ? Channels.newChannel(sink) : null;
+
+      int elemSize = ncVar.getElementSize();
+      long[] innerSize = new long[n];  // number of elements in one index of each dimension
+      long size = 1;
+      for (int i = n - 1; i >= 0; i--) {
+        innerSize[i] = size;
+        size *= ranges.get(i).length();
+      }
+      int splitDim = 0;
+      while (splitDim < n - 1 && innerSize[splitDim] * elemSize > chunkSize)
+        splitDim++;
+      int count = (int) Math.max(1, chunkSize / (innerSize[splitDim] * elemSize));
+
+      long nbytes = writeChunks(ranges, 0, splitDim, count, section -> direct ?
+              ncVar.readToByteChannel(section, channel) : IospHelper.copyToOutputStream(ncVar.read(section), sink));
+      if (nbytes != (long) length * elemSize)
+        throw new IOException("NcSDArray wrote " + nbytes + " bytes, expected " + (long) length * elemSize +
+                " for " + getRequestedRange());
+
+      // same as BytePrimitiveVector: pad out to a multiple of four bytes
+      int pad = (elemSize == 1 && length % 4 != 0) ? 4 - length % 4 : 0;
+      for (int i = 0; i < pad; i++)
+        sink.writeByte(0);
+
+    } catch (InvalidDimensionException e) {
+      log.error(getRequestedRange(), e);
+      throw new IllegalStateException("NcSDArray InvalidDimensionException=" + e.getMessage());
+
+    } catch (InvalidRangeException e) {
+      log.error(getRequestedRange(), e);
+      throw new IllegalStateException("NcSDArray InvalidRangeException=" + e.getMessage());
+    }
+
+    if (log.isDebugEnabled()) {
+      long tookTime = System.currentTimeMillis() - tstart;
+      log.debug("NcSDArray stream: " + tookTime * .001 + " seconds");
+    }
+  }
+
+  // the types whose serialized form is the same as IospHelper.copyToOutputStream(), except for padding bytes
+  private boolean canStream() {
+    if (ncVar.isMemberOfStructure()) return false;
+    switch (ncVar.getDataType()) {
+      case BYTE:
+      case UBYTE:
+      case INT:
+      case UINT:
+      case FLOAT:
+      case DOUBLE:
+        return true;
+      default:
+        return false; // 16 bit ints are sent as 32 bits, strings and structures are not fixed size
+    }
+  }
+
+  private interface ChunkWriter {
+    long write(Section section) throws IOException, InvalidRangeException;
+  }
+
+  // write the section in index order, in pieces of count indices of splitDim
+  private long writeChunks(List<Range> ranges, int dim, int splitDim, int count, ChunkWriter writer)
+          throws IOException, InvalidRangeException {
+    Range r = ranges.get(dim);
+    int step = (dim == splitDim) ? count : 1;
+    long nbytes = 0;
+    for (int i = 0; i < r.length(); i += step) {
+      int last = Math.min(i + step, r.length()) - 1;
+      List<Range> piece = new ArrayList<>(ranges);
+      piece.set(dim, new Range(r.getName(), r.element(i), r.element(last), r.stride()));
+      if (dim == splitDim)
+        nbytes += writer.write(new Section(piece));
+      else
+        nbytes += writeChunks(piece, dim + 1, splitDim, count, writer);
+    }
+    return nbytes;
+  }
+
   public void serialize(DataOutputStream sink, StructureData sdata, StructureMembers.Member m) throws IOException {
     long tstart = System.currentTimeMillis();
 
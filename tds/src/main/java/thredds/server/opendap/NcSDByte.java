@@ -36,6 +36,8 @@ public class NcSDByte extends SDByte implements HasNetcdfVariable {
 
   public Variable getVariable() { return ncVar; }
 
+  public void setVariable(Variable v) { this.ncVar = v; }
+
 
   /**
    * Read the value (parameters are ignored).
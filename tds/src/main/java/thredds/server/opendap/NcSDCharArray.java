@@ -58,6 +58,8 @@ public class NcSDCharArray extends SDArray implements HasNetcdfVariable {
 
   public Variable getVariable() { return ncVar; }
 
+  public void setVariable(Variable v) { this.ncVar = v; }
+
 
   /**
    * Read the data values (parameters are ignored).
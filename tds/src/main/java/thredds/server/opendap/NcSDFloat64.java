@@ -36,6 +36,8 @@ public class NcSDFloat64 extends SDFloat64 implements HasNetcdfVariable {
 
   public Variable getVariable() { return ncVar; }
 
+  public void setVariable(Variable v) { this.ncVar = v; }
+
   /**
    * Read the value (parameters are ignored).
    */
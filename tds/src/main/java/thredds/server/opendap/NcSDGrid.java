@@ -13,6 +13,7 @@ import opendap.dap.BaseType;
 import opendap.dap.NoSuchVariableException;
 import ucar.nc2.Variable;
 
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 
@@ -48,4 +49,16 @@ public class NcSDGrid extends SDGrid {
     setRead(true);
     return(false);
   }
+
+  /**
+   * Each array reads its own data when it is serialized, so that large ones can be streamed.
+   * @see NcSDArray#serialize(String, DataOutputStream, CEEvaluator, Object)
+   */
+  @Override
+  public void serialize(String dataset, DataOutputStream sink, CEEvaluator ce, Object specialO)
+          throws NoSuchVariableException, DAP2ServerSideException, IOException {
+    if (!isRead())
+      setRead(true);
+    super.serialize(dataset, sink, ce, specialO);
+  }
 }
@@ -36,6 +36,8 @@ public class NcSDInt16 extends SDInt16 implements HasNetcdfVariable {
 
   public Variable getVariable() { return ncVar; }
 
+  public void setVariable(Variable v) { this.ncVar = v; }
+
   /**
    * Read the value (parameters are ignored).
    */
@@ -56,6 +56,8 @@ public class NcSDStructure extends SDStructure  {
 
    public Variable getVariable() { return ncVar; }
 
+   void setVariable(Structure s) { this.ncVar = s; }
+
   // called if its scalar
   public boolean read(String datasetName, Object specialO) throws NoSuchVariableException,
     IOException {
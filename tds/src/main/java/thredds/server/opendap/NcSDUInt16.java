@@ -49,6 +49,8 @@ public class NcSDUInt16 extends SDUInt16 implements HasNetcdfVariable {
 
   public Variable getVariable() { return ncVar; }
 
+  public void setVariable(Variable v) { this.ncVar = v; }
+
   public void serialize(DataOutputStream sink, StructureData sdata, StructureMembers.Member m) throws IOException {
     setValue( sdata.getScalarShort(m));
     externalize(sink);
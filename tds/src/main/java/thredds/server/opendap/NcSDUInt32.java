@@ -50,6 +50,8 @@ public class NcSDUInt32 extends SDUInt32 implements HasNetcdfVariable {
 
   public Variable getVariable() { return ncVar; }
 
+  public void setVariable(Variable v) { this.ncVar = v; }
+
   public void serialize(DataOutputStream sink, StructureData sdata, StructureMembers.Member m) throws IOException {
     setValue( sdata.getScalarInt(m));
     externalize(sink);
@@ -78,6 +78,9 @@ public class OpendapServlet extends AbstractServlet {
     this.binLimit = ThreddsConfig.getInt("Opendap.binLimit", binLimit);
 
     this.odapVersionString = ThreddsConfig.get("Opendap.serverVersion", odapVersionString);
+    int streamChunkSize = ThreddsConfig.getInt("Opendap.streamChunkSize", 8); // Mbytes
+    NcSDArray.setStreamChunkSize(streamChunkSize * 1000 * 1000);
+    GuardedDatasetCacheAndClone.setDDSCache(ThreddsConfig.getInt("Opendap.ddsCache", 50));
     logServerStartup.info(getClass().getName() + " version= " + odapVersionString + " ascLimit = " + ascLimit + " binLimit = " + binLimit);
 
     if (tdsContext != null) // LOOK not set in mock testing enviro ?
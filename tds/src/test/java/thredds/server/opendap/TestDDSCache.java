@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.opendap;
+
+import opendap.servers.CEEvaluator;
+import opendap.servers.ServerDDS;
+import opendap.servlet.GuardedDataset;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.dataset.NetcdfDataset;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Test that requests sharing the DDS and DAS of a dataset get the same responses as without the DDSCache.
+ */
+public class TestDDSCache {
+  private static final String reqPath = "testdata2/ref_nctest_classic.nc";
+  private static final String constraint = "bytev[0:1:1][0:2:2][1:3][0:5][0:3][0:3:30],aa,ce[0:2][1:2][0:2:6],floatv";
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File file;
+
+  @Before
+  public void setup() throws Exception {
+    file = tempFolder.newFile("ref_nctest_classic.nc");
+    Files.copy(new File("../opendap/src/test/data/" + reqPath).toPath(), file.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  @After
+  public void reset() {
+    GuardedDatasetCacheAndClone.setDDSCache(0);
+  }
+
+  @Test
+  public void sameResponses() throws Exception {
+    for (boolean enhance : new boolean[] {false, true}) {
+      GuardedDatasetCacheAndClone.setDDSCache(0);
+      String wantDDS = printDDS(enhance);
+      String wantDAS = printDAS(enhance);
+      byte[] wantData = sendData(enhance);
+
+      GuardedDatasetCacheAndClone.setDDSCache(10);
+      DDSCache cache = GuardedDatasetCacheAndClone.getDDSCache();
+      for (int i = 0; i < 3; i++) {
+        Assert.assertEquals(wantDDS, printDDS(enhance));
+        Assert.assertEquals(wantDAS, printDAS(enhance));
+        Assert.assertArrayEquals(wantData, sendData(enhance)); // the file the DDS was made from is closed
+      }
+      Assert.assertEquals(1, cache.getMisses());
+      Assert.assertEquals(8, cache.getHits());
+    }
+  }
+
+  @Test
+  public void bindsToRequestFile() throws Exception {
+    GuardedDatasetCacheAndClone.setDDSCache(10);
+    try (NetcdfFile first = open(false); NetcdfFile second = open(false)) {
+      ServerDDS dds = new GuardedDatasetCacheAndClone(reqPath, first, false).getDDS();
+      Assert.assertSame(first, ((NcSDArray) dds.getVariable("bytev")).getVariable().getNetcdfFile());
+      dds = new GuardedDatasetCacheAndClone(reqPath, second, false).getDDS();
+      Assert.assertSame(second, ((NcSDArray) dds.getVariable("bytev")).getVariable().getNetcdfFile());
+      Assert.assertSame(second, ((HasNetcdfVariable) dds.getVariable("floatv")).getVariable().getNetcdfFile());
+    }
+    Assert.assertEquals(1, GuardedDatasetCacheAndClone.getDDSCache().getHits());
+  }
+
+  @Test
+  public void templateHoldsNoFile() throws Exception {
+    NcDDS template;
+    try (NetcdfFile ncfile = open(true)) {
+      template = NcDDS.makeTemplate(reqPath, ncfile);
+    }
+    Assert.assertNull(((NcSDArray) template.getVariable("bytev")).getVariable());
+    Assert.assertNull(((HasNetcdfVariable) template.getVariable("floatv")).getVariable());
+
+    try (NetcdfFile ncfile = open(true)) {
+      NcDDS dds = template.copyFor(ncfile);
+      Assert.assertNotNull(dds);
+      Assert.assertSame(ncfile, ((NcSDArray) dds.getVariable("bytev")).getVariable().getNetcdfFile());
+      Assert.assertNull(((NcSDArray) template.getVariable("bytev")).getVariable());
+    }
+  }
+
+  @Test
+  public void changedFile() throws Exception {
+    GuardedDatasetCacheAndClone.setDDSCache(10);
+    DDSCache cache = GuardedDatasetCacheAndClone.getDDSCache();
+    printDDS(false);
+    printDDS(false);
+    Assert.assertEquals(1, cache.getMisses());
+
+    Assert.assertTrue(file.setLastModified(file.lastModified() - 60 * 1000));
+    printDDS(false);
+    Assert.assertEquals(2, cache.getMisses());
+    printDDS(false);
+    Assert.assertEquals(2, cache.getHits());
+
+    cache.clear();
+    printDDS(false);
+    Assert.assertEquals(3, cache.getMisses());
+  }
+
+  private NetcdfFile open(boolean enhance) throws Exception {
+    return enhance ? NetcdfDataset.openDataset(file.getPath()) : NetcdfDataset.openFile(file.getPath(), null);
+  }
+
+  private String printDDS(boolean enhance) throws Exception {
+    try (NetcdfFile ncfile = open(enhance)) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      new GuardedDatasetCacheAndClone(reqPath, ncfile, false).getDDS().print(bos);
+      return bos.toString("UTF-8");
+    }
+  }
+
+  private String printDAS(boolean enhance) throws Exception {
+    try (NetcdfFile ncfile = open(enhance)) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      new GuardedDatasetCacheAndClone(reqPath, ncfile, false).getDAS().print(bos);
+      return bos.toString("UTF-8");
+    }
+  }
+
+  private byte[] sendData(boolean enhance) throws Exception {
+    try (NetcdfFile ncfile = open(enhance)) {
+      GuardedDataset ds = new GuardedDatasetCacheAndClone(reqPath, ncfile, false);
+      ServerDDS dds = ds.getDDS();
+      CEEvaluator ce = new CEEvaluator(dds);
+      ce.parseConstraint(constraint, null);
+
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      DataOutputStream sink = new DataOutputStream(bos);
+      ce.send(dds.getEncodedName(), sink, ds);
+      sink.flush();
+      return bos.toByteArray();
+    }
+  }
+}
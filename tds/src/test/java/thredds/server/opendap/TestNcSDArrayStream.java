@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 1998-2018 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package thredds.server.opendap;
+
+import opendap.servers.CEEvaluator;
+import opendap.servers.ServerDDS;
+import opendap.servlet.GuardedDataset;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.dataset.NetcdfDataset;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+
+/**
+ * Compare the DAP2 data response of numeric arrays streamed in pieces with the one read into memory.
+ */
+public class TestNcSDArrayStream {
+  private static final String path = "../opendap/src/test/data/testdata2/ref_nctest_classic.nc";
+
+  private static final String[] constraints = {
+      "",
+      "bytev",
+      "bytev[0:1:1][0:2:2][1:3][0:5][0:3][0:3:30]",
+      "aa,bb,cc,ce[0:2][1:2][0:2:6],xx",
+      "longv[1][0:2][1:2:4],floatv,doublev",
+      "bytevar[1:6][0:4][0:5][0:2:3],shortvar[0:1][0:1][0:1][0:1]",
+  };
+
+  @After
+  public void reset() {
+    NcSDArray.setStreamChunkSize(8 * 1000 * 1000);
+  }
+
+  @Test
+  public void compareWithRead() throws Exception {
+    for (String constraint : constraints) {
+      NcSDArray.setStreamChunkSize(0);
+      byte[] want = send(constraint);
+
+      for (int chunkSize : new int[] {1, 16, 100, 8 * 1000 * 1000}) {
+        NcSDArray.setStreamChunkSize(chunkSize);
+        Assert.assertArrayEquals(constraint + " chunkSize=" + chunkSize, want, send(constraint));
+      }
+    }
+  }
+
+  @Test
+  public void doesntReadArray() throws Exception {
+    try (NetcdfFile ncfile = NetcdfDataset.openFile(path, null)) {
+      GuardedDataset ds = new GuardedDatasetCacheAndClone(path, ncfile, false);
+      ServerDDS dds = ds.getDDS();
+      CEEvaluator ce = new CEEvaluator(dds);
+      ce.parseConstraint("ce,shortvar", null);
+      ce.send(dds.getEncodedName(), new DataOutputStream(new ByteArrayOutputStream()), ds);
+
+      Assert.assertFalse(((NcSDArray) dds.getVariable("ce")).isRead());  // streamed
+      Assert.assertTrue(((NcSDArray) dds.getVariable("shortvar")).isRead());
+    }
+  }
+
+  private byte[] send(String constraint) throws Exception {
+    try (NetcdfFile ncfile = NetcdfDataset.openFile(path, null)) {
+      GuardedDataset ds = new GuardedDatasetCacheAndClone(path, ncfile, false);
+      ServerDDS dds = ds.getDDS();
+      CEEvaluator ce = new CEEvaluator(dds);
+      ce.parseConstraint(constraint, null);
+
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      DataOutputStream sink = new DataOutputStream(bos);
+      ce.send(dds.getEncodedName(), sink, ds);
+      sink.flush();
+      Assert.assertTrue(constraint, bos.size() > 0);
+      return bos.toByteArray();
+    }
+  }
+}
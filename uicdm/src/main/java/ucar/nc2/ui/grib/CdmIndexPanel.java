@@ -10,6 +10,7 @@ import ucar.nc2.grib.collection.GribCdmIndex;
 import ucar.nc2.grib.collection.GribCollectionImmutable;
 import ucar.nc2.grib.collection.GribCollectionImmutable.Record;
 import ucar.nc2.grib.collection.PartitionCollectionImmutable;
+import ucar.nc2.grib.collection.RecordTable;
 import ucar.nc2.grib.coord.Coordinate;
 import ucar.nc2.grib.coord.CoordinateRuntime;
 import ucar.nc2.grib.coord.CoordinateTime;
@@ -408,10 +409,9 @@ public class CdmIndexPanel extends JPanel {
             if (count == 0) f.format(" total   SA  Variable%n");
             try {
               v.readRecords();
-              SparseArray<Record> sa = v.getSparseArray();
-              int ntracks = sa.getTotalSize();
-              int nrecords = sa.getContent().size();
-              int memEstForSA = 276 + nrecords * 40 + ntracks * 4;
+              RecordTable records = v.getRecordTable();
+              int nrecords = records == null ? 0 : records.getNRecords();
+              int memEstForSA = records == null ? 0 : (int) records.estMemorySize();
               int memEstBytes = 280 + memEstForSA;
               f.format("%6d %6d %-50s nrecords=%6d%n", memEstBytes, memEstForSA, bean.getName(), nrecords);
               bytesTotal += memEstBytes;
@@ -476,10 +476,9 @@ public class CdmIndexPanel extends JPanel {
             if (count == 0) f.format(" total   SA  Variable%n");
             try {
               v.readRecords();
-              SparseArray<GribCollectionImmutable.Record> sa = v.getSparseArray();
-              int ntracks = sa.getTotalSize();
-              int nrecords = sa.getContent().size();
-              int memEstForSA = 276 + nrecords * 40 + ntracks * 4;
+              RecordTable records = v.getRecordTable();
+              int nrecords = records == null ? 0 : records.getNRecords();
+              int memEstForSA = records == null ? 0 : (int) records.estMemorySize();
               int memEstBytes = 280 + memEstForSA;
               f.format("%6d %6d %-50s nrecords=%6d%n", memEstBytes, memEstForSA, bean.getName(), nrecords);
               bytesTotal += memEstBytes;
@@ -496,6 +495,12 @@ public class CdmIndexPanel extends JPanel {
       f.format("%n total KBytes=%d kbSATotal=%d kbNoSA=%d coordsAllTotal=%d%n", bytesTotal / 1000, bytesSATotal / 1000, noSA / 1000, coordsAllTotal / 1000);
       f.format("%n");
     }
+
+    try {
+      gc.showMemoryFootprint(f, false);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
   }
 
   private void compareCoords(Formatter f, Coordinate coord1, Coordinate coord2) {